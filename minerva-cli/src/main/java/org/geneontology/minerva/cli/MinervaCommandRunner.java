@@ -25,6 +25,12 @@ import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
 import org.geneontology.minerva.BlazegraphMolecularModelManager;
+import org.geneontology.minerva.BulkModelImporter;
+import org.geneontology.minerva.BulkModelImporter.ImportStatistics;
+import org.geneontology.minerva.ModelExportFormat;
+import org.geneontology.minerva.ModelExporter.ExportStatistics;
+import org.geneontology.minerva.ModelSnapshotReader;
+import org.geneontology.minerva.ModelSnapshotWriter;
 import org.geneontology.minerva.GafToLegoIndividualTranslator;
 import org.geneontology.minerva.curie.CurieHandler;
 import org.geneontology.minerva.curie.CurieMappings;
@@ -83,12 +89,15 @@ public class MinervaCommandRunner extends JsCommandRunner {
 	
 	@CLIMethod("--dump-owl-models")
 	public void modelsToOWL(Opts opts) throws Exception {
-		opts.info("[-j|--journal JOURNALFILE] [-f|--folder OWLFILESFOLDER] [-p|--prefix MODELIDPREFIX]",
-				"dumps all LEGO models to OWL Turtle files");
+		opts.info("[-j|--journal JOURNALFILE] [-f|--folder OWLFILESFOLDER] [-p|--prefix MODELIDPREFIX] [--threads N] [--incremental] [--format turtle|snapshot]",
+				"dumps all LEGO models to OWL Turtle files or binary model snapshots");
 		// parameters
 		String journalFilePath = null;
 		String outputFolder = null;
 		String modelIdPrefix = "http://model.geneontology.org/";
+		int threads = Runtime.getRuntime().availableProcessors();
+		boolean incremental = false;
+		ModelExportFormat format = ModelExportFormat.turtle;
 
 		// parse opts
 		while (opts.hasOpts()) {
@@ -104,6 +113,18 @@ public class MinervaCommandRunner extends JsCommandRunner {
 				opts.info("model ID prefix", "Sets the URI prefix for model IDs");
 				modelIdPrefix = opts.nextOpt();
 			}
+			else if (opts.nextEq("--threads")) {
+				opts.info("threads", "Sets the number of parallel model exports");
+				threads = Integer.parseInt(opts.nextOpt());
+			}
+			else if (opts.nextEq("--incremental")) {
+				opts.info("", "Only write the models which changed since the last export into the folder");
+				incremental = true;
+			}
+			else if (opts.nextEq("--format")) {
+				opts.info("format", "Sets the file format: turtle (default) or snapshot");
+				format = ModelExportFormat.valueOf(opts.nextOpt());
+			}
 			else {
 				break;
 			}
@@ -123,17 +144,101 @@ public class MinervaCommandRunner extends JsCommandRunner {
 		
 		OWLOntology dummy = OWLManager.createOWLOntologyManager().createOntology(IRI.create("http://example.org/dummy"));
 		BlazegraphMolecularModelManager<Void> m3 = new BlazegraphMolecularModelManager<>(new OWLGraphWrapper(dummy), modelIdPrefix, journalFilePath, outputFolder);
-		m3.dumpAllStoredModels();
+		m3.setExportFormat(format);
+		ExportStatistics statistics = m3.dumpAllStoredModels(threads, incremental);
+		LOGGER.info(statistics);
 		m3.dispose();
 	}
 	
+	@CLIMethod("--convert-model-snapshots")
+	public void convertModelSnapshots(Opts opts) throws Exception {
+		opts.info("-i|--input INPUTFOLDER -o|--output OUTPUTFOLDER [--to-turtle]",
+				"converts all Turtle model files in the folder to binary model snapshots or back");
+		// parameters
+		String inputFolder = null;
+		String outputFolder = null;
+		boolean toTurtle = false;
+
+		// parse opts
+		while (opts.hasOpts()) {
+			if (opts.nextEq("-i|--input")) {
+				opts.info("input folder", "Sets the folder containing the model files");
+				inputFolder = opts.nextOpt();
+			}
+			else if (opts.nextEq("-o|--output")) {
+				opts.info("output folder", "Sets the output folder for the converted files");
+				outputFolder = opts.nextOpt();
+			}
+			else if (opts.nextEq("--to-turtle")) {
+				opts.info("", "Convert snapshot files to Turtle, instead of Turtle files to snapshots");
+				toTurtle = true;
+			}
+			else {
+				break;
+			}
+		}
+
+		// minimal inputs
+		if (inputFolder == null) {
+			System.err.println("No input folder was configured.");
+			exit(-1);
+			return;
+		}
+		if (outputFolder == null) {
+			System.err.println("No output folder was configured.");
+			exit(-1);
+			return;
+		}
+
+		final String sourceSuffix = toTurtle ? ModelExportFormat.snapshot.getFileSuffix() : ModelExportFormat.turtle.getFileSuffix();
+		final String targetSuffix = toTurtle ? ModelExportFormat.turtle.getFileSuffix() : ModelExportFormat.snapshot.getFileSuffix();
+		File target = new File(outputFolder);
+		FileUtils.forceMkdir(target);
+		File[] files = new File(inputFolder).listFiles(new FilenameFilter() {
+
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.endsWith(sourceSuffix);
+			}
+		});
+		if (files == null) {
+			System.err.println("Could not list the input folder: "+inputFolder);
+			exit(-1);
+			return;
+		}
+		int failed = 0;
+		long triples = 0;
+		final long start = System.currentTimeMillis();
+		for (File file : files) {
+			String name = StringUtils.removeEnd(file.getName(), sourceSuffix) + targetSuffix;
+			try {
+				if (toTurtle) {
+					triples += ModelSnapshotReader.convertToTurtle(file, new File(target, name));
+				}
+				else {
+					triples += ModelSnapshotWriter.convertTurtle(file, new File(target, name));
+				}
+			} catch (IOException e) {
+				LOGGER.error("Could not convert file: "+file, e);
+				failed += 1;
+			}
+		}
+		LOGGER.info("Converted "+(files.length - failed)+" files with "+triples+" triples in "+(System.currentTimeMillis() - start)+" ms");
+		if (failed > 0) {
+			System.err.println("Could not convert "+failed+" files");
+			exit(-1);
+		}
+	}
+
 	@CLIMethod("--import-owl-models")
 	public void importOWLModels(Opts opts) throws Exception {
-		opts.info("[-j|--journal JOURNALFILE] [-f|--folder OWLFILESFOLDER]",
+		opts.info("[-j|--journal JOURNALFILE] [-f|--folder OWLFILESFOLDER] [--threads N] [--batch-size N]",
 				"import all files in folder to database");
 		// parameters
 		String journalFilePath = null;
 		String inputFolder = null;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int batchSize = 100;
 
 		// parse opts
 		while (opts.hasOpts()) {
@@ -145,6 +250,14 @@ public class MinervaCommandRunner extends JsCommandRunner {
 				opts.info("OWL folder", "Sets the folder containing the LEGO model files");
 				inputFolder = opts.nextOpt();
 			}
+			else if (opts.nextEq("--threads")) {
+				opts.info("threads", "Sets the number of threads for parsing the model files");
+				threads = Integer.parseInt(opts.nextOpt());
+			}
+			else if (opts.nextEq("--batch-size")) {
+				opts.info("batch size", "Sets the number of models imported per commit");
+				batchSize = Integer.parseInt(opts.nextOpt());
+			}
 			else {
 				break;
 			}
@@ -165,11 +278,17 @@ public class MinervaCommandRunner extends JsCommandRunner {
 		OWLOntology dummy = OWLManager.createOWLOntologyManager().createOntology(IRI.create("http://example.org/dummy"));
 		String modelIdPrefix = "http://model.geneontology.org/"; // this will not be used for anything
 		BlazegraphMolecularModelManager<Void> m3 = new BlazegraphMolecularModelManager<>(new OWLGraphWrapper(dummy), modelIdPrefix, journalFilePath, null);
-		for (File file : FileUtils.listFiles(new File(inputFolder), null, true)) {
-			LOGGER.info("Loading " + file);
-			m3.importModelToDatabase(file, true);
-		}
+		BulkModelImporter importer = new BulkModelImporter(m3, threads, batchSize);
+		ImportStatistics statistics = importer.importFiles(FileUtils.listFiles(new File(inputFolder), null, true), true);
 		m3.dispose();
+		List<File> failed = statistics.getFailed();
+		if (failed.isEmpty() == false) {
+			System.err.println("Could not import "+failed.size()+" files:");
+			for (File file : failed) {
+				System.err.println(file);
+			}
+			exit(-1);
+		}
 	}
 	
 	@CLIMethod("--sparql-update")
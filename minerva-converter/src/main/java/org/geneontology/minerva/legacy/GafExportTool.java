@@ -15,6 +15,7 @@ import org.geneontology.minerva.curie.CurieHandler;
 import org.geneontology.minerva.lookup.ExternalLookupService;
 import org.semanticweb.owlapi.model.OWLOntology;
 import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
 
 import owltools.gaf.GafDocument;
 import owltools.gaf.eco.EcoMapperFactory;
@@ -51,10 +52,17 @@ public class GafExportTool {
 	 * @throws UnknownIdentifierException 
 	 */
 	public Map<String, String> exportModelLegacy(ModelContainer model, CurieHandler curieHandler, ExternalLookupService lookup, Set<String> formats) throws OWLOntologyCreationException, UnknownIdentifierException {
-		final OWLOntology aBox = model.getAboxOntology();
-		
-		LegoToGeneAnnotationTranslator translator = new LegoToGeneAnnotationTranslator(aBox, curieHandler, ecoMapper);
-		GafDocument gafdoc = translator.translate(model.getModelId().toString(), aBox, lookup, null);
+		// translate a copy of the current version, the model may change in the meantime
+		final OWLOntologyManager manager = model.getOWLOntologyManager();
+		final OWLOntology aBox = model.getSnapshot().createOntology(manager);
+		GafDocument gafdoc;
+		try {
+			LegoToGeneAnnotationTranslator translator = new LegoToGeneAnnotationTranslator(aBox, curieHandler, ecoMapper);
+			gafdoc = translator.translate(model.getModelId().toString(), aBox, lookup, null);
+		}
+		finally {
+			manager.removeOntology(aBox);
+		}
 		Map<String, String> exportResults = new HashMap<String, String>();
 		for(String format : formats) {
 			ByteArrayOutputStream outputStream = null;
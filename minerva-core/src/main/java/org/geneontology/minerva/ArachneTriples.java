@@ -0,0 +1,115 @@
+package org.geneontology.minerva;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.geneontology.rules.engine.BlankNode;
+import org.geneontology.rules.engine.Literal;
+import org.geneontology.rules.engine.Node;
+import org.geneontology.rules.engine.Resource;
+import org.geneontology.rules.engine.Triple;
+import org.geneontology.rules.engine.URI;
+import org.openrdf.model.BNode;
+import org.openrdf.model.Statement;
+import org.openrdf.model.Value;
+import org.openrdf.model.vocabulary.OWL;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.model.vocabulary.XMLSchema;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.helpers.RDFHandlerBase;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.rio.RioRenderer;
+
+import scala.Option;
+
+/**
+ * Conversion of an ontology into Arachne triples. The ontology is rendered
+ * with the Rio renderer and each statement is converted as it arrives,
+ * without collecting the statements or converting them to Jena first. The
+ * nodes are the same as the ones created by the Jena bridge of Arachne, i.e.
+ * plain literals have the datatype xsd:string and language literals
+ * rdf:langString.
+ */
+final class ArachneTriples extends RDFHandlerBase {
+
+	private static final URI LANG_STRING = new URI(RDF.NAMESPACE + "langString");
+	private static final URI XSD_STRING = new URI(XMLSchema.STRING.stringValue());
+
+	private final Set<Triple> triples = new HashSet<>();
+	private final boolean skipHeader;
+	// the same resource is used in many triples, share the nodes
+	private final Map<String, URI> uris = new HashMap<>();
+
+	private ArachneTriples(boolean skipHeader) {
+		this.skipHeader = skipHeader;
+	}
+
+	/**
+	 * @param ontology
+	 * @return all triples of the ontology
+	 */
+	static Set<Triple> fromOntology(OWLOntology ontology) {
+		return render(ontology, false);
+	}
+
+	/**
+	 * @param ontology
+	 * @return all triples of the ontology, without the ontology declaration
+	 */
+	static Set<Triple> fromOntologyWithoutHeader(OWLOntology ontology) {
+		return render(ontology, true);
+	}
+
+	private static Set<Triple> render(OWLOntology ontology, boolean skipHeader) {
+		ArachneTriples handler = new ArachneTriples(skipHeader);
+		try {
+			new RioRenderer(ontology, handler, null).render();
+		} catch (IOException e) {
+			// the handler only collects triples
+			throw new UncheckedIOException(e);
+		}
+		return handler.triples;
+	}
+
+	@Override
+	public void handleStatement(Statement st) throws RDFHandlerException {
+		if (skipHeader && RDF.TYPE.equals(st.getPredicate()) && OWL.ONTOLOGY.equals(st.getObject())) {
+			return;
+		}
+		Resource subject = (Resource) toNode(st.getSubject());
+		URI predicate = toURI(st.getPredicate().stringValue());
+		triples.add(new Triple(subject, predicate, toNode(st.getObject())));
+	}
+
+	private Node toNode(Value value) {
+		if (value instanceof org.openrdf.model.URI) {
+			return toURI(value.stringValue());
+		}
+		if (value instanceof BNode) {
+			return new BlankNode(((BNode) value).getID());
+		}
+		org.openrdf.model.Literal literal = (org.openrdf.model.Literal) value;
+		String language = literal.getLanguage();
+		if (language != null && language.isEmpty() == false) {
+			return new Literal(literal.getLabel(), LANG_STRING, Option.apply(language));
+		}
+		URI datatype = XSD_STRING;
+		if (literal.getDatatype() != null) {
+			datatype = toURI(literal.getDatatype().stringValue());
+		}
+		return new Literal(literal.getLabel(), datatype, Option.<String>empty());
+	}
+
+	private URI toURI(String uri) {
+		URI node = uris.get(uri);
+		if (node == null) {
+			node = new URI(uri);
+			uris.put(uri, node);
+		}
+		return node;
+	}
+}
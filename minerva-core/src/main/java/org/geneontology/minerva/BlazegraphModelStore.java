@@ -0,0 +1,451 @@
+package org.geneontology.minerva;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.log4j.Logger;
+import org.geneontology.minerva.ModelChangeTracker.ModelDelta;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.impl.URIImpl;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.MalformedQueryException;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.QueryLanguage;
+import org.openrdf.query.TupleQuery;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.repository.RepositoryException;
+import org.openrdf.repository.RepositoryResult;
+import org.openrdf.rio.RDFHandler;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.helpers.StatementCollector;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+
+import com.bigdata.journal.Options;
+import com.bigdata.rdf.sail.BigdataSail;
+import com.bigdata.rdf.sail.BigdataSailRepository;
+import com.bigdata.rdf.sail.BigdataSailRepositoryConnection;
+
+/**
+ * {@link ModelStore} using a Blazegraph journal. Each model is stored in a
+ * named graph with the model id. All writes go through a
+ * {@link GroupCommitWriter}; saves can write only the changed triples of a
+ * model.
+ */
+public class BlazegraphModelStore implements ModelStore {
+
+	private static final Logger LOG = Logger.getLogger(BlazegraphModelStore.class);
+
+	private final BigdataSailRepository repo;
+	private final GroupCommitWriter writer;
+	// catalog of the named graphs in the journal, updated after each write
+	private final Set<IRI> storedModelIds = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * @param pathToJournal Path to Blazegraph journal file to use.
+	 * Only one instance of Blazegraph can use this file at a time.
+	 */
+	public BlazegraphModelStore(String pathToJournal) {
+		this.repo = initializeRepository(pathToJournal);
+		this.writer = new GroupCommitWriter(repo);
+		initializeStoredModelIds();
+	}
+
+	private static BigdataSailRepository initializeRepository(String pathToJournal) {
+		try {
+			Properties properties = new Properties();
+			properties.load(BlazegraphModelStore.class.getResourceAsStream("blazegraph.properties"));
+			properties.setProperty(Options.FILE, pathToJournal);
+			BigdataSail sail = new BigdataSail(properties);
+			BigdataSailRepository repository = new BigdataSailRepository(sail);
+			repository.initialize();
+			return repository;
+		} catch (RepositoryException e) {
+			LOG.fatal("Could not create Blazegraph sail", e);
+			return null;
+		} catch (IOException e) {
+			LOG.fatal("Could not create Blazegraph sail", e);
+			return null;
+		}
+	}
+
+	private void initializeStoredModelIds() {
+		if (repo == null) {
+			return;
+		}
+		try {
+			BigdataSailRepositoryConnection connection = repo.getReadOnlyConnection();
+			try {
+				RepositoryResult<Resource> graphs = connection.getContextIDs();
+				try {
+					while (graphs.hasNext()) {
+						storedModelIds.add(IRI.create(graphs.next().stringValue()));
+					}
+				} finally {
+					graphs.close();
+				}
+			} finally {
+				connection.close();
+			}
+		} catch (RepositoryException e) {
+			LOG.fatal("Could not read the stored model ids", e);
+		}
+		LOG.info("Found "+storedModelIds.size()+" stored models");
+	}
+
+	/**
+	 * @return the repository, e.g. for SPARQL queries
+	 */
+	public BigdataSailRepository getRepository() {
+		return repo;
+	}
+
+	/**
+	 * @return the writer for all modifications of the journal, provides the
+	 *         queue and commit statistics.
+	 */
+	public GroupCommitWriter getWriter() {
+		return writer;
+	}
+
+	@Override
+	public Set<IRI> getStoredModelIds() {
+		return Collections.unmodifiableSet(new HashSet<>(storedModelIds));
+	}
+
+	@Override
+	public boolean isStoredModel(IRI modelId) {
+		return storedModelIds.contains(modelId);
+	}
+
+	/**
+	 * Add a model to the catalog, after it has been written by the
+	 * {@link GroupCommitWriter}.
+	 *
+	 * @param modelId
+	 */
+	void markStored(IRI modelId) {
+		storedModelIds.add(modelId);
+	}
+
+	@Override
+	public Collection<Statement> loadModel(IRI modelId) throws IOException {
+		StatementCollector collector = new StatementCollector();
+		if (loadModel(modelId, collector) == false) {
+			return null;
+		}
+		return collector.getStatements();
+	}
+
+	@Override
+	public boolean loadModel(IRI modelId, RDFHandler handler) throws IOException {
+		if (isStoredModel(modelId) == false) {
+			return false;
+		}
+		try {
+			BigdataSailRepositoryConnection connection = repo.getReadOnlyConnection();
+			try {
+				RepositoryResult<Statement> statements =
+						connection.getStatements(null, null, null, false, new URIImpl(modelId.toString()));
+				try {
+					handler.startRDF();
+					while (statements.hasNext()) {
+						handler.handleStatement(statements.next());
+					}
+					handler.endRDF();
+					return true;
+				} finally {
+					statements.close();
+				}
+			} finally {
+				connection.close();
+			}
+		} catch (RepositoryException | RDFHandlerException e) {
+			throw new IOException(e);
+		}
+	}
+
+	@Override
+	public SaveResult saveModel(IRI modelId, OWLOntology model) throws IOException {
+		return saveModel(modelId, model, null);
+	}
+
+	/**
+	 * Write the model into its named graph. If a delta is available, only
+	 * the changed triples are written. Falls back to a full re-write of the
+	 * graph, if the delta can not be applied to the stored triples.
+	 *
+	 * @param modelId
+	 * @param model
+	 * @param delta changes since the last save or null for a full save
+	 * @return summary of the write
+	 * @throws IOException
+	 */
+	SaveResult saveModel(IRI modelId, OWLOntology model, ModelDelta delta) throws IOException {
+		IncrementalModelWriter incrementalWriter = null;
+		if (delta != null) {
+			try {
+				incrementalWriter = IncrementalModelWriter.prepare(modelId, model, delta);
+			} catch (OWLOntologyCreationException e) {
+				throw new IOException(e);
+			}
+		}
+		Collection<Statement> statements = null;
+		if (incrementalWriter == null) {
+			// render outside of the writer thread
+			statements = ModelStores.renderModel(model);
+		}
+		final ModelGraphWrite write = new ModelGraphWrite(model, modelId, incrementalWriter, statements);
+		awaitWrite(writer.submit(write));
+		storedModelIds.add(modelId);
+		return new SaveResult(write.incremental, write.added, write.removed);
+	}
+
+	/**
+	 * Write of a single model, executed by the {@link GroupCommitWriter}.
+	 * The calling thread holds the save lock of the model, while waiting for
+	 * the write to complete.
+	 */
+	private static class ModelGraphWrite implements GroupCommitWriter.WriteOperation {
+
+		private final OWLOntology model;
+		private final IRI modelId;
+		private final IncrementalModelWriter incrementalWriter;
+		private Collection<Statement> statements;
+
+		// results of the last execution
+		boolean incremental = false;
+		long added = 0;
+		long removed = 0;
+
+		ModelGraphWrite(OWLOntology model, IRI modelId, IncrementalModelWriter incrementalWriter, Collection<Statement> statements) {
+			this.model = model;
+			this.modelId = modelId;
+			this.incrementalWriter = incrementalWriter;
+			this.statements = statements;
+		}
+
+		@Override
+		public void write(BigdataSailRepositoryConnection connection) throws Exception {
+			URI graph = new URIImpl(modelId.toString());
+			Pair<Integer, Integer> counts = null;
+			if (incrementalWriter != null) {
+				counts = incrementalWriter.write(connection);
+				if (counts == null) {
+					LOG.warn("Stored triples do not match the changes for model: "+modelId+", using full save");
+				}
+			}
+			if (counts != null) {
+				incremental = true;
+				added = counts.getLeft();
+				removed = counts.getRight();
+			}
+			else {
+				if (statements == null) {
+					statements = ModelStores.renderModel(model);
+				}
+				incremental = false;
+				removed = connection.size(graph);
+				connection.clear(graph);
+				connection.add(statements, graph);
+				added = statements.size();
+			}
+		}
+	}
+
+	@Override
+	public void importModel(IRI modelId, final Collection<Statement> statements) throws IOException {
+		final URI graph = new URIImpl(modelId.toString());
+		awaitWrite(writer.submit(new GroupCommitWriter.WriteOperation() {
+
+			@Override
+			public void write(BigdataSailRepositoryConnection connection) throws Exception {
+				connection.clear(graph);
+				connection.add(statements, graph);
+			}
+		}));
+		storedModelIds.add(modelId);
+	}
+
+	@Override
+	public boolean deleteModel(IRI modelId) throws IOException {
+		if (isStoredModel(modelId) == false) {
+			return false;
+		}
+		final URI graph = new URIImpl(modelId.toString());
+		awaitWrite(writer.submit(new GroupCommitWriter.WriteOperation() {
+
+			@Override
+			public void write(BigdataSailRepositoryConnection connection) throws Exception {
+				connection.clear(graph);
+			}
+		}));
+		storedModelIds.remove(modelId);
+		return true;
+	}
+
+	/**
+	 * Wait for a queued write to be committed, at most for the write timeout
+	 * of the writer. On a timeout, the write is cancelled.
+	 *
+	 * @param future
+	 * @throws IOException
+	 */
+	void awaitWrite(Future<Void> future) throws IOException {
+		final long timeoutMillis = writer.getWriteTimeoutMillis();
+		try {
+			if (timeoutMillis > 0) {
+				future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+			}
+			else {
+				future.get();
+			}
+		} catch (TimeoutException e) {
+			future.cancel(false);
+			throw new IOException("The write was not committed within "+timeoutMillis+" ms, queue depth: "+writer.getQueueDepth(), e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the write to complete", e);
+		} catch (CancellationException e) {
+			throw new IOException("The write was cancelled", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	@Override
+	public String exportModel(IRI modelId, File targetFile, ModelExportFormat format, String previousHash) throws IOException {
+		final URI graph = new URIImpl(modelId.toString());
+		try {
+			// read-only connections see a consistent snapshot of the last commit
+			final BigdataSailRepositoryConnection connection = repo.getReadOnlyConnection();
+			try {
+				final String hash = hashStatements(connection, graph);
+				if (previousHash != null && previousHash.equals(hash) && targetFile.exists()) {
+					// unchanged since the last export
+					return hash;
+				}
+				ModelStores.writeModel(modelId, targetFile, format, new ModelStores.TripleSource() {
+
+					@Override
+					public void export(RDFHandler handler) throws Exception {
+						connection.export(handler, graph);
+					}
+				});
+				return hash;
+			} finally {
+				connection.close();
+			}
+		} catch (RepositoryException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Compute a hash over the statements of a named graph, in the order
+	 * returned by the database.
+	 */
+	private static String hashStatements(BigdataSailRepositoryConnection connection, URI graph) throws RepositoryException {
+		MessageDigest digest = ModelStores.createDigest();
+		RepositoryResult<Statement> statements = connection.getStatements(null, null, null, false, graph);
+		try {
+			while (statements.hasNext()) {
+				Statement statement = statements.next();
+				digest.update(statement.getSubject().toString().getBytes(StandardCharsets.UTF_8));
+				digest.update((byte) ' ');
+				digest.update(statement.getPredicate().toString().getBytes(StandardCharsets.UTF_8));
+				digest.update((byte) ' ');
+				digest.update(statement.getObject().toString().getBytes(StandardCharsets.UTF_8));
+				digest.update((byte) '\n');
+			}
+		} finally {
+			statements.close();
+		}
+		return ModelStores.toHex(digest);
+	}
+
+	@Override
+	public Map<IRI, Set<OWLAnnotation>> readModelAnnotations() throws IOException {
+		final Map<IRI, Set<OWLAnnotation>> all = new HashMap<>();
+		if (repo == null) {
+			return all;
+		}
+		try {
+			BigdataSailRepositoryConnection connection = repo.getReadOnlyConnection();
+			try {
+				String query = "PREFIX owl: <http://www.w3.org/2002/07/owl#> " +
+						"PREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#> " +
+						"SELECT ?model ?p ?o " +
+						"WHERE { " +
+						"?model a owl:Ontology . " +
+						"?model ?p ?o . " +
+						"FILTER(?p NOT IN (owl:imports, rdf:type, <"+ModelMetadataIndex.JSON_MODEL+">)) " +
+						"} ";
+				TupleQuery tupleQuery = connection.prepareTupleQuery(QueryLanguage.SPARQL, query);
+				TupleQueryResult result = tupleQuery.evaluate();
+				try {
+					while (result.hasNext()) {
+						BindingSet binding = result.next();
+						Value model = binding.getValue("model");
+						Value predicate = binding.getValue("p");
+						if ((model instanceof URI) && (predicate instanceof URI)) {
+							IRI modelId = IRI.create(model.stringValue());
+							Set<OWLAnnotation> modelAnnotations = all.get(modelId);
+							if (modelAnnotations == null) {
+								modelAnnotations = new HashSet<>();
+								all.put(modelId, modelAnnotations);
+							}
+							modelAnnotations.add(ModelMetadataIndex.createAnnotation(predicate.stringValue(), binding.getValue("o").stringValue()));
+						}
+					}
+				} finally {
+					result.close();
+				}
+			} finally {
+				connection.close();
+			}
+		} catch (RepositoryException | MalformedQueryException | QueryEvaluationException e) {
+			throw new IOException(e);
+		}
+		return all;
+	}
+
+	@Override
+	public void dispose() {
+		// finish all pending writes
+		writer.shutdown();
+		try {
+			repo.shutDown();
+		} catch (RepositoryException e) {
+			LOG.error("Failed to shutdown Blazegraph sail.", e);
+		}
+	}
+}
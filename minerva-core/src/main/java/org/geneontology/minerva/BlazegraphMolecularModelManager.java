@@ -2,39 +2,35 @@ package org.geneontology.minerva;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
 
 import com.bigdata.rdf.rio.json.BigdataSPARQLResultsJSONWriter;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
+import org.geneontology.minerva.ModelChangeTracker.ModelDelta;
 import org.geneontology.minerva.MolecularModelManager.UnknownIdentifierException;
-import org.geneontology.minerva.util.AnnotationShorthand;
 import org.geneontology.minerva.util.ReverseChangeGenerator;
 import org.openrdf.model.*;
-import org.openrdf.model.impl.URIImpl;
-import org.openrdf.model.vocabulary.OWL;
-import org.openrdf.model.vocabulary.RDF;
 import org.openrdf.query.*;
+import org.openrdf.query.impl.GraphQueryResultImpl;
 import org.openrdf.query.impl.TupleQueryResultBuilder;
+import org.openrdf.query.impl.TupleQueryResultImpl;
 import org.openrdf.repository.RepositoryException;
-import org.openrdf.repository.RepositoryResult;
-import org.openrdf.rio.RDFFormat;
 import org.openrdf.rio.RDFHandlerException;
 import org.openrdf.rio.RDFParseException;
-import org.openrdf.rio.RDFParser;
-import org.openrdf.rio.RDFWriter;
-import org.openrdf.rio.Rio;
 import org.openrdf.rio.helpers.RDFHandlerBase;
-import org.openrdf.rio.helpers.StatementCollector;
-import org.semanticweb.owlapi.apibinding.OWLManager;
 import org.semanticweb.owlapi.formats.FunctionalSyntaxDocumentFormat;
 import org.semanticweb.owlapi.formats.ManchesterSyntaxDocumentFormat;
 import org.semanticweb.owlapi.formats.OWLXMLDocumentFormat;
@@ -43,7 +39,7 @@ import org.semanticweb.owlapi.formats.TurtleDocumentFormat;
 import org.semanticweb.owlapi.model.AddImport;
 import org.semanticweb.owlapi.model.IRI;
 import org.semanticweb.owlapi.model.OWLAnnotation;
-import org.semanticweb.owlapi.model.OWLAnnotationProperty;
+import org.semanticweb.owlapi.model.OWLAxiom;
 import org.semanticweb.owlapi.model.OWLDataFactory;
 import org.semanticweb.owlapi.model.OWLDocumentFormat;
 import org.semanticweb.owlapi.model.OWLImportsDeclaration;
@@ -57,15 +53,12 @@ import org.semanticweb.owlapi.model.OWLOntologyIRIMapper;
 import org.semanticweb.owlapi.model.OWLOntologyManager;
 import org.semanticweb.owlapi.model.OWLOntologyStorageException;
 import org.semanticweb.owlapi.rio.RioMemoryTripleSource;
-import org.semanticweb.owlapi.rio.RioRenderer;
 
-import com.bigdata.journal.Options;
-import com.bigdata.rdf.sail.BigdataSail;
-import com.bigdata.rdf.sail.BigdataSailRepository;
 import com.bigdata.rdf.sail.BigdataSailRepositoryConnection;
 import com.google.common.base.Optional;
 
-import info.aduna.iteration.Iterations;
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.IterationWrapper;
 import owltools.gaf.parser.GafObjectsBuilder;
 import owltools.graph.OWLGraphWrapper;
 
@@ -78,7 +71,9 @@ public class BlazegraphMolecularModelManager<METADATA> extends CoreMolecularMode
 
 	final String pathToOWLStore;
 	final String pathToExportFolder;
-	private final BigdataSailRepository repo;
+	private final ModelStore store;
+	// annotations of the stored models, updated after each write
+	private final ModelMetadataIndex metadataIndex = new ModelMetadataIndex();
 
 	private final String modelIdPrefix;
 
@@ -88,6 +83,16 @@ public class BlazegraphMolecularModelManager<METADATA> extends CoreMolecularMode
 	private final List<PreFileSaveHandler> preFileSaveHandlers = new ArrayList<PreFileSaveHandler>();
 	private final List<PostLoadOntologyFilter> postLoadOntologyFilters = new ArrayList<PostLoadOntologyFilter>();
 
+	private boolean useIncrementalSaves = true;
+	private volatile ModelExportFormat exportFormat = ModelExportFormat.turtle;
+	private volatile ModelChangeLog changeLog = null;
+	private volatile ModelAccessStats accessStats = null;
+	private volatile ModelWarmUp warmUp = null;
+	private int maxConcurrentQueries = 8;
+	private volatile Semaphore querySlots = new Semaphore(maxConcurrentQueries, true);
+	private final SPARQLResultCache resultCache = new SPARQLResultCache(1000, 64L * 1024L * 1024L);
+	private final SaveStatistics saveStatistics = new SaveStatistics();
+
 	/**
 	 * @param graph
 	 * @param modelIdPrefix
@@ -97,11 +102,47 @@ public class BlazegraphMolecularModelManager<METADATA> extends CoreMolecularMode
 	 */
 	public BlazegraphMolecularModelManager(OWLGraphWrapper graph, String modelIdPrefix, String pathToJournal, String pathToExportFolder)
 			throws OWLOntologyCreationException {
+		this(graph, modelIdPrefix, new BlazegraphModelStore(pathToJournal), pathToJournal, pathToExportFolder);
+	}
+
+	/**
+	 * @param graph
+	 * @param modelIdPrefix
+	 * @param store the persistence for the models
+	 * @param pathToExportFolder
+	 * @throws OWLOntologyCreationException
+	 */
+	public BlazegraphMolecularModelManager(OWLGraphWrapper graph, String modelIdPrefix, ModelStore store, String pathToExportFolder)
+			throws OWLOntologyCreationException {
+		this(graph, modelIdPrefix, store, null, pathToExportFolder);
+	}
+
+	private BlazegraphMolecularModelManager(OWLGraphWrapper graph, String modelIdPrefix, ModelStore store, String pathToJournal, String pathToExportFolder)
+			throws OWLOntologyCreationException {
 		super(graph);
 		this.modelIdPrefix = modelIdPrefix;
 		this.pathToOWLStore = pathToJournal;
 		this.pathToExportFolder = pathToExportFolder;
-		this.repo = initializeRepository(this.pathToOWLStore);
+		this.store = store;
+		initializeMetadataIndex();
+	}
+
+	/**
+	 * @return the persistence for the models
+	 */
+	public ModelStore getModelStore() {
+		return store;
+	}
+
+	/**
+	 * @return the Blazegraph store
+	 * @throws UnsupportedOperationException if the models are not stored in Blazegraph
+	 */
+	public BlazegraphModelStore getBlazegraphModelStore() {
+		if (store instanceof BlazegraphModelStore) {
+			return (BlazegraphModelStore) store;
+		}
+		throw new UnsupportedOperationException("Requires a Blazegraph model store, current store: "+store.getClass().getSimpleName());
 	}
 
 	/**
@@ -113,22 +154,311 @@ public class BlazegraphMolecularModelManager<METADATA> extends CoreMolecularMode
 		return pathToOWLStore;
 	}
 
-	private BigdataSailRepository initializeRepository(String pathToJournal) {
+	/**
+	 * If enabled, a save only writes the triples for the axioms changed since
+	 * the last save (or load) of the model. Otherwise the named graph of the
+	 * model is re-written on every save.
+	 * 
+	 * @param useIncrementalSaves
+	 */
+	public void setUseIncrementalSaves(boolean useIncrementalSaves) {
+		this.useIncrementalSaves = useIncrementalSaves;
+	}
+
+	public boolean isUseIncrementalSaves() {
+		return useIncrementalSaves;
+	}
+
+	/**
+	 * @param exportFormat file format for the exported models
+	 */
+	public void setExportFormat(ModelExportFormat exportFormat) {
+		this.exportFormat = exportFormat;
+	}
+
+	public ModelExportFormat getExportFormat() {
+		return exportFormat;
+	}
+
+	/**
+	 * Set the write-ahead log for the changes of the in-memory models. Every
+	 * edit is written to the log, before the edit operation returns. Use
+	 * {@link #replayChangeLog()} to recover the unsaved changes after a
+	 * restart.
+	 * 
+	 * @param changeLog the log or null to disable logging
+	 */
+	public void setChangeLog(ModelChangeLog changeLog) {
+		this.changeLog = changeLog;
+	}
+
+	public ModelChangeLog getChangeLog() {
+		return changeLog;
+	}
+
+	/**
+	 * Set the access statistics of the models. Every {@link #getModel(IRI)}
+	 * call is recorded, the statistics select the models for
+	 * {@link #startWarmUp(int, int, long)}.
+	 * 
+	 * @param accessStats the statistics or null to disable the recording
+	 */
+	public void setAccessStats(ModelAccessStats accessStats) {
+		this.accessStats = accessStats;
+	}
+
+	public ModelAccessStats getAccessStats() {
+		return accessStats;
+	}
+
+	@Override
+	public ModelContainer getModel(IRI id) {
+		final ModelAccessStats stats = accessStats;
+		if (stats != null) {
+			stats.recordAccess(id);
+		}
+		return super.getModel(id);
+	}
+
+	/**
+	 * Start to pre-load the most used models in the background, see
+	 * {@link ModelWarmUp}. Requires the access statistics.
+	 * 
+	 * @param maxModels maximum number of models to load
+	 * @param threads number of loading threads
+	 * @param pauseMillis pause of each thread between two loads
+	 * @return the running warm-up
+	 */
+	public ModelWarmUp startWarmUp(int maxModels, int threads, long pauseMillis) {
+		final ModelAccessStats stats = accessStats;
+		List<IRI> modelIds = stats != null ? stats.getTopModels(maxModels) : Collections.<IRI>emptyList();
+		ModelWarmUp current = new ModelWarmUp(this, modelIds, threads, pauseMillis);
+		ModelWarmUp previous = warmUp;
+		warmUp = current;
+		if (previous != null) {
+			previous.cancel();
+		}
+		current.start();
+		return current;
+	}
+
+	/**
+	 * @return the last started warm-up or null
+	 */
+	public ModelWarmUp getWarmUp() {
+		return warmUp;
+	}
+
+	/**
+	 * @return true, unless a warm-up is still running
+	 */
+	public boolean isReady() {
+		final ModelWarmUp current = warmUp;
+		return current == null || current.isComplete();
+	}
+
+	/**
+	 * Load a model for the warm-up, without recording an access.
+	 * 
+	 * @param modelId
+	 * @return true, if the model was loaded
+	 */
+	boolean warmUpModel(IRI modelId) {
+		if (modelMap.containsKey(modelId)) {
+			return false;
+		}
+		if (isStoredModel(modelId) == false) {
+			// deleted since the last access
+			final ModelAccessStats stats = accessStats;
+			if (stats != null) {
+				stats.remove(modelId);
+			}
+			return false;
+		}
+		return super.getModel(modelId) != null;
+	}
+
+	/**
+	 * Apply the unsaved changes found in the change log to the models. Call
+	 * this after all load filters and save handlers are registered. The
+	 * recovered models are in memory and modified, the changes remain in
+	 * the log until the models are saved.
+	 * 
+	 * @return number of recovered models
+	 * @throws IOException
+	 */
+	public int replayChangeLog() throws IOException {
+		final ModelChangeLog log = changeLog;
+		if (log == null) {
+			return 0;
+		}
+		final long start = System.currentTimeMillis();
+		int count = 0;
+		for (ModelChangeLog.PendingChanges pending : log.getRecoveredChanges().values()) {
+			final IRI modelId = pending.getModelId();
+			ModelContainer model = null;
+			if (pending.isCreated()) {
+				// new model, which was never saved
+				if (modelMap.containsKey(modelId)) {
+					LOG.warn("Skipping recovery of new model, the model is already loaded: "+modelId);
+					continue;
+				}
+				try {
+					model = addModel(modelId, graph.getManager().createOntology(modelId));
+				} catch (OWLOntologyCreationException e) {
+					LOG.error("Could not create model for the recovered changes: "+modelId, e);
+					continue;
+				}
+			}
+			else {
+				model = getModel(modelId);
+			}
+			if (model == null) {
+				LOG.error("Could not recover changes, the model is not available: "+modelId);
+				continue;
+			}
+			final Lock lock = model.getWriteLock();
+			lock.lock();
+			try {
+				model.applyChanges(pending.createChanges(model.getAboxOntology()));
+			} finally {
+				lock.unlock();
+			}
+			if (pending.isCreated()) {
+				updateImports(model);
+			}
+			count += 1;
+			LOG.info("Recovered "+pending.getRecordCount()+" unsaved edits for model: "+modelId);
+		}
+		LOG.info("Recovered "+count+" models from the change log in "+(System.currentTimeMillis() - start)+" ms");
+		return count;
+	}
+
+	@Override
+	protected long logChanges(ModelContainer model, List<OWLOntologyChange> appliedChanges) {
+		final ModelChangeLog log = changeLog;
+		if (log != null && appliedChanges.isEmpty() == false) {
+			// the log replays all records on the abox
+			final OWLOntology abox = model.getAboxOntology();
+			List<OWLOntologyChange> aboxChanges = new ArrayList<>(appliedChanges.size());
+			for (OWLOntologyChange change : appliedChanges) {
+				if (abox.equals(change.getOntology())) {
+					aboxChanges.add(change);
+				}
+			}
+			try {
+				// write only, the sync happens after the model lock is released
+				return log.write(model.getModelId(), aboxChanges);
+			} catch (IOException e) {
+				LOG.error("Could not write changes to the change log for model: "+model.getModelId(), e);
+			}
+		}
+		return 0;
+	}
+
+	@Override
+	protected void awaitLoggedChanges(long logPosition) {
+		final ModelChangeLog log = changeLog;
+		if (log != null && logPosition > 0) {
+			try {
+				log.sync(logPosition);
+			} catch (IOException e) {
+				LOG.error("Could not force the change log to disk", e);
+			}
+		}
+	}
+
+	private void logCreated(ModelContainer model) {
+		final ModelChangeLog log = changeLog;
+		if (log != null) {
+			final Lock lock = model.getReadLock();
+			lock.lock();
+			try {
+				log.created(model.getModelId(), model.getAboxOntology());
+			} catch (IOException e) {
+				LOG.error("Could not write new model to the change log: "+model.getModelId(), e);
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	private void resetChangeLog(IRI modelId) {
+		final ModelChangeLog log = changeLog;
+		if (log != null) {
+			try {
+				log.reset(modelId);
+			} catch (IOException e) {
+				LOG.error("Could not reset the change log for model: "+modelId, e);
+			}
+		}
+	}
+
+	/**
+	 * @return cumulative statistics for all model saves
+	 */
+	public SaveStatistics getSaveStatistics() {
+		return saveStatistics;
+	}
+
+	/**
+	 * Counters for the model saves, to compare incremental and full saves.
+	 */
+	public static class SaveStatistics {
+		private final AtomicLong fullSaves = new AtomicLong(0L);
+		private final AtomicLong incrementalSaves = new AtomicLong(0L);
+		private final AtomicLong triplesAdded = new AtomicLong(0L);
+		private final AtomicLong triplesRemoved = new AtomicLong(0L);
+		private final AtomicLong saveTimeMillis = new AtomicLong(0L);
+
+		void record(boolean incremental, long added, long removed, long millis) {
+			if (incremental) {
+				incrementalSaves.incrementAndGet();
+			}
+			else {
+				fullSaves.incrementAndGet();
+			}
+			triplesAdded.addAndGet(added);
+			triplesRemoved.addAndGet(removed);
+			saveTimeMillis.addAndGet(millis);
+		}
+
+		public long getFullSaves() {
+			return fullSaves.get();
+		}
+
+		public long getIncrementalSaves() {
+			return incrementalSaves.get();
+		}
+
+		public long getTriplesAdded() {
+			return triplesAdded.get();
+		}
+
+		public long getTriplesRemoved() {
+			return triplesRemoved.get();
+		}
+
+		public long getSaveTimeMillis() {
+			return saveTimeMillis.get();
+		}
+
+		@Override
+		public String toString() {
+			return "SaveStatistics [fullSaves=" + fullSaves + ", incrementalSaves=" + incrementalSaves
+					+ ", triplesAdded=" + triplesAdded + ", triplesRemoved=" + triplesRemoved
+					+ ", saveTimeMillis=" + saveTimeMillis + "]";
+		}
+	}
+
+	private void initializeMetadataIndex() {
+		final long start = System.currentTimeMillis();
 		try {
-			Properties properties = new Properties();
-			properties.load(this.getClass().getResourceAsStream("blazegraph.properties"));
-			properties.setProperty(Options.FILE, pathToJournal);
-			BigdataSail sail = new BigdataSail(properties);
-			BigdataSailRepository repository = new BigdataSailRepository(sail);
-			repository.initialize();
-			return repository;
-		} catch (RepositoryException e) {
-			LOG.fatal("Could not create Blazegraph sail", e);
-			return null;		
+			metadataIndex.rebuild(store.readModelAnnotations());
 		} catch (IOException e) {
-			LOG.fatal("Could not create Blazegraph sail", e);
-			return null;
+			LOG.fatal("Could not read the stored model annotations", e);
 		}
+		LOG.info("Indexed model annotations in "+(System.currentTimeMillis() - start)+" ms");
 	}
 
 	private void createImports(OWLOntology ont, OWLOntologyID tboxId,
@@ -203,9 +533,30 @@ public class BlazegraphMolecularModelManager<METADATA> extends CoreMolecularMode
 		}
 		// add to internal map
 		modelMap.put(modelId, model);
+		logCreated(model);
+		return model;
+	}
+
+	@Override
+	public ModelContainer importModel(String modelData) throws OWLOntologyCreationException {
+		ModelContainer model = super.importModel(modelData);
+		logCreated(model);
 		return model;
 	}
 
+	@Override
+	protected boolean isEvictable(ModelContainer model) {
+		// new models are only in memory
+		return super.isEvictable(model) && isStoredModel(model.getModelId());
+	}
+
+	@Override
+	public void unlinkModel(IRI modelId) {
+		super.unlinkModel(modelId);
+		// unsaved changes are discarded with the in-memory model
+		resetChangeLog(modelId);
+	}
+
 	/**
 	 * Save all models to disk. The optional annotations may be used to set
 	 * saved_by and other meta data.
@@ -222,8 +573,8 @@ public class BlazegraphMolecularModelManager<METADATA> extends CoreMolecularMode
 	public void saveAllModels(Set<OWLAnnotation> annotations, METADATA metadata)
 			throws OWLOntologyStorageException, OWLOntologyCreationException,
 			IOException, RepositoryException, UnknownIdentifierException {
-		for (Entry<IRI, ModelContainer> entry : modelMap.entrySet()) {
-			saveModel(entry.getValue(), annotations, metadata);
+		for (ModelContainer model : modelMap.values()) {
+			saveModel(model, annotations, metadata);
 		}
 	}
 
@@ -247,48 +598,108 @@ public class BlazegraphMolecularModelManager<METADATA> extends CoreMolecularMode
 		IRI modelId = m.getModelId();
 		final OWLOntology ont = m.getAboxOntology();
 		final OWLOntologyManager manager = ont.getOWLOntologyManager();
-		List<OWLOntologyChange> changes = preSaveFileHandler(ont);
-		synchronized(ont) {
+		final ModelChangeTracker tracker = m.getChangeTracker();
+		// saves of the same model must not overtake each other
+		final Lock saveLock = m.getSaveLock();
+		saveLock.lock();
+		try {
+			// the pre-save changes are applied temporarily, capturing the
+			// snapshot and the delta requires the write lock
+			final ModelSnapshot snapshot;
+			ModelDelta delta = null;
+			final Lock lock = m.getWriteLock();
+			lock.lock();
 			try {
-				this.writeModelToDatabase(ont, modelId);
-				// reset modified flag for abox after successful save
-				m.setAboxModified(false);
-			} finally {
-				if (changes != null) {
-					List<OWLOntologyChange> invertedChanges = ReverseChangeGenerator
-							.invertChanges(changes);
-					if (invertedChanges != null && !invertedChanges.isEmpty()) {
-						manager.applyChanges(invertedChanges);
+				List<OWLOntologyChange> changes = preSaveFileHandler(ont);
+				try {
+					if (useIncrementalSaves) {
+						delta = tracker.getDelta(ont, changes);
+					}
+					snapshot = ModelSnapshot.capture(modelId, m.getVersion(), ont);
+					// changes after the snapshot are tracked for the next save
+					tracker.markSaved(ont, changes);
+				} finally {
+					if (changes != null) {
+						List<OWLOntologyChange> invertedChanges = ReverseChangeGenerator
+								.invertChanges(changes);
+						if (invertedChanges != null && !invertedChanges.isEmpty()) {
+							manager.applyChanges(invertedChanges);
+						}
 					}
 				}
+			} finally {
+				lock.unlock();
 			}
-		}
-	}
 
-	private void writeModelToDatabase(OWLOntology model, IRI modelId) throws RepositoryException, IOException {
-		// Only one thread at a time can use the unisolated connection.
-		synchronized(repo) {
-			final BigdataSailRepositoryConnection connection = repo.getUnisolatedConnection();
+			// render and write the snapshot, the model is available for reads and edits
+			boolean success = false;
 			try {
-				connection.begin();
+				this.writeModelToDatabase(snapshot.createOntology(), modelId, delta);
+				// the written annotations include the pre-save changes
+				metadataIndex.update(modelId, snapshot.getAnnotations());
+				success = true;
+			} finally {
+				lock.lock();
 				try {
-					URI graph = new URIImpl(modelId.toString());
-					connection.clear(graph);
-					StatementCollector collector = new StatementCollector();
-					RioRenderer renderer = new RioRenderer(model, collector, null);
-					renderer.render();
-					connection.add(collector.getStatements(), graph);
-					connection.commit();
-				} catch (Exception e) {
-					connection.rollback();
-					throw e;
+					if (success == false) {
+						// the store may not contain the snapshot
+						tracker.invalidate();
+					}
+					else if (m.getVersion() == snapshot.getVersion()) {
+						// reset modified flag for abox after successful save
+						m.setAboxModified(false);
+						// the logged changes are now in the store
+						resetChangeLog(modelId);
+					}
+					// else: keep the log, replaying all logged changes on top
+					// of the saved snapshot results in the current version
+				} finally {
+					lock.unlock();
 				}
-			} finally {
-				connection.close();
 			}
+		} finally {
+			saveLock.unlock();
 		}
 	}
 
+	/**
+	 * Write the model into the store. If a delta is available and the store
+	 * supports it, only the changed triples are written.
+	 * 
+	 * @param model
+	 * @param modelId
+	 * @param delta changes since the last save or null for a full save
+	 * @throws IOException
+	 */
+	private void writeModelToDatabase(OWLOntology model, IRI modelId, ModelDelta delta) throws IOException {
+		final long start = System.currentTimeMillis();
+		if (delta != null && delta.isEmpty()) {
+			// nothing to write, the store is already up-to-date
+			saveStatistics.record(true, 0, 0, System.currentTimeMillis() - start);
+			return;
+		}
+		final ModelStore.SaveResult result;
+		if (delta != null && store instanceof BlazegraphModelStore) {
+			result = ((BlazegraphModelStore) store).saveModel(modelId, model, delta);
+		}
+		else {
+			result = store.saveModel(modelId, model);
+		}
+		final long duration = System.currentTimeMillis() - start;
+		saveStatistics.record(result.isIncremental(), result.getAdded(), result.getRemoved(), duration);
+		LOG.info("Saved model: "+modelId+" mode: "+(result.isIncremental() ? "incremental" : "full")
+				+" added: "+result.getAdded()+" removed: "+result.getRemoved()+" triples in "+duration+" ms");
+	}
+
+	/**
+	 * @return the writer for all modifications of the journal, provides the
+	 *         queue and commit statistics.
+	 * @throws UnsupportedOperationException if the models are not stored in Blazegraph
+	 */
+	public GroupCommitWriter getGroupCommitWriter() {
+		return getBlazegraphModelStore().getWriter();
+	}
+
 	private List<OWLOntologyChange> preSaveFileHandler(OWLOntology model) throws UnknownIdentifierException {
 		List<OWLOntologyChange> allChanges = null;
 		for (PreFileSaveHandler handler : preFileSaveHandlers) {
@@ -376,22 +787,17 @@ public class BlazegraphMolecularModelManager<METADATA> extends CoreMolecularMode
 	 * @throws IOException
 	 */
 	public Set<IRI> getStoredModelIds() throws IOException {
-		try {
-			BigdataSailRepositoryConnection connection = repo.getReadOnlyConnection();
-			try {
-				RepositoryResult<Resource> graphs = connection.getContextIDs();
-				Set<IRI> modelIds = new HashSet<>();
-				while (graphs.hasNext()) {
-					modelIds.add(IRI.create(graphs.next().stringValue()));
-				}
-				graphs.close();
-				return Collections.unmodifiableSet(modelIds);
-			} finally {
-				connection.close();
-			}	
-		} catch (RepositoryException e) {
-			throw new IOException(e);
-		}		
+		return store.getStoredModelIds();
+	}
+
+	/**
+	 * Check the catalog of stored models, without accessing the database.
+	 * 
+	 * @param modelId
+	 * @return true, if the model is in the database
+	 */
+	public boolean isStoredModel(IRI modelId) {
+		return store.isStoredModel(modelId);
 	}
 
 	/**
@@ -412,54 +818,22 @@ public class BlazegraphMolecularModelManager<METADATA> extends CoreMolecularMode
 	 * @throws IOException
 	 */
 	public Set<IRI> getAvailableModelIds() throws IOException {
-		Set<IRI> allModelIds = new HashSet<>();
-		allModelIds.addAll(this.getStoredModelIds());
-		allModelIds.addAll(this.getCurrentModelIds());
+		Set<IRI> allModelIds = new HashSet<>(store.getStoredModelIds());
+		allModelIds.addAll(modelMap.keySet());
 		return allModelIds;
 	}
 
+	/**
+	 * Retrieve the ontology annotations for all models. The annotations of
+	 * the stored models are read from the in-memory metadata index, modified
+	 * models in memory replace the stored annotations.
+	 * 
+	 * @return map of model id to model annotations
+	 * @throws IOException
+	 */
 	public Map<IRI, Set<OWLAnnotation>> getAllModelAnnotations() throws IOException {
-		Map<IRI, Set<OWLAnnotation>> annotations = new HashMap<>();
 		// First get annotations from all the stored ontologies
-		try {
-			BigdataSailRepositoryConnection connection = repo.getReadOnlyConnection();
-			try {
-				String query = "PREFIX owl: <http://www.w3.org/2002/07/owl#> " +
-						"PREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#> " +
-						"SELECT ?model ?p ?o " +
-						"WHERE { " +
-						"?model a owl:Ontology . " +
-						"?model ?p ?o . " +
-						"FILTER(?p NOT IN (owl:imports, rdf:type, <http://geneontology.org/lego/json-model>)) " +
-						"} ";
-				TupleQuery tupleQuery = connection.prepareTupleQuery(QueryLanguage.SPARQL, query);
-				TupleQueryResult result = tupleQuery.evaluate();
-				OWLDataFactory factory = OWLManager.getOWLDataFactory();
-				while (result.hasNext()) {
-					BindingSet binding = result.next();
-					Value model = binding.getValue("model");
-					Value predicate = binding.getValue("p");
-					String value = binding.getValue("o").stringValue();
-					if ((model instanceof URI) && (predicate instanceof URI)) {
-						IRI modelId = IRI.create(((URI)model).toString());
-						OWLAnnotationProperty property = factory
-								.getOWLAnnotationProperty(IRI.create(((URI)predicate).toString()));
-						OWLAnnotation annotation = factory.getOWLAnnotation(property, factory.getOWLLiteral(value));
-						Set<OWLAnnotation> modelAnnotations = annotations.getOrDefault(modelId, new HashSet<>());
-						modelAnnotations.add(annotation);
-						annotations.put(modelId, modelAnnotations);
-					}
-				}
-			} catch (MalformedQueryException e) {
-				throw new IOException(e);
-			} catch (QueryEvaluationException e) {
-				throw new IOException(e);
-			} finally {
-				connection.close();
-			}	
-		} catch (RepositoryException e) {
-			throw new IOException(e);
-		}
+		Map<IRI, Set<OWLAnnotation>> annotations = metadataIndex.getAll();
 		// Next get annotations from ontologies that may not be stored, replacing any stored annotations
 		modelMap.values().stream().filter(mc -> mc.isModified()).forEach(mc -> {
 			annotations.put(mc.getModelId(), mc.getAboxOntology().getAnnotations());
@@ -467,29 +841,151 @@ public class BlazegraphMolecularModelManager<METADATA> extends CoreMolecularMode
 		return annotations;
 	}
 
-    public QueryResult executeSPARQLQuery(String queryText, int timeout) throws MalformedQueryException, QueryEvaluationException, RepositoryException {
-        BigdataSailRepositoryConnection connection = repo.getReadOnlyConnection();
+    /**
+     * Set the maximum number of SPARQL queries evaluated at the same time.
+     * Additional queries wait for a free slot, up to the query timeout.
+     *
+     * @param maxConcurrentQueries
+     */
+    public void setMaxConcurrentQueries(int maxConcurrentQueries) {
+        this.maxConcurrentQueries = maxConcurrentQueries;
+        this.querySlots = new Semaphore(Math.max(1, maxConcurrentQueries), true);
+    }
+
+    public int getMaxConcurrentQueries() {
+        return maxConcurrentQueries;
+    }
+
+    /**
+     * @return the cache for SPARQL query results
+     */
+    public SPARQLResultCache getSPARQLResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Evaluate a SPARQL query. Repeated queries are answered from the
+     * {@link SPARQLResultCache}, until the next commit. Tuple and graph results are lazy: the read-only
+     * connection and the query slot are held until the result is closed, so
+     * results can be streamed without buffering. The caller must always close
+     * the result, also if it is never read, closing it more than once is
+     * harmless. ASK queries are evaluated immediately and return a
+     * {@link BooleanQueryResult}.
+     *
+     * @param queryText
+     * @param timeout in seconds, for the evaluation and for waiting on a free query slot
+     * @return result
+     * @throws MalformedQueryException
+     * @throws QueryEvaluationException
+     * @throws RepositoryException
+     */
+    public QueryResult<?> executeSPARQLQuery(String queryText, int timeout) throws MalformedQueryException, QueryEvaluationException, RepositoryException {
+        final long startNanos = System.nanoTime();
+        // read the version before opening the connection, the connection
+        // sees at least all the commits counted in this version
+        final BlazegraphModelStore blazegraph = getBlazegraphModelStore();
+        final long version = blazegraph.getWriter().getCommitCount();
+        final boolean useCache = resultCache.isEnabled();
+        final String cacheKey = useCache ? SPARQLResultCache.normalize(queryText) : null;
+        if (useCache) {
+            QueryResult<?> cached = resultCache.get(cacheKey, version);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        final Semaphore slots = querySlots;
+        try {
+            if (slots.tryAcquire(timeout, TimeUnit.SECONDS) == false) {
+                throw new QueryEvaluationException("Too many concurrent queries, no free query slot after "+timeout+" seconds");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new QueryEvaluationException("Interrupted while waiting for a query slot", e);
+        }
+        final BigdataSailRepositoryConnection connection;
+        try {
+            connection = blazegraph.getRepository().getReadOnlyConnection();
+        } catch (RepositoryException | RuntimeException e) {
+            slots.release();
+            throw e;
+        }
+        final AtomicBoolean released = new AtomicBoolean(false);
+        final Runnable release = new Runnable() {
+
+            @Override
+            public void run() {
+                // a result may be closed by the writer and again by the request cleanup
+                if (released.compareAndSet(false, true) == false) {
+                    return;
+                }
+                try {
+                    connection.close();
+                } catch (RepositoryException e) {
+                    LOG.error("Could not close query connection", e);
+                } finally {
+                    slots.release();
+                }
+            }
+        };
+        boolean streaming = false;
         try {
             Query query = connection.prepareQuery(QueryLanguage.SPARQL, queryText);
             query.setMaxQueryTime(timeout);
             if (query instanceof TupleQuery) {
-                TupleQuery tupleQuery = (TupleQuery) query;
-                return tupleQuery.evaluate();
+                TupleQueryResult result = ((TupleQuery) query).evaluate();
+                List<String> bindingNames = result.getBindingNames();
+                CloseableIteration<BindingSet, QueryEvaluationException> bindings = result;
+                if (useCache) {
+                    bindings = resultCache.recordTuple(cacheKey, version, bindingNames, bindings, startNanos);
+                }
+                TupleQueryResult streamingResult = new TupleQueryResultImpl(bindingNames, closeOnFinish(bindings, release));
+                streaming = true;
+                return streamingResult;
             } else if (query instanceof GraphQuery) {
-                GraphQuery graphQuery = (GraphQuery) query;
-                return graphQuery.evaluate();
+                GraphQueryResult result = ((GraphQuery) query).evaluate();
+                Map<String, String> namespaces = result.getNamespaces();
+                CloseableIteration<Statement, QueryEvaluationException> statements = result;
+                if (useCache) {
+                    statements = resultCache.recordGraph(cacheKey, version, namespaces, statements, startNanos);
+                }
+                GraphQueryResult streamingResult = new GraphQueryResultImpl(namespaces, closeOnFinish(statements, release));
+                streaming = true;
+                return streamingResult;
             } else if (query instanceof BooleanQuery) {
-                throw new UnsupportedOperationException("Unsupported query type."); //FIXME
+                boolean value = ((BooleanQuery) query).evaluate();
+                if (useCache) {
+                    resultCache.putBoolean(cacheKey, version, value, startNanos);
+                }
+                return new BooleanQueryResult(value);
             } else {
                 throw new UnsupportedOperationException("Unsupported query type.");
             }
         } finally {
-            connection.close();
+            if (streaming == false) {
+                release.run();
+            }
         }
     }
 
+    /**
+     * Wrap a lazy query result, the release is run once, when the result is closed.
+     */
+    private static <T> CloseableIteration<T, QueryEvaluationException> closeOnFinish(CloseableIteration<T, QueryEvaluationException> result, final Runnable release) {
+        return new IterationWrapper<T, QueryEvaluationException>(result) {
+
+            @Override
+            protected void handleClose() throws QueryEvaluationException {
+                try {
+                    super.handleClose();
+                } finally {
+                    release.run();
+                }
+            }
+        };
+    }
+
 	@Override
-	protected void loadModel(IRI modelId, boolean isOverride) throws OWLOntologyCreationException {
+	protected ModelContainer loadModel(IRI modelId, boolean isOverride) throws OWLOntologyCreationException {
 		LOG.info("Load model: " + modelId + " from database");
 		if (modelMap.containsKey(modelId)) {
 			if (!isOverride) {
@@ -497,53 +993,103 @@ public class BlazegraphMolecularModelManager<METADATA> extends CoreMolecularMode
 			}
 			unlinkModel(modelId);
 		}
+		if (isStoredModel(modelId) == false) {
+			throw new OWLOntologyCreationException("No such model in datastore: " + modelId);
+		}
+		OWLOntology abox = loadStoredModel(modelId, false);
+		Set<OWLAxiom> storedAxioms = null;
+		Set<OWLAnnotation> storedAnnotations = null;
+		if (postLoadOntologyFilters.isEmpty() == false) {
+			storedAxioms = new HashSet<>(abox.getAxioms());
+			storedAnnotations = new HashSet<>(abox.getAnnotations());
+		}
+		abox = postLoadFileFilter(abox);
+		ModelContainer model = addModel(modelId, abox);
+		markLoaded(model, storedAxioms, storedAnnotations);
+		updateImports(model);
+		return model;
+	}
+
+	/**
+	 * Load the stored model. The triples are streamed from the store into a
+	 * {@link ModelTripleLoader}, only models not supported by the loader are
+	 * read again for the RDF parser of the OWL-API.
+	 * 
+	 * @param modelId
+	 * @param minimal if true, the imports are not loaded
+	 * @return abox
+	 * @throws OWLOntologyCreationException
+	 */
+	private OWLOntology loadStoredModel(IRI modelId, boolean minimal) throws OWLOntologyCreationException {
+		final ModelTripleLoader loader = new ModelTripleLoader();
 		try {
-			BigdataSailRepositoryConnection connection = repo.getReadOnlyConnection();
-			try {
-				RepositoryResult<Resource> graphs = connection.getContextIDs();
-				if (!Iterations.asSet(graphs).contains(new URIImpl(modelId.toString()))) {
-					throw new OWLOntologyCreationException("No such model in datastore: " + modelId);
+			boolean found = store.loadModel(modelId, new RDFHandlerBase() {
+
+				@Override
+				public void handleStatement(Statement statement) {
+					loader.add(statement);
 				}
-				graphs.close();
-				RepositoryResult<Statement> statements = 
-						connection.getStatements(null, null, null, false, new URIImpl(modelId.toString()));
-				OWLOntology abox = loadOntologyDocumentSource(new RioMemoryTripleSource(statements), false);
-				statements.close();
-				abox = postLoadFileFilter(abox);
-				ModelContainer model = addModel(modelId, abox);
-				updateImports(model);
-			} finally {
-				connection.close();
-			}	
-		} catch (RepositoryException e) {
+			});
+			if (found == false) {
+				throw new OWLOntologyCreationException("No such model in datastore: " + modelId);
+			}
+		} catch (IOException e) {
+			throw new OWLOntologyCreationException(e);
+		}
+		OWLOntology abox = loadOntologyTriples(modelId, loader, minimal);
+		if (abox == null) {
+			Collection<Statement> statements = loadStatements(modelId);
+			abox = loadOntologyDocumentSource(new RioMemoryTripleSource(statements), minimal);
+		}
+		return abox;
+	}
+
+	private Collection<Statement> loadStatements(IRI modelId) throws OWLOntologyCreationException {
+		try {
+			Collection<Statement> statements = store.loadModel(modelId);
+			if (statements == null) {
+				throw new OWLOntologyCreationException("No such model in datastore: " + modelId);
+			}
+			return statements;
+		} catch (IOException e) {
 			throw new OWLOntologyCreationException(e);
 		}
 	}
 
+	/**
+	 * Initialize the change tracking for a freshly loaded model. Axioms
+	 * removed by the {@link PostLoadOntologyFilter}s are still in the store,
+	 * they are considered as derived content of the last save.
+	 * 
+	 * @param model
+	 * @param storedAxioms axioms before filtering, null if there are no filters
+	 * @param storedAnnotations ontology annotations before filtering, null if there are no filters
+	 */
+	private void markLoaded(ModelContainer model, Set<OWLAxiom> storedAxioms, Set<OWLAnnotation> storedAnnotations) {
+		final OWLOntology abox = model.getAboxOntology();
+		if (storedAxioms == null || storedAnnotations == null) {
+			model.getChangeTracker().markSaved(abox, Collections.<OWLAxiom>emptySet(), Collections.<OWLAnnotation>emptySet());
+			return;
+		}
+		final Set<OWLAxiom> currentAxioms = abox.getAxioms();
+		final Set<OWLAnnotation> currentAnnotations = abox.getAnnotations();
+		if (storedAxioms.containsAll(currentAxioms) && storedAnnotations.containsAll(currentAnnotations)) {
+			storedAxioms.removeAll(currentAxioms);
+			storedAnnotations.removeAll(currentAnnotations);
+			model.getChangeTracker().markSaved(abox, storedAxioms, storedAnnotations);
+		}
+		// else: the filters added content, the first save has to be a full save
+	}
+
 	@Override
 	protected OWLOntology loadModelABox(IRI modelId) throws OWLOntologyCreationException {
 		LOG.info("Load model abox: " + modelId + " from database");
-		try {
-			BigdataSailRepositoryConnection connection = repo.getReadOnlyConnection();
-			try {
-				//TODO repeated code with loadModel
-				RepositoryResult<Resource> graphs = connection.getContextIDs();
-				if (!Iterations.asSet(graphs).contains(new URIImpl(modelId.toString()))) {
-					throw new OWLOntologyCreationException("No such model in datastore: " + modelId);
-				}
-				graphs.close();
-				RepositoryResult<Statement> statements = 
-						connection.getStatements(null, null, null, false, new URIImpl(modelId.toString()));
-				OWLOntology abox = loadOntologyDocumentSource(new RioMemoryTripleSource(statements), true);
-				statements.close();
-				abox = postLoadFileFilter(abox);
-				return abox;
-			} finally {
-				connection.close();
-			}	
-		} catch (RepositoryException e) {
-			throw new OWLOntologyCreationException(e);
+		if (isStoredModel(modelId) == false) {
+			throw new OWLOntologyCreationException("No such model in datastore: " + modelId);
 		}
+		OWLOntology abox = loadStoredModel(modelId, true);
+		abox = postLoadFileFilter(abox);
+		return abox;
 	}
 
 	private OWLOntology postLoadFileFilter(OWLOntology model) {
@@ -566,116 +1112,70 @@ public class BlazegraphMolecularModelManager<METADATA> extends CoreMolecularMode
 
 	/**
 	 * Imports ontology RDF directly to database. No OWL checks are performed. 
+	 * For importing many files use the {@link BulkModelImporter}.
+	 * 
 	 * @param file
+	 * @param skipMarkedDelete
 	 * @throws OWLOntologyCreationException 
 	 * @throws IOException 
 	 * @throws RepositoryException 
+	 * @throws RDFParseException
+	 * @throws RDFHandlerException
 	 */
 	public void importModelToDatabase(File file, boolean skipMarkedDelete) throws OWLOntologyCreationException, RepositoryException, IOException, RDFParseException, RDFHandlerException {
-		synchronized(repo) {
-			final BigdataSailRepositoryConnection connection = repo.getUnisolatedConnection();
-			try {
-				connection.begin();
-				try {
-					final boolean delete;
-					if (skipMarkedDelete) {
-						delete = scanForIsDelete(file);	
-					} else {
-						delete = false;
-					}
-					if (!delete) {
-						java.util.Optional<URI> ontIRIOpt = scanForOntologyIRI(file).map(id -> new URIImpl(id));
-						if (ontIRIOpt.isPresent()) {
-							URI graph = ontIRIOpt.get();
-							connection.clear(graph);
-							//FIXME Turtle format is hard-coded here
-							connection.add(file, "", RDFFormat.TURTLE, graph);
-							connection.commit();
-						} else {
-							throw new OWLOntologyCreationException("Detected anonymous ontology; must have IRI");
-						}
-					}
-				} catch (Exception e) {
-					connection.rollback();
-					throw e;
-				}
-			} finally {
-				connection.close();
-			}
+		final BulkModelImporter.ParsedModelFile parsed = BulkModelImporter.parse(file);
+		if (skipMarkedDelete && parsed.delete) {
+			return;
 		}
+		if (parsed.graph == null) {
+			throw new OWLOntologyCreationException("Detected anonymous ontology; must have IRI");
+		}
+		IRI modelId = IRI.create(parsed.graph.stringValue());
+		store.importModel(modelId, parsed.statements);
+		markStored(modelId, parsed.statements);
 	}
 
 	/**
-	 * Tries to efficiently find the ontology IRI triple without loading the whole file.
-	 * @throws IOException 
-	 * @throws RDFHandlerException 
-	 * @throws RDFParseException 
-	 */
-	private java.util.Optional<String> scanForOntologyIRI(File file) throws RDFParseException, RDFHandlerException, IOException {
-		RDFHandlerBase handler = new RDFHandlerBase() {
-			public void handleStatement(Statement statement) { 
-				if (statement.getObject().stringValue().equals("http://www.w3.org/2002/07/owl#Ontology") &&
-						statement.getPredicate().stringValue().equals("http://www.w3.org/1999/02/22-rdf-syntax-ns#type")) throw new FoundTripleException(statement);
-			}
-		};
-		InputStream inputStream = new FileInputStream(file);
-		try {
-			//FIXME Turtle format is hard-coded here
-			RDFParser parser = Rio.createParser(RDFFormat.TURTLE);
-			parser.setRDFHandler(handler);
-			parser.parse(inputStream, "");
-			// If an ontology IRI triple is found, it will be thrown out
-			// in an exception. Otherwise, return empty.
-			return java.util.Optional.empty();
-		} catch (FoundTripleException fte) {
-			Statement statement = fte.getStatement();
-			if (statement.getSubject() instanceof BNode ) {
-				LOG.warn("Blank node subject for ontology triple: " + statement);
-				return java.util.Optional.empty();
-			} else {
-				return java.util.Optional.of(statement.getSubject().stringValue());
-			}
-		} finally {
-			inputStream.close();
-		}
-	}
-	
-	private boolean scanForIsDelete(File file) throws RDFParseException, RDFHandlerException, IOException {
-		RDFHandlerBase handler = new RDFHandlerBase() {
-			
-			public void handleStatement(Statement statement) { 
-				if (statement.getPredicate().stringValue().equals(AnnotationShorthand.modelstate.getAnnotationProperty().toString()) && 
-					statement.getObject().stringValue().equals("delete")) throw new FoundTripleException(statement);
-			}
-		};
-		InputStream inputStream = new FileInputStream(file);
-		try {
-			//FIXME Turtle format is hard-coded here
-			RDFParser parser = Rio.createParser(RDFFormat.TURTLE);
-			parser.setRDFHandler(handler);
-			parser.parse(inputStream, "");
-			// If an ontology IRI triple is found, it will be thrown out
-			// in an exception. Otherwise, return false.
-			return false;
-		} catch (FoundTripleException fte) {
-			return true;
-		} finally {
-			inputStream.close();
+	 * Update the catalog and the metadata for a model, after it has been
+	 * imported into the store.
+	 * 
+	 * @param modelId
+	 * @param statements the written triples of the model
+	 */
+	void markStored(IRI modelId, Collection<Statement> statements) {
+		if (store instanceof BlazegraphModelStore) {
+			// batch imports write directly with the GroupCommitWriter
+			((BlazegraphModelStore) store).markStored(modelId);
 		}
+		metadataIndex.updateFromStatements(modelId, statements);
 	}
 
-	private static class FoundTripleException extends RuntimeException {
-
-		private static final long serialVersionUID = 8366509854229115430L;
-		private final Statement statement;
-
-		public FoundTripleException(Statement statement) {
-			this.statement = statement;
+	/**
+	 * Remove the stored triples of a model from the database. This does not
+	 * unload the model from memory.
+	 * 
+	 * @param modelId
+	 * @return true, if the model was in the database
+	 * @throws RepositoryException
+	 * @throws IOException
+	 */
+	public boolean deleteStoredModel(IRI modelId) throws RepositoryException, IOException {
+		if (store.deleteModel(modelId) == false) {
+			return false;
 		}
-
-		public Statement getStatement() {
-			return this.statement;
+		metadataIndex.remove(modelId);
+		// a following save of the model has to write all triples
+		ModelContainer model = modelMap.get(modelId);
+		if (model != null) {
+			final Lock lock = model.getWriteLock();
+			lock.lock();
+			try {
+				model.getChangeTracker().invalidate();
+			} finally {
+				lock.unlock();
+			}
 		}
+		return true;
 	}
 
 	private static class EmptyOntologyIRIMapper implements OWLOntologyIRIMapper {
@@ -694,34 +1194,63 @@ public class BlazegraphMolecularModelManager<METADATA> extends CoreMolecularMode
 	/**
 	 * Export all models to disk. 
 	 * 
-	 * @param annotations
-	 * @param metadata
-	 * 
 	 * @throws OWLOntologyStorageException
 	 * @throws OWLOntologyCreationException
 	 * @throws IOException 
 	 */
 	public void dumpAllStoredModels() throws OWLOntologyStorageException, OWLOntologyCreationException, IOException {
-		File folder = new File(this.pathToExportFolder);
-		for (IRI modelId : this.getStoredModelIds()) {
-			dumpStoredModel(modelId, folder);
+		dumpAllStoredModels(Runtime.getRuntime().availableProcessors(), false);
+	}
+
+	/**
+	 * Export all models to disk, using the {@link ModelExporter}.
+	 * 
+	 * @param threads number of parallel exports
+	 * @param incremental if true, only write models which changed since the last export
+	 * @return statistics
+	 * @throws IOException
+	 */
+	public ModelExporter.ExportStatistics dumpAllStoredModels(int threads, boolean incremental) throws IOException {
+		ModelExporter exporter = new ModelExporter(this, threads);
+		exporter.setIncremental(incremental);
+		try {
+			ModelExporter.ExportStatistics statistics = exporter.exportAll(new File(this.pathToExportFolder));
+			if (statistics.getFailed().isEmpty() == false) {
+				throw new IOException("Could not export models: "+statistics.getFailed());
+			}
+			return statistics;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted export", e);
 		}
 	}
 
 	/**
 	 * Save a model to disk.
 	 * 
-	 * @param m 
-	 * @param annotations 
-	 * @param metadata
+	 * @param modelId
+	 * @param folder
 	 *
-	 * @throws OWLOntologyStorageException 
-	 * @throws OWLOntologyCreationException 
 	 * @throws IOException
 	 */
 	public void dumpStoredModel(IRI modelId, File folder) throws IOException {
+		dumpStoredModel(modelId, folder, null);
+	}
+
+	/**
+	 * Save a model to disk in the export format, if the stored content does
+	 * not match the given hash. The file is written to a temporary file in the target folder and
+	 * then atomically moved to the target file.
+	 * 
+	 * @param modelId
+	 * @param folder
+	 * @param previousHash hash of the last export or null
+	 * @return hash of the stored content of the model
+	 * @throws IOException
+	 */
+	String dumpStoredModel(IRI modelId, File folder, String previousHash) throws IOException {
 		// preliminary checks for the target file
-		String fileName = StringUtils.replaceOnce(modelId.toString(), modelIdPrefix, "") + ".ttl";
+		String fileName = StringUtils.replaceOnce(modelId.toString(), modelIdPrefix, "") + exportFormat.getFileSuffix();
 		File targetFile = new File(folder, fileName).getAbsoluteFile();
 		if (targetFile.exists()) {
 			if (targetFile.isFile() == false) {
@@ -735,46 +1264,34 @@ public class BlazegraphMolecularModelManager<METADATA> extends CoreMolecularMode
 			File targetFolder = targetFile.getParentFile();
 			FileUtils.forceMkdir(targetFolder);
 		}
-		File tempFile = null;
-		try {
-			// create tempFile
-			String prefix = modelId.toString(); // TODO escape
-			tempFile = File.createTempFile(prefix, ".ttl");
-			try {
-				BigdataSailRepositoryConnection connection = repo.getReadOnlyConnection();
-				try {
-					OutputStream out = new FileOutputStream(tempFile);
-					// Workaround for order dependence of RDF reading by OWL API
-					// Need to output ontology triple first until this bug is fixed:
-					// https://github.com/owlcs/owlapi/issues/574
-					ValueFactory factory = connection.getValueFactory();
-					Statement ontologyDeclaration = factory.createStatement(factory.createURI(modelId.toString()), RDF.TYPE, OWL.ONTOLOGY);
-					Rio.write(Collections.singleton(ontologyDeclaration), out, RDFFormat.TURTLE);
-					// end workaround
-					RDFWriter writer = Rio.createWriter(RDFFormat.TURTLE, out);
-					connection.export(writer, new URIImpl(modelId.toString()));
-					// copy temp file to the finalFile
-					FileUtils.copyFile(tempFile, targetFile);
-				}  finally {
-					connection.close();
-				}	
-			} catch (RepositoryException e) {
-				throw new IOException(e);
-			} catch (RDFHandlerException e) {
-				throw new IOException(e);
-			}
-		} finally {
-			// delete temp file
-			FileUtils.deleteQuietly(tempFile);
-		}
+		return store.exportModel(modelId, targetFile, exportFormat, previousHash);
 	}
 
 	public void dispose() {
+		// keep the unsaved changes in the log for the next start
+		final ModelChangeLog log = changeLog;
+		changeLog = null;
+		final ModelWarmUp currentWarmUp = warmUp;
+		if (currentWarmUp != null) {
+			currentWarmUp.cancel();
+		}
 		super.dispose();
-		try {
-			repo.shutDown();
-		} catch (RepositoryException e) {
-			LOG.error("Failed to shutdown Blazegraph sail.", e);
+		// finish all pending writes
+		store.dispose();
+		if (log != null) {
+			try {
+				log.close();
+			} catch (IOException e) {
+				LOG.error("Could not close the change log", e);
+			}
+		}
+		final ModelAccessStats stats = accessStats;
+		if (stats != null) {
+			try {
+				stats.close();
+			} catch (IOException e) {
+				LOG.error("Could not save the model access statistics", e);
+			}
 		}
 	}
 
@@ -0,0 +1,55 @@
+package org.geneontology.minerva;
+
+import java.util.NoSuchElementException;
+
+import org.openrdf.query.QueryResult;
+
+/**
+ * Result of a SPARQL ASK query, as a {@link QueryResult} with a single
+ * element. The value is evaluated eagerly, there are no resources to close.
+ */
+public class BooleanQueryResult implements QueryResult<Boolean> {
+
+	private final boolean value;
+	private boolean consumed = false;
+
+	public BooleanQueryResult(boolean value) {
+		this.value = value;
+	}
+
+	/**
+	 * @return the result of the ASK query
+	 */
+	public boolean getValue() {
+		return value;
+	}
+
+	@Override
+	public boolean hasNext() {
+		return consumed == false;
+	}
+
+	@Override
+	public Boolean next() {
+		if (consumed) {
+			throw new NoSuchElementException();
+		}
+		consumed = true;
+		return Boolean.valueOf(value);
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void close() {
+		consumed = true;
+	}
+
+	@Override
+	public String toString() {
+		return "BooleanQueryResult [" + value + "]";
+	}
+}
@@ -0,0 +1,388 @@
+package org.geneontology.minerva;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+import org.geneontology.minerva.util.AnnotationShorthand;
+import org.openrdf.model.BNode;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.impl.URIImpl;
+import org.openrdf.model.vocabulary.OWL;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.RDFParseException;
+import org.openrdf.rio.RDFParser;
+import org.openrdf.rio.Rio;
+import org.openrdf.rio.helpers.RDFHandlerBase;
+import org.semanticweb.owlapi.model.IRI;
+
+import com.bigdata.rdf.sail.BigdataSailRepositoryConnection;
+
+/**
+ * Import model files into the database. The files are parsed in parallel on
+ * a worker pool; each file is parsed once, collecting the statements, the
+ * ontology IRI and the delete flag. The parsed models are written in
+ * batches, each batch with a single commit by the {@link GroupCommitWriter},
+ * if the models are stored in Blazegraph.
+ */
+public class BulkModelImporter {
+
+	private static final Logger LOG = Logger.getLogger(BulkModelImporter.class);
+
+	private static final String MODEL_STATE = AnnotationShorthand.modelstate.getAnnotationProperty().toString();
+
+	private final BlazegraphMolecularModelManager<?> m3;
+	private final int threads;
+	private final int batchSize;
+	private long progressIntervalMillis = 10000L;
+
+	/**
+	 * @param m3
+	 * @param threads number of parser threads
+	 * @param batchSize number of models per commit
+	 */
+	public BulkModelImporter(BlazegraphMolecularModelManager<?> m3, int threads, int batchSize) {
+		this.m3 = m3;
+		this.threads = Math.max(1, threads);
+		this.batchSize = Math.max(1, batchSize);
+	}
+
+	/**
+	 * @param progressIntervalMillis minimum time between two progress reports
+	 */
+	public void setProgressIntervalMillis(long progressIntervalMillis) {
+		this.progressIntervalMillis = progressIntervalMillis;
+	}
+
+	/**
+	 * Result of parsing a single model file.
+	 */
+	static class ParsedModelFile {
+
+		final File file;
+		final List<Statement> statements = new ArrayList<>();
+		URI graph = null;
+		boolean anonymous = false;
+		boolean delete = false;
+
+		ParsedModelFile(File file) {
+			this.file = file;
+		}
+	}
+
+	/**
+	 * Parse a Turtle or snapshot model file in a single pass.
+	 *
+	 * @param file
+	 * @return parsed file
+	 * @throws RDFParseException
+	 * @throws RDFHandlerException
+	 * @throws IOException
+	 */
+	static ParsedModelFile parse(File file) throws RDFParseException, RDFHandlerException, IOException {
+		final ParsedModelFile parsed = new ParsedModelFile(file);
+		RDFHandlerBase handler = new RDFHandlerBase() {
+
+			@Override
+			public void handleStatement(Statement statement) {
+				parsed.statements.add(statement);
+				if (parsed.graph == null && parsed.anonymous == false
+						&& RDF.TYPE.equals(statement.getPredicate()) && OWL.ONTOLOGY.equals(statement.getObject())) {
+					if (statement.getSubject() instanceof BNode) {
+						LOG.warn("Blank node subject for ontology triple: " + statement);
+						parsed.anonymous = true;
+					}
+					else {
+						parsed.graph = new URIImpl(statement.getSubject().stringValue());
+					}
+				}
+				else if (MODEL_STATE.equals(statement.getPredicate().stringValue())
+						&& "delete".equals(statement.getObject().stringValue())) {
+					parsed.delete = true;
+				}
+			}
+		};
+		InputStream inputStream = new BufferedInputStream(new FileInputStream(file));
+		try {
+			if (file.getName().endsWith(ModelSnapshotWriter.FILE_SUFFIX)) {
+				new ModelSnapshotReader(inputStream).read(handler);
+			}
+			else {
+				//FIXME Turtle format is hard-coded here
+				RDFParser parser = Rio.createParser(RDFFormat.TURTLE);
+				parser.setRDFHandler(handler);
+				parser.parse(inputStream, "");
+			}
+		} finally {
+			inputStream.close();
+		}
+		return parsed;
+	}
+
+	/**
+	 * Replace the named graphs for the given models, in one transaction.
+	 */
+	static class ModelBatchWrite implements GroupCommitWriter.WriteOperation {
+
+		private final List<ParsedModelFile> models;
+
+		ModelBatchWrite(List<ParsedModelFile> models) {
+			this.models = models;
+		}
+
+		@Override
+		public void write(BigdataSailRepositoryConnection connection) throws Exception {
+			for (ParsedModelFile model : models) {
+				connection.clear(model.graph);
+				connection.add(model.statements, model.graph);
+			}
+		}
+	}
+
+	/**
+	 * Import all files, models marked for deletion are optionally skipped.
+	 * Errors for single files are logged and reported in the result, they do
+	 * not stop the import.
+	 *
+	 * @param files
+	 * @param skipMarkedDelete
+	 * @return statistics
+	 * @throws InterruptedException
+	 */
+	public ImportStatistics importFiles(Collection<File> files, boolean skipMarkedDelete) throws InterruptedException {
+		final ImportStatistics statistics = new ImportStatistics(files.size());
+		final ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			final CompletionService<ParsedModelFile> parser = new ExecutorCompletionService<>(pool);
+			final Iterator<File> fileIterator = files.iterator();
+			// limit the number of parsed models in memory
+			final int maxInFlight = threads * 2;
+			int inFlight = 0;
+			List<ParsedModelFile> batch = new ArrayList<>(batchSize);
+			PendingBatch pending = null;
+			long lastReport = System.currentTimeMillis();
+			while (fileIterator.hasNext() || inFlight > 0) {
+				while (inFlight < maxInFlight && fileIterator.hasNext()) {
+					final File file = fileIterator.next();
+					parser.submit(new Callable<ParsedModelFile>() {
+
+						@Override
+						public ParsedModelFile call() throws Exception {
+							try {
+								return parse(file);
+							} catch (Exception e) {
+								LOG.error("Could not parse file: "+file, e);
+								statistics.addFailed(file);
+								return null;
+							}
+						}
+					});
+					inFlight += 1;
+				}
+				ParsedModelFile parsed = getQuietly(parser.take());
+				inFlight -= 1;
+				if (parsed == null) {
+					continue;
+				}
+				if (skipMarkedDelete && parsed.delete) {
+					statistics.skipped += 1;
+					continue;
+				}
+				if (parsed.graph == null) {
+					LOG.error("Detected anonymous ontology; must have IRI: "+parsed.file);
+					statistics.addFailed(parsed.file);
+					continue;
+				}
+				batch.add(parsed);
+				if (batch.size() >= batchSize) {
+					finish(pending, statistics);
+					pending = submit(batch);
+					batch = new ArrayList<>(batchSize);
+				}
+				long now = System.currentTimeMillis();
+				if (now - lastReport >= progressIntervalMillis) {
+					lastReport = now;
+					LOG.info(statistics.getProgress());
+				}
+			}
+			finish(pending, statistics);
+			if (batch.isEmpty() == false) {
+				finish(submit(batch), statistics);
+			}
+		}
+		finally {
+			pool.shutdownNow();
+		}
+		statistics.finish();
+		LOG.info("Finished import: "+statistics.getProgress());
+		return statistics;
+	}
+
+	private static ParsedModelFile getQuietly(Future<ParsedModelFile> future) throws InterruptedException {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			// parse errors are handled in the task
+			LOG.error("Unexpected error during parsing", e);
+			return null;
+		}
+	}
+
+	private static class PendingBatch {
+		final List<ParsedModelFile> models;
+		final Future<Void> future;
+
+		PendingBatch(List<ParsedModelFile> models, Future<Void> future) {
+			this.models = models;
+			this.future = future;
+		}
+	}
+
+	private PendingBatch submit(List<ParsedModelFile> batch) {
+		return new PendingBatch(batch, write(batch));
+	}
+
+	/**
+	 * Write the models, with a single commit for a Blazegraph store. Other
+	 * stores write each model in the calling thread.
+	 */
+	private Future<Void> write(List<ParsedModelFile> models) {
+		ModelStore store = m3.getModelStore();
+		if (store instanceof BlazegraphModelStore) {
+			return ((BlazegraphModelStore) store).getWriter().submit(new ModelBatchWrite(models));
+		}
+		CompletableFuture<Void> future = new CompletableFuture<>();
+		try {
+			for (ParsedModelFile model : models) {
+				store.importModel(IRI.create(model.graph.stringValue()), model.statements);
+			}
+			future.complete(null);
+		} catch (IOException | RuntimeException e) {
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	private void finish(PendingBatch pending, ImportStatistics statistics) throws InterruptedException {
+		if (pending == null) {
+			return;
+		}
+		try {
+			pending.future.get();
+			for (ParsedModelFile model : pending.models) {
+				written(model, statistics);
+			}
+		} catch (ExecutionException e) {
+			// isolate the failing model(s)
+			LOG.warn("Batch import failed, retrying each model separately", e.getCause());
+			for (ParsedModelFile model : pending.models) {
+				try {
+					write(Collections.singletonList(model)).get();
+					written(model, statistics);
+				} catch (ExecutionException e1) {
+					LOG.error("Could not import file: "+model.file, e1.getCause());
+					statistics.addFailed(model.file);
+				}
+			}
+		}
+	}
+
+	private void written(ParsedModelFile model, ImportStatistics statistics) {
+		m3.markStored(IRI.create(model.graph.stringValue()), model.statements);
+		statistics.imported += 1;
+		statistics.triples += model.statements.size();
+	}
+
+	/**
+	 * Progress and throughput of an import.
+	 */
+	public static class ImportStatistics {
+
+		private final int total;
+		private final long start = System.currentTimeMillis();
+		private volatile long end = -1;
+		private volatile int imported = 0;
+		private volatile int skipped = 0;
+		private volatile long triples = 0;
+		private final List<File> failed = Collections.synchronizedList(new ArrayList<File>());
+
+		ImportStatistics(int total) {
+			this.total = total;
+		}
+
+		void addFailed(File file) {
+			failed.add(file);
+		}
+
+		void finish() {
+			end = System.currentTimeMillis();
+		}
+
+		public int getTotal() {
+			return total;
+		}
+
+		public int getImported() {
+			return imported;
+		}
+
+		public int getSkipped() {
+			return skipped;
+		}
+
+		public long getTriples() {
+			return triples;
+		}
+
+		public List<File> getFailed() {
+			synchronized (failed) {
+				return new ArrayList<>(failed);
+			}
+		}
+
+		public long getDurationMillis() {
+			return (end < 0 ? System.currentTimeMillis() : end) - start;
+		}
+
+		/**
+		 * @return imported models per second
+		 */
+		public double getModelsPerSecond() {
+			long duration = getDurationMillis();
+			if (duration <= 0) {
+				return 0;
+			}
+			return imported * 1000d / duration;
+		}
+
+		String getProgress() {
+			int done = imported + skipped + failed.size();
+			return String.format("%d/%d files (imported: %d, skipped: %d, failed: %d), %d triples, %.1f models/s",
+					done, total, imported, skipped, failed.size(), triples, getModelsPerSecond());
+		}
+
+		@Override
+		public String toString() {
+			return "ImportStatistics [" + getProgress() + ", duration=" + getDurationMillis() + " ms]";
+		}
+	}
+}
@@ -0,0 +1,148 @@
+package org.geneontology.minerva;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.geneontology.minerva.ModelContainer.ModelChangeListener;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+
+/**
+ * Asynchronous delivery of model changes, see
+ * {@link ModelContainer#registerAsyncListener(ModelChangeListener, long)}.<br>
+ * <br>
+ * The changes are collected and handed to the wrapped listener as a single
+ * event, after the window has passed without a delivery or after the batch of
+ * the model has ended. All asynchronous listeners share one daemon thread, so
+ * the events for a listener arrive in the order of the changes, never
+ * concurrently and without any lock of the model.
+ */
+final class CoalescingModelChangeListener implements ModelChangeListener {
+
+	private static final Logger LOG = Logger.getLogger(CoalescingModelChangeListener.class);
+
+	private static final ScheduledExecutorService DISPATCHER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "model-change-dispatcher");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private final ModelContainer model;
+	private final ModelChangeListener delegate;
+	private final long windowMillis;
+
+	// guarded by this
+	private List<OWLOntologyChange> pending = new ArrayList<>();
+	private boolean scheduled = false;
+	private boolean disposed = false;
+
+	CoalescingModelChangeListener(ModelContainer model, ModelChangeListener delegate, long windowMillis) {
+		this.model = model;
+		this.delegate = delegate;
+		this.windowMillis = Math.max(0, windowMillis);
+	}
+
+	ModelChangeListener getDelegate() {
+		return delegate;
+	}
+
+	@Override
+	public void handleChange(List<OWLOntologyChange> changes) {
+		synchronized (this) {
+			if (disposed) {
+				return;
+			}
+			pending.addAll(changes);
+			// during a batch the delivery is triggered by the end of the batch
+			if (model.isInBatch() == false) {
+				schedule(windowMillis);
+			}
+		}
+	}
+
+	/**
+	 * Deliver the collected changes as soon as possible.
+	 */
+	void flush() {
+		synchronized (this) {
+			if (disposed == false && pending.isEmpty() == false) {
+				schedule(0);
+			}
+		}
+	}
+
+	// requires the monitor of this
+	private void schedule(long delayMillis) {
+		if (scheduled) {
+			return;
+		}
+		scheduled = true;
+		DISPATCHER.schedule(new Runnable() {
+
+			@Override
+			public void run() {
+				deliver();
+			}
+		}, delayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private void deliver() {
+		List<OWLOntologyChange> changes;
+		synchronized (this) {
+			scheduled = false;
+			if (disposed || model.isInBatch() || pending.isEmpty()) {
+				return;
+			}
+			changes = pending;
+			pending = new ArrayList<>();
+		}
+		handle(changes);
+	}
+
+	private void handle(List<OWLOntologyChange> changes) {
+		try {
+			delegate.handleChange(changes);
+		} catch (RuntimeException e) {
+			LOG.error("Model change listener failed for model: "+model.getModelId(), e);
+		}
+	}
+
+	/**
+	 * Deliver the remaining changes and dispose the wrapped listener, both on
+	 * the dispatcher thread.
+	 */
+	@Override
+	public void dispose() {
+		final List<OWLOntologyChange> remaining;
+		synchronized (this) {
+			if (disposed) {
+				return;
+			}
+			disposed = true;
+			remaining = pending;
+			pending = new ArrayList<>();
+		}
+		DISPATCHER.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				if (remaining.isEmpty() == false) {
+					handle(remaining);
+				}
+				try {
+					delegate.dispose();
+				} catch (RuntimeException e) {
+					LOG.error("Could not dispose model change listener for model: "+model.getModelId(), e);
+				}
+			}
+		});
+	}
+}
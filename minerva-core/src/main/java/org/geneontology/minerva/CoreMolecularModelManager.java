@@ -7,18 +7,20 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.stream.Collectors;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Function;
 
 import org.apache.commons.lang3.tuple.Pair;
-import org.apache.jena.rdf.model.Statement;
 import org.apache.jena.reasoner.rulesys.Rule;
 import org.apache.log4j.Logger;
 import org.geneontology.jena.OWLtoRules;
-import org.geneontology.jena.SesameJena;
 import org.geneontology.minerva.util.AnnotationShorthand;
 import org.geneontology.rules.engine.RuleEngine;
 import org.geneontology.rules.engine.Triple;
@@ -84,8 +86,9 @@ import scala.collection.JavaConverters;
 /**
  * Manager and core operations for in memory MolecularModels (aka lego diagrams).
  * 
- * Any number of models can be loaded at any time <br>
- * TODO - impose some limit to avoid using too much memory
+ * The loaded models are kept in a {@link ModelCache}, which may limit the
+ * number of models in memory. Unmodified models are evicted and re-loaded
+ * on demand.<br>
  * 
  * Each model is an OWLOntology, see {@link ModelContainer}. 
  * 
@@ -111,10 +114,26 @@ public abstract class CoreMolecularModelManager<METADATA> {
 	final OWLGraphWrapper graph;
 //	final OWLReasonerFactory rf;
 	private final IRI tboxIRI;
-	final Map<IRI, ModelContainer> modelMap = new HashMap<IRI, ModelContainer>();
+	final ModelCache modelMap = new ModelCache(new ModelCache.EvictionHandler() {
+
+		@Override
+		public boolean isEvictable(ModelContainer model) {
+			return CoreMolecularModelManager.this.isEvictable(model);
+		}
+
+		@Override
+		public void evicted(ModelContainer model) {
+			modelEvicted(model);
+		}
+	});
+	// striped locks for loading models, see getModel(IRI)
+	private final Object[] loadLocks = new Object[64];
 	Set<IRI> additionalImports;
 	
 	private final RuleEngine ruleEngine;
+	private final Set<Triple> rboxTriples;
+	// working memories of the in-memory models, released with the model
+	private final ConcurrentMap<ModelContainer, IncrementalInferredModel> inferredModels = new ConcurrentHashMap<>();
 	private final Map<IRI, String> legacyRelationIndex = new HashMap<IRI, String>();
 	private final Map<IRI, String> tboxLabelIndex = new HashMap<IRI, String>();
 	private final Map<IRI, String> tboxShorthandIndex = new HashMap<IRI, String>();
@@ -195,8 +214,12 @@ public abstract class CoreMolecularModelManager<METADATA> {
 	public CoreMolecularModelManager(OWLGraphWrapper graph) throws OWLOntologyCreationException {
 		super();
 		this.graph = graph;
+		for (int i = 0; i < loadLocks.length; i++) {
+			loadLocks[i] = new Object();
+		}
 		tboxIRI = getTboxIRI(graph);
 		this.ruleEngine = initializeRuleEngine();
+		this.rboxTriples = initializeRBoxTriples();
 		initializeLegacyRelationIndex();
 		initializeTboxLabelIndex();
 		initializeTboxShorthandIndex();
@@ -204,7 +227,17 @@ public abstract class CoreMolecularModelManager<METADATA> {
 		init();
 	}
 
-	private static synchronized Set<OWLParserFactory> removeOBOParserFactories(OWLOntologyManager m) {
+	// models may be loaded concurrently, the OBO parser is restored after the last load finished
+	private static final Map<OWLOntologyManager, Integer> parserFactoryUsers = new IdentityHashMap<>();
+	private static final Map<OWLOntologyManager, Set<OWLParserFactory>> originalParserFactories = new IdentityHashMap<>();
+
+	private static synchronized void removeOBOParserFactories(OWLOntologyManager m) {
+		Integer users = parserFactoryUsers.get(m);
+		if (users != null) {
+			// already removed for a concurrent load
+			parserFactoryUsers.put(m, users.intValue() + 1);
+			return;
+		}
 		// hacky workaround: remove the too liberal OBO parser
 		PriorityCollection<OWLParserFactory> factories = m.getOntologyParsers();
 		Set<OWLParserFactory> copied = new HashSet<>();
@@ -221,11 +254,18 @@ public abstract class CoreMolecularModelManager<METADATA> {
 				factories.remove(factory);
 			}
 		}
-		return copied;
+		originalParserFactories.put(m, copied);
+		parserFactoryUsers.put(m, 1);
 	}
 	
-	private static synchronized void resetOBOParserFactories(OWLOntologyManager m, Set<OWLParserFactory> factories) {
-		m.setOntologyParsers(factories);
+	private static synchronized void resetOBOParserFactories(OWLOntologyManager m) {
+		int users = parserFactoryUsers.get(m).intValue() - 1;
+		if (users > 0) {
+			parserFactoryUsers.put(m, users);
+			return;
+		}
+		parserFactoryUsers.remove(m);
+		m.setOntologyParsers(originalParserFactories.remove(m));
 	}
 
 	/**
@@ -299,22 +339,99 @@ public abstract class CoreMolecularModelManager<METADATA> {
 	
 	/**
 	 * Return Arachne working memory representing LEGO model combined with inference rules.
-	 * This model will not remain synchronized with changes to data.
+	 * The working memory is created for the current state of the model and
+	 * belongs to the caller. Use {@link #readInferredModel(IRI, Function)} to
+	 * read the working memory, which is kept for in-memory models.
 	 * @param LEGO modelId
 	 * @return Jena model
+	 * @throws OWLOntologyCreationException
+	 */
+	public WorkingMemory createInferredModel(IRI modelId) throws OWLOntologyCreationException {
+		ModelContainer model = modelMap.get(modelId);
+		if (model == null) {
+			return createInferredModel(modelId, getModelAbox(modelId));
+		}
+		return createInferredModel(modelId, model.getSnapshot().createOntology());
+	}
+	
+	/**
+	 * Read the Arachne working memory of a model, the working memory is not
+	 * updated during the read. For in-memory models the working memory is
+	 * kept and updated with the changes of the model, see
+	 * {@link IncrementalInferredModel}. It is shared, the reader must not
+	 * modify it or keep it after the read.
+	 * 
+	 * @param modelId
+	 * @param reader
+	 * @return result of the reader
+	 */
+	public <T> T readInferredModel(IRI modelId, Function<WorkingMemory, T> reader) {
+		ModelContainer model = modelMap.get(modelId);
+		if (model == null) {
+			return reader.apply(createInferredModel(modelId, getModelAbox(modelId)));
+		}
+		if (model.isDisposed()) {
+			// evicted, there are no changes to follow
+			return reader.apply(createInferredModel(modelId, model.getAboxOntology()));
+		}
+		return getInferredModel(model).read(reader);
+	}
+	
+	private IncrementalInferredModel getInferredModel(ModelContainer model) {
+		IncrementalInferredModel inferred = inferredModels.get(model);
+		if (inferred == null) {
+			IncrementalInferredModel created = new IncrementalInferredModel(this, model);
+			inferred = inferredModels.putIfAbsent(model, created);
+			if (inferred == null) {
+				inferred = created;
+			}
+		}
+		return inferred;
+	}
+	
+	/**
+	 * Run the rule engine from scratch for the abox and the rbox.
+	 * 
+	 * @param modelId
+	 * @param abox
+	 * @return new working memory
+	 */
+	WorkingMemory createInferredModel(IRI modelId, OWLOntology abox) {
+		Set<Triple> triples = toTriples(abox);
+		triples.addAll(rboxTriples);
+		return getRuleEngine().processTriples(JavaConverters.asScalaSetConverter(triples).asScala());
+	}
+	
+	static Set<Triple> toTriples(OWLOntology ontology) {
+		return ArachneTriples.fromOntology(ontology);
+	}
+	
+	/**
+	 * The rbox triples are the same for all models, they are created with the
+	 * rule engine. The ontology declaration is left out, each model provides
+	 * its own.
+	 * 
+	 * @return immutable set of triples
 	 */
-	public WorkingMemory createInferredModel(IRI modelId) {
-		Set<Statement> statements = JavaConverters.setAsJavaSetConverter(SesameJena.ontologyAsTriples(getModelAbox(modelId))).asJava();
-		Set<Triple> triples = statements.stream().map(s -> Bridge.tripleFromJena(s.asTriple())).collect(Collectors.toSet());
+	private Set<Triple> initializeRBoxTriples() {
 		try {
-			// Using model's ontology IRI so that a spurious different ontology declaration triple isn't added
-			OWLOntology schemaOntology = OWLManager.createOWLOntologyManager().createOntology(getOntology().getRBoxAxioms(Imports.INCLUDED), modelId);
-			Set<Statement> schemaStatements = JavaConverters.setAsJavaSetConverter(SesameJena.ontologyAsTriples(schemaOntology)).asJava();
-			triples.addAll(schemaStatements.stream().map(s -> Bridge.tripleFromJena(s.asTriple())).collect(Collectors.toSet()));
+			OWLOntology schemaOntology = OWLManager.createOWLOntologyManager().createOntology(getOntology().getRBoxAxioms(Imports.INCLUDED));
+			return Collections.unmodifiableSet(ArachneTriples.fromOntologyWithoutHeader(schemaOntology));
 		} catch (OWLOntologyCreationException e) {
 			LOG.error("Couldn't add rbox statements to data model.", e);
+			return Collections.emptySet();
 		}
-		return getRuleEngine().processTriples(JavaConverters.asScalaSetConverter(triples).asScala());
+	}
+	
+	void releaseInferredModel(ModelContainer model, IncrementalInferredModel inferred) {
+		inferredModels.remove(model, inferred);
+	}
+	
+	/**
+	 * @return number of models with a kept working memory
+	 */
+	int getInferredModelCount() {
+		return inferredModels.size();
 	}
 	
 	private void initializeLegacyRelationIndex() {
@@ -718,18 +835,84 @@ public abstract class CoreMolecularModelManager<METADATA> {
 	 * @return wrapped model
 	 */
 	public ModelContainer getModel(IRI id) {
-		synchronized (modelMap) { 
-			// synchronized to avoid race condition for simultaneous loads of the same model
-			if (!modelMap.containsKey(id)) {
-				try {
-					loadModel(id, false);
-				} catch (OWLOntologyCreationException e) {
-					LOG.info("Could not load model with id: "+id, e);
-				}
+		// loaded models are returned without any lock, the cache lookup and
+		// its counters do not synchronize
+		ModelContainer model = modelMap.get(id);
+		if (model != null && model.isDisposed() == false) {
+			modelMap.recordHit();
+			return model;
+		}
+		// the lock of the stripe avoids simultaneous loads of the same model,
+		// loads of other models are not blocked
+		synchronized (getLoadLock(id)) {
+			model = modelMap.get(id);
+			if (model != null && model.isDisposed() == false) {
+				// loaded by another request, while waiting for the lock
+				modelMap.recordHit();
+				return model;
+			}
+			modelMap.recordMiss();
+			try {
+				return loadModel(id, false);
+			} catch (OWLOntologyCreationException e) {
+				LOG.info("Could not load model with id: "+id, e);
+				return null;
 			}
-			return modelMap.get(id);
 		}
 	}
+
+	/**
+	 * Fetch a model and start a batch for it, see
+	 * {@link ModelContainer#tryBeginBatch()}. Unlike a model from
+	 * {@link #getModel(IRI)}, the returned model can not be evicted, until the
+	 * caller ends the batch with {@link ModelContainer#endBatch()}.
+	 *
+	 * @param id
+	 * @return wrapped model with an open batch or null
+	 */
+	public ModelContainer getModelInBatch(IRI id) {
+		while (true) {
+			ModelContainer model = getModel(id);
+			if (model == null || model.tryBeginBatch()) {
+				return model;
+			}
+			// evicted after the lookup, load the model again
+		}
+	}
+
+	private Object getLoadLock(IRI id) {
+		int h = id.hashCode();
+		h ^= (h >>> 16);
+		return loadLocks[(h & Integer.MAX_VALUE) % loadLocks.length];
+	}
+
+	/**
+	 * @return the cache of the in-memory models, provides the limits and statistics
+	 */
+	public ModelCache getModelCache() {
+		return modelMap;
+	}
+
+	/**
+	 * Check whether a model may be evicted from the {@link ModelCache}, i.e.
+	 * it can be re-loaded later without losing any changes.
+	 * 
+	 * @param model
+	 * @return true, if the model can be evicted
+	 */
+	protected boolean isEvictable(ModelContainer model) {
+		return model.isModified() == false;
+	}
+
+	/**
+	 * Release the resources of a model evicted from the {@link ModelCache}.
+	 * Called with the write lock of the model, outside of the cache monitor.
+	 * 
+	 * @param model
+	 */
+	protected void modelEvicted(ModelContainer model) {
+		model.dispose();
+	}
 	
 	/**
 	 * Retrieve the abox ontology. May skip loading the imports.
@@ -810,24 +993,39 @@ public abstract class CoreMolecularModelManager<METADATA> {
 		
 		// make sure the exported ontology has an ontologyId and that it maps to the modelId
 		final IRI expectedABoxIRI = model.getModelId();
-		Optional<IRI> currentABoxIRI = aBox.getOntologyID().getOntologyIRI();
-		if (currentABoxIRI.isPresent() == false) {
-			manager.applyChange(new SetOntologyID(aBox, expectedABoxIRI));
-		}
-		else {
-			if (expectedABoxIRI.equals(currentABoxIRI) == false) {
-				OWLOntologyID ontologyID = new OWLOntologyID(Optional.of(expectedABoxIRI), Optional.of(expectedABoxIRI));
-				manager.applyChange(new SetOntologyID(aBox, ontologyID));
+		if (expectedABoxIRI.equals(aBox.getOntologyID().getOntologyIRI().orNull()) == false) {
+			// only take the write lock, if the id has to be changed
+			final Lock writeLock = model.getWriteLock();
+			writeLock.lock();
+			try {
+				Optional<IRI> currentABoxIRI = aBox.getOntologyID().getOntologyIRI();
+				if (currentABoxIRI.isPresent() == false) {
+					manager.applyChange(new SetOntologyID(aBox, expectedABoxIRI));
+				}
+				else {
+					if (expectedABoxIRI.equals(currentABoxIRI.get()) == false) {
+						OWLOntologyID ontologyID = new OWLOntologyID(Optional.of(expectedABoxIRI), Optional.of(expectedABoxIRI));
+						manager.applyChange(new SetOntologyID(aBox, ontologyID));
+					}
+				}
+			} finally {
+				writeLock.unlock();
 			}
 		}
 
 		// write the model into a buffer
 		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-		if (ontologyFormat != null) {
-			manager.saveOntology(aBox, ontologyFormat, outputStream);
-		}
-		else {
-			manager.saveOntology(aBox, outputStream);
+		final Lock readLock = model.getReadLock();
+		readLock.lock();
+		try {
+			if (ontologyFormat != null) {
+				manager.saveOntology(aBox, ontologyFormat, outputStream);
+			}
+			else {
+				manager.saveOntology(aBox, outputStream);
+			}
+		} finally {
+			readLock.unlock();
 		}
 		
 		// extract the string from the buffer
@@ -853,7 +1051,7 @@ public abstract class CoreMolecularModelManager<METADATA> {
 		final OWLOntologyManager manager = graph.getManager();
 		final OWLOntologyDocumentSource documentSource = new StringDocumentSource(modelData);
 		OWLOntology modelOntology;
-		final Set<OWLParserFactory> originalFactories = removeOBOParserFactories(manager);
+		removeOBOParserFactories(manager);
 		try {
 			modelOntology = manager.loadOntologyFromOntologyDocument(documentSource);
 		}
@@ -869,7 +1067,7 @@ public abstract class CoreMolecularModelManager<METADATA> {
 			modelOntology = manager.loadOntologyFromOntologyDocument(documentSource);
 		}
 		finally {
-			resetOBOParserFactories(manager, originalFactories);
+			resetOBOParserFactories(manager);
 		}
 		
 		// try to extract modelId
@@ -896,7 +1094,17 @@ public abstract class CoreMolecularModelManager<METADATA> {
 		return newModel;
 	}
 	
-	protected abstract void loadModel(IRI modelId, boolean isOverride) throws OWLOntologyCreationException;
+	/**
+	 * Load a model from the store and add it to the in-memory models. Callers
+	 * other than {@link #getModel(IRI)} are responsible to avoid simultaneous
+	 * loads of the same model.
+	 * 
+	 * @param modelId
+	 * @param isOverride if true, replace an existing in-memory model
+	 * @return the loaded model
+	 * @throws OWLOntologyCreationException
+	 */
+	protected abstract ModelContainer loadModel(IRI modelId, boolean isOverride) throws OWLOntologyCreationException;
 
 	ModelContainer addModel(IRI modelId, OWLOntology abox) throws OWLOntologyCreationException {
 		OWLOntology tbox = graph.getSourceOntology();
@@ -1170,12 +1378,7 @@ public abstract class CoreMolecularModelManager<METADATA> {
 	public void addAxiom(ModelContainer model, OWLAxiom axiom, METADATA metadata) {
 		OWLOntology ont = model.getAboxOntology();
 		List<OWLOntologyChange> changes = Collections.<OWLOntologyChange>singletonList(new AddAxiom(ont, axiom));
-		synchronized (ont) {
-			/*
-			 * all changes to the ontology are synchronized via the ontology object
-			 */
-			applyChanges(model, ont.getOWLOntologyManager(), changes, metadata);	
-		}
+		applyChanges(model, changes, metadata);
 	}
 	
 	void addAxioms(ModelContainer model, Set<? extends OWLAxiom> axioms, METADATA metadata) {
@@ -1184,23 +1387,13 @@ public abstract class CoreMolecularModelManager<METADATA> {
 		for(OWLAxiom axiom : axioms) {
 			changes.add(new AddAxiom(ont, axiom));
 		}
-		synchronized (ont) {
-			/*
-			 * all changes to the ontology are synchronized via the ontology object
-			 */
-			applyChanges(model, ont.getOWLOntologyManager(), changes, metadata);
-		}
+		applyChanges(model, changes, metadata);
 	}
 	
 	void removeAxiom(ModelContainer model, OWLAxiom axiom, METADATA metadata) {
 		OWLOntology ont = model.getAboxOntology();
 		List<OWLOntologyChange> changes = Collections.<OWLOntologyChange>singletonList(new RemoveAxiom(ont, axiom));
-		synchronized (ont) {
-			/*
-			 * all changes to the ontology are synchronized via the ontology object
-			 */
-			applyChanges(model, ont.getOWLOntologyManager(), changes, metadata);
-		}
+		applyChanges(model, changes, metadata);
 	}
 
 	void removeAxioms(IRI modelId, Set<OWLAxiom> axioms, METADATA metadata) {
@@ -1214,28 +1407,53 @@ public abstract class CoreMolecularModelManager<METADATA> {
 		for(OWLAxiom axiom : axioms) {
 			changes.add(new RemoveAxiom(ont, axiom));
 		}
-		synchronized (ont) {
-			/*
-			 * all changes to the ontology are synchronized via the ontology object
-			 */
-			applyChanges(model, ont.getOWLOntologyManager(), changes, metadata);
-		}
+		applyChanges(model, changes, metadata);
 	}
 
 	private void applyChanges(ModelContainer model, List<OWLOntologyChange> changes, METADATA metadata) {
-		OWLOntology ont = model.getAboxOntology();
-		synchronized (ont) {
-			/*
-			 * all changes to the ontology are synchronized via the ontology object
-			 */
-			applyChanges(model, ont.getOWLOntologyManager(), changes, metadata);
+		final Lock lock = model.getWriteLock();
+		long logPosition = 0;
+		lock.lock();
+		try {
+			logPosition = applyChanges(model, model.getOWLOntologyManager(), changes, metadata);
+		} finally {
+			lock.unlock();
+			awaitLoggedChanges(logPosition);
 		}
 	}
 	
-	private void applyChanges(ModelContainer model, OWLOntologyManager m, 
+	private long applyChanges(ModelContainer model, OWLOntologyManager m, 
 			List<? extends OWLOntologyChange> changes, METADATA metadata) {
 		List<OWLOntologyChange> appliedChanges = model.applyChanges(changes);
+		long logPosition = logChanges(model, appliedChanges);
 		addToHistory(model, appliedChanges, metadata);
+		return logPosition;
+	}
+
+	/**
+	 * Hook for persisting the applied changes before the next save. Called
+	 * while holding the write lock of the model, so the changes of a model
+	 * are logged in the order they were applied. The log should not wait
+	 * for the disk here, see {@link #awaitLoggedChanges(long)}.
+	 * 
+	 * @param model
+	 * @param appliedChanges
+	 * @return position in the log for {@link #awaitLoggedChanges(long)}
+	 */
+	protected long logChanges(ModelContainer model, List<OWLOntologyChange> appliedChanges) {
+		// do nothing
+		return 0;
+	}
+
+	/**
+	 * Hook for waiting until the logged changes are durable. Called after
+	 * releasing the write lock of the model, so other edits of the model do
+	 * not wait for the disk.
+	 * 
+	 * @param logPosition position returned by {@link #logChanges(ModelContainer, List)}
+	 */
+	protected void awaitLoggedChanges(long logPosition) {
+		// do nothing
 	}
 	
 	/**
@@ -1254,10 +1472,30 @@ public abstract class CoreMolecularModelManager<METADATA> {
 		return loadOntologyDocumentSource(source, minimal, graph.getManager());
 	}
 
+	/**
+	 * Create the ontology from the triples collected by the loader, see
+	 * {@link ModelTripleLoader}.
+	 * 
+	 * @param modelId
+	 * @param loader
+	 * @param minimal if true, only load the model and skip the imports
+	 * @return ontology or null, if the triples have to be loaded with the RDF
+	 * parser, see {@link #loadOntologyDocumentSource(OWLOntologyDocumentSource, boolean)}
+	 * @throws OWLOntologyCreationException
+	 */
+	protected OWLOntology loadOntologyTriples(IRI modelId, ModelTripleLoader loader, boolean minimal) throws OWLOntologyCreationException {
+		OWLOntologyManager manager = minimal ? createMinimalManager(modelId) : graph.getManager();
+		OWLOntology loaded = loader.createOntology(manager);
+		if (loaded == null && LOG.isDebugEnabled()) {
+			LOG.debug("Using RDF parser to load model, reason: "+loader.getUnsupportedReason());
+		}
+		return loaded;
+	}
+
 	static OWLOntology loadOntologyDocumentSource(final OWLOntologyDocumentSource source, boolean minimal, OWLOntologyManager manager) throws OWLOntologyCreationException {
 		// silence the OBO parser in the OWL-API
 		java.util.logging.Logger.getLogger("org.obolibrary").setLevel(java.util.logging.Level.SEVERE);
-		final Set<OWLParserFactory> originalFactories = removeOBOParserFactories(manager);
+		removeOBOParserFactories(manager);
 		try {
 			// load model from source
 			if (minimal == false) {
@@ -1267,39 +1505,50 @@ public abstract class CoreMolecularModelManager<METADATA> {
 			}
 			else {
 				// only load the model, skip imports
-				// approach: return an empty ontology IRI for any IRI mapping request using.
-				final OWLOntologyManager m = OWLManager.createOWLOntologyManager();
-				final Set<IRI> emptyOntologies = new HashSet<IRI>();
-				m.getIRIMappers().add(new OWLOntologyIRIMapper() {
-
-					// generated
-					private static final long serialVersionUID = -8200679663396870351L;
-
-					@Override
-					public IRI getDocumentIRI(IRI ontologyIRI) {
-
-						// quick check:
-						// do nothing for the original IRI and known empty ontologies
-						if (source.getDocumentIRI().equals(ontologyIRI) || emptyOntologies.contains(ontologyIRI)) {
-							return null;
-						}
-						emptyOntologies.add(ontologyIRI);
-						try {
-							OWLOntology emptyOntology = m.createOntology(ontologyIRI);
-							return emptyOntology.getOntologyID().getDefaultDocumentIRI().orNull();
-						} catch (OWLOntologyCreationException e) {
-							throw new RuntimeException(e);
-						}
-					}
-				});
+				final OWLOntologyManager m = createMinimalManager(source.getDocumentIRI());
 				OWLOntology minimalAbox = loadOWLOntologyDocumentSource(source, m);
 				return minimalAbox;
 			}
 		} finally {
-			resetOBOParserFactories(manager, originalFactories);
+			resetOBOParserFactories(manager);
 		}
 	}
 	
+	/**
+	 * Create a manager, which returns an empty ontology for any import
+	 * request, i.e. only the model itself is loaded.
+	 * 
+	 * @param documentIRI IRI of the model document, not mapped
+	 * @return manager
+	 */
+	private static OWLOntologyManager createMinimalManager(final IRI documentIRI) {
+		final OWLOntologyManager m = OWLManager.createOWLOntologyManager();
+		final Set<IRI> emptyOntologies = new HashSet<IRI>();
+		m.getIRIMappers().add(new OWLOntologyIRIMapper() {
+
+			// generated
+			private static final long serialVersionUID = -8200679663396870351L;
+
+			@Override
+			public IRI getDocumentIRI(IRI ontologyIRI) {
+
+				// quick check:
+				// do nothing for the original IRI and known empty ontologies
+				if (documentIRI.equals(ontologyIRI) || emptyOntologies.contains(ontologyIRI)) {
+					return null;
+				}
+				emptyOntologies.add(ontologyIRI);
+				try {
+					OWLOntology emptyOntology = m.createOntology(ontologyIRI);
+					return emptyOntology.getOntologyID().getDefaultDocumentIRI().orNull();
+				} catch (OWLOntologyCreationException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		});
+		return m;
+	}
+	
 	private static OWLOntology loadOWLOntologyDocumentSource(final OWLOntologyDocumentSource source, final OWLOntologyManager manager) throws OWLOntologyCreationException {
 		final OWLOntology ontology;
 		if (source instanceof RioMemoryTripleSource) {
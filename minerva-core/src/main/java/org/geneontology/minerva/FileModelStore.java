@@ -0,0 +1,214 @@
+package org.geneontology.minerva;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.Logger;
+import org.openrdf.model.Statement;
+import org.openrdf.rio.RDFHandler;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.helpers.StatementCollector;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+/**
+ * {@link ModelStore} keeping each model in a gzip compressed model snapshot
+ * file in a folder, see {@link ModelSnapshotWriter}. The file name is the URL
+ * encoded model id. The catalog of stored models is read from the folder at
+ * startup.<br>
+ * <br>
+ * Saves always re-write the whole file, the new file atomically replaces the
+ * previous version. There is no support for SPARQL queries.
+ */
+public class FileModelStore implements ModelStore {
+
+	private static final Logger LOG = Logger.getLogger(FileModelStore.class);
+
+	static final String FILE_SUFFIX = ModelSnapshotWriter.FILE_SUFFIX + ".gz";
+
+	private final File folder;
+	private final Set<IRI> storedModelIds = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * @param folder the folder for the model files, created if it does not exist
+	 * @throws IOException
+	 */
+	public FileModelStore(File folder) throws IOException {
+		this.folder = folder;
+		FileUtils.forceMkdir(folder);
+		File[] files = folder.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				String name = file.getName();
+				if (file.isFile() && name.endsWith(FILE_SUFFIX)) {
+					storedModelIds.add(IRI.create(decode(name.substring(0, name.length() - FILE_SUFFIX.length()))));
+				}
+			}
+		}
+		LOG.info("Found "+storedModelIds.size()+" stored models in folder: "+folder);
+	}
+
+	private static String decode(String name) {
+		try {
+			return URLDecoder.decode(name, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			// UTF-8 is required for every Java platform
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private File getFile(IRI modelId) {
+		try {
+			return new File(folder, URLEncoder.encode(modelId.toString(), "UTF-8") + FILE_SUFFIX);
+		} catch (UnsupportedEncodingException e) {
+			// UTF-8 is required for every Java platform
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @return the folder with the model files
+	 */
+	public File getFolder() {
+		return folder;
+	}
+
+	@Override
+	public Set<IRI> getStoredModelIds() {
+		return Collections.unmodifiableSet(new HashSet<>(storedModelIds));
+	}
+
+	@Override
+	public boolean isStoredModel(IRI modelId) {
+		return storedModelIds.contains(modelId);
+	}
+
+	@Override
+	public Collection<Statement> loadModel(IRI modelId) throws IOException {
+		if (isStoredModel(modelId) == false) {
+			return null;
+		}
+		StatementCollector collector = new StatementCollector();
+		read(getFile(modelId), collector);
+		return collector.getStatements();
+	}
+
+	@Override
+	public boolean loadModel(IRI modelId, RDFHandler handler) throws IOException {
+		if (isStoredModel(modelId) == false) {
+			return false;
+		}
+		read(getFile(modelId), handler);
+		return true;
+	}
+
+	private static void read(File file, RDFHandler handler) throws IOException {
+		InputStream in = new BufferedInputStream(new GZIPInputStream(new FileInputStream(file), 64 * 1024));
+		try {
+			new ModelSnapshotReader(in).read(handler);
+		} catch (RDFHandlerException e) {
+			throw new IOException("Could not read model file: "+file, e);
+		} finally {
+			in.close();
+		}
+	}
+
+	@Override
+	public SaveResult saveModel(IRI modelId, OWLOntology model) throws IOException {
+		Collection<Statement> statements = ModelStores.renderModel(model);
+		write(modelId, statements);
+		return new SaveResult(false, statements.size(), 0);
+	}
+
+	@Override
+	public void importModel(IRI modelId, Collection<Statement> statements) throws IOException {
+		write(modelId, statements);
+	}
+
+	private void write(IRI modelId, Collection<Statement> statements) throws IOException {
+		File tempFile = File.createTempFile(".save-", ".tmp", folder);
+		try {
+			OutputStream out = new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tempFile), 64 * 1024));
+			try {
+				ModelSnapshotWriter.write(statements, out);
+			} finally {
+				out.close();
+			}
+			ModelStores.moveAtomically(tempFile, getFile(modelId));
+			tempFile = null;
+		} finally {
+			FileUtils.deleteQuietly(tempFile);
+		}
+		storedModelIds.add(modelId);
+	}
+
+	@Override
+	public boolean deleteModel(IRI modelId) throws IOException {
+		boolean stored = storedModelIds.remove(modelId);
+		Files.deleteIfExists(getFile(modelId).toPath());
+		return stored;
+	}
+
+	@Override
+	public String exportModel(IRI modelId, File targetFile, ModelExportFormat format, String previousHash) throws IOException {
+		final File file = getFile(modelId);
+		// the model files are written once per save, the hash of the file changes with each save
+		MessageDigest digest = ModelStores.createDigest();
+		digest.update(Files.readAllBytes(file.toPath()));
+		final String hash = ModelStores.toHex(digest);
+		if (previousHash != null && previousHash.equals(hash) && targetFile.exists()) {
+			// unchanged since the last export
+			return hash;
+		}
+		ModelStores.writeModel(modelId, targetFile, format, new ModelStores.TripleSource() {
+
+			@Override
+			public void export(RDFHandler handler) throws Exception {
+				read(file, handler);
+			}
+		});
+		return hash;
+	}
+
+	@Override
+	public Map<IRI, Set<OWLAnnotation>> readModelAnnotations() throws IOException {
+		Map<IRI, Set<OWLAnnotation>> all = new HashMap<>();
+		for (IRI modelId : getStoredModelIds()) {
+			Collection<Statement> statements = loadModel(modelId);
+			if (statements != null) {
+				Set<OWLAnnotation> annotations = ModelMetadataIndex.getModelAnnotations(modelId, statements);
+				if (annotations.isEmpty() == false) {
+					all.put(modelId, annotations);
+				}
+			}
+		}
+		return all;
+	}
+
+	@Override
+	public void dispose() {
+		// every write is complete, when the save returns
+	}
+}
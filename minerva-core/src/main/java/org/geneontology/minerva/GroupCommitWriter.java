@@ -0,0 +1,300 @@
+package org.geneontology.minerva;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import com.bigdata.rdf.sail.BigdataSailRepository;
+import com.bigdata.rdf.sail.BigdataSailRepositoryConnection;
+
+/**
+ * Single writer for the Blazegraph journal. Writes are queued and executed
+ * by a dedicated writer thread, which folds all writes waiting in the queue
+ * into one transaction and commit (group commit). Concurrent saves of
+ * different models share the cost of the journal commit.<br>
+ * <br>
+ * The future for a write completes after the commit, i.e. once the data is
+ * durable. Writes submitted during or after a {@link #shutdown()} fail. If a batch fails, it is rolled back and each write is retried in
+ * its own transaction, so that only the failing write reports an error.
+ */
+public class GroupCommitWriter {
+
+	private static final Logger LOG = Logger.getLogger(GroupCommitWriter.class);
+
+	/**
+	 * A write executed in the transaction of the writer thread. A write may
+	 * be executed more than once, if its batch has to be retried.
+	 */
+	interface WriteOperation {
+
+		void write(BigdataSailRepositoryConnection connection) throws Exception;
+	}
+
+	private static final class PendingWrite {
+		final WriteOperation operation;
+		final CompletableFuture<Void> future = new CompletableFuture<>();
+
+		PendingWrite(WriteOperation operation) {
+			this.operation = operation;
+		}
+	}
+
+	private final BigdataSailRepository repo;
+	private final BlockingQueue<PendingWrite> queue = new LinkedBlockingQueue<>();
+	private final Thread writerThread;
+	private volatile boolean running = true;
+	private volatile int maxBatchSize = 64;
+	private volatile long writeTimeoutMillis = TimeUnit.MINUTES.toMillis(10);
+
+	private final AtomicLong commits = new AtomicLong(0L);
+	private final AtomicLong writes = new AtomicLong(0L);
+	private final AtomicLong failedWrites = new AtomicLong(0L);
+	private final AtomicLong commitTimeMillis = new AtomicLong(0L);
+	private volatile int lastBatchSize = 0;
+	private volatile long lastCommitMillis = 0L;
+
+	/**
+	 * @param repo
+	 */
+	GroupCommitWriter(BigdataSailRepository repo) {
+		this.repo = repo;
+		writerThread = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				runWriter();
+			}
+		}, "minerva-group-commit-writer");
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	/**
+	 * Queue a write.
+	 *
+	 * @param operation
+	 * @return future, completes after the commit of the write
+	 */
+	Future<Void> submit(WriteOperation operation) {
+		PendingWrite pending = new PendingWrite(operation);
+		if (running == false) {
+			pending.future.completeExceptionally(new IllegalStateException("The writer has been shut down."));
+			return pending.future;
+		}
+		queue.add(pending);
+		// a shutdown after the first check: the writer thread may have
+		// exited already, nobody would complete the write
+		if (running == false && queue.remove(pending)) {
+			pending.future.completeExceptionally(new IllegalStateException("The writer has been shut down."));
+		}
+		return pending.future;
+	}
+
+	private void runWriter() {
+		final List<PendingWrite> batch = new ArrayList<>();
+		try {
+			while (running || queue.isEmpty() == false) {
+				PendingWrite first = queue.poll(100, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				queue.drainTo(batch, Math.max(0, maxBatchSize - 1));
+				removeCancelled(batch);
+				if (batch.isEmpty() == false) {
+					writeBatch(batch);
+				}
+				batch.clear();
+			}
+		} catch (InterruptedException e) {
+			LOG.warn("Writer thread interrupted, failing all pending writes.");
+			failAll(batch, e);
+		}
+		// writes, which raced with the shutdown
+		failAll(batch, new IllegalStateException("The writer has been shut down."));
+	}
+
+	private void failAll(List<PendingWrite> batch, Throwable e) {
+		queue.drainTo(batch);
+		for (PendingWrite pending : batch) {
+			pending.future.completeExceptionally(e);
+		}
+		batch.clear();
+	}
+
+	/**
+	 * Skip the writes, which the caller gave up on, see
+	 * {@link BlazegraphModelStore#awaitWrite(Future)}.
+	 *
+	 * @param batch
+	 */
+	private static void removeCancelled(List<PendingWrite> batch) {
+		Iterator<PendingWrite> iterator = batch.iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next().future.isCancelled()) {
+				iterator.remove();
+			}
+		}
+	}
+
+	private void writeBatch(List<PendingWrite> batch) {
+		final long start = System.currentTimeMillis();
+		try {
+			commit(batch);
+			final long duration = System.currentTimeMillis() - start;
+			commits.incrementAndGet();
+			writes.addAndGet(batch.size());
+			commitTimeMillis.addAndGet(duration);
+			lastBatchSize = batch.size();
+			lastCommitMillis = duration;
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("Committed "+batch.size()+" writes in "+duration+" ms, queue depth: "+queue.size());
+			}
+			for (PendingWrite pending : batch) {
+				pending.future.complete(null);
+			}
+		} catch (Throwable e) {
+			if (batch.size() == 1) {
+				failedWrites.incrementAndGet();
+				batch.get(0).future.completeExceptionally(e);
+			}
+			else {
+				// isolate the failing write(s)
+				LOG.warn("Group commit of "+batch.size()+" writes failed, retrying each write separately", e);
+				for (PendingWrite pending : batch) {
+					writeBatch(Collections.singletonList(pending));
+				}
+			}
+		}
+	}
+
+	private void commit(List<PendingWrite> batch) throws Exception {
+		// Only one thread at a time can use the unisolated connection.
+		synchronized(repo) {
+			final BigdataSailRepositoryConnection connection = repo.getUnisolatedConnection();
+			try {
+				connection.begin();
+				try {
+					for (PendingWrite pending : batch) {
+						pending.operation.write(connection);
+					}
+					connection.commit();
+				} catch (Exception e) {
+					connection.rollback();
+					throw e;
+				}
+			} finally {
+				connection.close();
+			}
+		}
+	}
+
+	/**
+	 * Stop accepting new writes, finish all queued writes and stop the
+	 * writer thread.
+	 */
+	void shutdown() {
+		running = false;
+		try {
+			writerThread.join();
+		} catch (InterruptedException e) {
+			LOG.warn("Interrupted while waiting for the writer to finish.");
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Set the maximum number of writes folded into one commit.
+	 *
+	 * @param maxBatchSize
+	 */
+	public void setMaxBatchSize(int maxBatchSize) {
+		this.maxBatchSize = Math.max(1, maxBatchSize);
+	}
+
+	public int getMaxBatchSize() {
+		return maxBatchSize;
+	}
+
+	/**
+	 * Set the maximum time a caller waits for its write. A write, which was
+	 * not started within the time, is skipped. A write in progress may still
+	 * be committed.
+	 *
+	 * @param writeTimeoutMillis time in milliseconds, zero or less to wait
+	 *            without a limit
+	 */
+	public void setWriteTimeoutMillis(long writeTimeoutMillis) {
+		this.writeTimeoutMillis = writeTimeoutMillis;
+	}
+
+	public long getWriteTimeoutMillis() {
+		return writeTimeoutMillis;
+	}
+
+	/**
+	 * @return number of writes waiting for the writer thread
+	 */
+	public int getQueueDepth() {
+		return queue.size();
+	}
+
+	public long getCommitCount() {
+		return commits.get();
+	}
+
+	public long getWriteCount() {
+		return writes.get();
+	}
+
+	public long getFailedWriteCount() {
+		return failedWrites.get();
+	}
+
+	public int getLastBatchSize() {
+		return lastBatchSize;
+	}
+
+	/**
+	 * @return average number of writes per commit
+	 */
+	public double getAverageBatchSize() {
+		long commitCount = commits.get();
+		if (commitCount == 0) {
+			return 0;
+		}
+		return writes.get() / (double) commitCount;
+	}
+
+	public long getLastCommitMillis() {
+		return lastCommitMillis;
+	}
+
+	/**
+	 * @return average duration of a transaction including the commit
+	 */
+	public double getAverageCommitMillis() {
+		long commitCount = commits.get();
+		if (commitCount == 0) {
+			return 0;
+		}
+		return commitTimeMillis.get() / (double) commitCount;
+	}
+
+	@Override
+	public String toString() {
+		return "GroupCommitWriter [queueDepth=" + getQueueDepth() + ", commits=" + commits
+				+ ", writes=" + writes + ", failedWrites=" + failedWrites
+				+ ", averageBatchSize=" + getAverageBatchSize()
+				+ ", averageCommitMillis=" + getAverageCommitMillis() + "]";
+	}
+}
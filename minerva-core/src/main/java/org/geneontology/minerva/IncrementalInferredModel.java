@@ -0,0 +1,179 @@
+package org.geneontology.minerva;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Function;
+
+import org.apache.log4j.Logger;
+import org.geneontology.minerva.ModelContainer.ModelChangeListener;
+import org.geneontology.rules.engine.Triple;
+import org.geneontology.rules.engine.WorkingMemory;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.AddAxiom;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+
+import scala.collection.JavaConverters;
+
+/**
+ * Long-lived Arachne working memory of an in-memory model, see
+ * {@link CoreMolecularModelManager#readInferredModel(org.semanticweb.owlapi.model.IRI, Function)}.<br>
+ * <br>
+ * A listener collects the changes of the model, they are applied with the
+ * next request. Added axioms are converted to triples and forward-chained
+ * into the existing working memory. Any other change, i.e. a removed axiom
+ * or a changed ontology annotation, requires a rebuild from a snapshot, as
+ * the working memory can not retract derived facts. Requests for an
+ * unchanged model return the same working memory. The working memory is
+ * only handed to readers, see {@link #read(Function)}.
+ */
+final class IncrementalInferredModel implements ModelChangeListener {
+
+	private static final Logger LOG = Logger.getLogger(IncrementalInferredModel.class);
+
+	private final CoreMolecularModelManager<?> manager;
+	private final ModelContainer model;
+
+	// changes of the model, not yet applied to the working memory
+	private final Object pendingLock = new Object();
+	private List<OWLOntologyChange> pending = new ArrayList<>();
+	private boolean registered = false;
+	private boolean disposed = false;
+
+	// guarded by this
+	private WorkingMemory memory = null;
+
+	IncrementalInferredModel(CoreMolecularModelManager<?> manager, ModelContainer model) {
+		this.manager = manager;
+		this.model = model;
+	}
+
+	/**
+	 * Read the working memory, while no other request can update it.
+	 *
+	 * @param reader
+	 * @return result of the reader
+	 */
+	synchronized <T> T read(Function<WorkingMemory, T> reader) {
+		return reader.apply(getWorkingMemory());
+	}
+
+	/**
+	 * Apply the pending changes. Requires the monitor of this.
+	 *
+	 * @return working memory for the current version of the model
+	 */
+	private WorkingMemory getWorkingMemory() {
+		List<OWLOntologyChange> changes;
+		synchronized (pendingLock) {
+			changes = pending;
+			pending = new ArrayList<>();
+		}
+		if (memory == null) {
+			return rebuild();
+		}
+		if (changes.isEmpty()) {
+			return memory;
+		}
+		Set<OWLAxiom> added = new HashSet<>();
+		for (OWLOntologyChange change : changes) {
+			if (change instanceof AddAxiom) {
+				added.add(change.getAxiom());
+			}
+			else {
+				return rebuild();
+			}
+		}
+		Set<Triple> triples = toTriples(added);
+		if (triples == null) {
+			return rebuild();
+		}
+		manager.getRuleEngine().processTriples(JavaConverters.asScalaSetConverter(triples).asScala(), memory);
+		return memory;
+	}
+
+	/**
+	 * Create a new working memory from a snapshot of the model, the pending
+	 * changes are part of the snapshot.
+	 *
+	 * @return working memory
+	 */
+	private WorkingMemory rebuild() {
+		ModelSnapshot snapshot;
+		final Lock lock = model.getReadLock();
+		lock.lock();
+		try {
+			// the listener is only called with the write lock
+			snapshot = model.getSnapshot();
+			synchronized (pendingLock) {
+				pending.clear();
+				if (registered == false && disposed == false) {
+					model.registerListener(this);
+					registered = true;
+				}
+			}
+			// an evicted container does not call the listener anymore: the
+			// flag is set before the listeners are disposed, so either the
+			// listener was disposed or the flag is visible here
+			if (model.isDisposed()) {
+				model.unRegisterListener(this);
+				dispose();
+			}
+		} finally {
+			lock.unlock();
+		}
+		try {
+			memory = manager.createInferredModel(model.getModelId(), snapshot.createOntology());
+		} catch (OWLOntologyCreationException e) {
+			LOG.error("Could not create snapshot of model: "+model.getModelId(), e);
+			// fall back to the abox, later changes are applied again
+			lock.lock();
+			try {
+				memory = manager.createInferredModel(model.getModelId(), model.getAboxOntology());
+			} finally {
+				lock.unlock();
+			}
+		}
+		return memory;
+	}
+
+	/**
+	 * @param axioms
+	 * @return triples of the axioms or null, if the conversion failed
+	 */
+	private Set<Triple> toTriples(Set<OWLAxiom> axioms) {
+		try {
+			// the model IRI as ontology IRI, the ontology declaration is already in the memory
+			OWLOntology delta = OWLManager.createOWLOntologyManager().createOntology(axioms, model.getModelId());
+			return CoreMolecularModelManager.toTriples(delta);
+		} catch (OWLOntologyCreationException e) {
+			LOG.warn("Could not convert changes for model: "+model.getModelId(), e);
+			return null;
+		}
+	}
+
+	@Override
+	public void handleChange(List<OWLOntologyChange> changes) {
+		// called with the write lock of the model, never wait for the rule engine
+		synchronized (pendingLock) {
+			pending.addAll(changes);
+		}
+	}
+
+	@Override
+	public void dispose() {
+		synchronized (pendingLock) {
+			disposed = true;
+			pending.clear();
+		}
+		manager.releaseInferredModel(model, this);
+		synchronized (this) {
+			memory = null;
+		}
+	}
+}
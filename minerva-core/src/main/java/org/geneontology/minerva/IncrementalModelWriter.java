@@ -0,0 +1,268 @@
+package org.geneontology.minerva;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.geneontology.minerva.ModelChangeTracker.ModelDelta;
+import org.openrdf.model.BNode;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.impl.URIImpl;
+import org.openrdf.model.vocabulary.OWL;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.model.vocabulary.RDFS;
+import org.openrdf.repository.RepositoryException;
+import org.openrdf.repository.RepositoryResult;
+import org.openrdf.rio.helpers.StatementCollector;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.AddAxiom;
+import org.semanticweb.owlapi.model.AddOntologyAnnotation;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLDeclarationAxiom;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.model.RemoveOntologyAnnotation;
+import org.semanticweb.owlapi.rio.RioRenderer;
+
+import com.bigdata.rdf.sail.BigdataSailRepositoryConnection;
+
+/**
+ * Write a {@link ModelDelta} to the named graph of a model, without
+ * re-writing the triples for the unchanged axioms.<br>
+ * <br>
+ * The triples for each changed axiom are generated by rendering the axiom
+ * with the same {@link RioRenderer} used for a full save. Removed axioms are
+ * deleted by their ground triples and by matching their reified annotation
+ * nodes (owl:Axiom) against the store. Any axiom, which renders to other
+ * blank node structures (e.g., class expressions), is not supported and
+ * requires a full save.
+ */
+class IncrementalModelWriter {
+
+	private static final URI ANNOTATED_SOURCE = new URIImpl(OWL.NAMESPACE + "annotatedSource");
+	private static final URI AXIOM = new URIImpl(OWL.NAMESPACE + "Axiom");
+	private static final Set<URI> DECLARATION_TYPES = new HashSet<>();
+	static {
+		DECLARATION_TYPES.add(new URIImpl(OWL.NAMESPACE + "Class"));
+		DECLARATION_TYPES.add(new URIImpl(OWL.NAMESPACE + "ObjectProperty"));
+		DECLARATION_TYPES.add(new URIImpl(OWL.NAMESPACE + "DatatypeProperty"));
+		DECLARATION_TYPES.add(new URIImpl(OWL.NAMESPACE + "AnnotationProperty"));
+		DECLARATION_TYPES.add(new URIImpl(OWL.NAMESPACE + "NamedIndividual"));
+		DECLARATION_TYPES.add(new URIImpl(RDFS.NAMESPACE + "Datatype"));
+	}
+
+	private final URI graph;
+	private final List<Statement> additions = new ArrayList<>();
+	private final List<Statement> groundRemovals = new ArrayList<>();
+	private final List<Set<Pair<URI, Value>>> reifiedRemovals = new ArrayList<>();
+
+	private IncrementalModelWriter(URI graph) {
+		this.graph = graph;
+	}
+
+	/**
+	 * Render the triples for the delta.
+	 *
+	 * @param modelId
+	 * @param abox current abox, including the derived axioms for this save
+	 * @param delta
+	 * @return writer or null, if the delta can not be written incrementally
+	 * @throws OWLOntologyCreationException
+	 * @throws IOException
+	 */
+	static IncrementalModelWriter prepare(IRI modelId, OWLOntology abox, ModelDelta delta) throws OWLOntologyCreationException, IOException {
+		final IncrementalModelWriter writer = new IncrementalModelWriter(new URIImpl(modelId.toString()));
+		final OWLOntologyManager m = OWLManager.createOWLOntologyManager();
+		final OWLOntology tmp = m.createOntology(modelId);
+		try {
+			// additions, any blank node is fine as it will be created as new node
+			writer.additions.addAll(render(tmp, delta.addedAxioms, delta.addedAnnotations));
+
+			// removals
+			for (OWLAxiom axiom : delta.removedAxioms) {
+				boolean keepGround = abox.containsAxiomIgnoreAnnotations(axiom);
+				if (writer.addRemoval(render(tmp, Collections.singleton(axiom), Collections.<OWLAnnotation>emptySet()), keepGround) == false) {
+					return null;
+				}
+			}
+			for (OWLAnnotation annotation : delta.removedAnnotations) {
+				if (writer.addRemoval(render(tmp, Collections.<OWLAxiom>emptySet(), Collections.singleton(annotation)), false) == false) {
+					return null;
+				}
+			}
+		}
+		finally {
+			m.removeOntology(tmp);
+		}
+		return writer;
+	}
+
+	private static Collection<Statement> render(OWLOntology tmp, Set<OWLAxiom> axioms, Set<OWLAnnotation> annotations) throws IOException {
+		final OWLOntologyManager m = tmp.getOWLOntologyManager();
+		final Set<IRI> declared = new HashSet<>();
+		for (OWLAxiom axiom : axioms) {
+			m.applyChange(new AddAxiom(tmp, axiom));
+			if (axiom instanceof OWLDeclarationAxiom) {
+				declared.add(((OWLDeclarationAxiom) axiom).getEntity().getIRI());
+			}
+		}
+		for (OWLAnnotation annotation : annotations) {
+			m.applyChange(new AddOntologyAnnotation(tmp, annotation));
+		}
+		try {
+			StatementCollector collector = new StatementCollector();
+			RioRenderer renderer = new RioRenderer(tmp, collector, null);
+			renderer.render();
+			final String ontologyIRI = tmp.getOntologyID().getOntologyIRI().get().toString();
+			List<Statement> statements = new ArrayList<>();
+			for (Statement statement : collector.getStatements()) {
+				if (RDF.TYPE.equals(statement.getPredicate())) {
+					Resource subject = statement.getSubject();
+					Value object = statement.getObject();
+					if (OWL.ONTOLOGY.equals(object) && ontologyIRI.equals(subject.stringValue())) {
+						// ontology header is already in the store
+						continue;
+					}
+					if (DECLARATION_TYPES.contains(object) && (subject instanceof URI)
+							&& declared.contains(IRI.create(subject.stringValue())) == false) {
+						// typing triple generated for an undeclared entity in the tmp ontology
+						continue;
+					}
+				}
+				statements.add(statement);
+			}
+			return statements;
+		}
+		finally {
+			m.removeAxioms(tmp, tmp.getAxioms());
+			for (OWLAnnotation annotation : tmp.getAnnotations()) {
+				m.applyChange(new RemoveOntologyAnnotation(tmp, annotation));
+			}
+		}
+	}
+
+	private boolean addRemoval(Collection<Statement> statements, boolean keepGround) {
+		Map<BNode, Set<Pair<URI, Value>>> reified = new HashMap<>();
+		for (Statement statement : statements) {
+			if (statement.getSubject() instanceof BNode) {
+				BNode node = (BNode) statement.getSubject();
+				Set<Pair<URI, Value>> pairs = reified.get(node);
+				if (pairs == null) {
+					pairs = new HashSet<>();
+					reified.put(node, pairs);
+				}
+				pairs.add(Pair.of(statement.getPredicate(), statement.getObject()));
+			}
+			else if (statement.getObject() instanceof BNode) {
+				// complex class expressions or nested annotations
+				return false;
+			}
+			else if (keepGround == false) {
+				groundRemovals.add(statement);
+			}
+		}
+		for (Set<Pair<URI, Value>> pairs : reified.values()) {
+			if (pairs.contains(Pair.<URI, Value>of(RDF.TYPE, AXIOM)) == false) {
+				return false;
+			}
+			for (Pair<URI, Value> pair : pairs) {
+				if (pair.getRight() instanceof BNode) {
+					return false;
+				}
+			}
+			reifiedRemovals.add(pairs);
+		}
+		return true;
+	}
+
+	/**
+	 * Write the prepared changes into the current transaction.
+	 *
+	 * @param connection
+	 * @return number of added and removed statements or null, if the store
+	 *         did not contain the expected triples for the removals.
+	 * @throws RepositoryException
+	 */
+	Pair<Integer, Integer> write(BigdataSailRepositoryConnection connection) throws RepositoryException {
+		List<Resource> nodesToRemove = new ArrayList<>();
+		for (Set<Pair<URI, Value>> pattern : reifiedRemovals) {
+			Resource node = findReifiedNode(connection, pattern, nodesToRemove);
+			if (node == null) {
+				return null;
+			}
+			nodesToRemove.add(node);
+		}
+		for (Statement statement : groundRemovals) {
+			if (connection.hasStatement(statement.getSubject(), statement.getPredicate(), statement.getObject(), false, graph) == false) {
+				return null;
+			}
+		}
+		int removed = groundRemovals.size();
+		for (Resource node : nodesToRemove) {
+			RepositoryResult<Statement> result = connection.getStatements(node, null, null, false, graph);
+			List<Statement> nodeStatements = new ArrayList<>();
+			try {
+				while (result.hasNext()) {
+					nodeStatements.add(result.next());
+				}
+			} finally {
+				result.close();
+			}
+			connection.remove(nodeStatements, graph);
+			removed += nodeStatements.size();
+		}
+		connection.remove(groundRemovals, graph);
+		connection.add(additions, graph);
+		return Pair.of(additions.size(), removed);
+	}
+
+	private Resource findReifiedNode(BigdataSailRepositoryConnection connection, Set<Pair<URI, Value>> pattern, List<Resource> exclude) throws RepositoryException {
+		Value source = null;
+		for (Pair<URI, Value> pair : pattern) {
+			if (ANNOTATED_SOURCE.equals(pair.getLeft())) {
+				source = pair.getRight();
+			}
+		}
+		if (source == null) {
+			return null;
+		}
+		RepositoryResult<Statement> candidates = connection.getStatements(null, ANNOTATED_SOURCE, source, false, graph);
+		try {
+			while (candidates.hasNext()) {
+				Resource candidate = candidates.next().getSubject();
+				if (exclude.contains(candidate)) {
+					continue;
+				}
+				Set<Pair<URI, Value>> stored = new HashSet<>();
+				RepositoryResult<Statement> statements = connection.getStatements(candidate, null, null, false, graph);
+				try {
+					while (statements.hasNext()) {
+						Statement statement = statements.next();
+						stored.add(Pair.of(statement.getPredicate(), statement.getObject()));
+					}
+				} finally {
+					statements.close();
+				}
+				if (pattern.equals(stored)) {
+					return candidate;
+				}
+			}
+		} finally {
+			candidates.close();
+		}
+		return null;
+	}
+}
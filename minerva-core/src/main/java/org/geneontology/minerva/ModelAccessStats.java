@@ -0,0 +1,256 @@
+package org.geneontology.minerva;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.Logger;
+import org.semanticweb.owlapi.model.IRI;
+
+/**
+ * Access frequency and recency of the models, used to select the models for
+ * the warm-up at startup. Each model has a score, which is incremented with
+ * every access and decays with a half-life of {@link #HALF_LIFE_MILLIS}, so
+ * a model used often in the last days ranks above a model used very often a
+ * long time ago.<br>
+ * <br>
+ * The statistics are persisted in a tab separated file (model id, score, time
+ * of the last access). The file is re-written in the background at most once
+ * per {@link #SAVE_INTERVAL_MILLIS} and on {@link #close()}.
+ */
+public class ModelAccessStats {
+
+	private static final Logger LOG = Logger.getLogger(ModelAccessStats.class);
+
+	static final long HALF_LIFE_MILLIS = 7L * 24L * 60L * 60L * 1000L;
+	static final long SAVE_INTERVAL_MILLIS = 5L * 60L * 1000L;
+
+	// guarded by its own monitor, accesses of different models do not contend
+	private static class Entry {
+
+		private double score;
+		private long lastAccess;
+
+		Entry(double score, long lastAccess) {
+			this.score = score;
+			this.lastAccess = lastAccess;
+		}
+
+		synchronized double getScore(long now) {
+			if (now <= lastAccess) {
+				return score;
+			}
+			return score * Math.pow(0.5d, (now - lastAccess) / (double) HALF_LIFE_MILLIS);
+		}
+
+		synchronized void access(long now) {
+			score = getScore(now) + 1d;
+			lastAccess = Math.max(now, lastAccess);
+		}
+
+		synchronized String format() {
+			return score+"\t"+lastAccess;
+		}
+	}
+
+	private final File file;
+	private final ConcurrentMap<IRI, Entry> entries = new ConcurrentHashMap<>();
+	private final ExecutorService saver = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "model-access-stats");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	private volatile long lastSave = System.currentTimeMillis();
+	private volatile boolean modified = false;
+	private final AtomicBoolean saveScheduled = new AtomicBoolean(false);
+
+	/**
+	 * Read the statistics from the file, if it exists.
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public ModelAccessStats(File file) throws IOException {
+		this.file = file;
+		if (file.exists()) {
+			read();
+		}
+	}
+
+	private void read() throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split("\t");
+				if (fields.length != 3) {
+					continue;
+				}
+				try {
+					entries.put(IRI.create(fields[0]), new Entry(Double.parseDouble(fields[1]), Long.parseLong(fields[2])));
+				} catch (NumberFormatException e) {
+					LOG.warn("Skipping invalid line in model access statistics: "+line);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		LOG.info("Read access statistics for "+entries.size()+" models from: "+file);
+	}
+
+	/**
+	 * Record an access, called for each model request. Only the entry of the
+	 * model is locked.
+	 *
+	 * @param modelId
+	 */
+	public void recordAccess(IRI modelId) {
+		final long now = System.currentTimeMillis();
+		Entry entry = entries.get(modelId);
+		if (entry == null) {
+			entry = entries.putIfAbsent(modelId, new Entry(1d, now));
+		}
+		if (entry != null) {
+			entry.access(now);
+		}
+		if (modified == false) {
+			// avoid a shared write for each access
+			modified = true;
+		}
+		if (now - lastSave > SAVE_INTERVAL_MILLIS && saveScheduled.compareAndSet(false, true)) {
+			saver.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					saveQuietly();
+				}
+			});
+		}
+	}
+
+	/**
+	 * @param modelId
+	 */
+	public void remove(IRI modelId) {
+		if (entries.remove(modelId) != null) {
+			modified = true;
+		}
+	}
+
+	/**
+	 * @param n
+	 * @return the ids of up to n models with the highest score, highest first
+	 */
+	public List<IRI> getTopModels(int n) {
+		final long now = System.currentTimeMillis();
+		final Map<IRI, Double> scores = new HashMap<>();
+		for (Map.Entry<IRI, Entry> e : entries.entrySet()) {
+			scores.put(e.getKey(), e.getValue().getScore(now));
+		}
+		List<IRI> ids = new ArrayList<>(scores.keySet());
+		Collections.sort(ids, new Comparator<IRI>() {
+
+			@Override
+			public int compare(IRI o1, IRI o2) {
+				return Double.compare(scores.get(o2), scores.get(o1));
+			}
+		});
+		if (ids.size() > n) {
+			return new ArrayList<>(ids.subList(0, n));
+		}
+		return ids;
+	}
+
+	/**
+	 * @param modelId
+	 * @return current score of the model, zero for unknown models
+	 */
+	public double getScore(IRI modelId) {
+		Entry entry = entries.get(modelId);
+		return entry != null ? entry.getScore(System.currentTimeMillis()) : 0d;
+	}
+
+	public int getSize() {
+		return entries.size();
+	}
+
+	private void saveQuietly() {
+		try {
+			save();
+		} catch (IOException e) {
+			LOG.warn("Could not save the model access statistics to: "+file, e);
+		}
+	}
+
+	/**
+	 * Write the statistics to the file, if there were any changes since the
+	 * last save.
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void save() throws IOException {
+		final List<String> lines = new ArrayList<>();
+		saveScheduled.set(false);
+		lastSave = System.currentTimeMillis();
+		if (modified == false) {
+			return;
+		}
+		// reset first, an access during the snapshot triggers another save
+		modified = false;
+		for (Map.Entry<IRI, Entry> e : entries.entrySet()) {
+			lines.add(e.getKey().toString()+"\t"+e.getValue().format());
+		}
+		File folder = file.getAbsoluteFile().getParentFile();
+		FileUtils.forceMkdir(folder);
+		File tempFile = File.createTempFile(".access-stats-", ".tmp", folder);
+		try {
+			Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), StandardCharsets.UTF_8));
+			try {
+				for (String line : lines) {
+					writer.write(line);
+					writer.write('\n');
+				}
+			} finally {
+				writer.close();
+			}
+			ModelStores.moveAtomically(tempFile, file);
+			tempFile = null;
+		} finally {
+			FileUtils.deleteQuietly(tempFile);
+		}
+	}
+
+	/**
+	 * Save the statistics and stop the background saves.
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		saver.shutdown();
+		save();
+	}
+}
@@ -0,0 +1,333 @@
+package org.geneontology.minerva;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+
+import org.apache.log4j.Logger;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+/**
+ * Bounded cache for the in-memory models of a
+ * {@link CoreMolecularModelManager}. The limits are the number of models and
+ * the total number of axioms, as estimate of the used memory. If a limit is
+ * exceeded, the least recently used models are evicted. Models which can not
+ * be re-loaded from the store, i.e. modified or new models, are pinned and
+ * never evicted. Models in use, i.e. locked or in a batch, are skipped.<br>
+ * <br>
+ * Lookups and the counters do not lock, the time of the last access is
+ * stored with each model, so the LRU order is approximate between accesses
+ * at the same time. Adding models, changing the limits and the eviction are
+ * synchronized on the cache instance, evicted models are disposed after
+ * leaving the monitor.
+ */
+public final class ModelCache {
+
+	private static final Logger LOG = Logger.getLogger(ModelCache.class);
+
+	/**
+	 * Callbacks of the cache to the manager.
+	 */
+	static interface EvictionHandler {
+
+		/**
+		 * @param model
+		 * @return true, if the model can be re-loaded after an eviction
+		 */
+		boolean isEvictable(ModelContainer model);
+
+		/**
+		 * Release the resources of the evicted model.
+		 *
+		 * @param model
+		 */
+		void evicted(ModelContainer model);
+	}
+
+	private static final class Entry {
+
+		final ModelContainer model;
+		// System.nanoTime() of the last access, written without a lock
+		volatile long lastAccess = System.nanoTime();
+
+		Entry(ModelContainer model) {
+			this.model = model;
+		}
+	}
+
+	private static final Comparator<Map.Entry<IRI, Entry>> LEAST_RECENTLY_USED = new Comparator<Map.Entry<IRI, Entry>>() {
+
+		@Override
+		public int compare(Map.Entry<IRI, Entry> o1, Map.Entry<IRI, Entry> o2) {
+			// difference, as the nano time may overflow
+			return Long.signum(o1.getValue().lastAccess - o2.getValue().lastAccess);
+		}
+	};
+
+	private final EvictionHandler handler;
+	private final ConcurrentHashMap<IRI, Entry> models = new ConcurrentHashMap<>();
+	private volatile int maxModels = 0;
+	private volatile long maxAxioms = 0;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder evictedAxioms = new LongAdder();
+
+	ModelCache(EvictionHandler handler) {
+		this.handler = handler;
+	}
+
+	/**
+	 * Set the limits of the cache, a value of zero or less disables the limit.
+	 *
+	 * @param maxModels maximum number of models
+	 * @param maxAxioms maximum number of axioms in all models
+	 */
+	public void setLimits(int maxModels, long maxAxioms) {
+		List<ModelContainer> evicted;
+		synchronized (this) {
+			this.maxModels = maxModels;
+			this.maxAxioms = maxAxioms;
+			evicted = evict(null);
+		}
+		release(evicted);
+	}
+
+	public int getMaxModels() {
+		return maxModels;
+	}
+
+	public long getMaxAxioms() {
+		return maxAxioms;
+	}
+
+	ModelContainer get(IRI modelId) {
+		Entry entry = models.get(modelId);
+		if (entry == null) {
+			return null;
+		}
+		entry.lastAccess = System.nanoTime();
+		return entry.model;
+	}
+
+	boolean containsKey(IRI modelId) {
+		return models.containsKey(modelId);
+	}
+
+	/**
+	 * Add a model, may evict other models.
+	 *
+	 * @param modelId
+	 * @param model
+	 * @return previous model for the id or null
+	 */
+	ModelContainer put(IRI modelId, ModelContainer model) {
+		Entry previous;
+		List<ModelContainer> evicted;
+		synchronized (this) {
+			previous = models.put(modelId, new Entry(model));
+			evicted = evict(modelId);
+		}
+		release(evicted);
+		return previous != null ? previous.model : null;
+	}
+
+	ModelContainer remove(IRI modelId) {
+		Entry entry = models.remove(modelId);
+		return entry != null ? entry.model : null;
+	}
+
+	/**
+	 * @return snapshot of the ids of the cached models
+	 */
+	Set<IRI> keySet() {
+		return new HashSet<>(models.keySet());
+	}
+
+	/**
+	 * @return snapshot of the cached models
+	 */
+	Collection<ModelContainer> values() {
+		List<ModelContainer> values = new ArrayList<>(models.size());
+		for (Entry entry : models.values()) {
+			values.add(entry.model);
+		}
+		return values;
+	}
+
+	void recordHit() {
+		hits.increment();
+	}
+
+	void recordMiss() {
+		misses.increment();
+	}
+
+	/**
+	 * Remove least recently used models until the cache is within its limits
+	 * or only pinned models are left. A model is only removed, if its write
+	 * lock is free and it is still evictable with the lock, i.e. no request
+	 * reads or changes the model and no batch of requests uses it. The write
+	 * locks of the removed models stay locked, see {@link #release(List)}.
+	 * Requires the monitor of the cache.
+	 *
+	 * @param keep id of a model, which must stay in the cache, may be null
+	 * @return removed models, still to be released
+	 */
+	private List<ModelContainer> evict(IRI keep) {
+		List<ModelContainer> evicted = new ArrayList<>();
+		if (maxModels <= 0 && maxAxioms <= 0) {
+			return evicted;
+		}
+		long axioms = maxAxioms > 0 ? getAxiomCount() : 0;
+		if (isOverLimit(models.size(), axioms) == false) {
+			return evicted;
+		}
+		List<Map.Entry<IRI, Entry>> candidates = new ArrayList<>(models.entrySet());
+		// the access times are a snapshot, concurrent lookups are not blocked
+		Collections.sort(candidates, LEAST_RECENTLY_USED);
+		Iterator<Map.Entry<IRI, Entry>> iterator = candidates.iterator();
+		while (iterator.hasNext() && isOverLimit(models.size(), axioms)) {
+			Map.Entry<IRI, Entry> candidate = iterator.next();
+			ModelContainer model = candidate.getValue().model;
+			if (candidate.getKey().equals(keep) || isEvictable(model) == false) {
+				continue;
+			}
+			// never wait for a model lock with the monitor of the cache
+			Lock lock = model.getWriteLock();
+			if (lock.tryLock() == false) {
+				continue;
+			}
+			if (isEvictable(model) == false || models.remove(candidate.getKey(), candidate.getValue()) == false) {
+				// changed or removed, before the lock was acquired
+				lock.unlock();
+				continue;
+			}
+			long count = getAxiomCount(model);
+			axioms -= count;
+			evictions.increment();
+			evictedAxioms.add(count);
+			evicted.add(model);
+		}
+		if (isOverLimit(models.size(), axioms)) {
+			LOG.warn("Model cache exceeds its limits, the remaining models are modified, not stored or in use. Models: "+models.size()+" axioms: "+axioms);
+		}
+		return evicted;
+	}
+
+	private boolean isEvictable(ModelContainer model) {
+		return model.isInBatch() == false && handler.isEvictable(model);
+	}
+
+	/**
+	 * Dispose the removed models, called without the monitor of the cache.
+	 * The write lock of each model is held until it is disposed, a request
+	 * waiting for the lock afterwards finds a disposed model.
+	 *
+	 * @param evicted
+	 */
+	private void release(List<ModelContainer> evicted) {
+		for (ModelContainer model : evicted) {
+			Lock lock = model.getWriteLock();
+			try {
+				LOG.info("Evicted model from memory: "+model.getModelId());
+				handler.evicted(model);
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * @return true, if another model can be added without exceeding the limits
+	 */
+	boolean hasCapacity() {
+		int maxModels = this.maxModels;
+		long maxAxioms = this.maxAxioms;
+		if (maxModels > 0 && models.size() >= maxModels) {
+			return false;
+		}
+		return maxAxioms <= 0 || getAxiomCount() < maxAxioms;
+	}
+
+	private boolean isOverLimit(int size, long axioms) {
+		return (maxModels > 0 && size > maxModels) || (maxAxioms > 0 && axioms > maxAxioms);
+	}
+
+	private static long getAxiomCount(ModelContainer model) {
+		OWLOntology abox = model.getAboxOntology();
+		return abox.getAxiomCount() + abox.getAnnotations().size();
+	}
+
+	/**
+	 * @return number of cached models
+	 */
+	public int getSize() {
+		return models.size();
+	}
+
+	/**
+	 * @return number of axioms in all cached models
+	 */
+	public long getAxiomCount() {
+		long count = 0;
+		for (Entry entry : models.values()) {
+			count += getAxiomCount(entry.model);
+		}
+		return count;
+	}
+
+	/**
+	 * @return number of cached models, which can not be evicted
+	 */
+	public int getPinnedCount() {
+		int count = 0;
+		for (Entry entry : models.values()) {
+			if (handler.isEvictable(entry.model) == false) {
+				count += 1;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return number of model requests served from memory
+	 */
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return number of model requests, which required a load from the store
+	 */
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	/**
+	 * @return number of axioms in all evicted models
+	 */
+	public long getEvictedAxiomCount() {
+		return evictedAxioms.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "ModelCache [size=" + models.size() + ", hits=" + hits.sum() + ", misses=" + misses.sum() + ", evictions=" + evictions.sum() + "]";
+	}
+}
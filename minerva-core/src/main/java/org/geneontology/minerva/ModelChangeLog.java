@@ -0,0 +1,498 @@
+package org.geneontology.minerva;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.Logger;
+import org.semanticweb.owlapi.model.AddAxiom;
+import org.semanticweb.owlapi.model.AddImport;
+import org.semanticweb.owlapi.model.AddOntologyAnnotation;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLImportsDeclaration;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+
+/**
+ * Append-only write-ahead log for the changes of the in-memory models. Each
+ * record holds the changes applied by one edit operation. A record is
+ * durable, when {@link #append(IRI, List)} returns: the log file is forced
+ * to disk. Concurrent appends share a single force, so the cost of the
+ * fsync is spread over all edits waiting for it. An edit can also write its
+ * record with {@link #write(IRI, List)} while it holds the model lock and
+ * wait for the disk with {@link #sync(long)} after releasing it.<br>
+ * <br>
+ * The log only needs to cover the changes since the last save of a model.
+ * A save (or a reset of the model) writes a reset record, which makes all
+ * earlier records of the model obsolete. The file is truncated, once no
+ * model has pending changes, and compacted when it is opened.<br>
+ * <br>
+ * Each record is framed with its length and a CRC32 checksum, a partially
+ * written record at the end of the file is discarded when the log is
+ * opened. The changes of a record are written with the
+ * {@link UndoChangeCodec}, including the IRIs they use. The file starts with
+ * a format version, a log of another version is rejected.
+ */
+public class ModelChangeLog {
+
+	private static final Logger LOG = Logger.getLogger(ModelChangeLog.class);
+
+	// file header, followed by the records
+	static final byte[] MAGIC = {'M', 'C', 'L', 'G'};
+	static final int VERSION = 1;
+	private static final int HEADER_LENGTH = MAGIC.length + 1;
+
+	// record kinds
+	private static final byte KIND_CHANGES = 1;
+	private static final byte KIND_RESET = 2;
+	private static final byte KIND_CREATE = 3;
+
+	private static final int MAX_RECORD_SIZE = 256 * 1024 * 1024;
+
+	private final File file;
+	private final FileChannel channel;
+	// the pending records of each model, read when the log is opened
+	private final Map<IRI, PendingChanges> recovered;
+
+	private final Object writeLock = new Object();
+	private final Object syncLock = new Object();
+	// guarded by writeLock
+	private final Map<IRI, Integer> pendingRecords = new HashMap<>();
+	private long appended = 0;
+	// guarded by syncLock
+	private long syncCount = 0;
+	private volatile long synced = 0;
+
+	/**
+	 * Open the log, creates the file if it does not exist. Obsolete records
+	 * are removed from the file.
+	 *
+	 * @param file
+	 * @throws IOException if the file is not a change log of the current
+	 *         format version, the file is not modified in this case
+	 */
+	public ModelChangeLog(File file) throws IOException {
+		this.file = file.getAbsoluteFile();
+		this.recovered = Collections.unmodifiableMap(compact(this.file));
+		this.channel = FileChannel.open(this.file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		if (channel.size() == 0) {
+			writeFully(channel, header());
+		}
+		this.channel.position(channel.size());
+		for (Map.Entry<IRI, PendingChanges> entry : recovered.entrySet()) {
+			pendingRecords.put(entry.getKey(), entry.getValue().records.size());
+		}
+		LOG.info("Opened change log: "+this.file+" with pending changes for "+recovered.size()+" models");
+	}
+
+	/**
+	 * Read the valid records and re-write the file with the pending records.
+	 */
+	private static Map<IRI, PendingChanges> compact(File file) throws IOException {
+		Map<IRI, PendingChanges> pending = new LinkedHashMap<>();
+		if (file.exists() == false) {
+			return pending;
+		}
+		int total = 0;
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try {
+			DataInputStream data = new DataInputStream(in);
+			if (file.length() > 0) {
+				readHeader(data, file);
+			}
+			byte[] record;
+			while ((record = readRecord(data)) != null) {
+				total += 1;
+				DataInputStream header = new DataInputStream(new ByteArrayInputStream(record));
+				IRI modelId = IRI.create(header.readUTF());
+				byte kind = header.readByte();
+				if (kind == KIND_RESET) {
+					pending.remove(modelId);
+					continue;
+				}
+				PendingChanges changes = pending.get(modelId);
+				if (changes == null || kind == KIND_CREATE) {
+					// keep the order of the first change
+					pending.remove(modelId);
+					changes = new PendingChanges(modelId);
+					pending.put(modelId, changes);
+				}
+				changes.created |= kind == KIND_CREATE;
+				changes.records.add(record);
+			}
+		} finally {
+			in.close();
+		}
+		// write the pending records into a new file
+		File tempFile = File.createTempFile(".changes-", ".tmp", file.getParentFile());
+		try {
+			FileChannel out = FileChannel.open(tempFile.toPath(), StandardOpenOption.WRITE);
+			try {
+				writeFully(out, header());
+				int kept = 0;
+				for (PendingChanges changes : pending.values()) {
+					for (byte[] record : changes.records) {
+						writeFully(out, frame(record));
+						kept += 1;
+					}
+				}
+				out.force(true);
+				LOG.info("Compacted change log: "+file+" kept "+kept+" of "+total+" records");
+			} finally {
+				out.close();
+			}
+			ModelStores.moveAtomically(tempFile, file);
+			tempFile = null;
+		} finally {
+			FileUtils.deleteQuietly(tempFile);
+		}
+		return pending;
+	}
+
+	private static ByteBuffer header() {
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH);
+		buffer.put(MAGIC);
+		buffer.put((byte) VERSION);
+		buffer.flip();
+		return buffer;
+	}
+
+	private static void readHeader(DataInputStream in, File file) throws IOException {
+		byte[] magic = new byte[MAGIC.length];
+		int version;
+		try {
+			in.readFully(magic);
+			version = in.readUnsignedByte();
+		} catch (EOFException e) {
+			throw new IOException("Not a model change log: "+file);
+		}
+		if (Arrays.equals(MAGIC, magic) == false) {
+			throw new IOException("Not a model change log: "+file);
+		}
+		if (version != VERSION) {
+			throw new IOException("Unsupported change log version: "+version+" expected: "+VERSION+" file: "+file);
+		}
+	}
+
+	/**
+	 * @return the next record or null, if the end of the valid records has been reached
+	 */
+	private static byte[] readRecord(DataInputStream in) throws IOException {
+		try {
+			int length = in.readInt();
+			long checksum = in.readLong();
+			if (length <= 0 || length > MAX_RECORD_SIZE) {
+				LOG.warn("Invalid record length in change log, ignoring the remaining records");
+				return null;
+			}
+			byte[] record = new byte[length];
+			in.readFully(record);
+			CRC32 crc = new CRC32();
+			crc.update(record);
+			if (crc.getValue() != checksum) {
+				LOG.warn("Invalid checksum in change log, ignoring the remaining records");
+				return null;
+			}
+			return record;
+		} catch (EOFException e) {
+			// end of file or a partially written record
+			return null;
+		}
+	}
+
+	private static ByteBuffer frame(byte[] record) {
+		CRC32 crc = new CRC32();
+		crc.update(record);
+		ByteBuffer buffer = ByteBuffer.allocate(12 + record.length);
+		buffer.putInt(record.length);
+		buffer.putLong(crc.getValue());
+		buffer.put(record);
+		buffer.flip();
+		return buffer;
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	/**
+	 * @return the file of the log
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * The changes found in the log, when it was opened. Use
+	 * {@link PendingChanges#createChanges(OWLOntology)} to apply them to the
+	 * models.
+	 *
+	 * @return map of model id to pending changes, in the order of the first change
+	 */
+	public Map<IRI, PendingChanges> getRecoveredChanges() {
+		return recovered;
+	}
+
+	/**
+	 * Append the applied changes of a model to the log and wait until they
+	 * are written to disk. All changes are logged for the model, regardless
+	 * of their ontology, the caller only passes the changes of the abox.
+	 *
+	 * @param modelId
+	 * @param changes
+	 * @throws IOException
+	 */
+	public void append(IRI modelId, List<OWLOntologyChange> changes) throws IOException {
+		sync(write(modelId, changes));
+	}
+
+	/**
+	 * Append the applied changes of a model to the log without waiting for
+	 * the disk, see {@link #append(IRI, List)}. The order of the records is
+	 * the order of the calls.
+	 *
+	 * @param modelId
+	 * @param changes
+	 * @return position of the record for {@link #sync(long)}, zero if there
+	 *         was nothing to write
+	 * @throws IOException
+	 */
+	public long write(IRI modelId, List<OWLOntologyChange> changes) throws IOException {
+		byte[] record = encode(modelId, KIND_CHANGES, changes);
+		if (record == null) {
+			return 0;
+		}
+		return writeRecord(modelId, record, KIND_CHANGES);
+	}
+
+	/**
+	 * Record a new model, which is not in the store. The current content of
+	 * the abox replaces all earlier changes of the model in the log.
+	 *
+	 * @param modelId
+	 * @param abox
+	 * @throws IOException
+	 */
+	public void created(IRI modelId, OWLOntology abox) throws IOException {
+		List<OWLOntologyChange> changes = new ArrayList<>();
+		for (OWLImportsDeclaration declaration : abox.getImportsDeclarations()) {
+			changes.add(new AddImport(abox, declaration));
+		}
+		for (OWLAnnotation annotation : abox.getAnnotations()) {
+			changes.add(new AddOntologyAnnotation(abox, annotation));
+		}
+		for (OWLAxiom axiom : abox.getAxioms()) {
+			changes.add(new AddAxiom(abox, axiom));
+		}
+		sync(writeRecord(modelId, encode(modelId, KIND_CREATE, changes), KIND_CREATE));
+	}
+
+	/**
+	 * Mark all logged changes of the model as obsolete, i.e. after a save
+	 * or a reset of the model to the stored version.
+	 *
+	 * @param modelId
+	 * @throws IOException
+	 */
+	public void reset(IRI modelId) throws IOException {
+		synchronized (writeLock) {
+			if (pendingRecords.containsKey(modelId) == false) {
+				// nothing to reset
+				return;
+			}
+		}
+		sync(writeRecord(modelId, encode(modelId, KIND_RESET, Collections.<OWLOntologyChange>emptyList()), KIND_RESET));
+	}
+
+	private long writeRecord(IRI modelId, byte[] record, byte kind) throws IOException {
+		final long position;
+		synchronized (writeLock) {
+			if (kind == KIND_RESET) {
+				pendingRecords.remove(modelId);
+			}
+			else {
+				Integer count = pendingRecords.get(modelId);
+				pendingRecords.put(modelId, kind == KIND_CREATE || count == null ? 1 : count + 1);
+			}
+			if (pendingRecords.isEmpty()) {
+				// no model has pending changes, keep only the header
+				channel.truncate(HEADER_LENGTH);
+				channel.position(HEADER_LENGTH);
+			}
+			else {
+				writeFully(channel, frame(record));
+			}
+			appended += 1;
+			position = appended;
+		}
+		return position;
+	}
+
+	/**
+	 * Wait until the record at the position is on disk. Forces the log to
+	 * disk, unless another thread already did it for the position.
+	 *
+	 * @param position position of a record, see {@link #write(IRI, List)}
+	 * @throws IOException
+	 */
+	public void sync(long position) throws IOException {
+		if (synced >= position) {
+			return;
+		}
+		synchronized (syncLock) {
+			if (synced >= position) {
+				return;
+			}
+			final long target;
+			synchronized (writeLock) {
+				target = appended;
+			}
+			channel.force(false);
+			syncCount += 1;
+			synced = target;
+		}
+	}
+
+	private static byte[] encode(IRI modelId, byte kind, List<OWLOntologyChange> changes) throws IOException {
+		List<OWLOntologyChange> supported = new ArrayList<>(changes.size());
+		for (OWLOntologyChange change : changes) {
+			if (UndoChangeCodec.isSupported(change)) {
+				supported.add(change);
+			}
+			else {
+				LOG.warn("Change not supported by the change encoding, skipping: "+change);
+			}
+		}
+		if (supported.isEmpty() && kind == KIND_CHANGES) {
+			return null;
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeUTF(modelId.toString());
+		out.writeByte(kind);
+		out.write(UndoChangeCodec.encodeStandalone(supported));
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Close the log, pending changes are kept for the next start.
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		synchronized (syncLock) {
+			synchronized (writeLock) {
+				channel.force(false);
+				channel.close();
+			}
+		}
+	}
+
+	/**
+	 * @return number of written records since the log was opened
+	 */
+	public long getRecordCount() {
+		synchronized (writeLock) {
+			return appended;
+		}
+	}
+
+	/**
+	 * @return number of forced writes to disk since the log was opened
+	 */
+	public long getSyncCount() {
+		synchronized (syncLock) {
+			return syncCount;
+		}
+	}
+
+	/**
+	 * @return number of models with changes in the log
+	 */
+	public int getPendingModelCount() {
+		synchronized (writeLock) {
+			return pendingRecords.size();
+		}
+	}
+
+	/**
+	 * The logged changes of a single model since its last save.
+	 */
+	public static class PendingChanges {
+
+		private final IRI modelId;
+		private final List<byte[]> records = new ArrayList<>();
+		private boolean created = false;
+
+		PendingChanges(IRI modelId) {
+			this.modelId = modelId;
+		}
+
+		public IRI getModelId() {
+			return modelId;
+		}
+
+		/**
+		 * @return true, if the model was not in the store, the changes have
+		 *         to be applied to an empty abox
+		 */
+		public boolean isCreated() {
+			return created;
+		}
+
+		/**
+		 * @return number of logged edit operations
+		 */
+		public int getRecordCount() {
+			return records.size();
+		}
+
+		/**
+		 * Create the logged changes for the abox, in the original order.
+		 *
+		 * @param abox
+		 * @return changes
+		 * @throws IOException
+		 */
+		public List<OWLOntologyChange> createChanges(OWLOntology abox) throws IOException {
+			List<OWLOntologyChange> changes = new ArrayList<>();
+			for (byte[] record : records) {
+				ByteArrayInputStream bytes = new ByteArrayInputStream(record);
+				DataInputStream header = new DataInputStream(bytes);
+				try {
+					header.readUTF();
+					header.readByte();
+					byte[] data = Arrays.copyOfRange(record, record.length - bytes.available(), record.length);
+					changes.addAll(UndoChangeCodec.decodeStandalone(data, abox));
+				} catch (IOException e) {
+					throw new IOException("Could not read change log record for model: "+modelId, e);
+				}
+			}
+			return changes;
+		}
+	}
+}
@@ -0,0 +1,272 @@
+package org.geneontology.minerva;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.semanticweb.owlapi.model.AddAxiom;
+import org.semanticweb.owlapi.model.AddOntologyAnnotation;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLImportsDeclaration;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.OWLOntologyID;
+import org.semanticweb.owlapi.model.RemoveAxiom;
+import org.semanticweb.owlapi.model.RemoveOntologyAnnotation;
+
+/**
+ * Tracks the net axiom and ontology annotation changes of an abox since it
+ * was last written to the store. This is used to save a model
+ * incrementally, instead of re-writing all triples of the model.<br>
+ * <br>
+ * Changes to imports or the ontology id are not tracked in detail, they
+ * will force a full save. Not thread safe, all access is guarded by the
+ * write lock of the {@link ModelContainer}.
+ */
+final class ModelChangeTracker {
+
+	// true: added since last save, false: removed since last save
+	private final Map<OWLAxiom, Boolean> axioms = new HashMap<>();
+	private final Map<OWLAnnotation, Boolean> annotations = new HashMap<>();
+	private boolean requiresFullSave = true;
+
+	// state of the abox as written during the last save
+	private Set<OWLImportsDeclaration> savedImports = null;
+	private OWLOntologyID savedOntologyID = null;
+	private Set<OWLAxiom> savedDerivedAxioms = Collections.emptySet();
+	private Set<OWLAnnotation> savedDerivedAnnotations = Collections.emptySet();
+
+	/**
+	 * Filter the list of changes for the changes, which will actually modify
+	 * the abox. The OWL-API silently ignores adding an existing axiom or
+	 * removing a missing one, these no-op changes must not be tracked.
+	 *
+	 * @param abox
+	 * @param changes
+	 * @return effective changes, in order
+	 */
+	static List<OWLOntologyChange> getEffectiveChanges(OWLOntology abox, List<? extends OWLOntologyChange> changes) {
+		List<OWLOntologyChange> effective = new ArrayList<>(changes.size());
+		// overlay for changes earlier in the same list
+		Map<Object, Boolean> present = new HashMap<>();
+		for (OWLOntologyChange change : changes) {
+			if (abox.equals(change.getOntology()) == false) {
+				continue;
+			}
+			if (change instanceof AddAxiom || change instanceof RemoveAxiom) {
+				OWLAxiom axiom = change.getAxiom();
+				Boolean isPresent = present.get(axiom);
+				if (isPresent == null) {
+					isPresent = abox.containsAxiom(axiom);
+				}
+				boolean add = change instanceof AddAxiom;
+				if (add != isPresent.booleanValue()) {
+					effective.add(change);
+					present.put(axiom, add);
+				}
+			}
+			else if (change instanceof AddOntologyAnnotation || change instanceof RemoveOntologyAnnotation) {
+				OWLAnnotation annotation;
+				boolean add;
+				if (change instanceof AddOntologyAnnotation) {
+					annotation = ((AddOntologyAnnotation) change).getAnnotation();
+					add = true;
+				}
+				else {
+					annotation = ((RemoveOntologyAnnotation) change).getAnnotation();
+					add = false;
+				}
+				Boolean isPresent = present.get(annotation);
+				if (isPresent == null) {
+					isPresent = abox.getAnnotations().contains(annotation);
+				}
+				if (add != isPresent.booleanValue()) {
+					effective.add(change);
+					present.put(annotation, add);
+				}
+			}
+			else {
+				// imports and ontology id changes
+				effective.add(change);
+			}
+		}
+		return effective;
+	}
+
+	/**
+	 * Record effective changes, see {@link #getEffectiveChanges(OWLOntology, List)}.
+	 *
+	 * @param changes
+	 */
+	void record(List<OWLOntologyChange> changes) {
+		for (OWLOntologyChange change : changes) {
+			if (change instanceof AddAxiom) {
+				record(axioms, change.getAxiom(), true);
+			}
+			else if (change instanceof RemoveAxiom) {
+				record(axioms, change.getAxiom(), false);
+			}
+			else if (change instanceof AddOntologyAnnotation) {
+				record(annotations, ((AddOntologyAnnotation) change).getAnnotation(), true);
+			}
+			else if (change instanceof RemoveOntologyAnnotation) {
+				record(annotations, ((RemoveOntologyAnnotation) change).getAnnotation(), false);
+			}
+			else {
+				requiresFullSave = true;
+			}
+		}
+	}
+
+	private static <T> void record(Map<T, Boolean> map, T key, boolean add) {
+		Boolean previous = map.get(key);
+		if (previous != null && previous.booleanValue() != add) {
+			// the change cancels out an earlier change
+			map.remove(key);
+		}
+		else {
+			map.put(key, add);
+		}
+	}
+
+	/**
+	 * Force a full save for the next save operation.
+	 */
+	void invalidate() {
+		requiresFullSave = true;
+		axioms.clear();
+		annotations.clear();
+	}
+
+	/**
+	 * Create the delta between the stored and the current version of the
+	 * abox. The derived changes are the changes generated by the
+	 * {@link BlazegraphMolecularModelManager.PreFileSaveHandler}s for this
+	 * save, they are compared to the derived changes of the last save.
+	 *
+	 * @param abox
+	 * @param derivedChanges
+	 * @return delta or null, if a full save is required
+	 */
+	ModelDelta getDelta(OWLOntology abox, List<OWLOntologyChange> derivedChanges) {
+		if (requiresFullSave) {
+			return null;
+		}
+		if (abox.getImportsDeclarations().equals(savedImports) == false) {
+			return null;
+		}
+		if (abox.getOntologyID().equals(savedOntologyID) == false) {
+			return null;
+		}
+		Set<OWLAxiom> derivedAxioms = new HashSet<>();
+		Set<OWLAnnotation> derivedAnnotations = new HashSet<>();
+		if (collectDerived(derivedChanges, derivedAxioms, derivedAnnotations) == false) {
+			return null;
+		}
+		ModelDelta delta = new ModelDelta();
+		for (Entry<OWLAxiom, Boolean> entry : axioms.entrySet()) {
+			if (entry.getValue().booleanValue()) {
+				delta.addedAxioms.add(entry.getKey());
+			}
+			else {
+				delta.removedAxioms.add(entry.getKey());
+			}
+		}
+		for (Entry<OWLAnnotation, Boolean> entry : annotations.entrySet()) {
+			if (entry.getValue().booleanValue()) {
+				delta.addedAnnotations.add(entry.getKey());
+			}
+			else {
+				delta.removedAnnotations.add(entry.getKey());
+			}
+		}
+		diff(derivedAxioms, savedDerivedAxioms, delta.addedAxioms, delta.removedAxioms);
+		diff(derivedAnnotations, savedDerivedAnnotations, delta.addedAnnotations, delta.removedAnnotations);
+		return delta;
+	}
+
+	private static <T> void diff(Set<T> current, Set<T> saved, Set<T> added, Set<T> removed) {
+		for (T t : current) {
+			if (saved.contains(t) == false && removed.remove(t) == false) {
+				added.add(t);
+			}
+		}
+		for (T t : saved) {
+			if (current.contains(t) == false && added.remove(t) == false) {
+				removed.add(t);
+			}
+		}
+	}
+
+	private static boolean collectDerived(List<OWLOntologyChange> derivedChanges, Set<OWLAxiom> derivedAxioms, Set<OWLAnnotation> derivedAnnotations) {
+		if (derivedChanges != null) {
+			for (OWLOntologyChange change : derivedChanges) {
+				if (change instanceof AddAxiom) {
+					derivedAxioms.add(change.getAxiom());
+				}
+				else if (change instanceof AddOntologyAnnotation) {
+					derivedAnnotations.add(((AddOntologyAnnotation) change).getAnnotation());
+				}
+				else {
+					// only additive pre-save handlers are supported for incremental saves
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Reset the tracker after the abox has been written to the store.
+	 *
+	 * @param abox
+	 * @param derivedChanges changes written in addition to the abox, may be null
+	 */
+	void markSaved(OWLOntology abox, List<OWLOntologyChange> derivedChanges) {
+		Set<OWLAxiom> derivedAxioms = new HashSet<>();
+		Set<OWLAnnotation> derivedAnnotations = new HashSet<>();
+		boolean supported = collectDerived(derivedChanges, derivedAxioms, derivedAnnotations);
+		markSaved(abox, derivedAxioms, derivedAnnotations);
+		requiresFullSave = !supported;
+	}
+
+	/**
+	 * Reset the tracker after the abox has been written to or read from the
+	 * store.
+	 *
+	 * @param abox
+	 * @param derivedAxioms axioms in the store, but not in the abox
+	 * @param derivedAnnotations ontology annotations in the store, but not in the abox
+	 */
+	void markSaved(OWLOntology abox, Set<OWLAxiom> derivedAxioms, Set<OWLAnnotation> derivedAnnotations) {
+		axioms.clear();
+		annotations.clear();
+		savedImports = new HashSet<>(abox.getImportsDeclarations());
+		savedOntologyID = abox.getOntologyID();
+		savedDerivedAxioms = derivedAxioms;
+		savedDerivedAnnotations = derivedAnnotations;
+		requiresFullSave = false;
+	}
+
+	/**
+	 * Net changes between the stored and the in-memory version of a model.
+	 */
+	static final class ModelDelta {
+
+		final Set<OWLAxiom> addedAxioms = new HashSet<>();
+		final Set<OWLAxiom> removedAxioms = new HashSet<>();
+		final Set<OWLAnnotation> addedAnnotations = new HashSet<>();
+		final Set<OWLAnnotation> removedAnnotations = new HashSet<>();
+
+		boolean isEmpty() {
+			return addedAxioms.isEmpty() && removedAxioms.isEmpty()
+					&& addedAnnotations.isEmpty() && removedAnnotations.isEmpty();
+		}
+	}
+}
@@ -3,6 +3,10 @@ package org.geneontology.minerva;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.log4j.Logger;
 import org.semanticweb.owlapi.model.AddImport;
@@ -22,10 +26,29 @@ public class ModelContainer {
 
 	private final IRI modelId;
 	private OWLOntology aboxOntology = null;
-	private boolean aboxModified = false;
+	private volatile boolean aboxModified = false;
 	private OWLOntology tboxOntology = null;
+	private final ModelChangeTracker changeTracker = new ModelChangeTracker();
 	
 	private final List<ModelChangeListener> listeners = new CopyOnWriteArrayList<>();
+	// number of open batches, delays the asynchronous listeners
+	private final AtomicInteger batches = new AtomicInteger(0);
+
+	/*
+	 * Guards the abox: rendering, export and reasoning share the read lock,
+	 * all changes require the write lock. The read lock can not be upgraded.
+	 * Lock order: model lock first, then the undo buffers.
+	 */
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	// serializes the saves of the model, taken before the model lock
+	private final ReentrantLock saveLock = new ReentrantLock();
+
+	// incremented with each change of the abox, guarded by the write lock
+	private volatile long version = 0;
+	// snapshot of the current version, created on request
+	private volatile ModelSnapshot snapshot = null;
+	// set by dispose, e.g. after an eviction from the model cache
+	private volatile boolean disposed = false;
 
 	/**
 	 * The container is seeded with a tbox (i.e. ontology). An abox will be created
@@ -106,6 +129,7 @@ public class ModelContainer {
 	}
 
 	public void dispose() {
+		disposed = true;
 		final OWLOntologyManager m = getOWLOntologyManager();
 		if (aboxOntology != null) {
 			m.removeOntology(aboxOntology);
@@ -117,6 +141,13 @@ public class ModelContainer {
 		listeners.clear();
 	}
 
+	/**
+	 * @return true, if the container was disposed and must not be used anymore
+	 */
+	public boolean isDisposed() {
+		return disposed;
+	}
+
 	public OWLOntology getTboxOntology() {
 		return tboxOntology;
 	}
@@ -125,6 +156,57 @@ public class ModelContainer {
 		return aboxOntology;
 	}
 
+	/**
+	 * @return lock for read only access to the abox
+	 */
+	public Lock getReadLock() {
+		return lock.readLock();
+	}
+
+	/**
+	 * @return lock for changes of the abox
+	 */
+	public Lock getWriteLock() {
+		return lock.writeLock();
+	}
+
+	Lock getSaveLock() {
+		return saveLock;
+	}
+
+	/**
+	 * @return version of the abox, changes with every modification
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Get an immutable snapshot of the current abox. The snapshot is shared
+	 * by all readers of the same version, a new snapshot is only created for
+	 * the first request after a change.
+	 * 
+	 * @return snapshot
+	 */
+	public ModelSnapshot getSnapshot() {
+		ModelSnapshot current = snapshot;
+		if (current != null && current.getVersion() == version) {
+			return current;
+		}
+		final Lock readLock = lock.readLock();
+		readLock.lock();
+		try {
+			current = snapshot;
+			if (current == null || current.getVersion() != version) {
+				current = ModelSnapshot.capture(modelId, version, aboxOntology);
+				snapshot = current;
+			}
+			return current;
+		} finally {
+			readLock.unlock();
+		}
+	}
+
 	public static interface ModelChangeListener {
 		
 		public void handleChange(List<OWLOntologyChange> changes);
@@ -132,21 +214,112 @@ public class ModelContainer {
 		public void dispose();
 	}
 	
+	/**
+	 * Register a listener, which is called synchronously for each change,
+	 * while the caller holds the write lock of the model.
+	 * 
+	 * @param listener
+	 */
 	public void registerListener(ModelChangeListener listener) {
 		if (listener != null) {
 			listeners.add(listener);
 		}
 	}
 	
+	/**
+	 * Register a listener, which is called on a background thread without any
+	 * lock of the model. Changes within the window or within a batch, see
+	 * {@link #beginBatch()}, are delivered as a single list.
+	 * 
+	 * @param listener
+	 * @param windowMillis time to wait for further changes before a delivery
+	 */
+	public void registerAsyncListener(ModelChangeListener listener, long windowMillis) {
+		if (listener != null) {
+			listeners.add(new CoalescingModelChangeListener(this, listener, windowMillis));
+		}
+	}
+	
+	/**
+	 * Remove a synchronous or asynchronous listener. Already collected
+	 * changes may still be delivered to an asynchronous listener.
+	 * 
+	 * @param listener
+	 */
 	public void unRegisterListener(ModelChangeListener listener) {
 		if (listener != null) {
-			listeners.remove(listener);
+			for (ModelChangeListener registered : listeners) {
+				if (registered == listener || (registered instanceof CoalescingModelChangeListener 
+						&& ((CoalescingModelChangeListener) registered).getDelegate() == listener)) {
+					listeners.remove(registered);
+				}
+			}
 		}
 	}
 	
+	/**
+	 * Start a batch of changes, the asynchronous listeners receive all changes
+	 * of the batch in one event after {@link #endBatch()}. Batches may overlap.
+	 */
+	public void beginBatch() {
+		batches.incrementAndGet();
+	}
+	
+	/**
+	 * Start a batch, unless the container has been disposed, e.g. evicted
+	 * from the {@link ModelCache}. An open batch pins the container in the
+	 * cache, so a container returned by a lookup may be disposed before this
+	 * call, but not after it succeeded.
+	 *
+	 * @return true, if the batch was started; false, if the container is disposed
+	 */
+	public boolean tryBeginBatch() {
+		batches.incrementAndGet();
+		// an eviction, which did not see the batch, holds the write lock
+		// until the container is disposed
+		Lock readLock = getReadLock();
+		readLock.lock();
+		readLock.unlock();
+		if (disposed) {
+			batches.decrementAndGet();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * End a batch started with {@link #beginBatch()}.
+	 */
+	public void endBatch() {
+		if (batches.decrementAndGet() == 0) {
+			for (ModelChangeListener listener : listeners) {
+				if (listener instanceof CoalescingModelChangeListener) {
+					((CoalescingModelChangeListener) listener).flush();
+				}
+			}
+		}
+	}
+	
+	boolean isInBatch() {
+		return batches.get() > 0;
+	}
+	
+	/**
+	 * Apply the changes, requires the write lock of the model.
+	 * 
+	 * @param changes
+	 * @return changes
+	 * @throws IllegalStateException if the container was disposed, e.g. evicted
+	 * while the caller waited for the write lock
+	 */
 	public List<OWLOntologyChange> applyChanges(List<? extends OWLOntologyChange> changes) {
+		if (disposed) {
+			throw new IllegalStateException("Model was disposed, it has to be re-loaded before a change: "+modelId);
+		}
+		List<OWLOntologyChange> effectiveChanges = ModelChangeTracker.getEffectiveChanges(aboxOntology, changes);
 		ChangeApplied applied = getOWLOntologyManager().applyChanges(changes);
 		if (applied == ChangeApplied.SUCCESSFULLY) {
+			changeTracker.record(effectiveChanges);
 			List<OWLOntologyChange> relevantChanges = new ArrayList<>();
 			for (OWLOntologyChange change : changes) {
 				if (aboxOntology.equals(change.getOntology())) {
@@ -155,6 +328,9 @@ public class ModelContainer {
 				}
 			}
 			if (relevantChanges.isEmpty() == false) {
+				version += 1;
+				// release the outdated copy
+				snapshot = null;
 				for(ModelChangeListener listener : listeners) {
 					listener.handleChange(relevantChanges);
 				}
@@ -170,4 +346,11 @@ public class ModelContainer {
 	void setAboxModified(boolean modified) {
 		aboxModified = modified;
 	}
+
+	/**
+	 * @return tracker for the changes since the last save
+	 */
+	ModelChangeTracker getChangeTracker() {
+		return changeTracker;
+	}
 }
@@ -0,0 +1,30 @@
+package org.geneontology.minerva;
+
+/**
+ * File formats for exported models.
+ */
+public enum ModelExportFormat {
+
+	/**
+	 * Turtle text files
+	 */
+	turtle(".ttl"),
+
+	/**
+	 * Binary model snapshots, see {@link ModelSnapshotWriter}
+	 */
+	snapshot(ModelSnapshotWriter.FILE_SUFFIX);
+
+	private final String fileSuffix;
+
+	private ModelExportFormat(String fileSuffix) {
+		this.fileSuffix = fileSuffix;
+	}
+
+	/**
+	 * @return the file suffix, including the dot
+	 */
+	public String getFileSuffix() {
+		return fileSuffix;
+	}
+}
@@ -0,0 +1,222 @@
+package org.geneontology.minerva;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.Logger;
+import org.semanticweb.owlapi.model.IRI;
+
+/**
+ * Export all stored models to files in the export format of the manager,
+ * Turtle or model snapshots. The models are exported in
+ * parallel, each export uses its own read-only connection. Files are written
+ * to a temporary file and atomically moved to the target.<br>
+ * <br>
+ * In incremental mode, only models whose stored content changed since the
+ * last export are written. The content hashes of the last export are kept in
+ * the file {@value #HASHES_FILE_NAME} in the export folder.
+ */
+public class ModelExporter {
+
+	private static final Logger LOG = Logger.getLogger(ModelExporter.class);
+
+	static final String HASHES_FILE_NAME = "minerva-export-hashes.properties";
+
+	private final BlazegraphMolecularModelManager<?> m3;
+	private final int threads;
+	private boolean incremental = false;
+
+	/**
+	 * @param m3
+	 * @param threads number of parallel exports
+	 */
+	public ModelExporter(BlazegraphMolecularModelManager<?> m3, int threads) {
+		this.m3 = m3;
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * @param incremental if true, skip models which are unchanged since the last export
+	 */
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+
+	public boolean isIncremental() {
+		return incremental;
+	}
+
+	/**
+	 * Export all stored models into the folder. Errors for single models are
+	 * logged and reported in the result, they do not stop the export.
+	 *
+	 * @param folder
+	 * @return statistics
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public ExportStatistics exportAll(final File folder) throws IOException, InterruptedException {
+		FileUtils.forceMkdir(folder);
+		final File hashesFile = new File(folder, HASHES_FILE_NAME);
+		final Properties previousHashes = incremental ? readHashes(hashesFile) : new Properties();
+		final Map<String, String> hashes = new ConcurrentHashMap<>();
+		final Set<IRI> modelIds = m3.getStoredModelIds();
+		final ExportStatistics statistics = new ExportStatistics(modelIds.size());
+		final ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Void>> futures = new ArrayList<>(modelIds.size());
+			for (final IRI modelId : modelIds) {
+				futures.add(pool.submit(new Callable<Void>() {
+
+					@Override
+					public Void call() throws Exception {
+						final String key = modelId.toString();
+						final String previousHash = previousHashes.getProperty(key);
+						try {
+							String hash = m3.dumpStoredModel(modelId, folder, previousHash);
+							hashes.put(key, hash);
+							if (hash.equals(previousHash)) {
+								statistics.skipped.incrementAndGet();
+							}
+							else {
+								statistics.written.incrementAndGet();
+							}
+						} catch (Exception e) {
+							LOG.error("Could not export model: "+modelId, e);
+							statistics.addFailed(modelId);
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					// errors are handled in the task
+					LOG.error("Unexpected error during export", e);
+				}
+			}
+		}
+		finally {
+			pool.shutdownNow();
+		}
+		writeHashes(hashes, hashesFile);
+		statistics.finish();
+		LOG.info("Finished export: "+statistics);
+		return statistics;
+	}
+
+	private static Properties readHashes(File hashesFile) {
+		Properties hashes = new Properties();
+		if (hashesFile.isFile()) {
+			try {
+				InputStream in = new FileInputStream(hashesFile);
+				try {
+					hashes.load(in);
+				} finally {
+					in.close();
+				}
+			} catch (IOException e) {
+				// a full export re-creates the file
+				LOG.warn("Could not read hashes of the last export: "+hashesFile, e);
+				hashes.clear();
+			}
+		}
+		return hashes;
+	}
+
+	private static void writeHashes(Map<String, String> hashes, File hashesFile) throws IOException {
+		Properties properties = new Properties();
+		properties.putAll(hashes);
+		File tempFile = File.createTempFile(".export-", ".tmp", hashesFile.getParentFile());
+		try {
+			OutputStream out = new FileOutputStream(tempFile);
+			try {
+				properties.store(out, "Content hashes of the exported models");
+			} finally {
+				out.close();
+			}
+			ModelStores.moveAtomically(tempFile, hashesFile);
+		} finally {
+			FileUtils.deleteQuietly(tempFile);
+		}
+	}
+
+	/**
+	 * Counts and duration of an export.
+	 */
+	public static class ExportStatistics {
+
+		private final int total;
+		private final long start = System.currentTimeMillis();
+		private volatile long end = -1;
+		private final AtomicInteger written = new AtomicInteger(0);
+		private final AtomicInteger skipped = new AtomicInteger(0);
+		private final List<IRI> failed = Collections.synchronizedList(new ArrayList<IRI>());
+
+		ExportStatistics(int total) {
+			this.total = total;
+		}
+
+		void addFailed(IRI modelId) {
+			failed.add(modelId);
+		}
+
+		void finish() {
+			end = System.currentTimeMillis();
+		}
+
+		public int getTotal() {
+			return total;
+		}
+
+		/**
+		 * @return number of written model files
+		 */
+		public int getWritten() {
+			return written.get();
+		}
+
+		/**
+		 * @return number of unchanged models, only for incremental exports
+		 */
+		public int getSkipped() {
+			return skipped.get();
+		}
+
+		public List<IRI> getFailed() {
+			synchronized (failed) {
+				return new ArrayList<>(failed);
+			}
+		}
+
+		public long getDurationMillis() {
+			return (end < 0 ? System.currentTimeMillis() : end) - start;
+		}
+
+		@Override
+		public String toString() {
+			return "ExportStatistics [total=" + total + ", written=" + written + ", skipped=" + skipped
+					+ ", failed=" + failed.size() + ", duration=" + getDurationMillis() + " ms]";
+		}
+	}
+}
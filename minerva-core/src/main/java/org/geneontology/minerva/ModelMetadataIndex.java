@@ -0,0 +1,144 @@
+package org.geneontology.minerva;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.openrdf.model.Statement;
+import org.openrdf.model.vocabulary.OWL;
+import org.openrdf.model.vocabulary.RDF;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLAnnotationValue;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLLiteral;
+
+/**
+ * In-memory index of the model annotations (title, state, contributors,
+ * dates, etc.) for all stored models. The index is built once from the
+ * {@link ModelStore} and then updated after each save, import and delete, so that
+ * reading the metadata for all models does not require a query over the
+ * whole store.<br>
+ * <br>
+ * The annotations are normalized in the same way as they were read by the
+ * original SPARQL query: all values are plain literals.
+ */
+final class ModelMetadataIndex {
+
+	static final String JSON_MODEL = "http://geneontology.org/lego/json-model";
+	private static final Set<String> EXCLUDED = new HashSet<>(Arrays.asList(RDF.TYPE.stringValue(), OWL.IMPORTS.stringValue()));
+	private static final OWLDataFactory FACTORY = OWLManager.getOWLDataFactory();
+
+	private final ConcurrentMap<IRI, Set<OWLAnnotation>> annotations = new ConcurrentHashMap<>();
+
+	/**
+	 * Replace the current content with the annotations read from the store.
+	 *
+	 * @param all annotations of all stored models
+	 */
+	void rebuild(Map<IRI, Set<OWLAnnotation>> all) {
+		annotations.clear();
+		for (Map.Entry<IRI, Set<OWLAnnotation>> entry : all.entrySet()) {
+			put(entry.getKey(), new HashSet<>(entry.getValue()));
+		}
+	}
+
+	static OWLAnnotation createAnnotation(String property, String value) {
+		return FACTORY.getOWLAnnotation(FACTORY.getOWLAnnotationProperty(IRI.create(property)), FACTORY.getOWLLiteral(value));
+	}
+
+	/**
+	 * @param property
+	 * @return true, if the property of an ontology triple is not part of the model metadata
+	 */
+	static boolean isExcluded(String property) {
+		return JSON_MODEL.equals(property) || EXCLUDED.contains(property);
+	}
+
+	/**
+	 * Update the index with the ontology annotations written for a model.
+	 *
+	 * @param modelId
+	 * @param ontologyAnnotations
+	 */
+	void update(IRI modelId, Collection<OWLAnnotation> ontologyAnnotations) {
+		Set<OWLAnnotation> normalized = new HashSet<>();
+		for (OWLAnnotation annotation : ontologyAnnotations) {
+			IRI property = annotation.getProperty().getIRI();
+			if (JSON_MODEL.equals(property.toString())) {
+				continue;
+			}
+			OWLAnnotationValue value = annotation.getValue();
+			String stringValue;
+			if (value instanceof OWLLiteral) {
+				stringValue = ((OWLLiteral) value).getLiteral();
+			}
+			else if (value instanceof IRI) {
+				stringValue = value.toString();
+			}
+			else {
+				// anonymous individuals are not stored as model metadata
+				continue;
+			}
+			normalized.add(createAnnotation(property.toString(), stringValue));
+		}
+		put(modelId, normalized);
+	}
+
+	/**
+	 * Update the index with the statements of an imported model.
+	 *
+	 * @param modelId
+	 * @param statements
+	 */
+	void updateFromStatements(IRI modelId, Collection<Statement> statements) {
+		put(modelId, getModelAnnotations(modelId, statements));
+	}
+
+	/**
+	 * Extract the model metadata from the triples of a model.
+	 *
+	 * @param modelId
+	 * @param statements
+	 * @return annotations
+	 */
+	static Set<OWLAnnotation> getModelAnnotations(IRI modelId, Collection<Statement> statements) {
+		final String subject = modelId.toString();
+		Set<OWLAnnotation> normalized = new HashSet<>();
+		for (Statement statement : statements) {
+			if (subject.equals(statement.getSubject().stringValue()) == false
+					|| isExcluded(statement.getPredicate().stringValue())) {
+				continue;
+			}
+			normalized.add(createAnnotation(statement.getPredicate().stringValue(), statement.getObject().stringValue()));
+		}
+		return normalized;
+	}
+
+	private void put(IRI modelId, Set<OWLAnnotation> modelAnnotations) {
+		if (modelAnnotations.isEmpty()) {
+			annotations.remove(modelId);
+		}
+		else {
+			annotations.put(modelId, Collections.unmodifiableSet(modelAnnotations));
+		}
+	}
+
+	void remove(IRI modelId) {
+		annotations.remove(modelId);
+	}
+
+	/**
+	 * @return snapshot of the annotations for all stored models
+	 */
+	Map<IRI, Set<OWLAnnotation>> getAll() {
+		return new HashMap<>(annotations);
+	}
+}
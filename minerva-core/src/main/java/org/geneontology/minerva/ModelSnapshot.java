@@ -0,0 +1,127 @@
+package org.geneontology.minerva;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.AddAxiom;
+import org.semanticweb.owlapi.model.AddImport;
+import org.semanticweb.owlapi.model.AddOntologyAnnotation;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLImportsDeclaration;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyID;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+/**
+ * Immutable copy of the abox of a model at a given version, see
+ * {@link ModelContainer#getSnapshot()}. Long running readers, like exports
+ * and reasoners, work on a snapshot without holding the lock of the model.
+ */
+public final class ModelSnapshot {
+
+	private final IRI modelId;
+	private final long version;
+	private final OWLOntologyID ontologyID;
+	private final Set<OWLImportsDeclaration> imports;
+	private final Set<OWLAxiom> axioms;
+	private final Set<OWLAnnotation> annotations;
+
+	private ModelSnapshot(IRI modelId, long version, OWLOntology abox) {
+		this.modelId = modelId;
+		this.version = version;
+		this.ontologyID = abox.getOntologyID();
+		this.imports = Collections.unmodifiableSet(new HashSet<>(abox.getImportsDeclarations()));
+		this.axioms = Collections.unmodifiableSet(new HashSet<>(abox.getAxioms()));
+		this.annotations = Collections.unmodifiableSet(new HashSet<>(abox.getAnnotations()));
+	}
+
+	/**
+	 * Copy the current content of the abox, the caller must hold a lock of
+	 * the model.
+	 *
+	 * @param modelId
+	 * @param version
+	 * @param abox
+	 * @return snapshot
+	 */
+	static ModelSnapshot capture(IRI modelId, long version, OWLOntology abox) {
+		return new ModelSnapshot(modelId, version, abox);
+	}
+
+	public IRI getModelId() {
+		return modelId;
+	}
+
+	/**
+	 * @return version of the model, see {@link ModelContainer#getVersion()}
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	public OWLOntologyID getOntologyID() {
+		return ontologyID;
+	}
+
+	public Set<OWLImportsDeclaration> getImportsDeclarations() {
+		return imports;
+	}
+
+	public Set<OWLAxiom> getAxioms() {
+		return axioms;
+	}
+
+	public Set<OWLAnnotation> getAnnotations() {
+		return annotations;
+	}
+
+	/**
+	 * Create a stand-alone ontology with the content of the snapshot in a new
+	 * manager. It has the id of the model, the imports are declared but not
+	 * loaded. Use this for rendering the model.
+	 *
+	 * @return ontology
+	 * @throws OWLOntologyCreationException
+	 */
+	public OWLOntology createOntology() throws OWLOntologyCreationException {
+		OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+		return fill(manager.createOntology(ontologyID));
+	}
+
+	/**
+	 * Create an anonymous ontology with the content of the snapshot in the
+	 * given manager. The imports are resolved with the ontologies of the
+	 * manager, i.e. the tbox. Use this for reasoning. The caller is
+	 * responsible for removing the ontology from the manager.
+	 *
+	 * @param manager
+	 * @return ontology
+	 * @throws OWLOntologyCreationException
+	 */
+	public OWLOntology createOntology(OWLOntologyManager manager) throws OWLOntologyCreationException {
+		return fill(manager.createOntology());
+	}
+
+	private OWLOntology fill(OWLOntology ontology) {
+		List<OWLOntologyChange> changes = new ArrayList<>(imports.size() + axioms.size() + annotations.size());
+		for (OWLImportsDeclaration declaration : imports) {
+			changes.add(new AddImport(ontology, declaration));
+		}
+		for (OWLAxiom axiom : axioms) {
+			changes.add(new AddAxiom(ontology, axiom));
+		}
+		for (OWLAnnotation annotation : annotations) {
+			changes.add(new AddOntologyAnnotation(ontology, annotation));
+		}
+		ontology.getOWLOntologyManager().applyChanges(changes);
+		return ontology;
+	}
+}
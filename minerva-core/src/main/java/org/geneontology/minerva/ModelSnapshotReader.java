@@ -0,0 +1,216 @@
+package org.geneontology.minerva;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.model.vocabulary.OWL;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.rio.RDFHandler;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.helpers.StatementCollector;
+import org.semanticweb.owlapi.model.IRI;
+
+/**
+ * Reader for the binary model snapshot format, see
+ * {@link ModelSnapshotWriter} for the layout.
+ */
+public class ModelSnapshotReader {
+
+	private final DataInputStream in;
+	private final ValueFactory factory;
+	private final List<Value> dictionary = new ArrayList<>();
+
+	/**
+	 * @param in
+	 */
+	public ModelSnapshotReader(InputStream in) {
+		this(in, ValueFactoryImpl.getInstance());
+	}
+
+	/**
+	 * @param in
+	 * @param factory factory for the values of the triples
+	 */
+	public ModelSnapshotReader(InputStream in, ValueFactory factory) {
+		this.in = new DataInputStream(in);
+		this.factory = factory;
+	}
+
+	/**
+	 * Read all triples of the snapshot and report them to the handler,
+	 * including the start and end events.
+	 *
+	 * @param handler
+	 * @throws IOException
+	 * @throws RDFHandlerException
+	 */
+	public void read(RDFHandler handler) throws IOException, RDFHandlerException {
+		byte[] magic = new byte[ModelSnapshotWriter.MAGIC.length];
+		in.readFully(magic);
+		if (Arrays.equals(ModelSnapshotWriter.MAGIC, magic) == false) {
+			throw new IOException("Not a model snapshot");
+		}
+		int version = readNumber();
+		if (version != ModelSnapshotWriter.VERSION) {
+			throw new IOException("Unsupported model snapshot version: "+version);
+		}
+		handler.startRDF();
+		while (true) {
+			int record = readNumber();
+			if (record == ModelSnapshotWriter.RECORD_END) {
+				break;
+			}
+			if (record != ModelSnapshotWriter.RECORD_TRIPLE) {
+				throw new IOException("Unknown record type in model snapshot: "+record);
+			}
+			Value subject = readValue();
+			Value predicate = readValue();
+			Value object = readValue();
+			if (subject instanceof Resource == false || predicate instanceof URI == false) {
+				throw new IOException("Invalid triple in model snapshot: "+subject+" "+predicate+" "+object);
+			}
+			handler.handleStatement(factory.createStatement((Resource) subject, (URI) predicate, object));
+		}
+		handler.endRDF();
+	}
+
+	private Value readValue() throws IOException {
+		int ref = readNumber();
+		if (ref > 0) {
+			if (ref > dictionary.size()) {
+				throw new IOException("Unknown value reference in model snapshot: "+ref);
+			}
+			return dictionary.get(ref - 1);
+		}
+		final Value value;
+		int type = in.readUnsignedByte();
+		switch (type) {
+		case ModelSnapshotWriter.TYPE_URI:
+			value = factory.createURI(readString());
+			break;
+		case ModelSnapshotWriter.TYPE_BNODE:
+			value = factory.createBNode(readString());
+			break;
+		case ModelSnapshotWriter.TYPE_PLAIN_LITERAL:
+			value = factory.createLiteral(readString());
+			break;
+		case ModelSnapshotWriter.TYPE_LANGUAGE_LITERAL:
+			String label = readString();
+			value = factory.createLiteral(label, readString());
+			break;
+		case ModelSnapshotWriter.TYPE_TYPED_LITERAL:
+			String typedLabel = readString();
+			Value datatype = readValue();
+			if (datatype instanceof URI == false) {
+				throw new IOException("Invalid datatype in model snapshot: "+datatype);
+			}
+			value = factory.createLiteral(typedLabel, (URI) datatype);
+			break;
+		default:
+			throw new IOException("Unknown value type in model snapshot: "+type);
+		}
+		// same order as in the writer, nested datatypes are added first
+		dictionary.add(value);
+		return value;
+	}
+
+	private String readString() throws IOException {
+		byte[] bytes = new byte[readNumber()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private int readNumber() throws IOException {
+		int n = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = in.read();
+			if (b < 0) {
+				throw new EOFException("Unexpected end of model snapshot");
+			}
+			n |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return n;
+			}
+		}
+		throw new IOException("Invalid number in model snapshot");
+	}
+
+	/**
+	 * @param in
+	 * @return all triples of the snapshot
+	 * @throws IOException
+	 */
+	public static Collection<Statement> read(InputStream in) throws IOException {
+		StatementCollector collector = new StatementCollector();
+		try {
+			new ModelSnapshotReader(in).read(collector);
+		} catch (RDFHandlerException e) {
+			throw new IOException(e);
+		}
+		return collector.getStatements();
+	}
+
+	/**
+	 * @param file
+	 * @return all triples of the snapshot file
+	 * @throws IOException
+	 */
+	public static Collection<Statement> read(File file) throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try {
+			return read(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Convert a snapshot file into a Turtle model file.
+	 *
+	 * @param snapshotFile
+	 * @param turtleFile
+	 * @return number of converted triples
+	 * @throws IOException
+	 */
+	public static long convertToTurtle(File snapshotFile, File turtleFile) throws IOException {
+		final Collection<Statement> statements = read(snapshotFile);
+		IRI modelId = null;
+		for (Statement statement : statements) {
+			if (RDF.TYPE.equals(statement.getPredicate()) && OWL.ONTOLOGY.equals(statement.getObject())) {
+				modelId = IRI.create(statement.getSubject().stringValue());
+				break;
+			}
+		}
+		if (modelId == null) {
+			throw new IOException("No ontology IRI in model snapshot: "+snapshotFile);
+		}
+		ModelStores.writeModel(modelId, turtleFile.getAbsoluteFile(), ModelExportFormat.turtle, new ModelStores.TripleSource() {
+
+			@Override
+			public void export(RDFHandler handler) throws Exception {
+				handler.startRDF();
+				for (Statement statement : statements) {
+					handler.handleStatement(statement);
+				}
+				handler.endRDF();
+			}
+		});
+		return statements.size();
+	}
+}
@@ -0,0 +1,233 @@
+package org.geneontology.minerva;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.openrdf.model.BNode;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.RDFParseException;
+import org.openrdf.rio.RDFParser;
+import org.openrdf.rio.Rio;
+import org.openrdf.rio.helpers.RDFHandlerBase;
+
+/**
+ * Writer for the binary model snapshot format. A snapshot contains the
+ * triples of a single model, dictionary encoded: each IRI, blank node and
+ * literal is written once, all following occurrences refer to it by its
+ * number. The dictionary is built while writing, so the triples can be
+ * streamed directly from the store.<br>
+ * <br>
+ * Layout, all numbers as unsigned variable length integers:
+ * <pre>
+ * header:    magic 'MSNP', version
+ * triple:    RECORD_TRIPLE, subject, predicate, object
+ * end:       RECORD_END
+ * value:     id+1 of a known value or 0, followed by the definition
+ *            (value type and UTF-8 strings, typed literals refer to their
+ *            datatype as value)
+ * </pre>
+ * Use the {@link ModelSnapshotReader} to read a snapshot.
+ */
+public class ModelSnapshotWriter extends RDFHandlerBase {
+
+	/**
+	 * File suffix for model snapshots.
+	 */
+	public static final String FILE_SUFFIX = ".msnap";
+
+	static final byte[] MAGIC = {'M', 'S', 'N', 'P'};
+	static final int VERSION = 1;
+
+	static final int RECORD_END = 0;
+	static final int RECORD_TRIPLE = 1;
+
+	static final int TYPE_URI = 1;
+	static final int TYPE_BNODE = 2;
+	static final int TYPE_PLAIN_LITERAL = 3;
+	static final int TYPE_LANGUAGE_LITERAL = 4;
+	static final int TYPE_TYPED_LITERAL = 5;
+
+	private final DataOutputStream out;
+	private final Map<Value, Integer> dictionary = new HashMap<>();
+	private long count = 0;
+
+	/**
+	 * The caller is responsible for closing the stream, after
+	 * {@link #endRDF()} has been called.
+	 *
+	 * @param out
+	 */
+	public ModelSnapshotWriter(OutputStream out) {
+		this.out = new DataOutputStream(out);
+	}
+
+	@Override
+	public void startRDF() throws RDFHandlerException {
+		try {
+			out.write(MAGIC);
+			writeNumber(VERSION);
+		} catch (IOException e) {
+			throw new RDFHandlerException(e);
+		}
+	}
+
+	@Override
+	public void handleStatement(Statement statement) throws RDFHandlerException {
+		try {
+			writeNumber(RECORD_TRIPLE);
+			writeValue(statement.getSubject());
+			writeValue(statement.getPredicate());
+			writeValue(statement.getObject());
+			count += 1;
+		} catch (IOException e) {
+			throw new RDFHandlerException(e);
+		}
+	}
+
+	@Override
+	public void endRDF() throws RDFHandlerException {
+		try {
+			writeNumber(RECORD_END);
+			out.flush();
+		} catch (IOException e) {
+			throw new RDFHandlerException(e);
+		}
+	}
+
+	/**
+	 * @return number of written triples
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return number of distinct values in the dictionary
+	 */
+	public int getDictionarySize() {
+		return dictionary.size();
+	}
+
+	private void writeValue(Value value) throws IOException {
+		Integer id = dictionary.get(value);
+		if (id != null) {
+			writeNumber(id.intValue() + 1);
+			return;
+		}
+		writeNumber(0);
+		if (value instanceof URI) {
+			out.writeByte(TYPE_URI);
+			writeString(value.stringValue());
+		}
+		else if (value instanceof BNode) {
+			out.writeByte(TYPE_BNODE);
+			writeString(((BNode) value).getID());
+		}
+		else {
+			Literal literal = (Literal) value;
+			if (literal.getLanguage() != null) {
+				out.writeByte(TYPE_LANGUAGE_LITERAL);
+				writeString(literal.getLabel());
+				writeString(literal.getLanguage());
+			}
+			else if (literal.getDatatype() != null) {
+				out.writeByte(TYPE_TYPED_LITERAL);
+				writeString(literal.getLabel());
+				writeValue(literal.getDatatype());
+			}
+			else {
+				out.writeByte(TYPE_PLAIN_LITERAL);
+				writeString(literal.getLabel());
+			}
+		}
+		// the reader assigns the ids in the same order
+		dictionary.put(value, dictionary.size());
+	}
+
+	private void writeString(String s) throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		writeNumber(bytes.length);
+		out.write(bytes);
+	}
+
+	private void writeNumber(int n) throws IOException {
+		while ((n & ~0x7F) != 0) {
+			out.writeByte((n & 0x7F) | 0x80);
+			n >>>= 7;
+		}
+		out.writeByte(n);
+	}
+
+	/**
+	 * Write the triples as snapshot.
+	 *
+	 * @param statements
+	 * @param out
+	 * @throws IOException
+	 */
+	public static void write(Collection<Statement> statements, OutputStream out) throws IOException {
+		ModelSnapshotWriter writer = new ModelSnapshotWriter(out);
+		try {
+			writer.startRDF();
+			for (Statement statement : statements) {
+				writer.handleStatement(statement);
+			}
+			writer.endRDF();
+		} catch (RDFHandlerException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Convert a Turtle model file into a snapshot file.
+	 *
+	 * @param turtleFile
+	 * @param snapshotFile
+	 * @return number of converted triples
+	 * @throws IOException
+	 */
+	public static long convertTurtle(File turtleFile, File snapshotFile) throws IOException {
+		File tempFile = File.createTempFile(".snapshot-", ".tmp", snapshotFile.getAbsoluteFile().getParentFile());
+		try {
+			ModelSnapshotWriter writer;
+			InputStream in = new BufferedInputStream(new FileInputStream(turtleFile));
+			try {
+				OutputStream out = new BufferedOutputStream(new FileOutputStream(tempFile));
+				try {
+					writer = new ModelSnapshotWriter(out);
+					RDFParser parser = Rio.createParser(RDFFormat.TURTLE);
+					parser.setRDFHandler(writer);
+					parser.parse(in, "");
+				} finally {
+					out.close();
+				}
+			} catch (RDFParseException | RDFHandlerException e) {
+				throw new IOException("Could not convert model file: "+turtleFile, e);
+			} finally {
+				in.close();
+			}
+			ModelStores.moveAtomically(tempFile, snapshotFile);
+			tempFile = null;
+			return writer.getCount();
+		} finally {
+			FileUtils.deleteQuietly(tempFile);
+		}
+	}
+}
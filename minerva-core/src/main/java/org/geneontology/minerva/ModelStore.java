@@ -0,0 +1,144 @@
+package org.geneontology.minerva;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+import org.openrdf.model.Statement;
+import org.openrdf.rio.RDFHandler;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+/**
+ * Persistence for the models of a {@link BlazegraphMolecularModelManager}.
+ * Each model is stored as the set of its RDF triples. Implementations keep a
+ * catalog of the stored model ids in memory.<br>
+ * <br>
+ * Available implementations:
+ * <ul>
+ * <li>{@link BlazegraphModelStore}: one named graph per model in a
+ * Blazegraph journal, supports SPARQL queries and incremental saves</li>
+ * <li>{@link FileModelStore}: one snapshot file per model in a folder, for
+ * small deployments and tests</li>
+ * </ul>
+ */
+public interface ModelStore {
+
+	/**
+	 * @return snapshot of the ids of all stored models
+	 */
+	public Set<IRI> getStoredModelIds();
+
+	/**
+	 * @param modelId
+	 * @return true, if there is a stored model for the id
+	 */
+	public boolean isStoredModel(IRI modelId);
+
+	/**
+	 * @param modelId
+	 * @return stored triples of the model or null, if there is no such model
+	 * @throws IOException
+	 */
+	public Collection<Statement> loadModel(IRI modelId) throws IOException;
+
+	/**
+	 * Stream the stored triples of the model to the handler, without a copy
+	 * of all triples in memory.
+	 *
+	 * @param modelId
+	 * @param handler
+	 * @return false, if there is no such model
+	 * @throws IOException
+	 */
+	public boolean loadModel(IRI modelId, RDFHandler handler) throws IOException;
+
+	/**
+	 * Replace the stored triples of the model with the triples of the
+	 * ontology.
+	 *
+	 * @param modelId
+	 * @param model
+	 * @return summary of the write
+	 * @throws IOException
+	 */
+	public SaveResult saveModel(IRI modelId, OWLOntology model) throws IOException;
+
+	/**
+	 * Replace the stored triples of the model with the given triples, no OWL
+	 * checks are performed.
+	 *
+	 * @param modelId
+	 * @param statements
+	 * @throws IOException
+	 */
+	public void importModel(IRI modelId, Collection<Statement> statements) throws IOException;
+
+	/**
+	 * @param modelId
+	 * @return true, if the model was stored
+	 * @throws IOException
+	 */
+	public boolean deleteModel(IRI modelId) throws IOException;
+
+	/**
+	 * Write the stored model as file, unless the content of the stored model
+	 * matches the hash of a previous export.
+	 *
+	 * @param modelId
+	 * @param targetFile
+	 * @param format
+	 * @param previousHash hash of the last export or null
+	 * @return hash of the stored content of the model
+	 * @throws IOException
+	 */
+	public String exportModel(IRI modelId, File targetFile, ModelExportFormat format, String previousHash) throws IOException;
+
+	/**
+	 * Read the ontology annotations of all stored models, all values as plain
+	 * literals. Used to build the metadata index at startup.
+	 *
+	 * @return map of model id to annotations
+	 * @throws IOException
+	 */
+	public Map<IRI, Set<OWLAnnotation>> readModelAnnotations() throws IOException;
+
+	/**
+	 * Finish all pending writes and release all resources.
+	 */
+	public void dispose();
+
+	/**
+	 * Summary of a model save.
+	 */
+	public static class SaveResult {
+
+		private final boolean incremental;
+		private final long added;
+		private final long removed;
+
+		public SaveResult(boolean incremental, long added, long removed) {
+			this.incremental = incremental;
+			this.added = added;
+			this.removed = removed;
+		}
+
+		/**
+		 * @return true, if only the changed triples were written
+		 */
+		public boolean isIncremental() {
+			return incremental;
+		}
+
+		public long getAdded() {
+			return added;
+		}
+
+		public long getRemoved() {
+			return removed;
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package org.geneontology.minerva;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.apache.commons.io.FileUtils;
+import org.openrdf.model.Statement;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.model.vocabulary.OWL;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFHandler;
+import org.openrdf.rio.RDFWriter;
+import org.openrdf.rio.Rio;
+import org.openrdf.rio.helpers.StatementCollector;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.rio.RioRenderer;
+
+/**
+ * Helper methods shared by the {@link ModelStore} implementations.
+ */
+final class ModelStores {
+
+	private ModelStores() {
+		// no instances
+	}
+
+	/**
+	 * Source of the triples for a Turtle export.
+	 */
+	static interface TripleSource {
+
+		/**
+		 * Report all triples of the model to the handler, including the
+		 * start and end events.
+		 *
+		 * @param handler
+		 * @throws Exception
+		 */
+		void export(RDFHandler handler) throws Exception;
+	}
+
+	/**
+	 * @param model
+	 * @return all triples of the model
+	 * @throws IOException
+	 */
+	static Collection<Statement> renderModel(OWLOntology model) throws IOException {
+		StatementCollector collector = new StatementCollector();
+		RioRenderer renderer = new RioRenderer(model, collector, null);
+		renderer.render();
+		return collector.getStatements();
+	}
+
+	/**
+	 * Write the model as file in the given format. The triples are written to
+	 * a temporary file next to the target, which then replaces the target
+	 * file.
+	 *
+	 * @param modelId
+	 * @param targetFile
+	 * @param format
+	 * @param source
+	 * @throws IOException
+	 */
+	static void writeModel(IRI modelId, File targetFile, ModelExportFormat format, TripleSource source) throws IOException {
+		File tempFile = File.createTempFile(".export-", ".tmp", targetFile.getParentFile());
+		try {
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(tempFile));
+			try {
+				if (format == ModelExportFormat.snapshot) {
+					source.export(new ModelSnapshotWriter(out));
+				}
+				else {
+					// Workaround for order dependence of RDF reading by OWL API
+					// Need to output ontology triple first until this bug is fixed:
+					// https://github.com/owlcs/owlapi/issues/574
+					ValueFactory factory = ValueFactoryImpl.getInstance();
+					Statement ontologyDeclaration = factory.createStatement(factory.createURI(modelId.toString()), RDF.TYPE, OWL.ONTOLOGY);
+					Rio.write(Collections.singleton(ontologyDeclaration), out, RDFFormat.TURTLE);
+					// end workaround
+					RDFWriter writer = Rio.createWriter(RDFFormat.TURTLE, out);
+					source.export(writer);
+				}
+			} catch (IOException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new IOException("Could not export model: "+modelId, e);
+			} finally {
+				out.close();
+			}
+			moveAtomically(tempFile, targetFile);
+			tempFile = null;
+		} finally {
+			// delete temp file, if it was not moved
+			FileUtils.deleteQuietly(tempFile);
+		}
+	}
+
+	/**
+	 * Replace the target file with the source file. Uses an atomic move, if
+	 * supported by the file system, so that readers never see a partially
+	 * written file.
+	 *
+	 * @param source
+	 * @param target
+	 * @throws IOException
+	 */
+	static void moveAtomically(File source, File target) throws IOException {
+		try {
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			// SHA-1 is required for every Java platform
+			throw new IllegalStateException(e);
+		}
+	}
+
+	static String toHex(MessageDigest digest) {
+		return new BigInteger(1, digest.digest()).toString(16);
+	}
+}
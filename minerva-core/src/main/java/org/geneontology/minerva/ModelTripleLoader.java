@@ -0,0 +1,396 @@
+package org.geneontology.minerva;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.impl.URIImpl;
+import org.openrdf.model.vocabulary.OWL;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.model.vocabulary.RDFS;
+import org.openrdf.model.vocabulary.XMLSchema;
+import org.semanticweb.owlapi.model.AddImport;
+import org.semanticweb.owlapi.model.AddOntologyAnnotation;
+import org.semanticweb.owlapi.model.EntityType;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLAnnotationProperty;
+import org.semanticweb.owlapi.model.OWLAnnotationValue;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLImportsDeclaration;
+import org.semanticweb.owlapi.model.OWLLiteral;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyLoaderConfiguration;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+/**
+ * Translate the triples of a stored model directly into OWL axioms. Minerva
+ * models only use a small set of axiom shapes: declarations, class
+ * assertions with named classes, object and data property assertions,
+ * annotation assertions, ontology annotations and imports. Axiom annotations
+ * are stored as reified owl:Axiom nodes.<br>
+ * <br>
+ * Any other structure (e.g., class expressions, anonymous individuals or
+ * nested annotations) is not supported. In this case {@link #createOntology(OWLOntologyManager)}
+ * returns null and the model has to be loaded with the generic RDF parser of
+ * the OWL-API.<br>
+ * <br>
+ * Usage: feed all statements via {@link #add(Statement)}, then call
+ * {@link #createOntology(OWLOntologyManager)}. Not thread safe.
+ */
+final class ModelTripleLoader {
+
+	private static final URI ANNOTATED_SOURCE = new URIImpl(OWL.NAMESPACE + "annotatedSource");
+	private static final URI ANNOTATED_PROPERTY = new URIImpl(OWL.NAMESPACE + "annotatedProperty");
+	private static final URI ANNOTATED_TARGET = new URIImpl(OWL.NAMESPACE + "annotatedTarget");
+	private static final URI AXIOM = new URIImpl(OWL.NAMESPACE + "Axiom");
+	private static final URI IMPORTS = new URIImpl(OWL.NAMESPACE + "imports");
+	private static final URI ONTOLOGY = new URIImpl(OWL.NAMESPACE + "Ontology");
+	private static final URI THING = new URIImpl(OWL.NAMESPACE + "Thing");
+
+	private static final Map<URI, EntityType<?>> DECLARATION_TYPES = new HashMap<>();
+	static {
+		DECLARATION_TYPES.put(new URIImpl(OWL.NAMESPACE + "Class"), EntityType.CLASS);
+		DECLARATION_TYPES.put(new URIImpl(OWL.NAMESPACE + "ObjectProperty"), EntityType.OBJECT_PROPERTY);
+		DECLARATION_TYPES.put(new URIImpl(OWL.NAMESPACE + "DatatypeProperty"), EntityType.DATA_PROPERTY);
+		DECLARATION_TYPES.put(new URIImpl(OWL.NAMESPACE + "AnnotationProperty"), EntityType.ANNOTATION_PROPERTY);
+		DECLARATION_TYPES.put(new URIImpl(OWL.NAMESPACE + "NamedIndividual"), EntityType.NAMED_INDIVIDUAL);
+		DECLARATION_TYPES.put(RDFS.DATATYPE, EntityType.DATATYPE);
+	}
+
+	private final List<Statement> groundStatements = new ArrayList<>();
+	private final Map<BNode, List<Statement>> nodes = new HashMap<>();
+	private String unsupported = null;
+
+	/**
+	 * Add the next statement of the model.
+	 *
+	 * @param statement
+	 */
+	void add(Statement statement) {
+		if (unsupported != null) {
+			return;
+		}
+		Resource subject = statement.getSubject();
+		if (subject instanceof BNode) {
+			List<Statement> nodeStatements = nodes.get(subject);
+			if (nodeStatements == null) {
+				nodeStatements = new ArrayList<>(6);
+				nodes.put((BNode) subject, nodeStatements);
+			}
+			nodeStatements.add(statement);
+		}
+		else if (statement.getObject() instanceof BNode) {
+			setUnsupported("blank node object in: "+statement);
+		}
+		else {
+			groundStatements.add(statement);
+		}
+	}
+
+	private void setUnsupported(String reason) {
+		if (unsupported == null) {
+			unsupported = reason;
+		}
+	}
+
+	/**
+	 * @return the reason, why the statements can not be loaded directly or null
+	 */
+	String getUnsupportedReason() {
+		return unsupported;
+	}
+
+	/**
+	 * Create the ontology for all added statements, including the load
+	 * requests for the imports.
+	 *
+	 * @param manager
+	 * @return ontology or null, if the statements contain unsupported structures
+	 * @throws OWLOntologyCreationException
+	 */
+	OWLOntology createOntology(OWLOntologyManager manager) throws OWLOntologyCreationException {
+		if (unsupported != null) {
+			return null;
+		}
+		final OWLDataFactory f = manager.getOWLDataFactory();
+
+		// first pass: ontology header and declarations
+		IRI ontologyIRI = null;
+		final Map<IRI, Set<EntityType<?>>> declared = new HashMap<>();
+		for (Statement statement : groundStatements) {
+			if (RDF.TYPE.equals(statement.getPredicate())) {
+				Value object = statement.getObject();
+				if (ONTOLOGY.equals(object)) {
+					IRI iri = IRI.create(statement.getSubject().stringValue());
+					if (ontologyIRI != null && ontologyIRI.equals(iri) == false) {
+						setUnsupported("multiple ontology headers");
+						return null;
+					}
+					ontologyIRI = iri;
+				}
+				else {
+					EntityType<?> type = DECLARATION_TYPES.get(object);
+					if (type != null) {
+						IRI iri = IRI.create(statement.getSubject().stringValue());
+						Set<EntityType<?>> types = declared.get(iri);
+						if (types == null) {
+							types = new HashSet<>(2);
+							declared.put(iri, types);
+						}
+						types.add(type);
+					}
+				}
+			}
+		}
+		if (ontologyIRI == null) {
+			setUnsupported("no ontology IRI");
+			return null;
+		}
+
+		// second pass: one axiom per ground triple
+		final Map<List<Value>, OWLAxiom> axioms = new LinkedHashMap<>();
+		final List<OWLImportsDeclaration> imports = new ArrayList<>();
+		final List<OWLAnnotation> ontologyAnnotations = new ArrayList<>();
+		for (Statement statement : groundStatements) {
+			final Resource subject = statement.getSubject();
+			final URI predicate = statement.getPredicate();
+			final Value object = statement.getObject();
+			final IRI subjectIRI = IRI.create(subject.stringValue());
+			if (ontologyIRI.equals(subjectIRI)) {
+				if (RDF.TYPE.equals(predicate) && ONTOLOGY.equals(object)) {
+					continue;
+				}
+				if (IMPORTS.equals(predicate) && object instanceof URI) {
+					imports.add(f.getOWLImportsDeclaration(IRI.create(object.stringValue())));
+					continue;
+				}
+				OWLAnnotation annotation = createAnnotation(predicate, object, declared, f);
+				if (annotation == null) {
+					setUnsupported("ontology header triple: "+statement);
+					return null;
+				}
+				ontologyAnnotations.add(annotation);
+				continue;
+			}
+			OWLAxiom axiom = createAxiom(subjectIRI, predicate, object, declared, f);
+			if (axiom == null) {
+				setUnsupported("triple: "+statement);
+				return null;
+			}
+			axioms.put(key(subject, predicate, object), axiom);
+		}
+
+		// reified axiom annotations
+		final Map<List<Value>, Set<Set<OWLAnnotation>>> axiomAnnotations = new HashMap<>();
+		for (Entry<BNode, List<Statement>> entry : nodes.entrySet()) {
+			if (addReifiedAnnotations(entry.getValue(), axioms, axiomAnnotations, declared, f) == false) {
+				setUnsupported("blank node structure: "+entry.getKey());
+				return null;
+			}
+		}
+		final Set<OWLAxiom> allAxioms = new HashSet<>();
+		for (Entry<List<Value>, OWLAxiom> entry : axioms.entrySet()) {
+			Set<Set<OWLAnnotation>> annotationSets = axiomAnnotations.get(entry.getKey());
+			if (annotationSets == null) {
+				allAxioms.add(entry.getValue());
+			}
+			else {
+				// the ground triple is represented by the annotated axiom(s)
+				for (Set<OWLAnnotation> annotations : annotationSets) {
+					allAxioms.add(entry.getValue().getAnnotatedAxiom(annotations));
+				}
+			}
+		}
+
+		// create ontology
+		final OWLOntology ontology = manager.createOntology(ontologyIRI);
+		boolean success = false;
+		try {
+			List<OWLOntologyChange> changes = new ArrayList<>();
+			for (OWLImportsDeclaration importsDeclaration : imports) {
+				changes.add(new AddImport(ontology, importsDeclaration));
+			}
+			for (OWLAnnotation annotation : ontologyAnnotations) {
+				changes.add(new AddOntologyAnnotation(ontology, annotation));
+			}
+			manager.applyChanges(changes);
+			manager.addAxioms(ontology, allAxioms);
+			// same as the RDF parser: request the imports
+			final OWLOntologyLoaderConfiguration configuration = new OWLOntologyLoaderConfiguration();
+			for (OWLImportsDeclaration importsDeclaration : imports) {
+				manager.makeLoadImportRequest(importsDeclaration, configuration);
+			}
+			success = true;
+			return ontology;
+		}
+		finally {
+			if (success == false) {
+				manager.removeOntology(ontology);
+			}
+		}
+	}
+
+	private static List<Value> key(Resource subject, URI predicate, Value object) {
+		return Arrays.<Value>asList(subject, predicate, object);
+	}
+
+	private static OWLAxiom createAxiom(IRI subject, URI predicate, Value object, Map<IRI, Set<EntityType<?>>> declared, OWLDataFactory f) {
+		if (RDF.TYPE.equals(predicate)) {
+			EntityType<?> type = DECLARATION_TYPES.get(object);
+			if (type != null) {
+				return f.getOWLDeclarationAxiom(f.getOWLEntity(type, subject));
+			}
+			if (object instanceof URI && (THING.equals(object) || isReserved((URI) object) == false)) {
+				return f.getOWLClassAssertionAxiom(f.getOWLClass(IRI.create(object.stringValue())), f.getOWLNamedIndividual(subject));
+			}
+			return null;
+		}
+		final IRI predicateIRI = IRI.create(predicate.stringValue());
+		final Set<EntityType<?>> types = declared.get(predicateIRI);
+		if (types != null && types.size() == 1) {
+			EntityType<?> type = types.iterator().next();
+			if (EntityType.OBJECT_PROPERTY.equals(type)) {
+				if (object instanceof URI) {
+					return f.getOWLObjectPropertyAssertionAxiom(f.getOWLObjectProperty(predicateIRI),
+							f.getOWLNamedIndividual(subject), f.getOWLNamedIndividual(IRI.create(object.stringValue())));
+				}
+				return null;
+			}
+			else if (EntityType.DATA_PROPERTY.equals(type)) {
+				if (object instanceof Literal) {
+					return f.getOWLDataPropertyAssertionAxiom(f.getOWLDataProperty(predicateIRI),
+							f.getOWLNamedIndividual(subject), createLiteral((Literal) object, f));
+				}
+				return null;
+			}
+		}
+		OWLAnnotation annotation = createAnnotation(predicate, object, declared, f);
+		if (annotation != null) {
+			return f.getOWLAnnotationAssertionAxiom(subject, annotation);
+		}
+		return null;
+	}
+
+	private static OWLAnnotation createAnnotation(URI predicate, Value object, Map<IRI, Set<EntityType<?>>> declared, OWLDataFactory f) {
+		final IRI predicateIRI = IRI.create(predicate.stringValue());
+		final OWLAnnotationProperty property = f.getOWLAnnotationProperty(predicateIRI);
+		final Set<EntityType<?>> types = declared.get(predicateIRI);
+		if (types == null) {
+			// only built-in annotation properties may be used without declaration
+			if (property.isBuiltIn() == false) {
+				return null;
+			}
+		}
+		else if (types.size() != 1 || types.contains(EntityType.ANNOTATION_PROPERTY) == false) {
+			return null;
+		}
+		final OWLAnnotationValue value;
+		if (object instanceof Literal) {
+			value = createLiteral((Literal) object, f);
+		}
+		else if (object instanceof URI) {
+			value = IRI.create(object.stringValue());
+		}
+		else {
+			return null;
+		}
+		return f.getOWLAnnotation(property, value);
+	}
+
+	private static OWLLiteral createLiteral(Literal literal, OWLDataFactory f) {
+		final String label = literal.getLabel();
+		final String language = literal.getLanguage();
+		if (language != null && language.isEmpty() == false) {
+			return f.getOWLLiteral(label, language);
+		}
+		final URI datatype = literal.getDatatype();
+		if (datatype == null || XMLSchema.STRING.equals(datatype)) {
+			return f.getOWLLiteral(label);
+		}
+		return f.getOWLLiteral(label, f.getOWLDatatype(IRI.create(datatype.stringValue())));
+	}
+
+	private static boolean isReserved(URI uri) {
+		String namespace = uri.getNamespace();
+		return OWL.NAMESPACE.equals(namespace) || RDF.NAMESPACE.equals(namespace) || RDFS.NAMESPACE.equals(namespace);
+	}
+
+	private static boolean addReifiedAnnotations(List<Statement> statements, Map<List<Value>, OWLAxiom> axioms,
+			Map<List<Value>, Set<Set<OWLAnnotation>>> axiomAnnotations, Map<IRI, Set<EntityType<?>>> declared, OWLDataFactory f) {
+		Resource source = null;
+		URI property = null;
+		Value target = null;
+		boolean isAxiom = false;
+		Set<OWLAnnotation> annotations = new HashSet<>();
+		for (Statement statement : statements) {
+			final URI predicate = statement.getPredicate();
+			final Value object = statement.getObject();
+			if (object instanceof BNode) {
+				return false;
+			}
+			if (RDF.TYPE.equals(predicate)) {
+				if (AXIOM.equals(object) == false) {
+					return false;
+				}
+				isAxiom = true;
+			}
+			else if (ANNOTATED_SOURCE.equals(predicate)) {
+				if (source != null || (object instanceof URI) == false) {
+					return false;
+				}
+				source = (URI) object;
+			}
+			else if (ANNOTATED_PROPERTY.equals(predicate)) {
+				if (property != null || (object instanceof URI) == false) {
+					return false;
+				}
+				property = (URI) object;
+			}
+			else if (ANNOTATED_TARGET.equals(predicate)) {
+				if (target != null) {
+					return false;
+				}
+				target = object;
+			}
+			else {
+				OWLAnnotation annotation = createAnnotation(predicate, object, declared, f);
+				if (annotation == null) {
+					return false;
+				}
+				annotations.add(annotation);
+			}
+		}
+		if (isAxiom == false || source == null || property == null || target == null) {
+			return false;
+		}
+		List<Value> key = key(source, property, target);
+		if (axioms.containsKey(key) == false) {
+			// annotated triple is not asserted, or is part of the ontology header
+			return false;
+		}
+		Set<Set<OWLAnnotation>> annotationSets = axiomAnnotations.get(key);
+		if (annotationSets == null) {
+			annotationSets = new HashSet<>();
+			axiomAnnotations.put(key, annotationSets);
+		}
+		annotationSets.add(Collections.unmodifiableSet(annotations));
+		return true;
+	}
+}
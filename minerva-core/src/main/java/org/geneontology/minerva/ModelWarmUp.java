@@ -0,0 +1,176 @@
+package org.geneontology.minerva;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.semanticweb.owlapi.model.IRI;
+
+/**
+ * Background pre-loading of the most used models after a start, see
+ * {@link BlazegraphMolecularModelManager#startWarmUp(int, int, long)}.<br>
+ * <br>
+ * The loads run in a small pool of low priority daemon threads, each thread
+ * pauses between two loads to leave room for the live requests. The warm-up
+ * stops early, if the {@link ModelCache} has reached its limits, so it never
+ * evicts a model used by a request.
+ */
+public class ModelWarmUp {
+
+	private static final Logger LOG = Logger.getLogger(ModelWarmUp.class);
+
+	private final BlazegraphMolecularModelManager<?> manager;
+	private final List<IRI> modelIds;
+	private final int threads;
+	private final long pauseMillis;
+
+	private final AtomicInteger next = new AtomicInteger(0);
+	private final AtomicInteger activeWorkers = new AtomicInteger(0);
+	private final AtomicInteger loaded = new AtomicInteger(0);
+	private final AtomicInteger skipped = new AtomicInteger(0);
+	private final AtomicInteger failed = new AtomicInteger(0);
+	private final CountDownLatch done = new CountDownLatch(1);
+	private volatile boolean stopped = false;
+	private ExecutorService pool = null;
+	private long start = 0;
+
+	ModelWarmUp(BlazegraphMolecularModelManager<?> manager, List<IRI> modelIds, int threads, long pauseMillis) {
+		this.manager = manager;
+		this.modelIds = modelIds;
+		this.threads = Math.max(1, Math.min(threads, modelIds.size()));
+		this.pauseMillis = pauseMillis;
+	}
+
+	synchronized void start() {
+		start = System.currentTimeMillis();
+		if (modelIds.isEmpty()) {
+			done.countDown();
+			return;
+		}
+		LOG.info("Start warm-up of "+modelIds.size()+" models with "+threads+" threads");
+		pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+			private final AtomicInteger count = new AtomicInteger(0);
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "model-warm-up-"+count.incrementAndGet());
+				thread.setDaemon(true);
+				thread.setPriority(Thread.MIN_PRIORITY);
+				return thread;
+			}
+		});
+		activeWorkers.set(threads);
+		for (int i = 0; i < threads; i++) {
+			pool.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						work();
+					} finally {
+						if (activeWorkers.decrementAndGet() == 0) {
+							finish();
+						}
+					}
+				}
+			});
+		}
+	}
+
+	private void work() {
+		int i;
+		while (stopped == false && (i = next.getAndIncrement()) < modelIds.size()) {
+			if (manager.getModelCache().hasCapacity() == false) {
+				LOG.info("Stopping warm-up, the model cache is full");
+				stopped = true;
+				break;
+			}
+			IRI modelId = modelIds.get(i);
+			try {
+				if (manager.warmUpModel(modelId)) {
+					loaded.incrementAndGet();
+				}
+				else {
+					skipped.incrementAndGet();
+				}
+			} catch (Exception e) {
+				failed.incrementAndGet();
+				LOG.warn("Could not load model for warm-up: "+modelId, e);
+			}
+			if (pauseMillis > 0) {
+				try {
+					Thread.sleep(pauseMillis);
+				} catch (InterruptedException e) {
+					stopped = true;
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+	}
+
+	private void finish() {
+		LOG.info("Finished warm-up in "+(System.currentTimeMillis() - start)+" ms, loaded: "+loaded.get()+" skipped: "+skipped.get()+" failed: "+failed.get());
+		done.countDown();
+		pool.shutdown();
+	}
+
+	/**
+	 * Stop the warm-up, models currently loading are finished.
+	 */
+	synchronized void cancel() {
+		stopped = true;
+		if (pool != null) {
+			List<Runnable> notStarted = pool.shutdownNow();
+			for (int i = 0; i < notStarted.size(); i++) {
+				if (activeWorkers.decrementAndGet() == 0) {
+					finish();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return true, if the warm-up has finished or was stopped
+	 */
+	public boolean isComplete() {
+		return done.getCount() == 0;
+	}
+
+	/**
+	 * @param timeout
+	 * @param unit
+	 * @return true, if the warm-up is complete
+	 * @throws InterruptedException
+	 */
+	public boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+		return done.await(timeout, unit);
+	}
+
+	/**
+	 * @return number of models selected for the warm-up
+	 */
+	public int getModelCount() {
+		return modelIds.size();
+	}
+
+	public int getLoadedCount() {
+		return loaded.get();
+	}
+
+	/**
+	 * @return number of models, which were already in memory or are no longer stored
+	 */
+	public int getSkippedCount() {
+		return skipped.get();
+	}
+
+	public int getFailedCount() {
+		return failed.get();
+	}
+}
@@ -74,6 +74,19 @@ public class MolecularModelManager<METADATA> extends BlazegraphMolecularModelMan
 		this.curieHandler = curieHandler;
 	}
 
+	/**
+	 * @param graph
+	 * @param curieHandler
+	 * @param modelIdPrefix
+	 * @param store
+	 * @param pathToExportFolder
+	 * @throws OWLOntologyCreationException
+	 */
+	public MolecularModelManager(OWLGraphWrapper graph, CurieHandler curieHandler, String modelIdPrefix, ModelStore store, String pathToExportFolder) throws OWLOntologyCreationException {
+		super(graph, modelIdPrefix, store, pathToExportFolder);
+		this.curieHandler = curieHandler;
+	}
+
 	/**
 	 * @return the curieHandler
 	 */
@@ -344,6 +357,10 @@ public class MolecularModelManager<METADATA> extends BlazegraphMolecularModelMan
 	}
 	
 	public ModelContainer checkModelId(IRI modelId) throws UnknownIdentifierException {
+		if (modelMap.containsKey(modelId) == false && isStoredModel(modelId) == false) {
+			// avoid a load attempt for unknown ids
+			throw new UnknownIdentifierException("Could not find a model for id: "+modelId);
+		}
 		ModelContainer model = getModel(modelId);
 		if (model == null) {
 			throw new UnknownIdentifierException("Could not find a model for id: "+modelId);
@@ -351,6 +368,26 @@ public class MolecularModelManager<METADATA> extends BlazegraphMolecularModelMan
 		return model;
 	}
 
+	/**
+	 * Same as {@link #checkModelId(IRI)}, the model is returned with an open
+	 * batch, see {@link #getModelInBatch(IRI)}. The caller has to end the batch.
+	 *
+	 * @param modelId
+	 * @return model with an open batch
+	 * @throws UnknownIdentifierException
+	 */
+	public ModelContainer checkModelIdInBatch(IRI modelId) throws UnknownIdentifierException {
+		if (modelMap.containsKey(modelId) == false && isStoredModel(modelId) == false) {
+			// avoid a load attempt for unknown ids
+			throw new UnknownIdentifierException("Could not find a model for id: "+modelId);
+		}
+		ModelContainer model = getModelInBatch(modelId);
+		if (model == null) {
+			throw new UnknownIdentifierException("Could not find a model for id: "+modelId);
+		}
+		return model;
+	}
+
 	private OWLObjectPropertyExpression getObjectProperty(OBOUpperVocabulary vocabElement,
 			ModelContainer model) {
 		return vocabElement.getObjectProperty(model.getAboxOntology());
@@ -0,0 +1,358 @@
+package org.geneontology.minerva;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openrdf.model.Statement;
+import org.openrdf.model.Value;
+import org.openrdf.query.Binding;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.QueryResult;
+import org.openrdf.query.impl.GraphQueryResultImpl;
+import org.openrdf.query.impl.TupleQueryResultImpl;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.CloseableIteratorIteration;
+import info.aduna.iteration.IterationWrapper;
+
+/**
+ * Cache for SPARQL query results, keyed by the normalized query text. Each
+ * entry is valid for one version of the store, i.e. the commit count of the
+ * {@link GroupCommitWriter}: after a commit all entries are discarded.<br>
+ * <br>
+ * Tuple and graph results are recorded while they are streamed to the
+ * client. A result is only added once it has been read completely and its
+ * estimated size is within the byte limit of the cache. The cache is
+ * bounded by the number of entries and the estimated size in bytes, the
+ * least recently used entries are evicted first.
+ */
+public class SPARQLResultCache {
+
+	// rough estimate for the object overhead of a binding or statement
+	private static final int ITEM_OVERHEAD_BYTES = 64;
+
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long version = -1;
+	private long bytes = 0;
+
+	private volatile int maxEntries;
+	private volatile long maxBytes;
+
+	private final AtomicLong hits = new AtomicLong(0L);
+	private final AtomicLong misses = new AtomicLong(0L);
+	private final AtomicLong evictions = new AtomicLong(0L);
+	private final AtomicLong savedNanos = new AtomicLong(0L);
+
+	/**
+	 * @param maxEntries maximum number of cached results, 0 disables the cache
+	 * @param maxBytes maximum estimated size of all cached results
+	 */
+	public SPARQLResultCache(int maxEntries, long maxBytes) {
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+	}
+
+	private static class Entry {
+
+		final long version;
+		final long bytes;
+		final long evaluationNanos;
+		final List<String> bindingNames;
+		final Map<String, String> namespaces;
+		final List<?> items;
+		final Boolean booleanValue;
+
+		Entry(long version, long bytes, long evaluationNanos, List<String> bindingNames,
+				Map<String, String> namespaces, List<?> items, Boolean booleanValue) {
+			this.version = version;
+			this.bytes = bytes;
+			this.evaluationNanos = evaluationNanos;
+			this.bindingNames = bindingNames;
+			this.namespaces = namespaces;
+			this.items = items;
+			this.booleanValue = booleanValue;
+		}
+	}
+
+	public boolean isEnabled() {
+		return maxEntries > 0 && maxBytes > 0;
+	}
+
+	/**
+	 * Change the limits of the cache, removes entries exceeding the new limits.
+	 *
+	 * @param maxEntries maximum number of cached results, 0 disables the cache
+	 * @param maxBytes maximum estimated size of all cached results
+	 */
+	public synchronized void setLimits(int maxEntries, long maxBytes) {
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+		evict();
+	}
+
+	/**
+	 * Normalize the query text for the cache key. Whitespace outside of
+	 * string literals is collapsed into a single space.
+	 *
+	 * @param queryText
+	 * @return normalized query
+	 */
+	static String normalize(String queryText) {
+		StringBuilder sb = new StringBuilder(queryText.length());
+		char quote = 0;
+		boolean whitespace = false;
+		for (int i = 0; i < queryText.length(); i++) {
+			char c = queryText.charAt(i);
+			if (quote != 0) {
+				sb.append(c);
+				if (c == '\\' && i + 1 < queryText.length()) {
+					sb.append(queryText.charAt(++i));
+				}
+				else if (c == quote) {
+					quote = 0;
+				}
+			}
+			else if (Character.isWhitespace(c)) {
+				whitespace = true;
+			}
+			else {
+				if (whitespace && sb.length() > 0) {
+					sb.append(' ');
+				}
+				whitespace = false;
+				if (c == '"' || c == '\'') {
+					quote = c;
+				}
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Retrieve a cached result for the query.
+	 *
+	 * @param key normalized query
+	 * @param currentVersion
+	 * @return result or null
+	 */
+	QueryResult<?> get(String key, long currentVersion) {
+		final Entry entry;
+		synchronized (this) {
+			if (currentVersion != version) {
+				// the store changed, all results are outdated
+				clear(currentVersion);
+			}
+			entry = entries.get(key);
+		}
+		if (entry == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		savedNanos.addAndGet(entry.evaluationNanos);
+		if (entry.booleanValue != null) {
+			return new BooleanQueryResult(entry.booleanValue.booleanValue());
+		}
+		if (entry.bindingNames != null) {
+			@SuppressWarnings("unchecked")
+			Iterator<BindingSet> bindings = (Iterator<BindingSet>) entry.items.iterator();
+			return new TupleQueryResultImpl(entry.bindingNames, new CloseableIteratorIteration<BindingSet, QueryEvaluationException>(bindings));
+		}
+		@SuppressWarnings("unchecked")
+		Iterator<Statement> statements = (Iterator<Statement>) entry.items.iterator();
+		return new GraphQueryResultImpl(entry.namespaces, new CloseableIteratorIteration<Statement, QueryEvaluationException>(statements));
+	}
+
+	private void clear(long currentVersion) {
+		entries.clear();
+		bytes = 0;
+		version = currentVersion;
+	}
+
+	private synchronized void put(String key, Entry entry) {
+		if (entry.version != version || entry.bytes > maxBytes) {
+			return;
+		}
+		Entry previous = entries.put(key, entry);
+		if (previous != null) {
+			bytes -= previous.bytes;
+		}
+		bytes += entry.bytes;
+		evict();
+	}
+
+	private void evict() {
+		Iterator<Entry> iterator = entries.values().iterator();
+		while ((entries.size() > maxEntries || bytes > maxBytes) && iterator.hasNext()) {
+			Entry eldest = iterator.next();
+			iterator.remove();
+			bytes -= eldest.bytes;
+			evictions.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Add the result of an ASK query.
+	 */
+	void putBoolean(String key, long queryVersion, boolean value, long startNanos) {
+		put(key, new Entry(queryVersion, ITEM_OVERHEAD_BYTES, System.nanoTime() - startNanos, null, null, null, Boolean.valueOf(value)));
+	}
+
+	/**
+	 * Wrap a lazy tuple result, the bindings are added to the cache after
+	 * the result has been read completely.
+	 */
+	CloseableIteration<BindingSet, QueryEvaluationException> recordTuple(String key, long queryVersion,
+			final List<String> bindingNames, CloseableIteration<BindingSet, QueryEvaluationException> result, long startNanos) {
+		return new RecordingIteration<BindingSet>(key, queryVersion, result, startNanos) {
+
+			@Override
+			long estimate(BindingSet bindings) {
+				long size = ITEM_OVERHEAD_BYTES;
+				for (Binding binding : bindings) {
+					size += ITEM_OVERHEAD_BYTES + estimate(binding.getValue());
+				}
+				return size;
+			}
+
+			@Override
+			Entry createEntry(long bytes, long evaluationNanos, List<BindingSet> items) {
+				return new Entry(queryVersion, bytes, evaluationNanos, bindingNames, null, items, null);
+			}
+		};
+	}
+
+	/**
+	 * Wrap a lazy graph result, the statements are added to the cache after
+	 * the result has been read completely.
+	 */
+	CloseableIteration<Statement, QueryEvaluationException> recordGraph(String key, long queryVersion,
+			final Map<String, String> namespaces, CloseableIteration<Statement, QueryEvaluationException> result, long startNanos) {
+		return new RecordingIteration<Statement>(key, queryVersion, result, startNanos) {
+
+			@Override
+			long estimate(Statement statement) {
+				return ITEM_OVERHEAD_BYTES + estimate(statement.getSubject())
+						+ estimate(statement.getPredicate()) + estimate(statement.getObject());
+			}
+
+			@Override
+			Entry createEntry(long bytes, long evaluationNanos, List<Statement> items) {
+				return new Entry(queryVersion, bytes, evaluationNanos, null, namespaces, items, null);
+			}
+		};
+	}
+
+	private abstract class RecordingIteration<T> extends IterationWrapper<T, QueryEvaluationException> {
+
+		private final String key;
+		final long queryVersion;
+		private final long startNanos;
+		private List<T> items = new ArrayList<>();
+		private long itemBytes = 0;
+		private boolean exhausted = false;
+
+		RecordingIteration(String key, long queryVersion, CloseableIteration<T, QueryEvaluationException> result, long startNanos) {
+			super(result);
+			this.key = key;
+			this.queryVersion = queryVersion;
+			this.startNanos = startNanos;
+		}
+
+		abstract long estimate(T item);
+
+		abstract Entry createEntry(long bytes, long evaluationNanos, List<T> items);
+
+		long estimate(Value value) {
+			return value == null ? 0 : ITEM_OVERHEAD_BYTES + 2L * value.stringValue().length();
+		}
+
+		@Override
+		public boolean hasNext() throws QueryEvaluationException {
+			boolean hasNext = super.hasNext();
+			if (hasNext == false) {
+				exhausted = true;
+			}
+			return hasNext;
+		}
+
+		@Override
+		public T next() throws QueryEvaluationException {
+			T item = super.next();
+			if (items != null) {
+				itemBytes += estimate(item);
+				if (itemBytes > maxBytes) {
+					// too large for the cache, stop recording
+					items = null;
+				}
+				else {
+					items.add(item);
+				}
+			}
+			return item;
+		}
+
+		@Override
+		protected void handleClose() throws QueryEvaluationException {
+			super.handleClose();
+			if (exhausted && items != null) {
+				put(key, createEntry(itemBytes, System.nanoTime() - startNanos, items));
+			}
+			items = null;
+		}
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * @return ratio of hits to all lookups
+	 */
+	public double getHitRate() {
+		long lookups = hits.get() + misses.get();
+		if (lookups == 0) {
+			return 0;
+		}
+		return hits.get() / (double) lookups;
+	}
+
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	/**
+	 * @return sum of the original evaluation times of all cache hits
+	 */
+	public long getSavedMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(savedNanos.get());
+	}
+
+	public synchronized int getSize() {
+		return entries.size();
+	}
+
+	/**
+	 * @return estimated size of all cached results
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	@Override
+	public String toString() {
+		return "SPARQLResultCache [size=" + getSize() + ", bytes=" + getBytes() + ", hits=" + hits
+				+ ", misses=" + misses + ", evictions=" + evictions + ", savedMillis=" + getSavedMillis() + "]";
+	}
+}
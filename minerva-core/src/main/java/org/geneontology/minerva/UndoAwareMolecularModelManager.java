@@ -1,15 +1,26 @@
 package org.geneontology.minerva;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.tuple.Pair;
+import org.apache.log4j.Logger;
 import org.geneontology.minerva.UndoAwareMolecularModelManager.UndoMetadata;
 import org.geneontology.minerva.curie.CurieHandler;
 import org.geneontology.minerva.util.ReverseChangeGenerator;
@@ -22,69 +33,235 @@ import org.semanticweb.owlapi.model.OWLOntologyManager;
 import owltools.graph.OWLGraphWrapper;
 
 /**
- * Provide undo and redo operations for the {@link MolecularModelManager}.
+ * Provide undo and redo operations for the {@link MolecularModelManager}.<br>
+ * <br>
+ * The history in memory is limited per model by the number of events and the
+ * estimated size, and by the estimated size of all models. Older undo events
+ * beyond these limits are moved to a spill file per model, if a spill folder
+ * is set, see {@link #setUndoSpillFolder(File)}, otherwise they are dropped.
+ * The history of a model is released, when the model is unlinked or evicted.
  */
 public class UndoAwareMolecularModelManager extends MolecularModelManager<UndoMetadata> {
 	
-	private final Map<IRI, UndoRedo> allChanges = new HashMap<>();
+	private static final Logger LOG = Logger.getLogger(UndoAwareMolecularModelManager.class);
 	
-	private static class UndoRedo {
+	// rough estimates for the memory of an event and a dictionary entry
+	static final long EVENT_BYTES = 64;
+	static final long DICTIONARY_ENTRY_BYTES = 48;
+	static final long UNENCODED_CHANGE_BYTES = 256;
+	
+	private static final String SPILL_FILE_SUFFIX = ".undo";
+	
+	private final ConcurrentMap<IRI, UndoRedo> allChanges = new ConcurrentHashMap<>();
+	// estimated size of the events in memory for all models
+	private final AtomicLong historyBytes = new AtomicLong(0);
+	
+	private volatile int maxEventsPerModel = 100;
+	private volatile long maxBytesPerModel = 8L * 1024L * 1024L;
+	private volatile long maxBytesTotal = 256L * 1024L * 1024L;
+	private volatile File spillFolder = null;
+	
+	private class UndoRedo {
 		final Deque<ChangeEvent> undoBuffer = new LinkedList<>();
 		final Deque<ChangeEvent> redoBuffer = new LinkedList<>();
+		// the events of the model, including the spilled ones, share the dictionary
+		final UndoChangeCodec codec = new UndoChangeCodec();
 		private UndoMetadata token  = null;
+		// estimated size of the events in the buffers and the dictionary
+		private long bytes = 0;
+		private UndoSpillFile spill = null;
+		private long lastChange = 0;
 		
-		void addUndo(List<OWLOntologyChange> changes, UndoMetadata metadata) {
-			addUndo(new ChangeEvent(metadata.userId, changes, System.currentTimeMillis()), metadata);
+		ChangeEvent encode(List<OWLOntologyChange> changes, String userId) {
+			int axiomCount = 0;
+			boolean supported = true;
+			for (OWLOntologyChange change : changes) {
+				if (change.isAxiomChange()) {
+					axiomCount += 1;
+				}
+				supported &= UndoChangeCodec.isSupported(change);
+			}
+			if (supported == false) {
+				// rare, e.g. a new ontology id, keep the changes as they are
+				return new ChangeEvent(userId, System.currentTimeMillis(), new ArrayList<>(changes), axiomCount);
+			}
+			final int dictionarySize = codec.getDictionarySize();
+			byte[] data = codec.encode(changes);
+			// the dictionary only grows, it is released with the history
+			updateBytes((codec.getDictionarySize() - dictionarySize) * DICTIONARY_ENTRY_BYTES);
+			return new ChangeEvent(userId, System.currentTimeMillis(), data, changes.size(), axiomCount);
 		}
 		
-		void addUndo(List<OWLOntologyChange> changes, String userId) {
-			token = null;
-			undoBuffer.push(new ChangeEvent(userId, changes, System.currentTimeMillis()));
+		List<OWLOntologyChange> decode(ChangeEvent event, OWLOntology abox) throws IOException {
+			if (event.changes != null) {
+				// the history is released with the abox, the changes still refer to it
+				return event.changes;
+			}
+			return codec.decode(event.data, abox);
 		}
 		
-		void addUndo(ChangeEvent changes, UndoMetadata token) {
-			if (this.token == null || this.token.equals(token) == false) {
+		/**
+		 * Combine two events, the result is only encoded, if both events are.
+		 */
+		ChangeEvent append(ChangeEvent current, ChangeEvent event) {
+			if (current.data != null && event.data != null) {
+				return current.append(event);
+			}
+			// the ontology of the unencoded changes is the abox of the model
+			OWLOntology abox = (current.changes != null ? current.changes : event.changes).get(0).getOntology();
+			List<OWLOntologyChange> changes = new ArrayList<>();
+			try {
+				changes.addAll(decode(current, abox));
+				changes.addAll(decode(event, abox));
+			} catch (IOException e) {
+				// not expected, the data was encoded by the codec of this history
+				throw new IllegalStateException("Could not decode undo event", e);
+			}
+			return new ChangeEvent(current.userId, current.time, changes, current.axiomCount + event.axiomCount);
+		}
+		
+		void addUndo(List<OWLOntologyChange> changes, UndoMetadata metadata) {
+			ChangeEvent event = encode(changes, metadata.userId);
+			if (this.token == null || this.token.equals(metadata) == false) {
 				// new event or different event
-				undoBuffer.push(changes);
-				this.token = token;
+				push(undoBuffer, event);
+				this.token = metadata;
 			}
 			else {
 				// append to last event
 				ChangeEvent current = undoBuffer.peek();
 				if (current != null) {
-					current.getChanges().addAll(changes.getChanges());
+					pop(undoBuffer);
+					push(undoBuffer, append(current, event));
 				}
 				else {
-					undoBuffer.push(changes);
+					push(undoBuffer, event);
 				}
 			}
 		}
 		
-		ChangeEvent getUndo() {
+		void addUndo(ChangeEvent event, String userId) {
+			token = null;
+			push(undoBuffer, event.copy(userId, System.currentTimeMillis()));
+		}
+		
+		ChangeEvent getUndo() throws IOException {
 			if (undoBuffer.peek() != null) {
-				return undoBuffer.pop();
+				return pop(undoBuffer);
+			}
+			if (spill != null && spill.size() > 0) {
+				// continue with the events moved out of memory
+				token = null;
+				return spill.pop();
 			}
 			return null;
 		}
 		
-		void addRedo(List<OWLOntologyChange> changes, String userId) {
-			addRedo(new ChangeEvent(userId, changes, System.currentTimeMillis()));
-		}
-		
-		void addRedo(ChangeEvent changes) {
-			redoBuffer.push(changes);
+		void addRedo(ChangeEvent event, String userId) {
+			push(redoBuffer, event.copy(userId, System.currentTimeMillis()));
 			this.token = null;
 		}
 		
 		ChangeEvent getRedo() {
 			if (redoBuffer.peek() != null) {
-				return redoBuffer.pop();
+				return pop(redoBuffer);
 			}
 			return null;
 		}
 		
 		void clearRedo() {
-			redoBuffer.clear();
+			clear(redoBuffer);
+		}
+		
+		void clearUndo() {
+			clear(undoBuffer);
+			if (spill != null) {
+				spill.clear();
+			}
+		}
+		
+		int getSpilledCount() {
+			return spill != null ? spill.size() : 0;
+		}
+		
+		private void push(Deque<ChangeEvent> buffer, ChangeEvent event) {
+			buffer.push(event);
+			updateBytes(event.getEstimatedBytes());
+		}
+		
+		private ChangeEvent pop(Deque<ChangeEvent> buffer) {
+			ChangeEvent event = buffer.pop();
+			updateBytes(-event.getEstimatedBytes());
+			return event;
+		}
+		
+		private void clear(Deque<ChangeEvent> buffer) {
+			for (ChangeEvent event : buffer) {
+				updateBytes(-event.getEstimatedBytes());
+			}
+			buffer.clear();
+		}
+		
+		private void updateBytes(long delta) {
+			bytes += delta;
+			historyBytes.addAndGet(delta);
+			lastChange = System.currentTimeMillis();
+		}
+		
+		boolean isOverLimit(int maxEvents, long maxBytes) {
+			int events = undoBuffer.size() + redoBuffer.size();
+			return (maxEvents > 0 && events > maxEvents) || (maxBytes > 0 && bytes > maxBytes);
+		}
+		
+		/**
+		 * Move or drop the oldest events, until the history is within the
+		 * limits. The latest undo event always stays in memory, new changes
+		 * of the same request may be appended to it.
+		 */
+		void trim(IRI modelId, int maxEvents, long maxBytes) {
+			while (isOverLimit(maxEvents, maxBytes)) {
+				if (undoBuffer.size() > 1) {
+					ChangeEvent oldest = undoBuffer.removeLast();
+					updateBytes(-oldest.getEstimatedBytes());
+					spill(modelId, oldest);
+				}
+				else if (redoBuffer.isEmpty() == false) {
+					// the oldest redo event is the one furthest away
+					ChangeEvent oldest = redoBuffer.removeLast();
+					updateBytes(-oldest.getEstimatedBytes());
+				}
+				else {
+					break;
+				}
+			}
+		}
+		
+		private void spill(IRI modelId, ChangeEvent event) {
+			final File folder = spillFolder;
+			if (folder == null) {
+				return;
+			}
+			if (event.data == null) {
+				LOG.warn("Could not spill unencoded undo event to disk, dropping it for model: "+modelId);
+				return;
+			}
+			try {
+				if (spill == null) {
+					spill = new UndoSpillFile(new File(folder, getSpillFileName(modelId)));
+				}
+				spill.push(event);
+			} catch (IOException e) {
+				LOG.warn("Could not spill undo event to disk, dropping it for model: "+modelId, e);
+			}
+		}
+		
+		void release() {
+			clearRedo();
+			clearUndo();
+			// the remainder is the dictionary
+			historyBytes.addAndGet(-bytes);
+			bytes = 0;
+			token = null;
 		}
 	}
 	
@@ -140,35 +317,96 @@ public class UndoAwareMolecularModelManager extends MolecularModelManager<UndoMe
 	}
 	
 	/**
-	 * Details for a change in a model.
+	 * Details for a change in a model. The changes are kept in the compact
+	 * form of the history of the model, see {@link UndoChangeCodec}, and are
+	 * only decoded for an undo or redo. Changes, which the codec does not
+	 * support, are kept as they are.
 	 */
 	public static class ChangeEvent {
 		final String userId;
-		final List<OWLOntologyChange> changes;
 		final long time;
+		// encoded changes or null
+		final byte[] data;
+		// unencoded changes, if data is null
+		final List<OWLOntologyChange> changes;
+		final int changeCount;
+		final int axiomCount;
+		
+		/**
+		 * @param userId
+		 * @param time
+		 * @param data encoded changes
+		 * @param changeCount
+		 * @param axiomCount
+		 */
+		ChangeEvent(String userId, long time, byte[] data, int changeCount, int axiomCount) {
+			this.userId = userId;
+			this.time = time;
+			this.data = data;
+			this.changes = null;
+			this.changeCount = changeCount;
+			this.axiomCount = axiomCount;
+		}
 		
 		/**
 		 * @param userId
-		 * @param changes
 		 * @param time
+		 * @param changes unencoded changes
+		 * @param axiomCount
 		 */
-		public ChangeEvent(String userId, List<OWLOntologyChange> changes, long time) {
+		ChangeEvent(String userId, long time, List<OWLOntologyChange> changes, int axiomCount) {
 			this.userId = userId;
-			this.changes = new ArrayList<OWLOntologyChange>(changes);
 			this.time = time;
+			this.data = null;
+			this.changes = changes;
+			this.changeCount = changes.size();
+			this.axiomCount = axiomCount;
 		}
 
 		public String getUserId() {
 			return userId;
 		}
 
-		public List<OWLOntologyChange> getChanges() {
-			return changes;
-		}
-
 		public long getTime() {
 			return time;
 		}
+
+		/**
+		 * @return number of changes in the event
+		 */
+		public int getChangeCount() {
+			return changeCount;
+		}
+
+		/**
+		 * @return number of added or removed axioms
+		 */
+		public int getAxiomCount() {
+			return axiomCount;
+		}
+		
+		long getEstimatedBytes() {
+			if (data == null) {
+				return EVENT_BYTES + changes.size() * UNENCODED_CHANGE_BYTES;
+			}
+			return EVENT_BYTES + data.length;
+		}
+		
+		/**
+		 * Combine the encoded changes, both events have to be encoded.
+		 */
+		ChangeEvent append(ChangeEvent other) {
+			byte[] combined = Arrays.copyOf(data, data.length + other.data.length);
+			System.arraycopy(other.data, 0, combined, data.length, other.data.length);
+			return new ChangeEvent(userId, time, combined, changeCount + other.changeCount, axiomCount + other.axiomCount);
+		}
+		
+		ChangeEvent copy(String userId, long time) {
+			if (data == null) {
+				return new ChangeEvent(userId, time, changes, axiomCount);
+			}
+			return new ChangeEvent(userId, time, data, changeCount, axiomCount);
+		}
 	}
 
 	public UndoAwareMolecularModelManager(OWLGraphWrapper graph,
@@ -176,26 +414,137 @@ public class UndoAwareMolecularModelManager extends MolecularModelManager<UndoMe
 		super(graph, curieHandler, modelIdLongFormPrefix, pathToJournal, pathToExportFolder);
 	}
 
+	public UndoAwareMolecularModelManager(OWLGraphWrapper graph,
+			CurieHandler curieHandler, String modelIdLongFormPrefix, ModelStore store, String pathToExportFolder) throws OWLOntologyCreationException {
+		super(graph, curieHandler, modelIdLongFormPrefix, store, pathToExportFolder);
+	}
+
+	/**
+	 * Set the limits of the undo and redo history, a value of zero or less
+	 * disables the limit.
+	 * 
+	 * @param maxEventsPerModel maximum number of events in memory per model
+	 * @param maxBytesPerModel maximum estimated size of the events in memory per model
+	 * @param maxBytesTotal maximum estimated size of the events in memory for all models
+	 */
+	public void setUndoHistoryLimits(int maxEventsPerModel, long maxBytesPerModel, long maxBytesTotal) {
+		this.maxEventsPerModel = maxEventsPerModel;
+		this.maxBytesPerModel = maxBytesPerModel;
+		this.maxBytesTotal = maxBytesTotal;
+	}
+	
+	/**
+	 * Set the folder for the undo events beyond the limits. The history is
+	 * not kept across restarts, existing spill files in the folder are
+	 * removed.
+	 * 
+	 * @param folder or null to drop the events beyond the limits
+	 * @throws IOException
+	 */
+	public void setUndoSpillFolder(File folder) throws IOException {
+		if (folder != null) {
+			FileUtils.forceMkdir(folder);
+			File[] files = folder.listFiles();
+			if (files != null) {
+				for (File file : files) {
+					if (file.getName().endsWith(SPILL_FILE_SUFFIX)) {
+						FileUtils.deleteQuietly(file);
+					}
+				}
+			}
+		}
+		this.spillFolder = folder;
+	}
+	
+	private static String getSpillFileName(IRI modelId) {
+		return UUID.nameUUIDFromBytes(modelId.toString().getBytes(StandardCharsets.UTF_8)).toString()+SPILL_FILE_SUFFIX;
+	}
+	
+	/**
+	 * @return estimated size of the undo and redo events in memory for all models
+	 */
+	public long getUndoHistoryBytes() {
+		return historyBytes.get();
+	}
+	
+	/**
+	 * @param modelId
+	 * @return number of undo events of the model in the spill file
+	 */
+	public int getSpilledUndoCount(IRI modelId) {
+		UndoRedo undoRedo = allChanges.get(modelId);
+		if (undoRedo == null) {
+			return 0;
+		}
+		synchronized (undoRedo) {
+			return undoRedo.getSpilledCount();
+		}
+	}
+	
+	private UndoRedo getUndoRedo(IRI modelId) {
+		UndoRedo undoRedo = allChanges.get(modelId);
+		if (undoRedo == null) {
+			undoRedo = new UndoRedo();
+			UndoRedo existing = allChanges.putIfAbsent(modelId, undoRedo);
+			if (existing != null) {
+				undoRedo = existing;
+			}
+		}
+		return undoRedo;
+	}
+
 	@Override
 	protected void addToHistory(ModelContainer model, List<OWLOntologyChange> appliedChanges, UndoMetadata metadata) {
 		if (appliedChanges == null || appliedChanges.isEmpty()) {
 			// do nothing
 			return;
 		}
-		UndoRedo undoRedo;
-		synchronized (allChanges) {
-			IRI modelId = model.getModelId();
-			undoRedo = allChanges.get(modelId);
-			if (undoRedo == null) {
-				undoRedo = new UndoRedo();
-				allChanges.put(modelId, undoRedo);
-			}
-		}
+		IRI modelId = model.getModelId();
+		UndoRedo undoRedo = getUndoRedo(modelId);
 		synchronized (undoRedo) {
 			// append to undo
 			undoRedo.addUndo(appliedChanges, metadata);
 			// clear redo
 			undoRedo.clearRedo();
+			undoRedo.trim(modelId, maxEventsPerModel, maxBytesPerModel);
+		}
+		trimTotal();
+	}
+	
+	/**
+	 * Trim the histories of the least recently changed models, until all
+	 * histories are within the global limit. Requires that the caller holds
+	 * no monitor of an {@link UndoRedo}.
+	 */
+	private void trimTotal() {
+		final long maxBytes = maxBytesTotal;
+		if (maxBytes <= 0 || historyBytes.get() <= maxBytes) {
+			return;
+		}
+		List<Map.Entry<IRI, UndoRedo>> entries = new ArrayList<>(allChanges.entrySet());
+		final Map<UndoRedo, Long> lastChanges = new HashMap<>();
+		for (Map.Entry<IRI, UndoRedo> entry : entries) {
+			synchronized (entry.getValue()) {
+				lastChanges.put(entry.getValue(), entry.getValue().lastChange);
+			}
+		}
+		Collections.sort(entries, new Comparator<Map.Entry<IRI, UndoRedo>>() {
+
+			@Override
+			public int compare(Map.Entry<IRI, UndoRedo> o1, Map.Entry<IRI, UndoRedo> o2) {
+				return Long.compare(lastChanges.get(o1.getValue()), lastChanges.get(o2.getValue()));
+			}
+		});
+		for (Map.Entry<IRI, UndoRedo> entry : entries) {
+			if (historyBytes.get() <= maxBytes) {
+				break;
+			}
+			UndoRedo undoRedo = entry.getValue();
+			synchronized (undoRedo) {
+				long excess = historyBytes.get() - maxBytes;
+				// only the size counts, a limit of zero would disable it
+				undoRedo.trim(entry.getKey(), 0, Math.max(1, undoRedo.bytes - excess));
+			}
 		}
 	}
 	
@@ -207,32 +556,43 @@ public class UndoAwareMolecularModelManager extends MolecularModelManager<UndoMe
 	 * @return true if the undo was successful
 	 */
 	public boolean undo(ModelContainer model, String userId) {
-		UndoRedo undoRedo;
-		synchronized (allChanges) {
-			undoRedo = allChanges.get(model.getModelId());
-		}
+		UndoRedo undoRedo = allChanges.get(model.getModelId());
 		if (undoRedo != null) {
-			final OWLOntology abox = model.getAboxOntology();
-			synchronized (abox) {
+			final Lock lock = model.getWriteLock();
+			long logPosition = 0;
+			lock.lock();
+			try {
 				/* 
-				 * WARNING multiple locks (undoRedo and abox) always lock ontology first
+				 * WARNING multiple locks (undoRedo and model) always lock the model first
 				 * to avoid deadlocks!
 				 */
 				synchronized (undoRedo) {
 					// pop from undo
-					ChangeEvent event = undoRedo.getUndo();
-					if (event == null) {
+					ChangeEvent event;
+					List<OWLOntologyChange> changes;
+					try {
+						event = undoRedo.getUndo();
+						if (event == null) {
+							return false;
+						}
+						changes = undoRedo.decode(event, model.getAboxOntology());
+					} catch (IOException e) {
+						LOG.error("Could not read undo event for model: "+model.getModelId(), e);
 						return false;
 					}
 
 					// invert and apply changes
-					List<OWLOntologyChange> invertedChanges = ReverseChangeGenerator.invertChanges(event.getChanges());
-					applyChanges(model, invertedChanges);
+					List<OWLOntologyChange> invertedChanges = ReverseChangeGenerator.invertChanges(changes);
+					logPosition = applyChanges(model, invertedChanges);
 
 					// push to redo
-					undoRedo.addRedo(event.changes, userId);
+					undoRedo.addRedo(event, userId);
+					undoRedo.trim(model.getModelId(), maxEventsPerModel, maxBytesPerModel);
 					return true;
 				}
+			} finally {
+				lock.unlock();
+				awaitLoggedChanges(logPosition);
 			}
 		}
 		return false;
@@ -246,15 +606,14 @@ public class UndoAwareMolecularModelManager extends MolecularModelManager<UndoMe
 	 * @return true if the redo was successful
 	 */
 	public boolean redo(ModelContainer model, String userId) {
-		UndoRedo undoRedo;
-		synchronized (allChanges) {
-			undoRedo = allChanges.get(model.getModelId());
-		}
+		UndoRedo undoRedo = allChanges.get(model.getModelId());
 		if (undoRedo != null) {
-			final OWLOntology abox = model.getAboxOntology();
-			synchronized (abox) {
+			final Lock lock = model.getWriteLock();
+			long logPosition = 0;
+			lock.lock();
+			try {
 				/* 
-				 * WARNING multiple locks (undoRedo and abox) always lock ontology first
+				 * WARNING multiple locks (undoRedo and model) always lock the model first
 				 * to avoid deadlocks!
 				 */
 				synchronized (undoRedo) {
@@ -263,30 +622,39 @@ public class UndoAwareMolecularModelManager extends MolecularModelManager<UndoMe
 					if (event == null) {
 						return false;
 					}
+					List<OWLOntologyChange> changes;
+					try {
+						changes = undoRedo.decode(event, model.getAboxOntology());
+					} catch (IOException e) {
+						LOG.error("Could not read redo event for model: "+model.getModelId(), e);
+						return false;
+					}
 
 					// apply changes
-					applyChanges(model, event.getChanges());
+					logPosition = applyChanges(model, changes);
 
 					// push() to undo
-					undoRedo.addUndo(event.getChanges(), userId);
+					undoRedo.addUndo(event, userId);
+					undoRedo.trim(model.getModelId(), maxEventsPerModel, maxBytesPerModel);
 					return true;
 				}
+			} finally {
+				lock.unlock();
+				awaitLoggedChanges(logPosition);
 			}
 		}
 		return false;
 	}
 	
 	/**
-	 * Retrieve the current available undo and redo events.
+	 * Retrieve the current available undo and redo events in memory, the
+	 * events in the spill file are not included.
 	 * 
 	 * @param modelId
 	 * @return pair of undo (left) and redo (right) events
 	 */
 	public Pair<List<ChangeEvent>, List<ChangeEvent>> getUndoRedoEvents(IRI modelId) {
-		UndoRedo undoRedo = null;
-		synchronized (allChanges) {
-			undoRedo = allChanges.get(modelId);
-		}
+		UndoRedo undoRedo = allChanges.get(modelId);
 		if (undoRedo == null) {
 			// return empty of no data is available
 			return Pair.of(Collections.<ChangeEvent>emptyList(), Collections.<ChangeEvent>emptyList());
@@ -300,19 +668,47 @@ public class UndoAwareMolecularModelManager extends MolecularModelManager<UndoMe
 	}
 	
 	public void clearUndoHistory(IRI modelId) {
-		UndoRedo undoRedo = null;
-		synchronized (allChanges) {
-			undoRedo = allChanges.get(modelId);
+		UndoRedo undoRedo = allChanges.get(modelId);
+		if (undoRedo != null) {
+			synchronized (undoRedo) {
+				undoRedo.clearUndo();
+			}
 		}
+	}
+	
+	private void releaseHistory(IRI modelId) {
+		UndoRedo undoRedo = allChanges.remove(modelId);
 		if (undoRedo != null) {
 			synchronized (undoRedo) {
-				undoRedo.undoBuffer.clear();
+				undoRedo.release();
 			}
 		}
 	}
 	
-	protected void applyChanges(ModelContainer model, List<OWLOntologyChange> changes) {
-		model.applyChanges(changes);
+	@Override
+	public void unlinkModel(IRI modelId) {
+		super.unlinkModel(modelId);
+		// the changes refer to the abox of the removed model
+		releaseHistory(modelId);
+	}
+	
+	@Override
+	protected void modelEvicted(ModelContainer model) {
+		super.modelEvicted(model);
+		// the changes refer to the abox of the evicted model
+		releaseHistory(model.getModelId());
+	}
+
+	/**
+	 * Apply the changes of an undo or redo, requires the write lock.
+	 * 
+	 * @param model
+	 * @param changes
+	 * @return position in the change log, see {@link #awaitLoggedChanges(long)}
+	 */
+	protected long applyChanges(ModelContainer model, List<OWLOntologyChange> changes) {
+		List<OWLOntologyChange> appliedChanges = model.applyChanges(changes);
+		return logChanges(model, appliedChanges);
 	}
 	
 }
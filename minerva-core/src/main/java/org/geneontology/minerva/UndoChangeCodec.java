@@ -0,0 +1,619 @@
+package org.geneontology.minerva;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.semanticweb.owlapi.model.AddAxiom;
+import org.semanticweb.owlapi.model.AddImport;
+import org.semanticweb.owlapi.model.AddOntologyAnnotation;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLAnnotationAssertionAxiom;
+import org.semanticweb.owlapi.model.OWLAnnotationSubject;
+import org.semanticweb.owlapi.model.OWLAnnotationValue;
+import org.semanticweb.owlapi.model.OWLAnonymousIndividual;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLClassAssertionAxiom;
+import org.semanticweb.owlapi.model.OWLClassExpression;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLDataProperty;
+import org.semanticweb.owlapi.model.OWLDataPropertyAssertionAxiom;
+import org.semanticweb.owlapi.model.OWLDeclarationAxiom;
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLIndividual;
+import org.semanticweb.owlapi.model.OWLLiteral;
+import org.semanticweb.owlapi.model.OWLNaryBooleanClassExpression;
+import org.semanticweb.owlapi.model.OWLObjectComplementOf;
+import org.semanticweb.owlapi.model.OWLObjectIntersectionOf;
+import org.semanticweb.owlapi.model.OWLObjectInverseOf;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.model.OWLObjectPropertyAssertionAxiom;
+import org.semanticweb.owlapi.model.OWLObjectPropertyExpression;
+import org.semanticweb.owlapi.model.OWLObjectSomeValuesFrom;
+import org.semanticweb.owlapi.model.OWLObjectUnionOf;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.RemoveAxiom;
+import org.semanticweb.owlapi.model.RemoveImport;
+import org.semanticweb.owlapi.model.RemoveOntologyAnnotation;
+
+/**
+ * Compact binary form of the changes in the undo history of a model. The
+ * IRIs are kept once in a dictionary of the model and referenced by their
+ * index, the axioms used in the models (declarations, class, property and
+ * annotation assertions with their annotations) are written field by field.
+ * Other axioms fall back to Java serialization. Other change types, e.g.
+ * {@link org.semanticweb.owlapi.model.SetOntologyID}, are not encoded, see
+ * {@link #isSupported(OWLOntologyChange)}.<br>
+ * <br>
+ * The indices are only valid for the codec, which created them. Not
+ * thread-safe, the owner of the history synchronizes the access.
+ */
+final class UndoChangeCodec {
+
+	// change types
+	private static final int ADD_AXIOM = 1;
+	private static final int REMOVE_AXIOM = 2;
+	private static final int ADD_ANNOTATION = 3;
+	private static final int REMOVE_ANNOTATION = 4;
+	private static final int ADD_IMPORT = 5;
+	private static final int REMOVE_IMPORT = 6;
+
+	// axiom types
+	private static final int DECLARATION = 1;
+	private static final int CLASS_ASSERTION = 2;
+	private static final int OBJECT_PROPERTY_ASSERTION = 3;
+	private static final int DATA_PROPERTY_ASSERTION = 4;
+	private static final int ANNOTATION_ASSERTION = 5;
+	private static final int SERIALIZED = 6;
+
+	// class expression types
+	private static final int CLASS = 1;
+	private static final int SOME_VALUES_FROM = 2;
+	private static final int COMPLEMENT_OF = 3;
+	private static final int INTERSECTION_OF = 4;
+	private static final int UNION_OF = 5;
+	// SERIALIZED = 6
+
+	// entity types
+	private static final int ENTITY_CLASS = 1;
+	private static final int ENTITY_NAMED_INDIVIDUAL = 2;
+	private static final int ENTITY_OBJECT_PROPERTY = 3;
+	private static final int ENTITY_DATA_PROPERTY = 4;
+	private static final int ENTITY_ANNOTATION_PROPERTY = 5;
+	private static final int ENTITY_DATATYPE = 6;
+
+	// values: individuals, annotation subjects and values
+	private static final int VALUE_IRI = 1;
+	private static final int VALUE_ANONYMOUS = 2;
+	private static final int VALUE_LITERAL = 3;
+	private static final int VALUE_LANG_LITERAL = 4;
+
+	private final Map<IRI, Integer> indices = new HashMap<>();
+	private final List<IRI> iris = new ArrayList<>();
+
+	/**
+	 * @return number of IRIs in the dictionary
+	 */
+	int getDictionarySize() {
+		return iris.size();
+	}
+
+	/**
+	 * @param change
+	 * @return true, if the change can be encoded
+	 */
+	static boolean isSupported(OWLOntologyChange change) {
+		return change instanceof AddAxiom || change instanceof RemoveAxiom
+				|| change instanceof AddOntologyAnnotation || change instanceof RemoveOntologyAnnotation
+				|| change instanceof AddImport || change instanceof RemoveImport;
+	}
+
+	/**
+	 * Encode the changes.
+	 *
+	 * @param changes
+	 * @return encoded changes
+	 * @throws IllegalArgumentException if a change is not supported, see {@link #isSupported(OWLOntologyChange)}
+	 */
+	byte[] encode(List<? extends OWLOntologyChange> changes) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 * changes.size());
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			for (OWLOntologyChange change : changes) {
+				if (change instanceof AddAxiom || change instanceof RemoveAxiom) {
+					out.writeByte(change instanceof AddAxiom ? ADD_AXIOM : REMOVE_AXIOM);
+					writeAxiom(out, change.getAxiom());
+				}
+				else if (change instanceof AddOntologyAnnotation) {
+					out.writeByte(ADD_ANNOTATION);
+					writeAnnotation(out, ((AddOntologyAnnotation) change).getAnnotation());
+				}
+				else if (change instanceof RemoveOntologyAnnotation) {
+					out.writeByte(REMOVE_ANNOTATION);
+					writeAnnotation(out, ((RemoveOntologyAnnotation) change).getAnnotation());
+				}
+				else if (change instanceof AddImport) {
+					out.writeByte(ADD_IMPORT);
+					writeIRI(out, ((AddImport) change).getImportDeclaration().getIRI());
+				}
+				else if (change instanceof RemoveImport) {
+					out.writeByte(REMOVE_IMPORT);
+					writeIRI(out, ((RemoveImport) change).getImportDeclaration().getIRI());
+				}
+				else {
+					throw new IllegalArgumentException("Change not supported by the undo history: "+change);
+				}
+			}
+			out.flush();
+		} catch (IOException e) {
+			// not expected for an in-memory stream
+			throw new IllegalStateException("Could not encode changes", e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Decode the changes for the abox.
+	 *
+	 * @param data
+	 * @param abox
+	 * @return changes in the original order
+	 * @throws IOException
+	 */
+	List<OWLOntologyChange> decode(byte[] data, OWLOntology abox) throws IOException {
+		return decode(new DataInputStream(new ByteArrayInputStream(data)), abox);
+	}
+
+	/**
+	 * Encode the changes together with the IRIs they use, the result does
+	 * not depend on the dictionary of a codec. Used for the records of the
+	 * {@link ModelChangeLog}.
+	 *
+	 * @param changes
+	 * @return encoded changes with their dictionary
+	 * @throws IllegalArgumentException if a change is not supported, see {@link #isSupported(OWLOntologyChange)}
+	 */
+	static byte[] encodeStandalone(List<? extends OWLOntologyChange> changes) {
+		UndoChangeCodec codec = new UndoChangeCodec();
+		byte[] data = codec.encode(changes);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length + 64 * codec.iris.size());
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			writeVarInt(out, codec.iris.size());
+			for (IRI iri : codec.iris) {
+				writeString(out, iri.toString());
+			}
+			out.write(data);
+			out.flush();
+		} catch (IOException e) {
+			// not expected for an in-memory stream
+			throw new IllegalStateException("Could not encode changes", e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Decode changes written with {@link #encodeStandalone(List)}.
+	 *
+	 * @param data
+	 * @param abox
+	 * @return changes in the original order
+	 * @throws IOException
+	 */
+	static List<OWLOntologyChange> decodeStandalone(byte[] data, OWLOntology abox) throws IOException {
+		UndoChangeCodec codec = new UndoChangeCodec();
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+		int count = readVarInt(in);
+		for (int i = 0; i < count; i++) {
+			IRI iri = IRI.create(readString(in));
+			codec.indices.put(iri, Integer.valueOf(i));
+			codec.iris.add(iri);
+		}
+		return codec.decode(in, abox);
+	}
+
+	private List<OWLOntologyChange> decode(DataInputStream in, OWLOntology abox) throws IOException {
+		final OWLDataFactory f = abox.getOWLOntologyManager().getOWLDataFactory();
+		List<OWLOntologyChange> changes = new ArrayList<>();
+		int type;
+		while ((type = in.read()) >= 0) {
+			switch (type) {
+			case ADD_AXIOM:
+				changes.add(new AddAxiom(abox, readAxiom(in, f)));
+				break;
+			case REMOVE_AXIOM:
+				changes.add(new RemoveAxiom(abox, readAxiom(in, f)));
+				break;
+			case ADD_ANNOTATION:
+				changes.add(new AddOntologyAnnotation(abox, readAnnotation(in, f)));
+				break;
+			case REMOVE_ANNOTATION:
+				changes.add(new RemoveOntologyAnnotation(abox, readAnnotation(in, f)));
+				break;
+			case ADD_IMPORT:
+				changes.add(new AddImport(abox, f.getOWLImportsDeclaration(readIRI(in))));
+				break;
+			case REMOVE_IMPORT:
+				changes.add(new RemoveImport(abox, f.getOWLImportsDeclaration(readIRI(in))));
+				break;
+			default:
+				throw new IOException("Unknown change type in undo history: "+type);
+			}
+		}
+		return changes;
+	}
+
+	private void writeAxiom(DataOutputStream out, OWLAxiom axiom) throws IOException {
+		if (axiom instanceof OWLDeclarationAxiom) {
+			out.writeByte(DECLARATION);
+			writeEntity(out, ((OWLDeclarationAxiom) axiom).getEntity());
+		}
+		else if (axiom instanceof OWLClassAssertionAxiom) {
+			OWLClassAssertionAxiom ax = (OWLClassAssertionAxiom) axiom;
+			out.writeByte(CLASS_ASSERTION);
+			writeClassExpression(out, ax.getClassExpression());
+			writeIndividual(out, ax.getIndividual());
+		}
+		else if (axiom instanceof OWLObjectPropertyAssertionAxiom) {
+			OWLObjectPropertyAssertionAxiom ax = (OWLObjectPropertyAssertionAxiom) axiom;
+			out.writeByte(OBJECT_PROPERTY_ASSERTION);
+			writeObjectProperty(out, ax.getProperty());
+			writeIndividual(out, ax.getSubject());
+			writeIndividual(out, ax.getObject());
+		}
+		else if (axiom instanceof OWLDataPropertyAssertionAxiom && ((OWLDataPropertyAssertionAxiom) axiom).getProperty().isAnonymous() == false) {
+			OWLDataPropertyAssertionAxiom ax = (OWLDataPropertyAssertionAxiom) axiom;
+			out.writeByte(DATA_PROPERTY_ASSERTION);
+			writeIRI(out, ax.getProperty().asOWLDataProperty().getIRI());
+			writeIndividual(out, ax.getSubject());
+			writeValue(out, ax.getObject());
+		}
+		else if (axiom instanceof OWLAnnotationAssertionAxiom) {
+			OWLAnnotationAssertionAxiom ax = (OWLAnnotationAssertionAxiom) axiom;
+			out.writeByte(ANNOTATION_ASSERTION);
+			writeIRI(out, ax.getProperty().getIRI());
+			writeValue(out, ax.getSubject());
+			writeValue(out, ax.getValue());
+		}
+		else {
+			out.writeByte(SERIALIZED);
+			writeSerialized(out, axiom);
+			// the annotations are part of the serialized axiom
+			return;
+		}
+		writeAnnotations(out, axiom.getAnnotations());
+	}
+
+	private OWLAxiom readAxiom(DataInputStream in, OWLDataFactory f) throws IOException {
+		int type = in.readByte();
+		switch (type) {
+		case DECLARATION: {
+			OWLEntity entity = readEntity(in, f);
+			return f.getOWLDeclarationAxiom(entity, readAnnotations(in, f));
+		}
+		case CLASS_ASSERTION: {
+			OWLClassExpression ce = readClassExpression(in, f);
+			OWLIndividual individual = readIndividual(in, f);
+			return f.getOWLClassAssertionAxiom(ce, individual, readAnnotations(in, f));
+		}
+		case OBJECT_PROPERTY_ASSERTION: {
+			OWLObjectPropertyExpression p = readObjectProperty(in, f);
+			OWLIndividual subject = readIndividual(in, f);
+			OWLIndividual object = readIndividual(in, f);
+			return f.getOWLObjectPropertyAssertionAxiom(p, subject, object, readAnnotations(in, f));
+		}
+		case DATA_PROPERTY_ASSERTION: {
+			OWLDataProperty p = f.getOWLDataProperty(readIRI(in));
+			OWLIndividual subject = readIndividual(in, f);
+			OWLLiteral literal = (OWLLiteral) readValue(in, f);
+			return f.getOWLDataPropertyAssertionAxiom(p, subject, literal, readAnnotations(in, f));
+		}
+		case ANNOTATION_ASSERTION: {
+			IRI p = readIRI(in);
+			OWLAnnotationSubject subject = (OWLAnnotationSubject) readValue(in, f);
+			OWLAnnotationValue value = (OWLAnnotationValue) readValue(in, f);
+			return f.getOWLAnnotationAssertionAxiom(f.getOWLAnnotationProperty(p), subject, value, readAnnotations(in, f));
+		}
+		case SERIALIZED:
+			return (OWLAxiom) readSerialized(in);
+		default:
+			throw new IOException("Unknown axiom type in undo history: "+type);
+		}
+	}
+
+	private void writeEntity(DataOutputStream out, OWLEntity entity) throws IOException {
+		if (entity.isOWLClass()) {
+			out.writeByte(ENTITY_CLASS);
+		}
+		else if (entity.isOWLNamedIndividual()) {
+			out.writeByte(ENTITY_NAMED_INDIVIDUAL);
+		}
+		else if (entity.isOWLObjectProperty()) {
+			out.writeByte(ENTITY_OBJECT_PROPERTY);
+		}
+		else if (entity.isOWLDataProperty()) {
+			out.writeByte(ENTITY_DATA_PROPERTY);
+		}
+		else if (entity.isOWLAnnotationProperty()) {
+			out.writeByte(ENTITY_ANNOTATION_PROPERTY);
+		}
+		else {
+			out.writeByte(ENTITY_DATATYPE);
+		}
+		writeIRI(out, entity.getIRI());
+	}
+
+	private OWLEntity readEntity(DataInputStream in, OWLDataFactory f) throws IOException {
+		int type = in.readByte();
+		IRI iri = readIRI(in);
+		switch (type) {
+		case ENTITY_CLASS:
+			return f.getOWLClass(iri);
+		case ENTITY_NAMED_INDIVIDUAL:
+			return f.getOWLNamedIndividual(iri);
+		case ENTITY_OBJECT_PROPERTY:
+			return f.getOWLObjectProperty(iri);
+		case ENTITY_DATA_PROPERTY:
+			return f.getOWLDataProperty(iri);
+		case ENTITY_ANNOTATION_PROPERTY:
+			return f.getOWLAnnotationProperty(iri);
+		case ENTITY_DATATYPE:
+			return f.getOWLDatatype(iri);
+		default:
+			throw new IOException("Unknown entity type in undo history: "+type);
+		}
+	}
+
+	private void writeClassExpression(DataOutputStream out, OWLClassExpression ce) throws IOException {
+		if (ce.isAnonymous() == false) {
+			out.writeByte(CLASS);
+			writeIRI(out, ce.asOWLClass().getIRI());
+		}
+		else if (ce instanceof OWLObjectSomeValuesFrom) {
+			OWLObjectSomeValuesFrom svf = (OWLObjectSomeValuesFrom) ce;
+			out.writeByte(SOME_VALUES_FROM);
+			writeObjectProperty(out, svf.getProperty());
+			writeClassExpression(out, svf.getFiller());
+		}
+		else if (ce instanceof OWLObjectComplementOf) {
+			out.writeByte(COMPLEMENT_OF);
+			writeClassExpression(out, ((OWLObjectComplementOf) ce).getOperand());
+		}
+		else if (ce instanceof OWLObjectIntersectionOf || ce instanceof OWLObjectUnionOf) {
+			Set<OWLClassExpression> operands = ((OWLNaryBooleanClassExpression) ce).getOperands();
+			out.writeByte(ce instanceof OWLObjectIntersectionOf ? INTERSECTION_OF : UNION_OF);
+			writeVarInt(out, operands.size());
+			for (OWLClassExpression operand : operands) {
+				writeClassExpression(out, operand);
+			}
+		}
+		else {
+			out.writeByte(SERIALIZED);
+			writeSerialized(out, ce);
+		}
+	}
+
+	private OWLClassExpression readClassExpression(DataInputStream in, OWLDataFactory f) throws IOException {
+		int type = in.readByte();
+		switch (type) {
+		case CLASS:
+			return f.getOWLClass(readIRI(in));
+		case SOME_VALUES_FROM: {
+			OWLObjectPropertyExpression p = readObjectProperty(in, f);
+			return f.getOWLObjectSomeValuesFrom(p, readClassExpression(in, f));
+		}
+		case COMPLEMENT_OF:
+			return f.getOWLObjectComplementOf(readClassExpression(in, f));
+		case INTERSECTION_OF:
+		case UNION_OF: {
+			int count = readVarInt(in);
+			Set<OWLClassExpression> operands = new HashSet<>();
+			for (int i = 0; i < count; i++) {
+				operands.add(readClassExpression(in, f));
+			}
+			return type == INTERSECTION_OF ? f.getOWLObjectIntersectionOf(operands) : f.getOWLObjectUnionOf(operands);
+		}
+		case SERIALIZED:
+			return (OWLClassExpression) readSerialized(in);
+		default:
+			throw new IOException("Unknown class expression type in undo history: "+type);
+		}
+	}
+
+	private void writeObjectProperty(DataOutputStream out, OWLObjectPropertyExpression p) throws IOException {
+		// inverse properties are marked with a flag
+		if (p instanceof OWLObjectInverseOf) {
+			out.writeBoolean(true);
+			writeIRI(out, p.getNamedProperty().getIRI());
+		}
+		else {
+			out.writeBoolean(false);
+			writeIRI(out, p.asOWLObjectProperty().getIRI());
+		}
+	}
+
+	private OWLObjectPropertyExpression readObjectProperty(DataInputStream in, OWLDataFactory f) throws IOException {
+		boolean inverse = in.readBoolean();
+		OWLObjectProperty p = f.getOWLObjectProperty(readIRI(in));
+		return inverse ? f.getOWLObjectInverseOf(p) : p;
+	}
+
+	private void writeIndividual(DataOutputStream out, OWLIndividual individual) throws IOException {
+		if (individual.isNamed()) {
+			writeValue(out, individual.asOWLNamedIndividual().getIRI());
+		}
+		else {
+			writeValue(out, individual.asOWLAnonymousIndividual());
+		}
+	}
+
+	private OWLIndividual readIndividual(DataInputStream in, OWLDataFactory f) throws IOException {
+		Object value = readValue(in, f);
+		if (value instanceof IRI) {
+			return f.getOWLNamedIndividual((IRI) value);
+		}
+		return (OWLIndividual) value;
+	}
+
+	// IRIs, anonymous individuals and literals
+
+	private void writeValue(DataOutputStream out, Object value) throws IOException {
+		if (value instanceof IRI) {
+			out.writeByte(VALUE_IRI);
+			writeIRI(out, (IRI) value);
+		}
+		else if (value instanceof OWLAnonymousIndividual) {
+			out.writeByte(VALUE_ANONYMOUS);
+			writeString(out, ((OWLAnonymousIndividual) value).getID().getID());
+		}
+		else if (value instanceof OWLLiteral) {
+			OWLLiteral literal = (OWLLiteral) value;
+			if (literal.hasLang()) {
+				out.writeByte(VALUE_LANG_LITERAL);
+				writeString(out, literal.getLiteral());
+				writeString(out, literal.getLang());
+			}
+			else {
+				out.writeByte(VALUE_LITERAL);
+				writeString(out, literal.getLiteral());
+				writeIRI(out, literal.getDatatype().getIRI());
+			}
+		}
+		else {
+			throw new IOException("Unsupported value in undo history: "+value);
+		}
+	}
+
+	private Object readValue(DataInputStream in, OWLDataFactory f) throws IOException {
+		int type = in.readByte();
+		switch (type) {
+		case VALUE_IRI:
+			return readIRI(in);
+		case VALUE_ANONYMOUS:
+			return f.getOWLAnonymousIndividual(readString(in));
+		case VALUE_LANG_LITERAL: {
+			String lexical = readString(in);
+			return f.getOWLLiteral(lexical, readString(in));
+		}
+		case VALUE_LITERAL: {
+			String lexical = readString(in);
+			return f.getOWLLiteral(lexical, f.getOWLDatatype(readIRI(in)));
+		}
+		default:
+			throw new IOException("Unknown value type in undo history: "+type);
+		}
+	}
+
+	private void writeAnnotation(DataOutputStream out, OWLAnnotation annotation) throws IOException {
+		writeIRI(out, annotation.getProperty().getIRI());
+		writeValue(out, annotation.getValue());
+		writeAnnotations(out, annotation.getAnnotations());
+	}
+
+	private OWLAnnotation readAnnotation(DataInputStream in, OWLDataFactory f) throws IOException {
+		IRI p = readIRI(in);
+		OWLAnnotationValue value = (OWLAnnotationValue) readValue(in, f);
+		return f.getOWLAnnotation(f.getOWLAnnotationProperty(p), value, readAnnotations(in, f));
+	}
+
+	private void writeAnnotations(DataOutputStream out, Set<OWLAnnotation> annotations) throws IOException {
+		writeVarInt(out, annotations.size());
+		for (OWLAnnotation annotation : annotations) {
+			writeAnnotation(out, annotation);
+		}
+	}
+
+	private Set<OWLAnnotation> readAnnotations(DataInputStream in, OWLDataFactory f) throws IOException {
+		int count = readVarInt(in);
+		Set<OWLAnnotation> annotations = new HashSet<>();
+		for (int i = 0; i < count; i++) {
+			annotations.add(readAnnotation(in, f));
+		}
+		return annotations;
+	}
+
+	private void writeIRI(DataOutputStream out, IRI iri) throws IOException {
+		Integer index = indices.get(iri);
+		if (index == null) {
+			index = Integer.valueOf(iris.size());
+			indices.put(iri, index);
+			iris.add(iri);
+		}
+		writeVarInt(out, index.intValue());
+	}
+
+	private IRI readIRI(DataInputStream in) throws IOException {
+		int index = readVarInt(in);
+		if (index >= iris.size()) {
+			throw new IOException("Invalid IRI index in undo history: "+index);
+		}
+		return iris.get(index);
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		writeVarInt(out, bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[readVarInt(in)];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	private static int readVarInt(DataInputStream in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Invalid number in undo history");
+	}
+
+	private static void writeSerialized(DataOutputStream out, Object object) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(bytes);
+		oos.writeObject(object);
+		oos.close();
+		writeVarInt(out, bytes.size());
+		bytes.writeTo(out);
+	}
+
+	private static Object readSerialized(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[readVarInt(in)];
+		in.readFully(bytes);
+		ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+		try {
+			return ois.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException("Could not read serialized object in undo history", e);
+		} finally {
+			ois.close();
+		}
+	}
+}
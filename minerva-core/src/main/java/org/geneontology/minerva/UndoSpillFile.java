@@ -0,0 +1,122 @@
+package org.geneontology.minerva;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.geneontology.minerva.UndoAwareMolecularModelManager.ChangeEvent;
+
+/**
+ * Stack of the oldest undo events of a model, which were moved out of memory
+ * by the limits of the {@link UndoAwareMolecularModelManager}. The events are
+ * stored in their encoded form, one length prefixed record per event. The
+ * encoding refers to the dictionary of the history in memory, so the file is
+ * only valid as long as the history of the model. The file is only opened
+ * for a push or pop, as spilling is rare compared to the edits. Not
+ * thread-safe, the owner synchronizes the access.
+ */
+final class UndoSpillFile {
+
+	private final File file;
+	// start position of each record, the last record is the top of the stack
+	private final List<Long> offsets = new ArrayList<>();
+	private long length = 0;
+
+	UndoSpillFile(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Add an event, it has to be newer than all events in the file.
+	 *
+	 * @param event
+	 * @throws IOException
+	 */
+	void push(ChangeEvent event) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(event.data.length + 64);
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeBoolean(event.getUserId() != null);
+		if (event.getUserId() != null) {
+			out.writeUTF(event.getUserId());
+		}
+		out.writeLong(event.getTime());
+		out.writeInt(event.getChangeCount());
+		out.writeInt(event.getAxiomCount());
+		out.write(event.data);
+		out.close();
+		byte[] record = bytes.toByteArray();
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.seek(length);
+			raf.writeInt(record.length);
+			raf.write(record);
+		} finally {
+			raf.close();
+		}
+		offsets.add(length);
+		length += 4 + record.length;
+	}
+
+	/**
+	 * Remove and return the newest event.
+	 *
+	 * @return event or null, if the file is empty
+	 * @throws IOException
+	 */
+	ChangeEvent pop() throws IOException {
+		if (offsets.isEmpty()) {
+			return null;
+		}
+		long offset = offsets.get(offsets.size() - 1);
+		byte[] record;
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.seek(offset);
+			record = new byte[raf.readInt()];
+			raf.readFully(record);
+			raf.setLength(offset);
+		} finally {
+			raf.close();
+		}
+		offsets.remove(offsets.size() - 1);
+		length = offset;
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+		String userId = in.readBoolean() ? in.readUTF() : null;
+		long time = in.readLong();
+		int changeCount = in.readInt();
+		int axiomCount = in.readInt();
+		byte[] data = new byte[in.available()];
+		in.readFully(data);
+		return new ChangeEvent(userId, time, data, changeCount, axiomCount);
+	}
+
+	/**
+	 * @return number of events in the file
+	 */
+	int size() {
+		return offsets.size();
+	}
+
+	/**
+	 * @return size of the file in bytes
+	 */
+	long getLength() {
+		return length;
+	}
+
+	/**
+	 * Remove all events and the file.
+	 */
+	void clear() {
+		offsets.clear();
+		length = 0;
+		FileUtils.deleteQuietly(file);
+	}
+}
@@ -0,0 +1,84 @@
+package org.geneontology.minerva;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.jena.rdf.model.Statement;
+import org.geneontology.jena.SesameJena;
+import org.geneontology.rules.engine.BlankNode;
+import org.geneontology.rules.engine.Triple;
+import org.geneontology.rules.engine.URI;
+import org.geneontology.rules.util.Bridge;
+import org.junit.Test;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLAnnotationProperty;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLDataProperty;
+import org.semanticweb.owlapi.model.OWLNamedIndividual;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+import scala.collection.JavaConverters;
+
+public class ArachneTriplesTest {
+
+	private static final String PREFIX = "http://model.geneontology.org/";
+
+	@Test
+	public void testSameTriplesAsJenaBridge() throws Exception {
+		OWLOntologyManager m = OWLManager.createOWLOntologyManager();
+		OWLDataFactory f = m.getOWLDataFactory();
+		OWLOntology model = m.createOntology(IRI.create(PREFIX+"0001"));
+		OWLAnnotationProperty contributor = f.getOWLAnnotationProperty(IRI.create("http://purl.org/dc/elements/1.1/contributor"));
+		OWLObjectProperty partOf = f.getOWLObjectProperty(IRI.create("http://purl.obolibrary.org/obo/BFO_0000050"));
+		OWLDataProperty count = f.getOWLDataProperty(IRI.create("http://example.org/count"));
+		OWLClass c = f.getOWLClass(IRI.create("http://purl.obolibrary.org/obo/GO_0003674"));
+		OWLNamedIndividual i1 = f.getOWLNamedIndividual(IRI.create(PREFIX+"0001/i1"));
+		OWLNamedIndividual i2 = f.getOWLNamedIndividual(IRI.create(PREFIX+"0001/i2"));
+		m.addAxiom(model, f.getOWLDeclarationAxiom(contributor));
+		m.addAxiom(model, f.getOWLDeclarationAxiom(partOf));
+		m.addAxiom(model, f.getOWLDeclarationAxiom(count));
+		m.addAxiom(model, f.getOWLDeclarationAxiom(c));
+		m.addAxiom(model, f.getOWLDeclarationAxiom(i1));
+		m.addAxiom(model, f.getOWLDeclarationAxiom(i2));
+		Set<OWLAnnotation> annotations = new HashSet<>();
+		annotations.add(f.getOWLAnnotation(contributor, f.getOWLLiteral("GOC:test")));
+		annotations.add(f.getOWLAnnotation(f.getRDFSComment(), f.getOWLLiteral("comment", "en")));
+		m.addAxiom(model, f.getOWLClassAssertionAxiom(c, i1, annotations));
+		m.addAxiom(model, f.getOWLClassAssertionAxiom(f.getOWLObjectSomeValuesFrom(partOf, c), i2));
+		m.addAxiom(model, f.getOWLObjectPropertyAssertionAxiom(partOf, i1, i2));
+		m.addAxiom(model, f.getOWLDataPropertyAssertionAxiom(count, i1, 42));
+
+		Set<Triple> direct = ArachneTriples.fromOntology(model);
+		Set<Triple> bridged = new HashSet<>();
+		for (Statement s : JavaConverters.setAsJavaSetConverter(SesameJena.ontologyAsTriples(model)).asJava()) {
+			bridged.add(Bridge.tripleFromJena(s.asTriple()));
+		}
+		assertEquals(bridged.size(), direct.size());
+		// blank node labels differ between two renderings
+		assertEquals(withoutBlankNodes(bridged), withoutBlankNodes(direct));
+		assertFalse(withoutBlankNodes(direct).isEmpty());
+
+		Set<Triple> withoutHeader = ArachneTriples.fromOntologyWithoutHeader(model);
+		assertEquals(direct.size() - 1, withoutHeader.size());
+		for (Triple t : withoutHeader) {
+			assertFalse(t.s().equals(new URI(PREFIX+"0001")));
+		}
+	}
+
+	private static Set<Triple> withoutBlankNodes(Set<Triple> triples) {
+		Set<Triple> result = new HashSet<>();
+		for (Triple t : triples) {
+			if ((t.s() instanceof BlankNode) == false && (t.o() instanceof BlankNode) == false) {
+				result.add(t);
+			}
+		}
+		return result;
+	}
+}
@@ -8,14 +8,25 @@ import static org.junit.Assert.fail;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.rdf.model.Resource;
+import org.geneontology.minerva.BulkModelImporter.ImportStatistics;
+import org.geneontology.minerva.ModelContainer.ModelChangeListener;
 import org.geneontology.minerva.curie.CurieHandler;
 import org.geneontology.minerva.curie.DefaultCurieHandler;
 import org.geneontology.minerva.util.AnnotationShorthand;
@@ -23,6 +34,7 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.openrdf.query.GraphQueryResult;
+import org.openrdf.query.QueryEvaluationException;
 import org.openrdf.query.QueryResult;
 import org.openrdf.query.TupleQueryResult;
 import org.semanticweb.owlapi.model.IRI;
@@ -31,6 +43,8 @@ import org.semanticweb.owlapi.model.OWLAnnotationProperty;
 import org.semanticweb.owlapi.model.OWLDataFactory;
 import org.semanticweb.owlapi.model.OWLNamedIndividual;
 import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
 
 import owltools.OWLToolsTestBasics;
 import owltools.graph.OWLGraphWrapper;
@@ -65,6 +79,36 @@ public class BlazegraphMolecularModelManagerTest extends OWLToolsTestBasics {
         compareDumpUsingJena(new File(sourceModelPath), folder.getRoot(), null);
     }
 
+    /**
+     * Export a model as binary snapshot, import the snapshot into a new
+     * database and compare the Turtle dump with the original file.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSnapshotImportDump() throws Exception {
+        File sourceFile = new File("src/test/resources/dummy-noctua-model.ttl");
+        BlazegraphMolecularModelManager<Void> m3 = createBlazegraphMolecularModelManager();
+        m3.importModelToDatabase(sourceFile, false);
+        m3.setExportFormat(ModelExportFormat.snapshot);
+        File snapshotDir = folder.newFolder();
+        for (IRI modelId : m3.getStoredModelIds())
+            m3.dumpStoredModel(modelId, snapshotDir);
+        m3.dispose();
+        File[] snapshots = snapshotDir.listFiles();
+        assertEquals(1, snapshots.length);
+        assertTrue(snapshots[0].getName().endsWith(ModelSnapshotWriter.FILE_SUFFIX));
+
+        /* import of the snapshot */
+        BlazegraphMolecularModelManager<Void> m3b = createBlazegraphMolecularModelManager();
+        m3b.importModelToDatabase(snapshots[0], false);
+        File dumpDir = folder.newFolder();
+        for (IRI modelId : m3b.getStoredModelIds())
+            m3b.dumpStoredModel(modelId, dumpDir);
+        m3b.dispose();
+        compareDumpUsingJena(sourceFile, dumpDir, null);
+    }
+
     /**
      * Test the whole cycle of data processing using Blazegraph.
      * Check this pull request: https://github.com/geneontology/minerva/issues/143
@@ -117,6 +161,39 @@ public class BlazegraphMolecularModelManagerTest extends OWLToolsTestBasics {
         assertEquals(1, m3b.getStoredModelIds().size());
     }
 
+    @Test
+    public void testBulkImport() throws Exception {
+        BlazegraphMolecularModelManager<Void> m3 = createBlazegraphMolecularModelManager();
+        final OWLDataFactory df = m3.getOntology().getOWLOntologyManager().getOWLDataFactory();
+        final OWLAnnotationProperty modelState = df.getOWLAnnotationProperty(AnnotationShorthand.modelstate.getAnnotationProperty());
+        File dir = folder.newFolder();
+        for (int i = 0; i < 5; i++) {
+            ModelContainer model = m3.generateBlankModel(null);
+            m3.createIndividualWithIRI(model, curieHandler.getIRI("GO:000000"+i), null, null);
+            if (i == 0) {
+                m3.addModelAnnotations(model, Collections.singleton(df.getOWLAnnotation(modelState, df.getOWLLiteral("delete"))), null);
+            }
+            m3.saveModel(model, null, null);
+            m3.dumpStoredModel(model.getModelId(), dir);
+        }
+        m3.dispose();
+        File invalid = new File(dir, "invalid.ttl");
+        FileUtils.write(invalid, "this is not turtle");
+
+        BlazegraphMolecularModelManager<Void> m3b = createBlazegraphMolecularModelManager();
+        BulkModelImporter importer = new BulkModelImporter(m3b, 2, 2);
+        ImportStatistics statistics = importer.importFiles(Arrays.asList(dir.listFiles()), true);
+        assertEquals(6, statistics.getTotal());
+        assertEquals(4, statistics.getImported());
+        assertEquals(1, statistics.getSkipped());
+        assertEquals(Collections.singletonList(invalid), statistics.getFailed());
+        assertEquals(4, m3b.getStoredModelIds().size());
+        for (IRI modelId : m3b.getStoredModelIds()) {
+            assertEquals(1, m3b.getIndividuals(modelId).size());
+        }
+        m3b.dispose();
+    }
+
     @Test
     public void testSPARQLQuery() throws Exception {
         String sourceModelPath = "src/test/resources/dummy-noctua-model.ttl";
@@ -129,6 +206,548 @@ public class BlazegraphMolecularModelManagerTest extends OWLToolsTestBasics {
         QueryResult constructResult = m3.executeSPARQLQuery("CONSTRUCT { ?s <http://example.org/subject_in> ?g } WHERE { GRAPH ?g { ?s ?p ?o } }", 10);
         assertTrue(constructResult instanceof GraphQueryResult);
         assertEquals("http://model.geneontology.org/0000000300000001", ((GraphQueryResult) constructResult).next().getObject().stringValue());
+        selectResult.close();
+        constructResult.close();
+        QueryResult<?> askResult = m3.executeSPARQLQuery("ASK { GRAPH <http://model.geneontology.org/0000000300000001> { ?s ?p ?o } }", 10);
+        assertTrue(askResult instanceof BooleanQueryResult);
+        assertTrue(((BooleanQueryResult) askResult).getValue());
+        m3.dispose();
+    }
+
+    @Test
+    public void testSPARQLResultCache() throws Exception {
+        BlazegraphMolecularModelManager<Void> m3 = createBlazegraphMolecularModelManager();
+        m3.importModelToDatabase(new File("src/test/resources/dummy-noctua-model.ttl"), false);
+        SPARQLResultCache cache = m3.getSPARQLResultCache();
+        TupleQueryResult first = (TupleQueryResult) m3.executeSPARQLQuery("SELECT DISTINCT ?g WHERE { GRAPH ?g { ?s ?p ?o } }", 10);
+        List<String> graphs = new ArrayList<>();
+        while (first.hasNext()) {
+            graphs.add(first.next().getValue("g").stringValue());
+        }
+        first.close();
+        assertEquals(0, cache.getHitCount());
+        assertEquals(1, cache.getSize());
+
+        /* same query, different whitespace */
+        TupleQueryResult second = (TupleQueryResult) m3.executeSPARQLQuery("SELECT DISTINCT ?g\n WHERE {\tGRAPH ?g { ?s ?p ?o } }", 10);
+        List<String> cachedGraphs = new ArrayList<>();
+        while (second.hasNext()) {
+            cachedGraphs.add(second.next().getValue("g").stringValue());
+        }
+        second.close();
+        assertEquals(1, cache.getHitCount());
+        assertEquals(graphs, cachedGraphs);
+
+        /* a commit invalidates the cached results */
+        ModelContainer model = m3.generateBlankModel(null);
+        m3.saveModel(model, null, null);
+        TupleQueryResult third = (TupleQueryResult) m3.executeSPARQLQuery("SELECT DISTINCT ?g WHERE { GRAPH ?g { ?s ?p ?o } }", 10);
+        int count = 0;
+        while (third.hasNext()) {
+            third.next();
+            count += 1;
+        }
+        third.close();
+        assertEquals(1, cache.getHitCount());
+        assertEquals(graphs.size() + 1, count);
+        m3.dispose();
+    }
+
+    @Test
+    public void testSPARQLQueryConcurrencyLimit() throws Exception {
+        BlazegraphMolecularModelManager<Void> m3 = createBlazegraphMolecularModelManager();
+        m3.importModelToDatabase(new File("src/test/resources/dummy-noctua-model.ttl"), false);
+        m3.setMaxConcurrentQueries(1);
+        String query = "SELECT DISTINCT ?g WHERE { GRAPH ?g { ?s ?p ?o } }";
+        QueryResult<?> first = m3.executeSPARQLQuery(query, 1);
+        /* the slot is held until the streaming result is closed */
+        try {
+            m3.executeSPARQLQuery(query, 1);
+            fail("expected no free query slot");
+        } catch (QueryEvaluationException e) {
+            // expected
+        }
+        first.close();
+        /* a second close, e.g. by the request cleanup, does not free another slot */
+        first.close();
+        QueryResult<?> second = m3.executeSPARQLQuery(query, 1);
+        assertTrue(second.hasNext());
+        try {
+            m3.executeSPARQLQuery(query, 1);
+            fail("expected no free query slot");
+        } catch (QueryEvaluationException e) {
+            // expected
+        }
+        second.close();
+        /* an unread result releases its slot on close */
+        QueryResult<?> third = m3.executeSPARQLQuery(query, 1);
+        third.close();
+        m3.executeSPARQLQuery(query, 1).close();
+        m3.dispose();
+    }
+
+    /**
+     * Save a model incrementally and check that the stored triples are the
+     * same as for a full save of the same model.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testIncrementalSave() throws Exception {
+        BlazegraphMolecularModelManager<Void> m3 = createBlazegraphMolecularModelManager();
+        final OWLDataFactory df = m3.getOntology().getOWLOntologyManager().getOWLDataFactory();
+        final OWLObjectProperty partOf = df.getOWLObjectProperty(curieHandler.getIRI("BFO:0000050"));
+        final OWLAnnotation comment = df.getOWLAnnotation(df.getRDFSComment(), df.getOWLLiteral("test comment"));
+
+        ModelContainer model = m3.generateBlankModel(null);
+        OWLNamedIndividual i1 = m3.createIndividualWithIRI(model, curieHandler.getIRI("GO:0000001"), null, null);
+        OWLNamedIndividual i2 = m3.createIndividualWithIRI(model, curieHandler.getIRI("GO:0000002"), null, null);
+        OWLNamedIndividual i3 = m3.createIndividualWithIRI(model, curieHandler.getIRI("GO:0000003"), null, null);
+        m3.addFact(model, partOf, i1, i2, Collections.singleton(comment), null);
+        m3.saveModel(model, null, null);
+        assertEquals(1, m3.getSaveStatistics().getFullSaves());
+
+        /* change the model: annotated fact removed, new annotated fact, model annotation */
+        m3.removeFact(model, partOf, i1, i2, null);
+        m3.addFact(model, partOf, i2, i3, Collections.singleton(comment), null);
+        m3.addModelAnnotations(model, Collections.singleton(df.getOWLAnnotation(df.getRDFSLabel(), df.getOWLLiteral("title"))), null);
+        m3.saveModel(model, null, null);
+        assertEquals(1, m3.getSaveStatistics().getIncrementalSaves());
+        assertEquals(1, m3.getSaveStatistics().getFullSaves());
+        File incrementalDir = folder.newFolder();
+        m3.dumpStoredModel(model.getModelId(), incrementalDir);
+
+        /* a full save of the same model has to create the same triples */
+        m3.setUseIncrementalSaves(false);
+        m3.saveModel(model, null, null);
+        assertEquals(2, m3.getSaveStatistics().getFullSaves());
+        File fullDir = folder.newFolder();
+        m3.dumpStoredModel(model.getModelId(), fullDir);
+        compareDumpUsingJena(incrementalDir.listFiles()[0], fullDir, null);
+
+        /* load the model again, the next save is incremental */
+        m3.setUseIncrementalSaves(true);
+        m3.unlinkModel(model.getModelId());
+        model = m3.getModel(model.getModelId());
+        m3.removeFact(model, partOf, i2, i3, null);
+        m3.saveModel(model, null, null);
+        assertEquals(2, m3.getSaveStatistics().getIncrementalSaves());
+        m3.unlinkModel(model.getModelId());
+        model = m3.getModel(model.getModelId());
+        assertTrue(model.getAboxOntology().getObjectPropertyAssertionAxioms(i2).isEmpty());
+        m3.dispose();
+    }
+
+    @Test
+    public void testGroupCommitSaves() throws Exception {
+        final BlazegraphMolecularModelManager<Void> m3 = createBlazegraphMolecularModelManager();
+        final int modelCount = 8;
+        final List<ModelContainer> models = new ArrayList<>();
+        for (int i = 0; i < modelCount; i++) {
+            ModelContainer model = m3.generateBlankModel(null);
+            m3.createIndividualWithIRI(model, curieHandler.getIRI("GO:000000"+i), null, null);
+            models.add(model);
+        }
+        /* save all models concurrently, saves waiting in the queue share a commit */
+        ExecutorService executor = Executors.newFixedThreadPool(modelCount);
+        List<Future<Void>> futures = new ArrayList<>();
+        for (final ModelContainer model : models) {
+            futures.add(executor.submit(new Callable<Void>() {
+
+                @Override
+                public Void call() throws Exception {
+                    m3.saveModel(model, null, null);
+                    return null;
+                }
+            }));
+        }
+        for (Future<Void> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        GroupCommitWriter writer = m3.getGroupCommitWriter();
+        assertEquals(modelCount, writer.getWriteCount());
+        assertTrue(writer.getCommitCount() <= modelCount);
+        assertEquals(0, writer.getFailedWriteCount());
+        assertEquals(0, writer.getQueueDepth());
+
+        /* all saves are durable, once saveModel returns */
+        for (ModelContainer model : models) {
+            m3.unlinkModel(model.getModelId());
+            assertTrue(m3.getStoredModelIds().contains(model.getModelId()));
+            assertEquals(1, m3.getIndividuals(model.getModelId()).size());
+        }
+        m3.dispose();
+    }
+
+    @Test
+    public void testStoredModelCatalog() throws Exception {
+        BlazegraphMolecularModelManager<Void> m3 = createBlazegraphMolecularModelManager();
+        ModelContainer model = m3.generateBlankModel(null);
+        IRI modelId = model.getModelId();
+        assertFalse(m3.isStoredModel(modelId));
+        assertTrue(m3.getAvailableModelIds().contains(modelId));
+        m3.saveModel(model, null, null);
+        assertTrue(m3.isStoredModel(modelId));
+        assertTrue(m3.getStoredModelIds().contains(modelId));
+
+        m3.unlinkModel(modelId);
+        assertTrue(m3.deleteStoredModel(modelId));
+        assertFalse(m3.isStoredModel(modelId));
+        assertFalse(m3.getAvailableModelIds().contains(modelId));
+        assertEquals(null, m3.getModel(modelId));
+        m3.dispose();
+    }
+
+    @Test
+    public void testModelMetadataIndex() throws Exception {
+        String journalPath = folder.newFile().getAbsolutePath();
+        FileUtils.deleteQuietly(new File(journalPath));
+        BlazegraphMolecularModelManager<Void> m3 = createBlazegraphMolecularModelManager(journalPath);
+        OWLDataFactory f = m3.getOntology().getOWLOntologyManager().getOWLDataFactory();
+        OWLAnnotation title = f.getOWLAnnotation(f.getOWLAnnotationProperty(AnnotationShorthand.title.getAnnotationProperty()),
+                f.getOWLLiteral("test model"));
+        ModelContainer model = m3.generateBlankModel(null);
+        IRI modelId = model.getModelId();
+        m3.addModelAnnotations(model, Collections.singleton(title), null);
+        m3.saveModel(model, null, null);
+        m3.unlinkModel(modelId);
+        /* read from the index, the model is not in memory */
+        Set<OWLAnnotation> annotations = m3.getAllModelAnnotations().get(modelId);
+        assertTrue(annotations.contains(title));
+        m3.dispose();
+
+        /* the index is rebuilt from the journal */
+        m3 = createBlazegraphMolecularModelManager(journalPath);
+        assertEquals(annotations, m3.getAllModelAnnotations().get(modelId));
+        assertTrue(m3.deleteStoredModel(modelId));
+        assertFalse(m3.getAllModelAnnotations().containsKey(modelId));
+        m3.dispose();
+    }
+
+    @Test
+    public void testIncrementalExport() throws Exception {
+        BlazegraphMolecularModelManager<Void> m3 = createBlazegraphMolecularModelManager();
+        ModelContainer model1 = m3.generateBlankModel(null);
+        ModelContainer model2 = m3.generateBlankModel(null);
+        m3.createIndividualWithIRI(model1, curieHandler.getIRI("GO:0000001"), null, null);
+        m3.saveModel(model1, null, null);
+        m3.saveModel(model2, null, null);
+
+        ModelExporter.ExportStatistics statistics = m3.dumpAllStoredModels(2, true);
+        assertEquals(2, statistics.getWritten());
+        assertEquals(0, statistics.getSkipped());
+        assertTrue(new File(folder.getRoot(), ModelExporter.HASHES_FILE_NAME).isFile());
+
+        /* nothing changed since the last export */
+        statistics = m3.dumpAllStoredModels(2, true);
+        assertEquals(0, statistics.getWritten());
+        assertEquals(2, statistics.getSkipped());
+
+        /* only the changed model is written */
+        m3.createIndividualWithIRI(model2, curieHandler.getIRI("GO:0000002"), null, null);
+        m3.saveModel(model2, null, null);
+        statistics = m3.dumpAllStoredModels(2, true);
+        assertEquals(1, statistics.getWritten());
+        assertEquals(1, statistics.getSkipped());
+
+        /* a full export writes all models */
+        statistics = m3.dumpAllStoredModels(2, false);
+        assertEquals(2, statistics.getWritten());
+        m3.dispose();
+    }
+
+    @Test
+    public void testModelCacheEviction() throws Exception {
+        BlazegraphMolecularModelManager<Void> m3 = createBlazegraphMolecularModelManager();
+        ModelCache cache = m3.getModelCache();
+        cache.setLimits(1, 0);
+        ModelContainer model1 = m3.generateBlankModel(null);
+        IRI modelId1 = model1.getModelId();
+        OWLNamedIndividual i1 = m3.createIndividualWithIRI(model1, curieHandler.getIRI("GO:0000001"), null, null);
+        /* new and modified models are pinned */
+        m3.generateBlankModel(null);
+        assertEquals(2, cache.getSize());
+        assertEquals(2, cache.getPinnedCount());
+        assertEquals(0, cache.getEvictionCount());
+
+        /* the saved model is evicted */
+        m3.saveModel(model1, null, null);
+        m3.generateBlankModel(null);
+        assertEquals(1, cache.getEvictionCount());
+        assertFalse(m3.getCurrentModelIds().contains(modelId1));
+        assertEquals(2, cache.getSize());
+
+        /* and transparently re-loaded */
+        long misses = cache.getMissCount();
+        ModelContainer reloaded = m3.getModel(modelId1);
+        assertEquals(misses + 1, cache.getMissCount());
+        assertTrue(reloaded.getAboxOntology().containsIndividualInSignature(i1.getIRI()));
+        m3.getModel(modelId1);
+        assertEquals(misses + 1, cache.getMissCount());
+        m3.dispose();
+    }
+
+    @Test
+    public void testModelInBatchIsNotEvicted() throws Exception {
+        BlazegraphMolecularModelManager<Void> m3 = createBlazegraphMolecularModelManager();
+        ModelCache cache = m3.getModelCache();
+        cache.setLimits(1, 0);
+        ModelContainer model = m3.generateBlankModel(null);
+        IRI modelId = model.getModelId();
+        m3.saveModel(model, null, null);
+
+        /* evicted between the lookup and the first change */
+        ModelContainer found = m3.getModel(modelId);
+        m3.generateBlankModel(null);
+        assertTrue(found.isDisposed());
+
+        /* the model is re-loaded with an open batch */
+        ModelContainer inBatch = m3.getModelInBatch(modelId);
+        assertFalse(inBatch.isDisposed());
+        m3.generateBlankModel(null);
+        OWLNamedIndividual i1 = m3.createIndividualWithIRI(inBatch, curieHandler.getIRI("GO:0000001"), null, null);
+        inBatch.endBatch();
+        assertFalse(inBatch.isDisposed());
+        assertTrue(inBatch.getAboxOntology().containsIndividualInSignature(i1.getIRI()));
+        m3.dispose();
+    }
+
+    @Test
+    public void testConcurrentModelLoads() throws Exception {
+        BlazegraphMolecularModelManager<Void> m3 = createBlazegraphMolecularModelManager();
+        ModelContainer model = m3.generateBlankModel(null);
+        final IRI modelId = model.getModelId();
+        m3.createIndividualWithIRI(model, curieHandler.getIRI("GO:0000001"), null, null);
+        m3.saveModel(model, null, null);
+        m3.unlinkModel(modelId);
+
+        ModelCache cache = m3.getModelCache();
+        long misses = cache.getMissCount();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<ModelContainer>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(new Callable<ModelContainer>() {
+
+                    @Override
+                    public ModelContainer call() throws Exception {
+                        return m3.getModel(modelId);
+                    }
+                }));
+            }
+            ModelContainer loaded = futures.get(0).get();
+            for (Future<ModelContainer> future : futures) {
+                /* all requests get the same instance from a single load */
+                assertTrue(loaded == future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(misses + 1, cache.getMissCount());
+        m3.dispose();
+    }
+
+    @Test
+    public void testModelWarmUp() throws Exception {
+        File statsFile = new File(folder.newFolder(), "access-stats.tsv");
+        BlazegraphMolecularModelManager<Void> m3 = createBlazegraphMolecularModelManager();
+        m3.setAccessStats(new ModelAccessStats(statsFile));
+        IRI hotModelId = m3.generateBlankModel(null).getModelId();
+        IRI coldModelId = m3.generateBlankModel(null).getModelId();
+        m3.saveAllModels(null, null);
+        m3.getModel(hotModelId);
+        m3.getModel(hotModelId);
+        m3.getModel(coldModelId);
+        m3.unlinkModel(hotModelId);
+        m3.unlinkModel(coldModelId);
+        assertTrue(m3.isReady());
+
+        ModelWarmUp warmUp = m3.startWarmUp(1, 1, 0);
+        assertTrue(warmUp.awaitCompletion(30, TimeUnit.SECONDS));
+        assertTrue(m3.isReady());
+        assertEquals(1, warmUp.getLoadedCount());
+        assertTrue(m3.getCurrentModelIds().contains(hotModelId));
+        assertFalse(m3.getCurrentModelIds().contains(coldModelId));
+        m3.dispose();
+
+        /* the statistics are persisted on dispose */
+        ModelAccessStats stats = new ModelAccessStats(statsFile);
+        assertEquals(Arrays.asList(hotModelId, coldModelId), stats.getTopModels(5));
+    }
+
+    @Test
+    public void testModelReadWriteLock() throws Exception {
+        final BlazegraphMolecularModelManager<Void> m3 = createBlazegraphMolecularModelManager();
+        final ModelContainer model = m3.generateBlankModel(null);
+        m3.createIndividualWithIRI(model, curieHandler.getIRI("GO:0000001"), null, null);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<OWLNamedIndividual> edit;
+        model.getReadLock().lock();
+        try {
+            /* an export only requires the read lock */
+            Future<String> export = executor.submit(new Callable<String>() {
+
+                @Override
+                public String call() throws Exception {
+                    return m3.exportModel(model);
+                }
+            });
+            assertTrue(export.get(30, TimeUnit.SECONDS).contains("GO_0000001"));
+
+            /* an edit waits for the write lock */
+            edit = executor.submit(new Callable<OWLNamedIndividual>() {
+
+                @Override
+                public OWLNamedIndividual call() throws Exception {
+                    return m3.createIndividualWithIRI(model, curieHandler.getIRI("GO:0000002"), null, null);
+                }
+            });
+            Thread.sleep(200);
+            assertFalse(edit.isDone());
+        } finally {
+            model.getReadLock().unlock();
+        }
+        OWLNamedIndividual i2 = edit.get(30, TimeUnit.SECONDS);
+        assertTrue(model.getAboxOntology().containsIndividualInSignature(i2.getIRI()));
+        executor.shutdown();
+        m3.dispose();
+    }
+
+    @Test
+    public void testModelSnapshot() throws Exception {
+        BlazegraphMolecularModelManager<Void> m3 = createBlazegraphMolecularModelManager();
+        ModelContainer model = m3.generateBlankModel(null);
+        OWLNamedIndividual i1 = m3.createIndividualWithIRI(model, curieHandler.getIRI("GO:0000001"), null, null);
+        ModelSnapshot snapshot1 = model.getSnapshot();
+        /* the snapshot is shared, until the model changes */
+        assertTrue(snapshot1 == model.getSnapshot());
+        assertEquals(model.getVersion(), snapshot1.getVersion());
+
+        OWLNamedIndividual i2 = m3.createIndividualWithIRI(model, curieHandler.getIRI("GO:0000002"), null, null);
+        assertTrue(model.getVersion() > snapshot1.getVersion());
+        ModelSnapshot snapshot2 = model.getSnapshot();
+        assertFalse(snapshot1 == snapshot2);
+        /* the first snapshot is not affected by the change */
+        assertEquals(model.getAboxOntology().getAxioms(), snapshot2.getAxioms());
+        assertFalse(snapshot1.getAxioms().containsAll(snapshot2.getAxioms()));
+
+        OWLOntology copy = snapshot1.createOntology();
+        assertEquals(model.getModelId(), copy.getOntologyID().getOntologyIRI().get());
+        assertTrue(copy.containsIndividualInSignature(i1.getIRI()));
+        assertFalse(copy.containsIndividualInSignature(i2.getIRI()));
+
+        /* a save writes the snapshot, the model is no longer modified */
+        m3.saveModel(model, null, null);
+        assertFalse(model.isModified());
+        m3.dispose();
+    }
+
+    @Test
+    public void testAsyncModelChangeListener() throws Exception {
+        BlazegraphMolecularModelManager<Void> m3 = createBlazegraphMolecularModelManager();
+        ModelContainer model = m3.generateBlankModel(null);
+        final List<List<OWLOntologyChange>> events = Collections.synchronizedList(new ArrayList<List<OWLOntologyChange>>());
+        final CountDownLatch delivered = new CountDownLatch(1);
+        final CountDownLatch disposed = new CountDownLatch(1);
+        model.registerAsyncListener(new ModelChangeListener() {
+
+            @Override
+            public void handleChange(List<OWLOntologyChange> changes) {
+                events.add(changes);
+                delivered.countDown();
+            }
+
+            @Override
+            public void dispose() {
+                disposed.countDown();
+            }
+        }, 10000);
+        /* the changes of a batch are delivered as one event at its end */
+        model.beginBatch();
+        m3.createIndividualWithIRI(model, curieHandler.getIRI("GO:0000001"), null, null);
+        m3.createIndividualWithIRI(model, curieHandler.getIRI("GO:0000002"), null, null);
+        assertTrue(events.isEmpty());
+        model.endBatch();
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        assertEquals(1, events.size());
+        assertTrue(events.get(0).size() >= 2);
+
+        /* pending changes are delivered before the dispose */
+        m3.createIndividualWithIRI(model, curieHandler.getIRI("GO:0000003"), null, null);
+        m3.dispose();
+        assertTrue(disposed.await(5, TimeUnit.SECONDS));
+        assertEquals(2, events.size());
+    }
+
+    @Test
+    public void testChangeLogRecovery() throws Exception {
+        String journalPath = folder.newFile().getAbsolutePath();
+        FileUtils.deleteQuietly(new File(journalPath));
+        File logFile = new File(folder.getRoot(), "changes.log");
+        BlazegraphMolecularModelManager<Void> m3 = createBlazegraphMolecularModelManager(journalPath);
+        m3.setChangeLog(new ModelChangeLog(logFile));
+        /* stored model with unsaved changes */
+        ModelContainer model1 = m3.generateBlankModel(null);
+        m3.saveModel(model1, null, null);
+        OWLNamedIndividual i1 = m3.createIndividualWithIRI(model1, curieHandler.getIRI("GO:0000001"), null, null);
+        /* new model, never saved */
+        ModelContainer model2 = m3.generateBlankModel(null);
+        OWLNamedIndividual i2 = m3.createIndividualWithIRI(model2, curieHandler.getIRI("GO:0000002"), null, null);
+        /* saved model, nothing to recover */
+        ModelContainer model3 = m3.generateBlankModel(null);
+        m3.createIndividualWithIRI(model3, curieHandler.getIRI("GO:0000003"), null, null);
+        m3.saveModel(model3, null, null);
+        assertEquals(2, m3.getChangeLog().getPendingModelCount());
+        m3.dispose();
+
+        m3 = createBlazegraphMolecularModelManager(journalPath);
+        ModelChangeLog log = new ModelChangeLog(logFile);
+        assertEquals(2, log.getRecoveredChanges().size());
+        m3.setChangeLog(log);
+        assertEquals(2, m3.replayChangeLog());
+        assertTrue(m3.isModelModified(model1.getModelId()));
+        assertTrue(m3.getModel(model1.getModelId()).getAboxOntology().containsIndividualInSignature(i1.getIRI()));
+        assertTrue(m3.getModel(model2.getModelId()).getAboxOntology().containsIndividualInSignature(i2.getIRI()));
+        assertFalse(m3.isStoredModel(model2.getModelId()));
+
+        /* a save removes the model from the log */
+        m3.saveModel(m3.getModel(model1.getModelId()), null, null);
+        assertEquals(1, log.getPendingModelCount());
+        m3.dispose();
+    }
+
+    @Test
+    public void testFileModelStore() throws Exception {
+        File modelFolder = folder.newFolder();
+        BlazegraphMolecularModelManager<Void> m3 = createBlazegraphMolecularModelManager(new FileModelStore(modelFolder));
+        OWLDataFactory f = m3.getOntology().getOWLOntologyManager().getOWLDataFactory();
+        OWLAnnotation title = f.getOWLAnnotation(f.getOWLAnnotationProperty(AnnotationShorthand.title.getAnnotationProperty()),
+                f.getOWLLiteral("file model"));
+        ModelContainer model = m3.generateBlankModel(null);
+        IRI modelId = model.getModelId();
+        m3.createIndividualWithIRI(model, curieHandler.getIRI("GO:0000001"), null, null);
+        m3.addModelAnnotations(model, Collections.singleton(title), null);
+        m3.saveModel(model, null, null);
+        assertTrue(m3.isStoredModel(modelId));
+        m3.unlinkModel(modelId);
+        m3.dispose();
+
+        /* catalog and metadata are rebuilt from the folder */
+        m3 = createBlazegraphMolecularModelManager(new FileModelStore(modelFolder));
+        assertEquals(Collections.singleton(modelId), m3.getStoredModelIds());
+        assertTrue(m3.getAllModelAnnotations().get(modelId).contains(title));
+        assertEquals(1, m3.getModel(modelId).getAboxOntology().getIndividualsInSignature().size());
+
+        /* export and re-import */
+        File dir = folder.newFolder();
+        m3.dumpStoredModel(modelId, dir);
+        m3.unlinkModel(modelId);
+        assertTrue(m3.deleteStoredModel(modelId));
+        m3.importModelToDatabase(new File(dir, dir.list()[0]), false);
+        assertTrue(m3.isStoredModel(modelId));
+        assertEquals(1, m3.getModel(modelId).getAboxOntology().getIndividualsInSignature().size());
+        m3.dispose();
     }
 
     /**
@@ -259,19 +878,40 @@ public class BlazegraphMolecularModelManagerTest extends OWLToolsTestBasics {
     private BlazegraphMolecularModelManager<Void> createBlazegraphMolecularModelManager() throws Exception {
         /* A path of the temporary journal file for Blazegraph storage system */
         String journalPath = folder.newFile().getAbsolutePath();
-        /* A root path of the temporary directory */
-        String tempRootPath = folder.getRoot().getAbsolutePath();
         /* Delete the journal file if exists */
         FileUtils.deleteQuietly(new File(journalPath));
+        return createBlazegraphMolecularModelManager(journalPath);
+    }
 
-        final ParserWrapper pw = new ParserWrapper();
-        pw.addIRIMapper(new CatalogXmlIRIMapper(new File("src/test/resources/mmg/catalog-v001.xml")));
-        OWLGraphWrapper g = pw.parseToOWLGraph(getResourceIRIString("mmg/basic-tbox-importer.omn"));
-        BlazegraphMolecularModelManager<Void> m3 = new BlazegraphMolecularModelManager<>(g, "http://model.geneontology.org/", journalPath, tempRootPath);
+    /**
+     * @param journalPath
+     * @return the instance of BlazegraphMolecularModelManager using the given journal
+     * @throws Exception
+     */
+    private BlazegraphMolecularModelManager<Void> createBlazegraphMolecularModelManager(String journalPath) throws Exception {
+        /* A root path of the temporary directory */
+        String tempRootPath = folder.getRoot().getAbsolutePath();
+        BlazegraphMolecularModelManager<Void> m3 = new BlazegraphMolecularModelManager<>(loadTbox(), "http://model.geneontology.org/", journalPath, tempRootPath);
 
         return m3;
     }
 
+    /**
+     * @param store
+     * @return the instance of BlazegraphMolecularModelManager using the given store
+     * @throws Exception
+     */
+    private BlazegraphMolecularModelManager<Void> createBlazegraphMolecularModelManager(ModelStore store) throws Exception {
+        String tempRootPath = folder.getRoot().getAbsolutePath();
+        return new BlazegraphMolecularModelManager<>(loadTbox(), "http://model.geneontology.org/", store, tempRootPath);
+    }
+
+    private OWLGraphWrapper loadTbox() throws Exception {
+        final ParserWrapper pw = new ParserWrapper();
+        pw.addIRIMapper(new CatalogXmlIRIMapper(new File("src/test/resources/mmg/catalog-v001.xml")));
+        return pw.parseToOWLGraph(getResourceIRIString("mmg/basic-tbox-importer.omn"));
+    }
+
     /**
      * Compare two sets of turtle files and check whether they are equivalent.
      * Dump files often have different orders of triples compared with the ones in the original file,
@@ -0,0 +1,206 @@
+package org.geneontology.minerva;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.geneontology.minerva.ModelStore.SaveResult;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openrdf.model.Statement;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.model.vocabulary.OWL;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.rio.helpers.StatementCollector;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.AddOntologyAnnotation;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+public class FileModelStoreTest {
+
+	private static final String PREFIX = "http://model.geneontology.org/";
+	private static final String TITLE = "http://purl.org/dc/elements/1.1/title";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final ValueFactory vf = ValueFactoryImpl.getInstance();
+	private File modelFolder;
+
+	@Before
+	public void before() throws Exception {
+		modelFolder = new File(folder.getRoot(), "models");
+	}
+
+	/**
+	 * @param modelId
+	 * @param title
+	 * @return model with a title and one individual
+	 * @throws Exception
+	 */
+	private OWLOntology createModel(IRI modelId, String title) throws Exception {
+		// a new manager for each version of the model
+		OWLOntologyManager m = OWLManager.createOWLOntologyManager();
+		OWLDataFactory f = m.getOWLDataFactory();
+		OWLOntology model = m.createOntology(modelId);
+		OWLAnnotation annotation = f.getOWLAnnotation(f.getOWLAnnotationProperty(IRI.create(TITLE)), f.getOWLLiteral(title));
+		m.applyChange(new AddOntologyAnnotation(model, annotation));
+		m.addAxiom(model, f.getOWLDeclarationAxiom(f.getOWLNamedIndividual(IRI.create(modelId+"/i1"))));
+		return model;
+	}
+
+	/**
+	 * @param modelId
+	 * @param title
+	 * @return triples of a model with a title
+	 */
+	private List<Statement> createStatements(IRI modelId, String title) {
+		List<Statement> statements = new ArrayList<>();
+		statements.add(vf.createStatement(vf.createURI(modelId.toString()), RDF.TYPE, OWL.ONTOLOGY));
+		statements.add(vf.createStatement(vf.createURI(modelId.toString()), vf.createURI(TITLE), vf.createLiteral(title)));
+		return statements;
+	}
+
+	private String[] listModelFiles() {
+		return modelFolder.list();
+	}
+
+	@Test
+	public void testSaveLoadAndReopen() throws Exception {
+		FileModelStore store = new FileModelStore(modelFolder);
+		assertTrue(modelFolder.isDirectory());
+		assertEquals(Collections.emptySet(), store.getStoredModelIds());
+		IRI modelId = IRI.create(PREFIX+"0001");
+		SaveResult result = store.saveModel(modelId, createModel(modelId, "first"));
+		assertFalse(result.isIncremental());
+		assertEquals(0, result.getRemoved());
+		assertTrue(store.isStoredModel(modelId));
+
+		Collection<Statement> statements = store.loadModel(modelId);
+		assertEquals(result.getAdded(), statements.size());
+		assertTrue(statements.contains(vf.createStatement(vf.createURI(modelId.toString()), RDF.TYPE, OWL.ONTOLOGY)));
+		/* one file per model, no temporary files left */
+		String[] files = listModelFiles();
+		assertEquals(1, files.length);
+		assertTrue(files[0].endsWith(FileModelStore.FILE_SUFFIX));
+		store.dispose();
+
+		/* the catalog and the annotations are read from the folder */
+		store = new FileModelStore(modelFolder);
+		assertEquals(Collections.singleton(modelId), store.getStoredModelIds());
+		assertEquals(new HashSet<>(statements), new HashSet<>(store.loadModel(modelId)));
+		Set<OWLAnnotation> expected = Collections.singleton(ModelMetadataIndex.createAnnotation(TITLE, "first"));
+		assertEquals(Collections.singletonMap(modelId, expected), store.readModelAnnotations());
+		store.dispose();
+	}
+
+	@Test
+	public void testModelIdsAreEncoded() throws Exception {
+		FileModelStore store = new FileModelStore(modelFolder);
+		IRI modelId = IRI.create("urn:test:models/0001?version=1#a%20b");
+		store.importModel(modelId, createStatements(modelId, "encoded"));
+		String[] files = listModelFiles();
+		assertEquals(1, files.length);
+		assertFalse(files[0].contains("/"));
+
+		/* other files in the folder are ignored */
+		FileUtils.write(new File(modelFolder, "readme.txt"), "not a model", StandardCharsets.UTF_8);
+		assertTrue(new File(modelFolder, "sub"+FileModelStore.FILE_SUFFIX).mkdir());
+		store = new FileModelStore(modelFolder);
+		assertEquals(Collections.singleton(modelId), store.getStoredModelIds());
+		assertEquals(2, store.loadModel(modelId).size());
+	}
+
+	@Test
+	public void testImportAndDelete() throws Exception {
+		FileModelStore store = new FileModelStore(modelFolder);
+		IRI modelId = IRI.create(PREFIX+"0001");
+		assertNull(store.loadModel(modelId));
+		assertFalse(store.deleteModel(modelId));
+
+		store.importModel(modelId, createStatements(modelId, "first"));
+		/* an import replaces the stored triples */
+		List<Statement> second = createStatements(modelId, "second");
+		store.importModel(modelId, second);
+		assertEquals(new HashSet<>(second), new HashSet<>(store.loadModel(modelId)));
+		assertEquals(1, listModelFiles().length);
+		/* the triples can be streamed to a handler */
+		StatementCollector collector = new StatementCollector();
+		assertTrue(store.loadModel(modelId, collector));
+		assertEquals(new HashSet<>(second), new HashSet<>(collector.getStatements()));
+
+		assertTrue(store.deleteModel(modelId));
+		assertFalse(store.isStoredModel(modelId));
+		assertNull(store.loadModel(modelId));
+		assertFalse(store.loadModel(modelId, new StatementCollector()));
+		assertEquals(0, listModelFiles().length);
+		assertFalse(store.deleteModel(modelId));
+		assertEquals(Collections.emptyMap(), store.readModelAnnotations());
+	}
+
+	@Test
+	public void testExport() throws Exception {
+		FileModelStore store = new FileModelStore(modelFolder);
+		IRI modelId = IRI.create(PREFIX+"0001");
+		store.saveModel(modelId, createModel(modelId, "first"));
+		File exportFolder = folder.newFolder();
+
+		File snapshot = new File(exportFolder, "0001"+ModelExportFormat.snapshot.getFileSuffix());
+		String hash = store.exportModel(modelId, snapshot, ModelExportFormat.snapshot, null);
+		assertNotNull(hash);
+		assertEquals(new HashSet<>(store.loadModel(modelId)), new HashSet<>(ModelSnapshotReader.read(snapshot)));
+
+		/* an unchanged model is not written again */
+		File turtle = new File(exportFolder, "0001"+ModelExportFormat.turtle.getFileSuffix());
+		assertEquals(hash, store.exportModel(modelId, turtle, ModelExportFormat.turtle, null));
+		assertTrue(FileUtils.readFileToString(turtle, StandardCharsets.UTF_8).contains("first"));
+		FileUtils.write(turtle, "previous export", StandardCharsets.UTF_8);
+		assertEquals(hash, store.exportModel(modelId, turtle, ModelExportFormat.turtle, hash));
+		assertEquals("previous export", FileUtils.readFileToString(turtle, StandardCharsets.UTF_8));
+
+		/* a missing target is written, even with the previous hash */
+		assertTrue(turtle.delete());
+		assertEquals(hash, store.exportModel(modelId, turtle, ModelExportFormat.turtle, hash));
+		assertTrue(turtle.exists());
+
+		/* a save changes the hash */
+		store.saveModel(modelId, createModel(modelId, "second"));
+		String changed = store.exportModel(modelId, turtle, ModelExportFormat.turtle, hash);
+		assertNotEquals(hash, changed);
+		assertTrue(FileUtils.readFileToString(turtle, StandardCharsets.UTF_8).contains("second"));
+		/* only the target files in the export folder */
+		assertEquals(new HashSet<>(Arrays.asList(snapshot.getName(), turtle.getName())), new HashSet<>(Arrays.asList(exportFolder.list())));
+	}
+
+	@Test
+	public void testCorruptFile() throws Exception {
+		FileModelStore store = new FileModelStore(modelFolder);
+		IRI modelId = IRI.create(PREFIX+"0001");
+		store.importModel(modelId, createStatements(modelId, "first"));
+		File file = new File(modelFolder, listModelFiles()[0]);
+		FileUtils.write(file, "not compressed", StandardCharsets.UTF_8);
+		try {
+			store.loadModel(modelId);
+			fail("a corrupt model file must not load");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+}
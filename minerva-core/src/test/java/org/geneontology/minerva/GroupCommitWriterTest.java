@@ -0,0 +1,187 @@
+package org.geneontology.minerva;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openrdf.model.URI;
+import org.openrdf.model.impl.LiteralImpl;
+import org.openrdf.model.impl.StatementImpl;
+import org.openrdf.model.impl.URIImpl;
+import org.openrdf.model.vocabulary.RDFS;
+import org.semanticweb.owlapi.model.IRI;
+
+import com.bigdata.rdf.sail.BigdataSailRepositoryConnection;
+
+public class GroupCommitWriterTest {
+
+	private static final String PREFIX = "http://model.geneontology.org/";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private BlazegraphModelStore store;
+	private GroupCommitWriter writer;
+
+	@Before
+	public void before() throws Exception {
+		File journal = folder.newFile();
+		FileUtils.deleteQuietly(journal);
+		store = new BlazegraphModelStore(journal.getAbsolutePath());
+		writer = store.getWriter();
+	}
+
+	@After
+	public void after() {
+		store.dispose();
+	}
+
+	/**
+	 * @param id
+	 * @return write of a single labeled statement into the graph of the id
+	 */
+	private static GroupCommitWriter.WriteOperation label(final String id) {
+		return new GroupCommitWriter.WriteOperation() {
+
+			@Override
+			public void write(BigdataSailRepositoryConnection connection) throws Exception {
+				URI graph = new URIImpl(PREFIX+id);
+				connection.add(new StatementImpl(graph, RDFS.LABEL, new LiteralImpl(id)), graph);
+			}
+		};
+	}
+
+	/**
+	 * @param started
+	 * @param release
+	 * @return write, which blocks the writer thread until released
+	 */
+	private static GroupCommitWriter.WriteOperation blocking(final CountDownLatch started, final CountDownLatch release) {
+		return new GroupCommitWriter.WriteOperation() {
+
+			@Override
+			public void write(BigdataSailRepositoryConnection connection) throws Exception {
+				started.countDown();
+				release.await(30, TimeUnit.SECONDS);
+			}
+		};
+	}
+
+	private int countStatements(String id) throws IOException {
+		return store.loadModel(IRI.create(PREFIX+id)).size();
+	}
+
+	@Test
+	public void testQueuedWritesShareACommit() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Future<Void> first = writer.submit(blocking(started, release));
+		assertTrue(started.await(30, TimeUnit.SECONDS));
+		List<Future<Void>> futures = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			futures.add(writer.submit(label("000"+i)));
+		}
+		assertEquals(5, writer.getQueueDepth());
+		release.countDown();
+		first.get(30, TimeUnit.SECONDS);
+		for (Future<Void> future : futures) {
+			future.get(30, TimeUnit.SECONDS);
+		}
+		assertEquals(2, writer.getCommitCount());
+		assertEquals(6, writer.getWriteCount());
+		assertEquals(5, writer.getLastBatchSize());
+		assertEquals(0, writer.getQueueDepth());
+		assertEquals(1, countStatements("0004"));
+	}
+
+	@Test
+	public void testFailingWriteIsIsolated() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		writer.submit(blocking(started, release));
+		assertTrue(started.await(30, TimeUnit.SECONDS));
+		Future<Void> good1 = writer.submit(label("0001"));
+		Future<Void> bad = writer.submit(new GroupCommitWriter.WriteOperation() {
+
+			@Override
+			public void write(BigdataSailRepositoryConnection connection) throws Exception {
+				throw new IOException("failing write");
+			}
+		});
+		Future<Void> good2 = writer.submit(label("0002"));
+		release.countDown();
+		good1.get(30, TimeUnit.SECONDS);
+		good2.get(30, TimeUnit.SECONDS);
+		try {
+			bad.get(30, TimeUnit.SECONDS);
+			fail("the failing write must report its error");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IOException);
+		}
+		assertEquals(1, writer.getFailedWriteCount());
+		/* the rollback of the batch did not lose the other writes */
+		assertEquals(1, countStatements("0001"));
+		assertEquals(1, countStatements("0002"));
+	}
+
+	@Test
+	public void testWritesAfterShutdownFail() throws Exception {
+		Future<Void> queued = writer.submit(label("0001"));
+		writer.shutdown();
+		/* queued writes are finished by the shutdown */
+		assertTrue(queued.isDone());
+		queued.get();
+
+		Future<Void> late = writer.submit(label("0002"));
+		assertTrue(late.isDone());
+		try {
+			late.get();
+			fail("a write after the shutdown must fail");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+	}
+
+	@Test
+	public void testTimeoutSkipsTheWrite() throws Exception {
+		writer.setWriteTimeoutMillis(200);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		writer.submit(blocking(started, release));
+		assertTrue(started.await(30, TimeUnit.SECONDS));
+		final AtomicBoolean executed = new AtomicBoolean(false);
+		try {
+			store.awaitWrite(writer.submit(new GroupCommitWriter.WriteOperation() {
+
+				@Override
+				public void write(BigdataSailRepositoryConnection connection) throws Exception {
+					executed.set(true);
+				}
+			}));
+			fail("the write must time out");
+		} catch (IOException e) {
+			// expected
+		} finally {
+			release.countDown();
+		}
+		/* a later write is committed, the cancelled write was skipped */
+		writer.setWriteTimeoutMillis(0);
+		store.awaitWrite(writer.submit(label("0001")));
+		assertFalse(executed.get());
+		assertEquals(1, countStatements("0001"));
+	}
+}
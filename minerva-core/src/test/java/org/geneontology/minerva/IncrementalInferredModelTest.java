@@ -0,0 +1,161 @@
+package org.geneontology.minerva;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.apache.commons.io.FileUtils;
+import org.geneontology.rules.engine.Triple;
+import org.geneontology.rules.engine.URI;
+import org.geneontology.rules.engine.WorkingMemory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLNamedIndividual;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.vocab.OWLRDFVocabulary;
+
+import owltools.OWLToolsTestBasics;
+import owltools.io.CatalogXmlIRIMapper;
+import owltools.io.ParserWrapper;
+import scala.collection.JavaConverters;
+
+/**
+ * Compares the kept working memory of a model with a working memory created
+ * from scratch for the current state of the model.
+ */
+public class IncrementalInferredModelTest extends OWLToolsTestBasics {
+
+	private static final String NS = "http://x.org/";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private BlazegraphMolecularModelManager<Void> m3;
+	private OWLDataFactory f;
+	private OWLObjectProperty partOf;
+
+	@Before
+	public void before() throws Exception {
+		File journal = folder.newFile();
+		FileUtils.deleteQuietly(journal);
+		ParserWrapper pw = new ParserWrapper();
+		pw.addIRIMapper(new CatalogXmlIRIMapper(new File("src/test/resources/mmg/catalog-v001.xml")));
+		m3 = new BlazegraphMolecularModelManager<>(pw.parseToOWLGraph(getResourceIRIString("mmg/basic-tbox-importer.omn")),
+				"http://model.geneontology.org/", journal.getAbsolutePath(), folder.getRoot().getAbsolutePath());
+		f = m3.getOntology().getOWLOntologyManager().getOWLDataFactory();
+		partOf = f.getOWLObjectProperty(IRI.create(NS+"part_of"));
+	}
+
+	@After
+	public void after() {
+		m3.dispose();
+	}
+
+	private OWLClass cls(String name) {
+		return f.getOWLClass(IRI.create(NS+name));
+	}
+
+	private static Triple type(OWLNamedIndividual i, OWLClass c) {
+		return new Triple(new URI(i.getIRI().toString()), new URI(OWLRDFVocabulary.RDF_TYPE.getIRI().toString()), new URI(c.getIRI().toString()));
+	}
+
+	/**
+	 * @param model
+	 * @return facts of the kept working memory
+	 */
+	private Set<Triple> readFacts(ModelContainer model) {
+		return m3.readInferredModel(model.getModelId(), new Function<WorkingMemory, Set<Triple>>() {
+
+			@Override
+			public Set<Triple> apply(WorkingMemory wm) {
+				return JavaConverters.setAsJavaSetConverter(wm.facts()).asJava();
+			}
+		});
+	}
+
+	/**
+	 * Check the kept working memory against a new one.
+	 *
+	 * @param model
+	 * @return facts of the kept working memory
+	 * @throws Exception
+	 */
+	private Set<Triple> assertSameAsRebuild(ModelContainer model) throws Exception {
+		Set<Triple> facts = readFacts(model);
+		WorkingMemory rebuilt = m3.createInferredModel(model.getModelId());
+		assertEquals(JavaConverters.setAsJavaSetConverter(rebuilt.facts()).asJava(), facts);
+		return facts;
+	}
+
+	@Test
+	public void testIncrementalMatchesRebuild() throws Exception {
+		ModelContainer model = m3.generateBlankModel(null);
+		OWLNamedIndividual hand = m3.createIndividual(model, cls("hand"), null);
+		assertSameAsRebuild(model);
+		assertEquals(1, m3.getInferredModelCount());
+
+		/* added axioms are forward-chained into the kept memory */
+		OWLNamedIndividual digit = m3.createIndividual(model, cls("digit"), null);
+		m3.addFact(model, partOf, digit, hand, Collections.<OWLAnnotation>emptySet(), null);
+		Set<Triple> facts = assertSameAsRebuild(model);
+		assertTrue(facts.contains(type(digit, cls("finger"))));
+		OWLNamedIndividual forelimb = m3.createIndividual(model, cls("forelimb"), null);
+		m3.addFact(model, partOf, hand, forelimb, Collections.<OWLAnnotation>emptySet(), null);
+		facts = assertSameAsRebuild(model);
+		assertTrue(facts.contains(type(digit, cls("finger"))));
+
+		/* a removal rebuilds the memory, derived facts are gone */
+		m3.removeFact(model, partOf, digit, hand, null);
+		facts = assertSameAsRebuild(model);
+		assertFalse(facts.contains(type(digit, cls("finger"))));
+
+		/* a new model annotation is a change without an added axiom */
+		m3.addModelAnnotations(model, Collections.singleton(f.getOWLAnnotation(f.getRDFSLabel(), f.getOWLLiteral("title"))), null);
+		assertSameAsRebuild(model);
+	}
+
+	@Test
+	public void testUnchangedModelKeepsMemory() throws Exception {
+		ModelContainer model = m3.generateBlankModel(null);
+		m3.createIndividual(model, cls("hand"), null);
+		Function<WorkingMemory, WorkingMemory> identity = new Function<WorkingMemory, WorkingMemory>() {
+
+			@Override
+			public WorkingMemory apply(WorkingMemory wm) {
+				return wm;
+			}
+		};
+		WorkingMemory first = m3.readInferredModel(model.getModelId(), identity);
+		assertSame(first, m3.readInferredModel(model.getModelId(), identity));
+
+		/* the public method returns a private memory */
+		WorkingMemory created = m3.createInferredModel(model.getModelId());
+		assertNotSame(first, created);
+		assertNotSame(created, m3.createInferredModel(model.getModelId()));
+	}
+
+	@Test
+	public void testDisposedModelReleasesMemory() throws Exception {
+		ModelContainer model = m3.generateBlankModel(null);
+		OWLNamedIndividual hand = m3.createIndividual(model, cls("hand"), null);
+		readFacts(model);
+		assertEquals(1, m3.getInferredModelCount());
+		model.dispose();
+		assertEquals(0, m3.getInferredModelCount());
+
+		/* a read of the disposed container, e.g. after an eviction, does not
+		 * keep a new memory */
+		assertTrue(readFacts(model).contains(type(hand, cls("hand"))));
+		assertEquals(0, m3.getInferredModelCount());
+	}
+}
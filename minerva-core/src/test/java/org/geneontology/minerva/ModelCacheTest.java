@@ -0,0 +1,233 @@
+package org.geneontology.minerva;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.AddAxiom;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+public class ModelCacheTest {
+
+	private static final String PREFIX = "http://model.geneontology.org/";
+
+	private OWLOntologyManager m;
+	private OWLOntology tbox;
+	private final Set<ModelContainer> pinned = Collections.synchronizedSet(new HashSet<ModelContainer>());
+	private final List<ModelContainer> evicted = Collections.synchronizedList(new ArrayList<ModelContainer>());
+	private ModelCache cache;
+
+	@Before
+	public void before() throws Exception {
+		m = OWLManager.createOWLOntologyManager();
+		tbox = m.createOntology(IRI.create("http://example.org/tbox"));
+		cache = new ModelCache(new ModelCache.EvictionHandler() {
+
+			@Override
+			public boolean isEvictable(ModelContainer model) {
+				return pinned.contains(model) == false;
+			}
+
+			@Override
+			public void evicted(ModelContainer model) {
+				/* disposed with the write lock, outside of the cache monitor */
+				assertFalse(Thread.holdsLock(cache));
+				assertTrue(((WriteLock) model.getWriteLock()).isHeldByCurrentThread());
+				evicted.add(model);
+				model.dispose();
+			}
+		});
+	}
+
+	private ModelContainer createModel(String id, int individuals) throws Exception {
+		IRI modelId = IRI.create(PREFIX+id);
+		OWLOntology abox = m.createOntology(modelId);
+		OWLDataFactory f = m.getOWLDataFactory();
+		for (int i = 0; i < individuals; i++) {
+			m.addAxiom(abox, f.getOWLDeclarationAxiom(f.getOWLNamedIndividual(IRI.create(PREFIX+id+"/i"+i))));
+		}
+		return new ModelContainer(modelId, tbox, abox);
+	}
+
+	private ModelContainer add(String id, int individuals) throws Exception {
+		ModelContainer model = createModel(id, individuals);
+		cache.put(model.getModelId(), model);
+		return model;
+	}
+
+	@Test
+	public void testModelLimitInAccessOrder() throws Exception {
+		cache.setLimits(2, 0);
+		ModelContainer model1 = add("0001", 1);
+		ModelContainer model2 = add("0002", 1);
+		/* the access makes model2 the least recently used model */
+		assertSame(model1, cache.get(model1.getModelId()));
+		ModelContainer model3 = add("0003", 1);
+		assertEquals(2, cache.getSize());
+		assertEquals(Collections.singletonList(model2), evicted);
+		assertTrue(model2.isDisposed());
+		assertFalse(model1.isDisposed());
+		assertTrue(cache.containsKey(model3.getModelId()));
+		assertEquals(1, cache.getEvictionCount());
+		assertEquals(1, cache.getEvictedAxiomCount());
+	}
+
+	@Test
+	public void testAxiomLimit() throws Exception {
+		cache.setLimits(0, 10);
+		add("0001", 4);
+		add("0002", 4);
+		assertTrue(cache.hasCapacity());
+		assertEquals(8, cache.getAxiomCount());
+		add("0003", 4);
+		assertEquals(1, evicted.size());
+		assertEquals(8, cache.getAxiomCount());
+
+		/* a model above the limit is kept, if it is the only one */
+		ModelContainer large = add("0004", 20);
+		assertEquals(3, evicted.size());
+		assertEquals(Collections.singleton(large.getModelId()), cache.keySet());
+		assertFalse(cache.hasCapacity());
+	}
+
+	@Test
+	public void testPinnedModels() throws Exception {
+		cache.setLimits(1, 0);
+		ModelContainer model1 = add("0001", 1);
+		pinned.add(model1);
+		ModelContainer model2 = add("0002", 1);
+		assertTrue(evicted.isEmpty());
+		assertEquals(2, cache.getSize());
+		assertEquals(1, cache.getPinnedCount());
+
+		/* lowering the limits evicts the unpinned models */
+		cache.setLimits(1, 0);
+		assertEquals(Collections.singletonList(model2), evicted);
+		assertEquals(Collections.singleton(model1.getModelId()), cache.keySet());
+	}
+
+	@Test
+	public void testModelsInUseAreNotEvicted() throws Exception {
+		final ModelContainer model1 = add("0001", 1);
+		final ModelContainer model2 = add("0002", 1);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			/* a reader on another thread keeps the model */
+			final CountDownLatch locked = new CountDownLatch(1);
+			final CountDownLatch done = new CountDownLatch(1);
+			Future<?> reader = executor.submit(new Runnable() {
+
+				@Override
+				public void run() {
+					model1.getReadLock().lock();
+					try {
+						locked.countDown();
+						done.await(30, TimeUnit.SECONDS);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} finally {
+						model1.getReadLock().unlock();
+					}
+				}
+			});
+			assertTrue(locked.await(30, TimeUnit.SECONDS));
+			/* a batch keeps the model */
+			model2.beginBatch();
+			cache.setLimits(1, 0);
+			assertTrue(evicted.isEmpty());
+			assertEquals(2, cache.getSize());
+
+			done.countDown();
+			reader.get(30, TimeUnit.SECONDS);
+			cache.setLimits(1, 0);
+			assertEquals(Collections.singletonList(model1), evicted);
+
+			model2.endBatch();
+			add("0003", 1);
+			assertEquals(2, evicted.size());
+			assertTrue(model2.isDisposed());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testLookupsDoNotTakeTheCacheMonitor() throws Exception {
+		final ModelContainer model = add("0001", 1);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			synchronized (cache) {
+				/* an eviction in progress does not block the hits */
+				Future<ModelContainer> lookup = executor.submit(new Callable<ModelContainer>() {
+
+					@Override
+					public ModelContainer call() throws Exception {
+						cache.recordHit();
+						return cache.get(model.getModelId());
+					}
+				});
+				assertSame(model, lookup.get(30, TimeUnit.SECONDS));
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(1, cache.getHitCount());
+	}
+
+	@Test
+	public void testChangeOfEvictedModelFails() throws Exception {
+		cache.setLimits(1, 0);
+		ModelContainer model1 = add("0001", 1);
+		add("0002", 1);
+		assertTrue(model1.isDisposed());
+		OWLDataFactory f = m.getOWLDataFactory();
+		List<OWLOntologyChange> changes = new ArrayList<>();
+		changes.add(new AddAxiom(model1.getAboxOntology(), f.getOWLDeclarationAxiom(f.getOWLNamedIndividual(IRI.create(PREFIX+"0001/new")))));
+		/* an edit of a stale container must not be lost silently */
+		try {
+			model1.applyChanges(changes);
+			fail("the change of an evicted model must fail");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testEvictionBeforeBatch() throws Exception {
+		cache.setLimits(1, 0);
+		ModelContainer model1 = add("0001", 1);
+		/* a lookup does not pin the model, it is evicted before the batch */
+		ModelContainer found = cache.get(model1.getModelId());
+		add("0002", 1);
+		assertTrue(found.isDisposed());
+		assertFalse(found.tryBeginBatch());
+		assertFalse(found.isInBatch());
+
+		/* a model with an open batch stays in the cache */
+		ModelContainer model3 = add("0003", 1);
+		assertTrue(model3.tryBeginBatch());
+		add("0004", 1);
+		assertFalse(model3.isDisposed());
+		model3.endBatch();
+		add("0005", 1);
+		assertTrue(model3.isDisposed());
+	}
+}
@@ -0,0 +1,231 @@
+package org.geneontology.minerva;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.geneontology.minerva.ModelChangeLog.PendingChanges;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.AddAxiom;
+import org.semanticweb.owlapi.model.AddOntologyAnnotation;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.model.RemoveAxiom;
+
+public class ModelChangeLogTest {
+
+	private static final String PREFIX = "http://model.geneontology.org/";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private OWLOntologyManager m;
+	private OWLDataFactory f;
+	private File file;
+
+	@Before
+	public void before() throws Exception {
+		m = OWLManager.createOWLOntologyManager();
+		f = m.getOWLDataFactory();
+		file = new File(folder.getRoot(), "changes.log");
+	}
+
+	private OWLAxiom declaration(String id) {
+		return f.getOWLDeclarationAxiom(f.getOWLNamedIndividual(IRI.create(PREFIX+id)));
+	}
+
+	private List<OWLOntologyChange> add(OWLOntology abox, OWLAxiom...axioms) {
+		List<OWLOntologyChange> changes = new ArrayList<>();
+		for (OWLAxiom axiom : axioms) {
+			changes.add(new AddAxiom(abox, axiom));
+		}
+		return changes;
+	}
+
+	@Test
+	public void testRecovery() throws Exception {
+		IRI modelId = IRI.create(PREFIX+"0001");
+		OWLOntology abox = m.createOntology(modelId);
+		ModelChangeLog log = new ModelChangeLog(file);
+		List<OWLOntologyChange> changes = add(abox, declaration("0001/i1"), declaration("0001/i2"));
+		changes.add(new AddOntologyAnnotation(abox, f.getOWLAnnotation(f.getRDFSComment(), f.getOWLLiteral("comment"))));
+		log.append(modelId, changes);
+		List<OWLOntologyChange> removal = new ArrayList<>();
+		removal.add(new RemoveAxiom(abox, declaration("0001/i1")));
+		log.append(modelId, removal);
+		assertEquals(1, log.getPendingModelCount());
+		log.close();
+
+		log = new ModelChangeLog(file);
+		Map<IRI, PendingChanges> recovered = log.getRecoveredChanges();
+		assertEquals(1, recovered.size());
+		PendingChanges pending = recovered.get(modelId);
+		assertFalse(pending.isCreated());
+		assertEquals(2, pending.getRecordCount());
+		List<OWLOntologyChange> expected = new ArrayList<>(changes);
+		expected.addAll(removal);
+		assertEquals(expected, pending.createChanges(abox));
+		log.close();
+	}
+
+	@Test
+	public void testTornTailIsDiscarded() throws Exception {
+		IRI modelId = IRI.create(PREFIX+"0001");
+		OWLOntology abox = m.createOntology(modelId);
+		ModelChangeLog log = new ModelChangeLog(file);
+		log.append(modelId, add(abox, declaration("0001/i1")));
+		log.close();
+		long complete = file.length();
+		log = new ModelChangeLog(file);
+		log.append(modelId, add(abox, declaration("0001/i2")));
+		log.close();
+
+		/* a crash during the write of the second record */
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(file.length() - 3);
+		} finally {
+			raf.close();
+		}
+		log = new ModelChangeLog(file);
+		PendingChanges pending = log.getRecoveredChanges().get(modelId);
+		assertEquals(1, pending.getRecordCount());
+		assertEquals(add(abox, declaration("0001/i1")), pending.createChanges(abox));
+		/* the torn record is removed by the compaction */
+		assertEquals(complete, file.length());
+		log.close();
+	}
+
+	@Test
+	public void testCorruptRecordEndsTheLog() throws Exception {
+		IRI modelId1 = IRI.create(PREFIX+"0001");
+		IRI modelId2 = IRI.create(PREFIX+"0002");
+		OWLOntology abox1 = m.createOntology(modelId1);
+		OWLOntology abox2 = m.createOntology(modelId2);
+		ModelChangeLog log = new ModelChangeLog(file);
+		log.append(modelId1, add(abox1, declaration("0001/i1")));
+		long first = file.length();
+		log.append(modelId2, add(abox2, declaration("0002/i1")));
+		log.append(modelId1, add(abox1, declaration("0001/i2")));
+		log.close();
+
+		/* flip a byte in the payload of the second record */
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			long position = first + 20;
+			raf.seek(position);
+			int b = raf.read();
+			raf.seek(position);
+			raf.write(b ^ 0xff);
+		} finally {
+			raf.close();
+		}
+		log = new ModelChangeLog(file);
+		Map<IRI, PendingChanges> recovered = log.getRecoveredChanges();
+		assertEquals(Arrays.asList(modelId1), new ArrayList<>(recovered.keySet()));
+		assertEquals(1, recovered.get(modelId1).getRecordCount());
+		log.close();
+	}
+
+	@Test
+	public void testResetAndCreate() throws Exception {
+		IRI modelId1 = IRI.create(PREFIX+"0001");
+		IRI modelId2 = IRI.create(PREFIX+"0002");
+		OWLOntology abox1 = m.createOntology(modelId1);
+		OWLOntology abox2 = m.createOntology(modelId2);
+		m.addAxiom(abox2, declaration("0002/i1"));
+		ModelChangeLog log = new ModelChangeLog(file);
+		log.append(modelId1, add(abox1, declaration("0001/i1")));
+		log.created(modelId2, abox2);
+		assertEquals(2, log.getPendingModelCount());
+
+		/* a save makes the records of the model obsolete */
+		log.reset(modelId1);
+		assertEquals(1, log.getPendingModelCount());
+		log.close();
+		log = new ModelChangeLog(file);
+		assertEquals(Arrays.asList(modelId2), new ArrayList<>(log.getRecoveredChanges().keySet()));
+		PendingChanges pending = log.getRecoveredChanges().get(modelId2);
+		assertTrue(pending.isCreated());
+		assertEquals(add(abox2, declaration("0002/i1")), pending.createChanges(abox2));
+
+		/* without any pending model only the header is kept */
+		log.reset(modelId2);
+		assertEquals(0, log.getPendingModelCount());
+		assertEquals(ModelChangeLog.MAGIC.length + 1, file.length());
+		log.close();
+	}
+
+	@Test
+	public void testWriteAndSync() throws Exception {
+		IRI modelId = IRI.create(PREFIX+"0001");
+		OWLOntology abox = m.createOntology(modelId);
+		ModelChangeLog log = new ModelChangeLog(file);
+		/* an empty change list is not written */
+		assertEquals(0, log.write(modelId, new ArrayList<OWLOntologyChange>()));
+		long position1 = log.write(modelId, add(abox, declaration("0001/i1")));
+		long position2 = log.write(modelId, add(abox, declaration("0001/i2")));
+		assertTrue(position2 > position1);
+		assertEquals(0, log.getSyncCount());
+
+		/* one force covers all earlier records */
+		log.sync(position2);
+		log.sync(position1);
+		assertEquals(1, log.getSyncCount());
+		assertEquals(2, log.getRecordCount());
+		log.close();
+
+		log = new ModelChangeLog(file);
+		assertEquals(2, log.getRecoveredChanges().get(modelId).getRecordCount());
+		log.close();
+	}
+
+	@Test
+	public void testIncompatibleLogIsRejected() throws Exception {
+		IRI modelId = IRI.create(PREFIX+"0001");
+		OWLOntology abox = m.createOntology(modelId);
+		ModelChangeLog log = new ModelChangeLog(file);
+		log.append(modelId, add(abox, declaration("0001/i1")));
+		log.close();
+		byte[] data = FileUtils.readFileToByteArray(file);
+
+		/* a log of another format version is not replayed and not modified */
+		byte[] version = data.clone();
+		version[ModelChangeLog.MAGIC.length] = (byte) (ModelChangeLog.VERSION + 1);
+		assertRejected(version);
+		assertRejected("not a change log".getBytes(StandardCharsets.UTF_8));
+
+		/* an empty file is a valid log */
+		FileUtils.writeByteArrayToFile(file, new byte[0]);
+		log = new ModelChangeLog(file);
+		assertTrue(log.getRecoveredChanges().isEmpty());
+		log.close();
+	}
+
+	private void assertRejected(byte[] data) throws Exception {
+		FileUtils.writeByteArrayToFile(file, data);
+		try {
+			new ModelChangeLog(file).close();
+			fail("an incompatible change log must be rejected");
+		} catch (IOException e) {
+			// expected
+		}
+		assertArrayEquals(data, FileUtils.readFileToByteArray(file));
+	}
+}
@@ -0,0 +1,132 @@
+package org.geneontology.minerva;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.model.vocabulary.OWL;
+import org.openrdf.model.vocabulary.RDF;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLAnnotationProperty;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+
+public class ModelMetadataIndexTest {
+
+	private static final String PREFIX = "http://model.geneontology.org/";
+	private static final String TITLE = "http://purl.org/dc/elements/1.1/title";
+	private static final String STATE = "http://geneontology.org/lego/modelstate";
+	private static final String TEMPLATE = "http://geneontology.org/lego/templatestate";
+
+	private final OWLDataFactory f = OWLManager.getOWLDataFactory();
+	private final ValueFactory vf = ValueFactoryImpl.getInstance();
+
+	private OWLAnnotationProperty property(String iri) {
+		return f.getOWLAnnotationProperty(IRI.create(iri));
+	}
+
+	private static Set<OWLAnnotation> set(OWLAnnotation...annotations) {
+		return new HashSet<>(Arrays.asList(annotations));
+	}
+
+	@Test
+	public void testUpdateNormalizesValues() {
+		ModelMetadataIndex index = new ModelMetadataIndex();
+		IRI modelId = IRI.create(PREFIX+"0001");
+		index.update(modelId, Arrays.asList(
+				f.getOWLAnnotation(property(TITLE), f.getOWLLiteral("Titel", "de")),
+				f.getOWLAnnotation(property(STATE), f.getOWLLiteral("production")),
+				f.getOWLAnnotation(property(TEMPLATE), f.getOWLLiteral(true)),
+				f.getOWLAnnotation(f.getRDFSSeeAlso(), IRI.create("http://example.org/source")),
+				// not part of the metadata
+				f.getOWLAnnotation(property(ModelMetadataIndex.JSON_MODEL), f.getOWLLiteral("{}")),
+				f.getOWLAnnotation(f.getRDFSComment(), f.getOWLAnonymousIndividual())));
+		Set<OWLAnnotation> expected = set(
+				ModelMetadataIndex.createAnnotation(TITLE, "Titel"),
+				ModelMetadataIndex.createAnnotation(STATE, "production"),
+				ModelMetadataIndex.createAnnotation(TEMPLATE, "true"),
+				ModelMetadataIndex.createAnnotation(f.getRDFSSeeAlso().getIRI().toString(), "http://example.org/source"));
+		assertEquals(expected, index.getAll().get(modelId));
+
+		/* an update replaces all annotations of the model */
+		index.update(modelId, Collections.singleton(f.getOWLAnnotation(property(TITLE), f.getOWLLiteral("new title"))));
+		assertEquals(set(ModelMetadataIndex.createAnnotation(TITLE, "new title")), index.getAll().get(modelId));
+
+		/* a model without metadata has no entry */
+		index.update(modelId, Collections.singleton(f.getOWLAnnotation(property(ModelMetadataIndex.JSON_MODEL), f.getOWLLiteral("{}"))));
+		assertFalse(index.getAll().containsKey(modelId));
+	}
+
+	@Test
+	public void testAnnotationsFromStatements() {
+		IRI modelId = IRI.create(PREFIX+"0001");
+		URI model = vf.createURI(modelId.toString());
+		URI individual = vf.createURI(modelId+"/i1");
+		List<Statement> statements = Arrays.asList(
+				vf.createStatement(model, RDF.TYPE, OWL.ONTOLOGY),
+				vf.createStatement(model, OWL.IMPORTS, vf.createURI("http://purl.obolibrary.org/obo/go/extensions/go-lego.owl")),
+				vf.createStatement(model, vf.createURI(ModelMetadataIndex.JSON_MODEL), vf.createLiteral("{}")),
+				vf.createStatement(model, vf.createURI(TITLE), vf.createLiteral("Titel", "de")),
+				vf.createStatement(model, vf.createURI(STATE), vf.createLiteral("development")),
+				vf.createStatement(model, vf.createURI("http://www.w3.org/2000/01/rdf-schema#seeAlso"), vf.createURI("http://example.org/source")),
+				// triples of other subjects
+				vf.createStatement(individual, vf.createURI(TITLE), vf.createLiteral("individual")),
+				vf.createStatement(vf.createBNode(), vf.createURI(TITLE), vf.createLiteral("axiom")));
+		Set<OWLAnnotation> expected = set(
+				ModelMetadataIndex.createAnnotation(TITLE, "Titel"),
+				ModelMetadataIndex.createAnnotation(STATE, "development"),
+				ModelMetadataIndex.createAnnotation("http://www.w3.org/2000/01/rdf-schema#seeAlso", "http://example.org/source"));
+		assertEquals(expected, ModelMetadataIndex.getModelAnnotations(modelId, statements));
+
+		ModelMetadataIndex index = new ModelMetadataIndex();
+		index.updateFromStatements(modelId, statements);
+		assertEquals(expected, index.getAll().get(modelId));
+		/* an imported model without metadata removes the entry */
+		index.updateFromStatements(modelId, statements.subList(0, 3));
+		assertFalse(index.getAll().containsKey(modelId));
+	}
+
+	@Test
+	public void testRebuildAndRemove() {
+		IRI modelId1 = IRI.create(PREFIX+"0001");
+		IRI modelId2 = IRI.create(PREFIX+"0002");
+		ModelMetadataIndex index = new ModelMetadataIndex();
+		index.update(modelId1, Collections.singleton(f.getOWLAnnotation(property(TITLE), f.getOWLLiteral("first"))));
+
+		/* a rebuild replaces the content, empty sets are dropped */
+		Map<IRI, Set<OWLAnnotation>> all = new HashMap<>();
+		all.put(modelId2, set(ModelMetadataIndex.createAnnotation(TITLE, "second")));
+		all.put(IRI.create(PREFIX+"0003"), Collections.<OWLAnnotation>emptySet());
+		index.rebuild(all);
+		assertEquals(Collections.singleton(modelId2), index.getAll().keySet());
+
+		/* the index does not share state with the caller */
+		all.get(modelId2).clear();
+		assertEquals(set(ModelMetadataIndex.createAnnotation(TITLE, "second")), index.getAll().get(modelId2));
+		Map<IRI, Set<OWLAnnotation>> snapshot = index.getAll();
+		snapshot.clear();
+		assertEquals(1, index.getAll().size());
+		try {
+			index.getAll().get(modelId2).clear();
+			fail("the annotations of a model must not be modifiable");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+
+		index.remove(modelId2);
+		index.remove(modelId1);
+		assertTrue(index.getAll().isEmpty());
+	}
+}
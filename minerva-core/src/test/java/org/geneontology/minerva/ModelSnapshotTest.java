@@ -0,0 +1,196 @@
+package org.geneontology.minerva;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.LinkedHashModel;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.model.util.ModelUtil;
+import org.openrdf.model.vocabulary.OWL;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.model.vocabulary.RDFS;
+import org.openrdf.model.vocabulary.XMLSchema;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFParser;
+import org.openrdf.rio.Rio;
+import org.openrdf.rio.helpers.StatementCollector;
+
+/**
+ * Tests for the {@link ModelSnapshotWriter} and the {@link ModelSnapshotReader}.
+ */
+public class ModelSnapshotTest {
+
+	private static final String PREFIX = "http://model.geneontology.org/0001/";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final ValueFactory vf = ValueFactoryImpl.getInstance();
+
+	private static byte[] write(Collection<Statement> statements) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ModelSnapshotWriter.write(statements, out);
+		return out.toByteArray();
+	}
+
+	private static List<Statement> read(byte[] data) throws IOException {
+		return new ArrayList<>(ModelSnapshotReader.read(new ByteArrayInputStream(data)));
+	}
+
+	private static List<Statement> parseTurtle(File file) throws Exception {
+		StatementCollector collector = new StatementCollector();
+		RDFParser parser = Rio.createParser(RDFFormat.TURTLE);
+		parser.setRDFHandler(collector);
+		InputStream in = new FileInputStream(file);
+		try {
+			parser.parse(in, "");
+		} finally {
+			in.close();
+		}
+		return new ArrayList<>(collector.getStatements());
+	}
+
+	@Test
+	public void testValueTypes() throws Exception {
+		URI individual = vf.createURI(PREFIX+"i1");
+		Resource axiom = vf.createBNode("axiom1");
+		StringBuilder longLabel = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			longLabel.append("long label ");
+		}
+		List<Statement> statements = Arrays.asList(
+				vf.createStatement(vf.createURI(PREFIX.substring(0, PREFIX.length() - 1)), RDF.TYPE, OWL.ONTOLOGY),
+				vf.createStatement(individual, RDFS.LABEL, vf.createLiteral("plain")),
+				vf.createStatement(individual, RDFS.LABEL, vf.createLiteral("")),
+				vf.createStatement(individual, RDFS.LABEL, vf.createLiteral("Hand", "en")),
+				vf.createStatement(individual, RDFS.LABEL, vf.createLiteral("Gr\u00f6\u00dfe \u4e2d", "de")),
+				vf.createStatement(individual, RDFS.COMMENT, vf.createLiteral(longLabel.toString())),
+				vf.createStatement(individual, vf.createURI("http://example.org/count"), vf.createLiteral("42", XMLSchema.INT)),
+				vf.createStatement(axiom, OWL.ANNOTATEDSOURCE, individual),
+				vf.createStatement(axiom, RDFS.COMMENT, vf.createLiteral("1", XMLSchema.INT)));
+		/* the order of the triples is kept */
+		assertEquals(statements, read(write(statements)));
+	}
+
+	@Test
+	public void testDictionary() throws Exception {
+		URI individual = vf.createURI(PREFIX+"i1");
+		List<Statement> statements = new ArrayList<>();
+		/* more values than fit into a one byte reference */
+		for (int i = 0; i < 300; i++) {
+			statements.add(vf.createStatement(individual, RDFS.LABEL, vf.createLiteral(Integer.toString(i), XMLSchema.INT)));
+			statements.add(vf.createStatement(vf.createURI(PREFIX+"i"+i), RDF.TYPE, OWL.NAMEDINDIVIDUAL));
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ModelSnapshotWriter writer = new ModelSnapshotWriter(out);
+		writer.startRDF();
+		for (Statement statement : statements) {
+			writer.handleStatement(statement);
+		}
+		writer.endRDF();
+		assertEquals(statements.size(), writer.getCount());
+		// individual, label, int, rdf:type, owl:NamedIndividual, 300 literals, 299 more individuals
+		assertEquals(5 + 300 + 299, writer.getDictionarySize());
+		byte[] data = out.toByteArray();
+		assertEquals(statements, read(data));
+
+		/* a repeated triple only adds the references */
+		List<Statement> repeated = new ArrayList<>(statements);
+		repeated.addAll(statements);
+		byte[] repeatedData = write(repeated);
+		assertTrue(repeatedData.length < data.length + statements.size() * 8);
+		assertEquals(repeated, read(repeatedData));
+	}
+
+	@Test
+	public void testEmptySnapshot() throws Exception {
+		assertEquals(Collections.emptyList(), read(write(Collections.<Statement>emptyList())));
+	}
+
+	@Test
+	public void testInvalidData() throws Exception {
+		byte[] data = write(Collections.singletonList(vf.createStatement(vf.createURI(PREFIX+"i1"), RDF.TYPE, OWL.NAMEDINDIVIDUAL)));
+		assertInvalid("not a model snapshot".getBytes(StandardCharsets.UTF_8));
+
+		/* a newer version of the format */
+		byte[] version = data.clone();
+		version[ModelSnapshotWriter.MAGIC.length] = (byte) (ModelSnapshotWriter.VERSION + 1);
+		assertInvalid(version);
+
+		/* a truncated file */
+		assertInvalid(Arrays.copyOf(data, data.length - 1));
+		assertInvalid(Arrays.copyOf(data, ModelSnapshotWriter.MAGIC.length));
+	}
+
+	private static void assertInvalid(byte[] data) {
+		try {
+			read(data);
+			fail("invalid data must not be read");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testTurtleConversion() throws Exception {
+		File turtle = new File("src/test/resources/dummy-noctua-model.ttl");
+		File snapshot = new File(folder.getRoot(), "model"+ModelSnapshotWriter.FILE_SUFFIX);
+		List<Statement> expected = parseTurtle(turtle);
+		assertEquals(expected.size(), ModelSnapshotWriter.convertTurtle(turtle, snapshot));
+		assertTrue(ModelUtil.equals(expected, ModelSnapshotReader.read(snapshot)));
+
+		File converted = new File(folder.getRoot(), "converted.ttl");
+		assertEquals(expected.size(), ModelSnapshotReader.convertToTurtle(snapshot, converted));
+		// the Turtle export repeats the ontology declaration
+		assertTrue(ModelUtil.equals(new LinkedHashModel(expected), new LinkedHashModel(parseTurtle(converted))));
+		assertEquals(new HashSet<>(Arrays.asList(snapshot.getName(), converted.getName())), new HashSet<>(Arrays.asList(folder.getRoot().list())));
+	}
+
+	@Test
+	public void testFailedConversion() throws Exception {
+		File invalid = folder.newFile("invalid.ttl");
+		FileUtils.write(invalid, "this is not turtle", StandardCharsets.UTF_8);
+		File snapshot = new File(folder.getRoot(), "invalid"+ModelSnapshotWriter.FILE_SUFFIX);
+		try {
+			ModelSnapshotWriter.convertTurtle(invalid, snapshot);
+			fail("invalid Turtle must not be converted");
+		} catch (IOException e) {
+			// expected
+		}
+		/* no snapshot and no temporary file */
+		assertEquals(Collections.singletonList(invalid.getName()), Arrays.asList(folder.getRoot().list()));
+
+		/* a snapshot without an ontology IRI */
+		File noOntology = new File(folder.getRoot(), "no-ontology"+ModelSnapshotWriter.FILE_SUFFIX);
+		FileUtils.writeByteArrayToFile(noOntology, write(Collections.singletonList(vf.createStatement(vf.createURI(PREFIX+"i1"), RDF.TYPE, OWL.NAMEDINDIVIDUAL))));
+		File target = new File(folder.getRoot(), "no-ontology.ttl");
+		try {
+			ModelSnapshotReader.convertToTurtle(noOntology, target);
+			fail("a snapshot without ontology IRI must not be converted");
+		} catch (IOException e) {
+			// expected
+		}
+		assertFalse(target.exists());
+	}
+}
@@ -0,0 +1,137 @@
+package org.geneontology.minerva;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.openrdf.model.Statement;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFParser;
+import org.openrdf.rio.Rio;
+import org.openrdf.rio.helpers.StatementCollector;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.formats.RioRDFXMLDocumentFormatFactory;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyLoaderConfiguration;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.rio.RioMemoryTripleSource;
+import org.semanticweb.owlapi.rio.RioParserImpl;
+
+/**
+ * Compare the load times of the {@link ModelTripleLoader} and the generic
+ * OWL-API RDF parser for stored models. The arguments are model files or
+ * folders with model files, either RDF (e.g. Turtle dumps of the journal)
+ * or snapshots, see {@link ModelSnapshotWriter}. Without arguments the
+ * models of the test resources are used.<br>
+ * Only the translation of the triples into an ontology is timed, the files
+ * are parsed once before the runs.<br>
+ * Not a unit test, run manually with the test classpath.
+ */
+public class ModelTripleLoaderBenchmark {
+
+	private static final int RUNS = 10;
+
+	public static void main(String[] args) throws Exception {
+		List<File> files = new ArrayList<>();
+		if (args.length == 0) {
+			files.add(new File("src/test/resources/dummy-noctua-model.ttl"));
+			files.add(new File("../minerva-converter/src/test/resources/581e072c00000473.ttl"));
+			files.add(new File("../minerva-converter/src/test/resources/59d1072300000074.ttl"));
+		}
+		else {
+			for (String arg : args) {
+				addModelFiles(new File(arg), files);
+			}
+		}
+		long totalDirect = 0;
+		long totalParser = 0;
+		for (File file : files) {
+			Collection<Statement> statements = readStatements(file);
+			if (statements == null) {
+				System.out.println("skipped, unknown format: "+file);
+				continue;
+			}
+			// warm up
+			if (loadDirect(statements) == null) {
+				System.out.println("skipped, not supported by the triple loader: "+file);
+				continue;
+			}
+			loadParser(statements);
+
+			long direct = 0;
+			long parser = 0;
+			int axioms = 0;
+			for (int i = 0; i < RUNS; i++) {
+				long start = System.nanoTime();
+				axioms = loadDirect(statements).getAxiomCount();
+				direct += System.nanoTime() - start;
+				start = System.nanoTime();
+				loadParser(statements);
+				parser += System.nanoTime() - start;
+			}
+			totalDirect += direct;
+			totalParser += parser;
+			System.out.println(String.format("triples: %7d axioms: %7d direct: %8.2f ms parser: %8.2f ms speedup: %.1fx %s",
+					statements.size(), axioms, direct / (RUNS * 1e6), parser / (RUNS * 1e6), parser / (double) direct, file.getName()));
+		}
+		if (totalDirect > 0) {
+			System.out.println(String.format("total direct: %.2f ms parser: %.2f ms speedup: %.1fx",
+					totalDirect / (RUNS * 1e6), totalParser / (RUNS * 1e6), totalParser / (double) totalDirect));
+		}
+	}
+
+	private static void addModelFiles(File file, List<File> files) {
+		if (file.isDirectory()) {
+			File[] children = file.listFiles();
+			if (children != null) {
+				Arrays.sort(children);
+				for (File child : children) {
+					addModelFiles(child, files);
+				}
+			}
+		}
+		else if (file.isFile() && file.getName().startsWith(".") == false) {
+			files.add(file);
+		}
+	}
+
+	private static Collection<Statement> readStatements(File file) throws Exception {
+		if (file.getName().endsWith(ModelSnapshotWriter.FILE_SUFFIX)) {
+			return ModelSnapshotReader.read(file);
+		}
+		RDFFormat format = Rio.getParserFormatForFileName(file.getName());
+		if (format == null) {
+			return null;
+		}
+		StatementCollector collector = new StatementCollector();
+		RDFParser parser = Rio.createParser(format);
+		parser.setRDFHandler(collector);
+		InputStream in = new FileInputStream(file);
+		try {
+			parser.parse(in, file.toURI().toString());
+		} finally {
+			in.close();
+		}
+		return new ArrayList<>(collector.getStatements());
+	}
+
+	private static OWLOntology loadDirect(Collection<Statement> statements) throws Exception {
+		OWLOntologyManager m = OWLManager.createOWLOntologyManager();
+		ModelTripleLoader loader = new ModelTripleLoader();
+		for (Statement statement : statements) {
+			loader.add(statement);
+		}
+		return loader.createOntology(m);
+	}
+
+	private static OWLOntology loadParser(Collection<Statement> statements) throws Exception {
+		OWLOntologyManager m = OWLManager.createOWLOntologyManager();
+		OWLOntology ontology = m.createOntology();
+		new RioParserImpl(new RioRDFXMLDocumentFormatFactory()).parse(new RioMemoryTripleSource(statements), ontology, new OWLOntologyLoaderConfiguration());
+		return ontology;
+	}
+}
@@ -0,0 +1,126 @@
+package org.geneontology.minerva;
+
+import static org.junit.Assert.*;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+import org.openrdf.model.Statement;
+import org.openrdf.rio.helpers.StatementCollector;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.formats.RioRDFXMLDocumentFormatFactory;
+import org.semanticweb.owlapi.model.AddImport;
+import org.semanticweb.owlapi.model.AddOntologyAnnotation;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLAnnotationProperty;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLDeclarationAxiom;
+import org.semanticweb.owlapi.model.OWLNamedIndividual;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyLoaderConfiguration;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.rio.RioMemoryTripleSource;
+import org.semanticweb.owlapi.rio.RioParserImpl;
+import org.semanticweb.owlapi.rio.RioRenderer;
+
+public class ModelTripleLoaderTest {
+
+	private static final IRI TBOX_IRI = IRI.create("http://example.org/tbox");
+	private static final String PREFIX = "http://model.geneontology.org/";
+
+	@Test
+	public void testLoadMinervaModel() throws Exception {
+		OWLOntologyManager m = OWLManager.createOWLOntologyManager();
+		OWLDataFactory f = m.getOWLDataFactory();
+		OWLOntology model = m.createOntology(IRI.create(PREFIX+"0001"));
+		m.createOntology(TBOX_IRI);
+		m.applyChange(new AddImport(model, f.getOWLImportsDeclaration(TBOX_IRI)));
+		OWLAnnotationProperty contributor = f.getOWLAnnotationProperty(IRI.create("http://purl.org/dc/elements/1.1/contributor"));
+		OWLAnnotationProperty title = f.getOWLAnnotationProperty(IRI.create("http://purl.org/dc/elements/1.1/title"));
+		m.addAxiom(model, f.getOWLDeclarationAxiom(contributor));
+		m.addAxiom(model, f.getOWLDeclarationAxiom(title));
+		m.applyChange(new AddOntologyAnnotation(model, f.getOWLAnnotation(title, f.getOWLLiteral("test model"))));
+		OWLObjectProperty partOf = f.getOWLObjectProperty(IRI.create("http://purl.obolibrary.org/obo/BFO_0000050"));
+		m.addAxiom(model, f.getOWLDeclarationAxiom(partOf));
+		OWLClass c = f.getOWLClass(IRI.create("http://purl.obolibrary.org/obo/GO_0003674"));
+		m.addAxiom(model, f.getOWLDeclarationAxiom(c));
+		OWLNamedIndividual i1 = f.getOWLNamedIndividual(IRI.create(PREFIX+"0001/i1"));
+		OWLNamedIndividual i2 = f.getOWLNamedIndividual(IRI.create(PREFIX+"0001/i2"));
+		m.addAxiom(model, f.getOWLDeclarationAxiom(i1));
+		m.addAxiom(model, f.getOWLDeclarationAxiom(i2));
+		Set<OWLAnnotation> annotations = new HashSet<>();
+		annotations.add(f.getOWLAnnotation(contributor, f.getOWLLiteral("GOC:test")));
+		annotations.add(f.getOWLAnnotation(f.getRDFSComment(), f.getOWLLiteral("comment", "en")));
+		m.addAxiom(model, f.getOWLClassAssertionAxiom(c, i1, annotations));
+		m.addAxiom(model, f.getOWLObjectPropertyAssertionAxiom(partOf, i1, i2, annotations));
+		m.addAxiom(model, f.getOWLAnnotationAssertionAxiom(f.getRDFSLabel(), i2.getIRI(), f.getOWLLiteral("label")));
+
+		Collection<Statement> statements = render(model);
+
+		// direct loader
+		OWLOntologyManager m1 = OWLManager.createOWLOntologyManager();
+		m1.createOntology(TBOX_IRI);
+		ModelTripleLoader loader = new ModelTripleLoader();
+		for (Statement statement : statements) {
+			loader.add(statement);
+		}
+		OWLOntology direct = loader.createOntology(m1);
+		assertNotNull(loader.getUnsupportedReason(), direct);
+
+		// generic parser
+		OWLOntologyManager m2 = OWLManager.createOWLOntologyManager();
+		m2.createOntology(TBOX_IRI);
+		OWLOntology parsed = m2.createOntology();
+		new RioParserImpl(new RioRDFXMLDocumentFormatFactory()).parse(new RioMemoryTripleSource(statements), parsed, new OWLOntologyLoaderConfiguration());
+
+		assertEquals(parsed.getOntologyID(), direct.getOntologyID());
+		assertEquals(parsed.getImportsDeclarations(), direct.getImportsDeclarations());
+		assertEquals(parsed.getAnnotations(), direct.getAnnotations());
+		assertEquals(getAxioms(parsed), getAxioms(direct));
+		assertEquals(getAxioms(model), getAxioms(direct));
+	}
+
+	@Test
+	public void testUnsupportedClassExpression() throws Exception {
+		OWLOntologyManager m = OWLManager.createOWLOntologyManager();
+		OWLDataFactory f = m.getOWLDataFactory();
+		OWLOntology model = m.createOntology(IRI.create(PREFIX+"0002"));
+		OWLObjectProperty enabledBy = f.getOWLObjectProperty(IRI.create("http://purl.obolibrary.org/obo/RO_0002333"));
+		OWLClass c = f.getOWLClass(IRI.create("http://purl.obolibrary.org/obo/GO_0003674"));
+		OWLNamedIndividual i = f.getOWLNamedIndividual(IRI.create(PREFIX+"0002/i"));
+		m.addAxiom(model, f.getOWLClassAssertionAxiom(f.getOWLObjectSomeValuesFrom(enabledBy, c), i));
+
+		ModelTripleLoader loader = new ModelTripleLoader();
+		for (Statement statement : render(model)) {
+			loader.add(statement);
+		}
+		assertNull(loader.createOntology(OWLManager.createOWLOntologyManager()));
+		assertNotNull(loader.getUnsupportedReason());
+	}
+
+	static Collection<Statement> render(OWLOntology model) throws Exception {
+		StatementCollector collector = new StatementCollector();
+		new RioRenderer(model, collector, null).render();
+		return collector.getStatements();
+	}
+
+	/**
+	 * All axioms, except for the declarations of built-in entities.
+	 */
+	private static Set<OWLAxiom> getAxioms(OWLOntology ontology) {
+		Set<OWLAxiom> axioms = new HashSet<>();
+		for (OWLAxiom axiom : ontology.getAxioms()) {
+			if (axiom instanceof OWLDeclarationAxiom && ((OWLDeclarationAxiom) axiom).getEntity().isBuiltIn()) {
+				continue;
+			}
+			axioms.add(axiom);
+		}
+		return axioms;
+	}
+}
@@ -0,0 +1,193 @@
+package org.geneontology.minerva;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.openrdf.model.Statement;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.GraphQueryResult;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.query.impl.MapBindingSet;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.CloseableIteratorIteration;
+
+public class SPARQLResultCacheTest {
+
+	private static final String PREFIX = "http://model.geneontology.org/";
+
+	private final ValueFactory vf = ValueFactoryImpl.getInstance();
+
+	/**
+	 * @param ids
+	 * @return tuple result with a binding for g per id
+	 */
+	private CloseableIteration<BindingSet, QueryEvaluationException> tuples(String...ids) {
+		List<BindingSet> bindings = new ArrayList<>();
+		for (String id : ids) {
+			MapBindingSet binding = new MapBindingSet();
+			binding.addBinding("g", vf.createURI(PREFIX+id));
+			bindings.add(binding);
+		}
+		return new CloseableIteratorIteration<BindingSet, QueryEvaluationException>(bindings.iterator());
+	}
+
+	private static List<String> readAll(CloseableIteration<BindingSet, QueryEvaluationException> result) throws Exception {
+		List<String> values = new ArrayList<>();
+		while (result.hasNext()) {
+			values.add(result.next().getValue("g").stringValue());
+		}
+		result.close();
+		return values;
+	}
+
+	private static List<String> readAll(TupleQueryResult result) throws Exception {
+		List<String> values = new ArrayList<>();
+		while (result.hasNext()) {
+			values.add(result.next().getValue("g").stringValue());
+		}
+		result.close();
+		return values;
+	}
+
+	/**
+	 * Record a complete tuple result for the key.
+	 */
+	private void record(SPARQLResultCache cache, String key, long version, String...ids) throws Exception {
+		readAll(cache.recordTuple(key, version, Collections.singletonList("g"), tuples(ids), System.nanoTime()));
+	}
+
+	@Test
+	public void testNormalize() {
+		assertEquals("SELECT ?s WHERE { ?s ?p ?o }", SPARQLResultCache.normalize("  SELECT ?s\n\tWHERE  {\r\n?s ?p ?o }\n"));
+		/* whitespace in literals is significant */
+		assertEquals("SELECT ?s WHERE { ?s ?p \"a  b\" }", SPARQLResultCache.normalize(" SELECT ?s\nWHERE {  ?s ?p \"a  b\" }"));
+		assertEquals("ASK { ?s ?p 'a \n b' }", SPARQLResultCache.normalize("ASK {\n?s ?p 'a \n b' }"));
+		/* an escaped quote does not end the literal */
+		assertEquals("ASK { ?s ?p \"a \\\"  b\" }", SPARQLResultCache.normalize("ASK  { ?s ?p \"a \\\"  b\" }"));
+		/* the other quote character does not end the literal */
+		assertEquals("ASK { ?s ?p \"it's  a\" }", SPARQLResultCache.normalize("ASK { ?s ?p \"it's  a\" }"));
+		assertEquals("", SPARQLResultCache.normalize(" \n\t "));
+	}
+
+	@Test
+	public void testTupleResult() throws Exception {
+		SPARQLResultCache cache = new SPARQLResultCache(10, 1024L * 1024L);
+		assertTrue(cache.isEnabled());
+		assertNull(cache.get("q", 1));
+		assertEquals(1, cache.getMissCount());
+		record(cache, "q", 1, "0001", "0002");
+		assertEquals(1, cache.getSize());
+		assertTrue(cache.getBytes() > 0);
+
+		TupleQueryResult cached = (TupleQueryResult) cache.get("q", 1);
+		assertEquals(Collections.singletonList("g"), cached.getBindingNames());
+		assertEquals(Arrays.asList(PREFIX+"0001", PREFIX+"0002"), readAll(cached));
+		/* each hit gets its own iteration over the cached bindings */
+		assertEquals(Arrays.asList(PREFIX+"0001", PREFIX+"0002"), readAll((TupleQueryResult) cache.get("q", 1)));
+		assertEquals(2, cache.getHitCount());
+		assertEquals(2 / 3.0, cache.getHitRate(), 0.0001);
+
+		/* an empty result is a valid entry */
+		record(cache, "empty", 1);
+		assertEquals(Collections.emptyList(), readAll((TupleQueryResult) cache.get("empty", 1)));
+	}
+
+	@Test
+	public void testIncompleteResultIsNotCached() throws Exception {
+		SPARQLResultCache cache = new SPARQLResultCache(10, 1024L * 1024L);
+		assertNull(cache.get("q", 1));
+		CloseableIteration<BindingSet, QueryEvaluationException> result = cache.recordTuple("q", 1, Collections.singletonList("g"), tuples("0001", "0002"), System.nanoTime());
+		result.next();
+		result.close();
+		assertEquals(0, cache.getSize());
+		assertNull(cache.get("q", 1));
+	}
+
+	@Test
+	public void testNewVersionDiscardsEntries() throws Exception {
+		SPARQLResultCache cache = new SPARQLResultCache(10, 1024L * 1024L);
+		assertNull(cache.get("q", 1));
+		record(cache, "q", 1, "0001");
+		assertNotNull(cache.get("q", 1));
+		assertNull(cache.get("q", 2));
+		assertEquals(0, cache.getSize());
+		assertEquals(0, cache.getBytes());
+
+		/* a result of version 2, read completely after the next commit */
+		CloseableIteration<BindingSet, QueryEvaluationException> old = cache.recordTuple("q", 2, Collections.singletonList("g"), tuples("0001"), System.nanoTime());
+		assertNull(cache.get("other", 3));
+		readAll(old);
+		assertEquals(0, cache.getSize());
+		assertNull(cache.get("q", 3));
+	}
+
+	@Test
+	public void testLimits() throws Exception {
+		SPARQLResultCache cache = new SPARQLResultCache(2, 1024L * 1024L);
+		cache.get("a", 1);
+		record(cache, "a", 1, "0001");
+		record(cache, "b", 1, "0002");
+		/* use a, b is now the least recently used entry */
+		assertNotNull(cache.get("a", 1));
+		record(cache, "c", 1, "0003");
+		assertEquals(2, cache.getSize());
+		assertEquals(1, cache.getEvictionCount());
+		assertNull(cache.get("b", 1));
+		assertNotNull(cache.get("a", 1));
+		assertNotNull(cache.get("c", 1));
+
+		/* a result larger than the byte limit is not recorded */
+		long bytes = cache.getBytes();
+		cache.setLimits(2, bytes / 2);
+		assertTrue(cache.getBytes() <= bytes / 2);
+		assertEquals(1, cache.getSize());
+		String[] ids = new String[100];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = Integer.toString(i);
+		}
+		record(cache, "large", 1, ids);
+		assertNull(cache.get("large", 1));
+
+		/* without entries the cache is disabled */
+		cache.setLimits(0, 1024L * 1024L);
+		assertFalse(cache.isEnabled());
+		assertEquals(0, cache.getSize());
+	}
+
+	@Test
+	public void testBooleanAndGraphResults() throws Exception {
+		SPARQLResultCache cache = new SPARQLResultCache(10, 1024L * 1024L);
+		/* results are only added for the version of the last lookup */
+		cache.putBoolean("ask", 1, true, System.nanoTime());
+		assertNull(cache.get("ask", 1));
+		cache.putBoolean("ask", 1, true, System.nanoTime());
+		assertTrue(((BooleanQueryResult) cache.get("ask", 1)).getValue());
+
+		Statement statement = vf.createStatement(vf.createURI(PREFIX+"0001/i1"), vf.createURI("http://example.org/p"), vf.createLiteral("value"));
+		Map<String, String> namespaces = Collections.singletonMap("ex", "http://example.org/");
+		CloseableIteration<Statement, QueryEvaluationException> recorded = cache.recordGraph("construct", 1, namespaces,
+				new CloseableIteratorIteration<Statement, QueryEvaluationException>(Collections.singletonList(statement).iterator()), System.nanoTime());
+		while (recorded.hasNext()) {
+			recorded.next();
+		}
+		recorded.close();
+
+		GraphQueryResult cached = (GraphQueryResult) cache.get("construct", 1);
+		assertEquals(namespaces, cached.getNamespaces());
+		assertTrue(cached.hasNext());
+		assertEquals(statement, cached.next());
+		assertFalse(cached.hasNext());
+		cached.close();
+		assertEquals(2, cache.getSize());
+	}
+}
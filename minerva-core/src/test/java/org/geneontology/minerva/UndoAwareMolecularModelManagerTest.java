@@ -4,7 +4,12 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
 
 import org.apache.commons.lang3.tuple.Pair;
 import org.geneontology.minerva.UndoAwareMolecularModelManager.ChangeEvent;
@@ -13,12 +18,24 @@ import org.geneontology.minerva.curie.CurieHandler;
 import org.geneontology.minerva.curie.DefaultCurieHandler;
 import org.geneontology.minerva.json.JsonOwlIndividual;
 import org.geneontology.minerva.json.MolecularModelJsonRenderer;
+import org.geneontology.minerva.util.AnnotationShorthand;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
+import org.semanticweb.owlapi.model.AddAxiom;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLDataFactory;
 import org.semanticweb.owlapi.model.OWLNamedIndividual;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.OWLOntologyID;
+import org.semanticweb.owlapi.model.SetOntologyID;
+
+import com.google.common.base.Optional;
 
 import owltools.OWLToolsTestBasics;
 import owltools.graph.OWLGraphWrapper;
@@ -86,6 +103,128 @@ public class UndoAwareMolecularModelManagerTest extends OWLToolsTestBasics {
 		}
 	}
 
+	@Test
+	public void testUndoHistorySpill() throws Exception {
+		ParserWrapper pw = new ParserWrapper();
+		g = pw.parseToOWLGraph(getResourceIRIString("go-mgi-signaling-test.obo"));
+		m3 = new UndoAwareMolecularModelManager(g, curieHandler, "http://testmodel.geneontology.org/", folder.newFile().getAbsolutePath(), null);
+		File spillFolder = folder.newFolder();
+		m3.setUndoSpillFolder(spillFolder);
+		m3.setUndoHistoryLimits(2, 0, 0);
+		
+		String userId = "test-user-id";
+		ModelContainer model = m3.generateBlankModel(null);
+		OWLNamedIndividual individual = m3.createIndividual(model.getModelId(), "GO:0001158", null, new UndoMetadata(userId));
+		String id = individual.getIRI().toString();
+		m3.addType(model.getModelId(), id, "GO:0001664", new UndoMetadata(userId));
+		m3.addType(model.getModelId(), id, "BFO:0000066", "GO:0005654", new UndoMetadata(userId));
+		m3.addType(model.getModelId(), id, "GO:0005654", new UndoMetadata(userId));
+		
+		// only the latest events are in memory, the older ones are in the spill file
+		assertEquals(2, m3.getUndoRedoEvents(model.getModelId()).getLeft().size());
+		assertEquals(2, m3.getSpilledUndoCount(model.getModelId()));
+		assertTrue(m3.getUndoHistoryBytes() > 0);
+		
+		// undo all events, including the spilled ones
+		MolecularModelJsonRenderer renderer = new MolecularModelJsonRenderer(model, null, curieHandler);
+		assertEquals(4, renderer.renderObject(individual).type.length);
+		assertTrue(m3.undo(model, userId));
+		assertTrue(m3.undo(model, userId));
+		assertTrue(m3.undo(model, userId));
+		assertEquals(1, m3.getSpilledUndoCount(model.getModelId()));
+		assertEquals(1, renderer.renderObject(individual).type.length);
+		assertTrue(m3.undo(model, userId));
+		assertEquals(0, m3.getSpilledUndoCount(model.getModelId()));
+		assertFalse(model.getAboxOntology().containsIndividualInSignature(individual.getIRI()));
+		assertFalse(m3.undo(model, userId));
+		
+		// the history is released with the model
+		m3.unlinkModel(model.getModelId());
+		assertEquals(0, m3.getUndoHistoryBytes());
+		assertEquals(0, spillFolder.list().length);
+		m3.dispose();
+	}
+
+	@Test
+	public void testCompactUndoEvents() throws Exception {
+		ParserWrapper pw = new ParserWrapper();
+		g = pw.parseToOWLGraph(getResourceIRIString("go-mgi-signaling-test.obo"));
+		m3 = new UndoAwareMolecularModelManager(g, curieHandler, "http://testmodel.geneontology.org/", folder.newFile().getAbsolutePath(), null);
+		
+		String userId = "test-user-id";
+		ModelContainer model = m3.generateBlankModel(null);
+		OWLDataFactory f = model.getOWLDataFactory();
+		Set<OWLAnnotation> annotations = new HashSet<OWLAnnotation>();
+		annotations.add(f.getOWLAnnotation(f.getRDFSComment(), f.getOWLLiteral("comment with \u00fcmlaut", "de")));
+		annotations.add(f.getOWLAnnotation(f.getOWLAnnotationProperty(AnnotationShorthand.date.getAnnotationProperty()), f.getOWLLiteral("2016-10-16")));
+		OWLNamedIndividual individual = m3.createIndividual(model.getModelId(), "GO:0001158", annotations, new UndoMetadata(userId));
+		m3.addType(model.getModelId(), individual.getIRI().toString(), "BFO:0000066", "GO:0005654", new UndoMetadata(userId));
+		Set<OWLAxiom> axioms = new HashSet<OWLAxiom>(model.getAboxOntology().getAxioms());
+		
+		// the summary is available without decoding the events
+		List<ChangeEvent> undoEvents = m3.getUndoRedoEvents(model.getModelId()).getLeft();
+		assertEquals(2, undoEvents.size());
+		assertEquals(1, undoEvents.get(0).getAxiomCount());
+		assertEquals(userId, undoEvents.get(0).getUserId());
+		
+		// undo and redo restore the identical axioms
+		assertTrue(m3.undo(model, userId));
+		assertTrue(m3.undo(model, userId));
+		assertTrue(model.getAboxOntology().getAxioms().isEmpty());
+		assertTrue(m3.redo(model, userId));
+		assertTrue(m3.redo(model, userId));
+		assertEquals(axioms, model.getAboxOntology().getAxioms());
+		m3.dispose();
+	}
+
+	@Test
+	public void testUnsupportedChangeIsKept() throws Exception {
+		ParserWrapper pw = new ParserWrapper();
+		g = pw.parseToOWLGraph(getResourceIRIString("go-mgi-signaling-test.obo"));
+		m3 = new UndoAwareMolecularModelManager(g, curieHandler, "http://testmodel.geneontology.org/", folder.newFile().getAbsolutePath(), null);
+		
+		String userId = "test-user-id";
+		ModelContainer model = m3.generateBlankModel(null);
+		OWLDataFactory f = model.getOWLDataFactory();
+		OWLOntology abox = model.getAboxOntology();
+		OWLOntologyID originalId = abox.getOntologyID();
+		OWLOntologyID newId = new OWLOntologyID(Optional.of(IRI.create("http://testmodel.geneontology.org/renamed")), Optional.<IRI>absent());
+		m3.createIndividual(model.getModelId(), "GO:0001158", null, new UndoMetadata(userId));
+		
+		// the codec can not encode a new ontology id, the event keeps the changes
+		UndoMetadata metadata = new UndoMetadata(userId);
+		OWLAxiom declaration = f.getOWLDeclarationAxiom(f.getOWLNamedIndividual(IRI.create("http://testmodel.geneontology.org/i1")));
+		apply(model, new SetOntologyID(abox, newId), metadata);
+		// a change of the same request is appended to the unencoded event
+		apply(model, new AddAxiom(abox, declaration), metadata);
+		List<ChangeEvent> undoEvents = m3.getUndoRedoEvents(model.getModelId()).getLeft();
+		assertEquals(2, undoEvents.size());
+		assertEquals(2, undoEvents.get(0).getChangeCount());
+		
+		assertTrue(m3.undo(model, userId));
+		assertEquals(originalId, abox.getOntologyID());
+		assertFalse(abox.containsAxiom(declaration));
+		assertTrue(m3.redo(model, userId));
+		assertEquals(newId, abox.getOntologyID());
+		assertTrue(abox.containsAxiom(declaration));
+		assertTrue(m3.undo(model, userId));
+		assertTrue(m3.undo(model, userId));
+		assertTrue(abox.getAxioms().isEmpty());
+		assertEquals(originalId, abox.getOntologyID());
+		m3.dispose();
+	}
+	
+	private static void apply(ModelContainer model, OWLOntologyChange change, UndoMetadata metadata) {
+		Lock lock = model.getWriteLock();
+		lock.lock();
+		try {
+			List<OWLOntologyChange> applied = model.applyChanges(Collections.singletonList(change));
+			m3.addToHistory(model, applied, metadata);
+		} finally {
+			lock.unlock();
+		}
+	}
+
 	static void printToJson(Object obj) {
 		String json = MolecularModelJsonRenderer.renderToJson(obj, true);
 		System.out.println("---------");
@@ -0,0 +1,130 @@
+package org.geneontology.minerva;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.AddAxiom;
+import org.semanticweb.owlapi.model.AddImport;
+import org.semanticweb.owlapi.model.AddOntologyAnnotation;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLNamedIndividual;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.model.RemoveAxiom;
+import org.semanticweb.owlapi.model.SetOntologyID;
+
+public class UndoChangeCodecTest {
+
+	private static final String PREFIX = "http://model.geneontology.org/0001/";
+
+	private OWLOntologyManager m;
+	private OWLDataFactory f;
+	private OWLOntology abox;
+
+	@Before
+	public void before() throws Exception {
+		m = OWLManager.createOWLOntologyManager();
+		f = m.getOWLDataFactory();
+		abox = m.createOntology(IRI.create("http://model.geneontology.org/0001"));
+	}
+
+	/**
+	 * @param count
+	 * @return changes, similar to the changes of the model edits
+	 */
+	private List<OWLOntologyChange> createChanges(int count) {
+		OWLObjectProperty partOf = f.getOWLObjectProperty(IRI.create("http://purl.obolibrary.org/obo/BFO_0000050"));
+		OWLClass cls = f.getOWLClass(IRI.create("http://purl.obolibrary.org/obo/GO_0008150"));
+		OWLAnnotation contributor = f.getOWLAnnotation(f.getOWLAnnotationProperty(IRI.create("http://purl.org/dc/elements/1.1/contributor")), f.getOWLLiteral("http://orcid.org/0000-0000-0000-0000"));
+		OWLAnnotation date = f.getOWLAnnotation(f.getOWLAnnotationProperty(IRI.create("http://purl.org/dc/elements/1.1/date")), f.getOWLLiteral("2016-10-16"));
+		List<OWLOntologyChange> changes = new ArrayList<>();
+		OWLNamedIndividual previous = null;
+		for (int i = 0; i < count; i++) {
+			OWLNamedIndividual individual = f.getOWLNamedIndividual(IRI.create(PREFIX+i));
+			changes.add(new AddAxiom(abox, f.getOWLDeclarationAxiom(individual)));
+			changes.add(new AddAxiom(abox, f.getOWLClassAssertionAxiom(f.getOWLObjectSomeValuesFrom(partOf, cls), individual)));
+			changes.add(new AddAxiom(abox, f.getOWLAnnotationAssertionAxiom(individual.getIRI(), contributor)));
+			if (previous != null) {
+				changes.add(new RemoveAxiom(abox, f.getOWLObjectPropertyAssertionAxiom(f.getOWLObjectInverseOf(partOf), previous, individual, Collections.singleton(date))));
+			}
+			previous = individual;
+		}
+		changes.add(new AddOntologyAnnotation(abox, f.getOWLAnnotation(f.getRDFSComment(), f.getOWLLiteral("comment with \u00fcmlaut", "de"))));
+		changes.add(new AddImport(abox, f.getOWLImportsDeclaration(IRI.create("http://purl.obolibrary.org/obo/go.owl"))));
+		return changes;
+	}
+
+	private static int getSerializedSize(List<OWLOntologyChange> changes) throws Exception {
+		// the axioms, as the undo history kept them before
+		List<Object> axioms = new ArrayList<>();
+		for (OWLOntologyChange change : changes) {
+			axioms.add(change.getAxiom());
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(axioms);
+		out.close();
+		return bytes.size();
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		UndoChangeCodec codec = new UndoChangeCodec();
+		List<OWLOntologyChange> changes = createChanges(10);
+		byte[] data = codec.encode(changes);
+		assertEquals(changes, codec.decode(data, abox));
+		assertEquals(new ArrayList<OWLOntologyChange>(), codec.decode(codec.encode(new ArrayList<OWLOntologyChange>()), abox));
+	}
+
+	@Test
+	public void testEncodedSize() throws Exception {
+		UndoChangeCodec codec = new UndoChangeCodec();
+		List<OWLOntologyChange> changes = new ArrayList<>();
+		for (OWLOntologyChange change : createChanges(50)) {
+			if (change.isAxiomChange()) {
+				changes.add(change);
+			}
+		}
+		byte[] data = codec.encode(changes);
+		/* the estimate for the dictionary, as used for the limits of the history */
+		long encoded = data.length + codec.getDictionarySize() * UndoAwareMolecularModelManager.DICTIONARY_ENTRY_BYTES;
+		int serialized = getSerializedSize(changes);
+		assertTrue("encoded: "+encoded+" serialized: "+serialized, encoded * 2 < serialized);
+
+		/* the IRIs of the dictionary are not repeated */
+		int dictionarySize = codec.getDictionarySize();
+		byte[] again = codec.encode(changes);
+		assertEquals(dictionarySize, codec.getDictionarySize());
+		assertEquals(data.length, again.length);
+	}
+
+	@Test
+	public void testUnsupportedChange() throws Exception {
+		SetOntologyID change = new SetOntologyID(abox, IRI.create("http://model.geneontology.org/0002"));
+		assertFalse(UndoChangeCodec.isSupported(change));
+		for (OWLOntologyChange supported : createChanges(2)) {
+			assertTrue(UndoChangeCodec.isSupported(supported));
+		}
+		List<OWLOntologyChange> changes = createChanges(1);
+		changes.add(change);
+		try {
+			new UndoChangeCodec().encode(changes);
+			fail("an unsupported change must not be dropped");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
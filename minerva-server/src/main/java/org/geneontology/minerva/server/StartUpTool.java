@@ -1,17 +1,24 @@
 package org.geneontology.minerva.server;
 
 import java.io.File;
+import java.nio.file.Files;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.log4j.Logger;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.nio.SelectChannelConnector;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
+import org.geneontology.minerva.BlazegraphModelStore;
 import org.geneontology.minerva.BlazegraphMolecularModelManager;
+import org.geneontology.minerva.FileModelStore;
+import org.geneontology.minerva.ModelAccessStats;
+import org.geneontology.minerva.ModelChangeLog;
+import org.geneontology.minerva.ModelExportFormat;
 import org.geneontology.minerva.ModelReaderHelper;
 import org.geneontology.minerva.ModelWriterHelper;
 import org.geneontology.minerva.UndoAwareMolecularModelManager;
@@ -25,6 +32,7 @@ import org.geneontology.minerva.lookup.GolrExternalLookupService;
 import org.geneontology.minerva.lookup.MonarchExternalLookupService;
 import org.geneontology.minerva.server.handler.*;
 import org.geneontology.minerva.server.inferences.CachingInferenceProviderCreatorImpl;
+import org.geneontology.minerva.server.inferences.IncrementalInferenceProviderCreatorImpl;
 import org.geneontology.minerva.server.inferences.InferenceProviderCreator;
 import org.glassfish.jersey.server.ResourceConfig;
 import org.glassfish.jersey.servlet.ServletContainer;
@@ -52,7 +60,17 @@ public class StartUpTool {
 		public String ontology = null;
 		public String catalog = null;
 		public String journalFile = null;
+		// alternative to the journal: one compressed file per model
+		public String modelFolder = null;
 		public String exportFolder = null;
+		public ModelExportFormat exportFormat = ModelExportFormat.turtle;
+		// write-ahead log for unsaved model changes
+		public String changeLogFile = null;
+		// access statistics of the models, used for the warm-up after a start
+		public String accessStatsFile = null;
+		public int warmUpModels = 100;
+		public int warmUpThreads = 2;
+		public long warmUpPauseMillis = 100;
 		public String modelIdPrefix = "http://model.geneontology.org/";
 		public String modelIdcurie = "gomodel";
 		
@@ -92,6 +110,31 @@ public class StartUpTool {
 		public String prefixesFile = null;
 
 		public int sparqlEndpointTimeout = 10;
+		public int sparqlMaxConcurrentQueries = 8;
+		public int sparqlCacheEntries = 1000;
+		public int sparqlCacheSizeMb = 64;
+
+		public boolean useIncrementalSaves = true;
+
+		public int maxSaveBatchSize = 64;
+		
+		// limits of the in-memory models, zero for no limit
+		public int modelCacheMaxModels = 0;
+		public long modelCacheMaxAxioms = 2000000L;
+		
+		// limits of the undo history in memory, zero for no limit
+		public int undoMaxEvents = 100;
+		public int undoMaxModelMb = 8;
+		public int undoMaxTotalMb = 256;
+		// older undo events are moved to this folder, default is a temporary folder
+		public String undoSpillFolder = null;
+		
+		// memory budget of the incremental reasoners, in axioms, zero for no limit
+		public long incrementalElkMaxAxioms = 5000000L;
+		
+		// limits of the inference cache, zero for no limit
+		public int inferenceCacheMaxEntries = 1000;
+		public int inferenceCacheSizeMb = 256;
 	}
 	
 	public static void main(String[] args) throws Exception {
@@ -109,9 +152,30 @@ public class StartUpTool {
 			else if (opts.nextEq("-f|--journal-file")) {
 				conf.journalFile = opts.nextOpt();
 			}
+			else if (opts.nextEq("--model-folder")) {
+				conf.modelFolder = opts.nextOpt();
+			}
 			else if (opts.nextEq("--export-folder")) {
 				conf.exportFolder = opts.nextOpt();
 			}
+			else if (opts.nextEq("--change-log")) {
+				conf.changeLogFile = opts.nextOpt();
+			}
+			else if (opts.nextEq("--access-stats")) {
+				conf.accessStatsFile = opts.nextOpt();
+			}
+			else if (opts.nextEq("--warm-up-models")) {
+				conf.warmUpModels = Integer.parseInt(opts.nextOpt());
+			}
+			else if (opts.nextEq("--warm-up-threads")) {
+				conf.warmUpThreads = Integer.parseInt(opts.nextOpt());
+			}
+			else if (opts.nextEq("--warm-up-pause-ms")) {
+				conf.warmUpPauseMillis = Long.parseLong(opts.nextOpt());
+			}
+			else if (opts.nextEq("--export-format")) {
+				conf.exportFormat = ModelExportFormat.valueOf(opts.nextOpt());
+			}
 			else if (opts.nextEq("--model-id-prefix")) {
 				conf.modelIdPrefix = opts.nextOpt();
 			}
@@ -183,6 +247,18 @@ public class StartUpTool {
 			else if (opts.nextEq("--elk")) {
 				conf.reasonerOpt = "elk";
 			}
+			else if (opts.nextEq("--incremental-elk")) {
+				conf.reasonerOpt = "incremental-elk";
+			}
+			else if (opts.nextEq("--incremental-elk-max-axioms")) {
+				conf.incrementalElkMaxAxioms = Long.parseLong(opts.nextOpt());
+			}
+			else if (opts.nextEq("--inference-cache-max-entries")) {
+				conf.inferenceCacheMaxEntries = Integer.parseInt(opts.nextOpt());
+			}
+			else if (opts.nextEq("--inference-cache-size-mb")) {
+				conf.inferenceCacheSizeMb = Integer.parseInt(opts.nextOpt());
+			}
 			else if (opts.nextEq("--arachne")) { 
 				conf.reasonerOpt = "arachne";  
 			} 
@@ -198,6 +274,39 @@ public class StartUpTool {
 			else if (opts.nextEq("--sparql-endpoint-timeout")) {
 				conf.sparqlEndpointTimeout = Integer.parseInt(opts.nextOpt());
 			}
+			else if (opts.nextEq("--disable-incremental-saves")) {
+				conf.useIncrementalSaves = false;
+			}
+			else if (opts.nextEq("--sparql-max-concurrent-queries")) {
+				conf.sparqlMaxConcurrentQueries = Integer.parseInt(opts.nextOpt());
+			}
+			else if (opts.nextEq("--sparql-cache-entries")) {
+				conf.sparqlCacheEntries = Integer.parseInt(opts.nextOpt());
+			}
+			else if (opts.nextEq("--sparql-cache-size-mb")) {
+				conf.sparqlCacheSizeMb = Integer.parseInt(opts.nextOpt());
+			}
+			else if (opts.nextEq("--max-save-batch-size")) {
+				conf.maxSaveBatchSize = Integer.parseInt(opts.nextOpt());
+			}
+			else if (opts.nextEq("--model-cache-max-models")) {
+				conf.modelCacheMaxModels = Integer.parseInt(opts.nextOpt());
+			}
+			else if (opts.nextEq("--model-cache-max-axioms")) {
+				conf.modelCacheMaxAxioms = Long.parseLong(opts.nextOpt());
+			}
+			else if (opts.nextEq("--undo-max-events")) {
+				conf.undoMaxEvents = Integer.parseInt(opts.nextOpt());
+			}
+			else if (opts.nextEq("--undo-max-model-mb")) {
+				conf.undoMaxModelMb = Integer.parseInt(opts.nextOpt());
+			}
+			else if (opts.nextEq("--undo-max-total-mb")) {
+				conf.undoMaxTotalMb = Integer.parseInt(opts.nextOpt());
+			}
+			else if (opts.nextEq("--undo-spill-folder")) {
+				conf.undoSpillFolder = opts.nextOpt();
+			}
 			else {
 				break;
 			}
@@ -206,8 +315,8 @@ public class StartUpTool {
 			System.err.println("No ontology graph available");
 			System.exit(-1);
 		}
-		if (conf.journalFile == null) {
-			System.err.println("No journal file available");
+		if (conf.journalFile == null && conf.modelFolder == null) {
+			System.err.println("No journal file or model folder available");
 			System.exit(-1);
 		} 
 		conf.contextString = "/";
@@ -328,26 +437,74 @@ public class StartUpTool {
 		}
 
 		// set folder to  models
-				LOGGER.info("Model path: "+conf.journalFile);
+				LOGGER.info("Model path: "+(conf.modelFolder != null ? conf.modelFolder : conf.journalFile));
 		
 		// create model manager
 		LOGGER.info("Start initializing Minerva");
-		UndoAwareMolecularModelManager models = new UndoAwareMolecularModelManager(graph,
-				conf.curieHandler, conf.modelIdPrefix, conf.journalFile, conf.exportFolder);
+		UndoAwareMolecularModelManager models;
+		if (conf.modelFolder != null) {
+			models = new UndoAwareMolecularModelManager(graph, conf.curieHandler, conf.modelIdPrefix,
+					new FileModelStore(new File(conf.modelFolder)), conf.exportFolder);
+		}
+		else {
+			models = new UndoAwareMolecularModelManager(graph,
+					conf.curieHandler, conf.modelIdPrefix, conf.journalFile, conf.exportFolder);
+		}
 		// set pre and post file handlers
 		models.addPostLoadOntologyFilter(ModelReaderHelper.INSTANCE);
 		models.addPreFileSaveHandler(new ModelWriterHelper(conf.curieHandler, conf.lookupService));
+		models.setUseIncrementalSaves(conf.useIncrementalSaves);
+		models.setExportFormat(conf.exportFormat);
+		if (conf.changeLogFile != null) {
+			// recover the unsaved changes, requires the load filters and save handlers
+			models.setChangeLog(new ModelChangeLog(new File(conf.changeLogFile)));
+			models.replayChangeLog();
+		}
+		if (models.getModelStore() instanceof BlazegraphModelStore) {
+			models.getGroupCommitWriter().setMaxBatchSize(conf.maxSaveBatchSize);
+		}
+		models.setMaxConcurrentQueries(conf.sparqlMaxConcurrentQueries);
+		models.getSPARQLResultCache().setLimits(conf.sparqlCacheEntries, conf.sparqlCacheSizeMb * 1024L * 1024L);
+		models.getModelCache().setLimits(conf.modelCacheMaxModels, conf.modelCacheMaxAxioms);
+		models.setUndoHistoryLimits(conf.undoMaxEvents, conf.undoMaxModelMb * 1024L * 1024L, conf.undoMaxTotalMb * 1024L * 1024L);
+		if (conf.undoSpillFolder != null) {
+			models.setUndoSpillFolder(new File(conf.undoSpillFolder));
+		}
+		else {
+			final File undoFolder = Files.createTempDirectory("minerva-undo-").toFile();
+			// deleteOnExit() only removes empty folders, remove the spill files too
+			Runtime.getRuntime().addShutdownHook(new Thread("minerva-undo-cleanup") {
+
+				@Override
+				public void run() {
+					FileUtils.deleteQuietly(undoFolder);
+				}
+			});
+			models.setUndoSpillFolder(undoFolder);
+		}
+		if (conf.accessStatsFile != null) {
+			models.setAccessStats(new ModelAccessStats(new File(conf.accessStatsFile)));
+		}
 		
 		// start server
 		Server server = startUp(models, conf);
+		if (conf.accessStatsFile != null && conf.warmUpModels > 0) {
+			// pre-load the most used models, while the server already accepts requests
+			models.startWarmUp(conf.warmUpModels, conf.warmUpThreads, conf.warmUpPauseMillis);
+		}
 		return server;
 	}
 	
 	public static InferenceProviderCreator createInferenceProviderCreator(String reasonerOpt, UndoAwareMolecularModelManager models) { 
+		return createInferenceProviderCreator(reasonerOpt, models, new MinervaStartUpConfig().incrementalElkMaxAxioms);
+	}
+	
+	public static InferenceProviderCreator createInferenceProviderCreator(String reasonerOpt, UndoAwareMolecularModelManager models, long incrementalElkMaxAxioms) { 
 		switch(reasonerOpt) { 
 		case ("slme-hermit"): return CachingInferenceProviderCreatorImpl.createHermiT(); 
 		case ("slme-elk"): return CachingInferenceProviderCreatorImpl.createElk(true); 
 		case ("elk"): return CachingInferenceProviderCreatorImpl.createElk(false); 
+		case ("incremental-elk"): return IncrementalInferenceProviderCreatorImpl.createElk(incrementalElkMaxAxioms); 
 		case ("arachne"): return CachingInferenceProviderCreatorImpl.createArachne(models.getRuleEngine()); 
 		default: return null; 
 		} 
@@ -363,6 +520,7 @@ public class StartUpTool {
 		resourceConfig.register(RequireJsonpFilter.class);
 		resourceConfig.register(SPARQLResultsMessageBodyWriter.class);
 		resourceConfig.register(SPARQLGraphMessageBodyWriter.class);
+		resourceConfig.register(SPARQLBooleanMessageBodyWriter.class);
 		if (conf.useRequestLogging) {
 			resourceConfig.register(LoggingApplicationEventListener.class);
 		}
@@ -379,7 +537,10 @@ public class StartUpTool {
 		}
 		LOGGER.info("SeedHandler config golrUrl: "+conf.golrSeedUrl);
 		
-		InferenceProviderCreator ipc = createInferenceProviderCreator(conf.reasonerOpt, models); 
+		InferenceProviderCreator ipc = createInferenceProviderCreator(conf.reasonerOpt, models, conf.incrementalElkMaxAxioms); 
+		if (ipc instanceof CachingInferenceProviderCreatorImpl) {
+			((CachingInferenceProviderCreatorImpl) ipc).setLimits(conf.inferenceCacheMaxEntries, conf.inferenceCacheSizeMb * 1024L * 1024L);
+		}
 		
 		JsonOrJsonpBatchHandler batchHandler = new JsonOrJsonpBatchHandler(models, conf.defaultModelState,
 				ipc, conf.importantRelations, conf.lookupService);
@@ -387,8 +548,15 @@ public class StartUpTool {
 		
 		SimpleEcoMapper ecoMapper = EcoMapperFactory.createSimple();
 		JsonOrJsonpSeedHandler seedHandler = new JsonOrJsonpSeedHandler(models, conf.defaultModelState, conf.golrSeedUrl, ecoMapper );
-		SPARQLHandler sparqlHandler = new SPARQLHandler(models, conf.sparqlEndpointTimeout);
-		resourceConfig = resourceConfig.registerInstances(batchHandler, seedHandler, sparqlHandler);
+		resourceConfig = resourceConfig.registerInstances(batchHandler, seedHandler, new StatusHandler(models, ipc));
+		if (models.getModelStore() instanceof BlazegraphModelStore) {
+			// SPARQL queries require the Blazegraph journal
+			SPARQLHandler sparqlHandler = new SPARQLHandler(models, conf.sparqlEndpointTimeout);
+			resourceConfig = resourceConfig.registerInstances(sparqlHandler);
+		}
+		else {
+			LOGGER.info("SPARQL endpoint disabled, models are not stored in Blazegraph");
+		}
 
 		// setup jetty server port, buffers and context path
 		Server server = new Server();
@@ -9,6 +9,7 @@ import java.io.StringWriter;
 import java.lang.reflect.Type;
 import java.util.Collections;
 import java.util.Set;
+import java.util.concurrent.locks.Lock;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
@@ -143,56 +144,62 @@ public class JsonOrJsonpBatchHandler extends OperationsImpl implements M3BatchHa
 		UndoMetadata token = new UndoMetadata(userId);
 		
 		final BatchHandlerValues values = new BatchHandlerValues();
-		for (M3Request request : requests) {
-			requireNotNull(request, "request");
-			requireNotNull(request.entity, "entity");
-			requireNotNull(request.operation, "operation");
-			final Entity entity = request.entity;
-			final Operation operation = request.operation;
-			checkPermissions(entity, operation, isPrivileged);
+		// asynchronous model listeners receive the changes of the batch as one
+		// event, the batch begins, when a request sets the model
+		try {
+			for (M3Request request : requests) {
+				requireNotNull(request, "request");
+				requireNotNull(request.entity, "entity");
+				requireNotNull(request.operation, "operation");
+				final Entity entity = request.entity;
+				final Operation operation = request.operation;
+				checkPermissions(entity, operation, isPrivileged);
 
-			// individual
-			if (Entity.individual == entity) {
-				String error = handleRequestForIndividual(request, operation, userId, providerGroups, token, values);
-				if (error != null) {
-					return error(response, error, null);
+				// individual
+				if (Entity.individual == entity) {
+					String error = handleRequestForIndividual(request, operation, userId, providerGroups, token, values);
+					if (error != null) {
+						return error(response, error, null);
+					}
 				}
-			}
-			// edge
-			else if (Entity.edge == entity) {
-				String error = handleRequestForEdge(request, operation, userId, providerGroups, token, values);
-				if (error != null) {
-					return error(response, error, null);
+				// edge
+				else if (Entity.edge == entity) {
+					String error = handleRequestForEdge(request, operation, userId, providerGroups, token, values);
+					if (error != null) {
+						return error(response, error, null);
+					}
 				}
-			}
-			//model
-			else if (Entity.model == entity) {
-				String error = handleRequestForModel(request, response, operation, userId, providerGroups, token, values);
-				if (error != null) {
-					return error(response, error, null);
+				//model
+				else if (Entity.model == entity) {
+					String error = handleRequestForModel(request, response, operation, userId, providerGroups, token, values);
+					if (error != null) {
+						return error(response, error, null);
+					}
 				}
-			}
-			// meta (e.g. relations, model ids, evidence)
-			else if (Entity.meta == entity) {
-				if (Operation.get == operation){
-					if (values.nonMeta) {
-						// can only be used with other "meta" operations in batch mode, otherwise it would lead to conflicts in the returned signal
-						return error(response, "Get meta entity can only be combined with other meta operations.", null);
+				// meta (e.g. relations, model ids, evidence)
+				else if (Entity.meta == entity) {
+					if (Operation.get == operation){
+						if (values.nonMeta) {
+							// can only be used with other "meta" operations in batch mode, otherwise it would lead to conflicts in the returned signal
+							return error(response, "Get meta entity can only be combined with other meta operations.", null);
+						}
+						getMeta(response, userId, providerGroups);
+					} else if (Operation.exportAll == operation) {
+						exportAllModels();
+						response.messageType = "success";
+						response.signal = "meta";
+						response.message = "Dumped all models to folder";
+						return response;
+					} else {
+						return error(response, "Unknown operation: "+operation, null);
 					}
-					getMeta(response, userId, providerGroups);
-				} else if (Operation.exportAll == operation) {
-					exportAllModels();
-					response.messageType = "success";
-					response.signal = "meta";
-					response.message = "Dumped all models to folder";
-					return response;
-				} else {
-					return error(response, "Unknown operation: "+operation, null);
+				}
+				else {
+					return error(response, "Unknown entity: "+entity, null);
 				}
 			}
-			else {
-				return error(response, "Unknown entity: "+entity, null);
-			}
+		} finally {
+			values.endBatch();
 		}
 		if (M3BatchResponse.SIGNAL_META.equals(response.signal)) {
 			return response;
@@ -200,7 +207,7 @@ public class JsonOrJsonpBatchHandler extends OperationsImpl implements M3BatchHa
 		if (values.model == null) {
 			return error(response, "Empty batch calls are not supported, at least one request is required.", null);
 		}
-		// update reasoner
+		// update reasoner, works on a snapshot of the model
 		// report state
 		InferenceProvider inferenceProvider = null;
 		boolean isConsistent = true;
@@ -211,33 +218,40 @@ public class JsonOrJsonpBatchHandler extends OperationsImpl implements M3BatchHa
 			values.renderBulk = true; // to ensure that all indivuduals are in the response
 		}
 
-		// create response.data
-		response.data = new ResponseData();
-		final MolecularModelJsonRenderer renderer = createModelRenderer(values.model, externalLookupService, inferenceProvider, curieHandler);
-		if (values.renderBulk) {
-			// render complete model
-			JsonModel jsonModel = renderer.renderModel();
-			initResponseData(jsonModel, response.data);
-			response.signal = M3BatchResponse.SIGNAL_REBUILD;
-		}
-		else {
-			response.signal = M3BatchResponse.SIGNAL_MERGE;
-			// render individuals
-			if (values.relevantIndividuals.isEmpty() == false) {
-				Pair<JsonOwlIndividual[],JsonOwlFact[]> pair = renderer.renderIndividuals(values.relevantIndividuals);
-				response.data.individuals = pair.getLeft();
-				response.data.facts = pair.getRight();
+		// rendering only reads the model, concurrent requests for the same model can proceed
+		final Lock lock = values.model.getReadLock();
+		lock.lock();
+		try {
+			// create response.data
+			response.data = new ResponseData();
+			final MolecularModelJsonRenderer renderer = createModelRenderer(values.model, externalLookupService, inferenceProvider, curieHandler);
+			if (values.renderBulk) {
+				// render complete model
+				JsonModel jsonModel = renderer.renderModel();
+				initResponseData(jsonModel, response.data);
+				response.signal = M3BatchResponse.SIGNAL_REBUILD;
+			}
+			else {
+				response.signal = M3BatchResponse.SIGNAL_MERGE;
+				// render individuals
+				if (values.relevantIndividuals.isEmpty() == false) {
+					Pair<JsonOwlIndividual[],JsonOwlFact[]> pair = renderer.renderIndividuals(values.relevantIndividuals);
+					response.data.individuals = pair.getLeft();
+					response.data.facts = pair.getRight();
+				}
+				// add model annotations
+				response.data.annotations = MolecularModelJsonRenderer.renderModelAnnotations(values.model.getAboxOntology(), curieHandler);
+				response.data.modelId = curieHandler.getCuri(values.model.getModelId());
 			}
-			// add model annotations
-			response.data.annotations = MolecularModelJsonRenderer.renderModelAnnotations(values.model.getAboxOntology(), curieHandler);
-			response.data.modelId = curieHandler.getCuri(values.model.getModelId());
-		}
 		
-		// add other infos to data
-		if (!isConsistent) {
-			response.data.inconsistentFlag =  Boolean.TRUE;
+			// add other infos to data
+			if (!isConsistent) {
+				response.data.inconsistentFlag =  Boolean.TRUE;
+			}
+			response.data.modifiedFlag = Boolean.valueOf(values.model.isModified());
+		} finally {
+			lock.unlock();
 		}
-		response.data.modifiedFlag = Boolean.valueOf(values.model.isModified());
 		// These are required for an "okay" response.
 		response.messageType = M3BatchResponse.MESSAGE_TYPE_SUCCESS;
 		if( response.message == null ){
@@ -12,6 +12,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
 
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.log4j.Logger;
@@ -39,6 +40,7 @@ import org.geneontology.minerva.server.handler.M3BatchHandler.M3Request;
 import org.geneontology.minerva.server.handler.M3BatchHandler.Operation;
 import org.geneontology.minerva.server.handler.OperationsTools.MissingParameterException;
 import org.geneontology.minerva.server.validation.BeforeSaveModelValidator;
+import org.geneontology.rules.engine.WorkingMemory;
 import org.semanticweb.owlapi.apibinding.OWLManager;
 import org.semanticweb.owlapi.model.IRI;
 import org.semanticweb.owlapi.model.OWLAnnotation;
@@ -91,8 +93,54 @@ abstract class OperationsImpl extends ModelCreator {
 		boolean renderBulk = false;
 		boolean nonMeta = false;
 		ModelContainer model = null;
+		// the model with an open batch, see ModelContainer.beginBatch()
+		private ModelContainer batchModel = null;
 		Map<String, OWLNamedIndividual> individualVariable = new HashMap<>();
 		
+		/**
+		 * Set the model of the requests. The batch of the model begins, when
+		 * the model is set for the first time, so the asynchronous listeners
+		 * receive the changes of all requests as one event.
+		 * 
+		 * @param model
+		 */
+		void setModel(ModelContainer model) {
+			if (batchModel == null && model != null) {
+				batchModel = model;
+				batchModel.beginBatch();
+			}
+			this.model = model;
+		}
+		
+		/**
+		 * Set a model, whose batch was started by the manager, e.g. with
+		 * {@link UndoAwareMolecularModelManager#checkModelIdInBatch(IRI)}.
+		 * The batch is ended with {@link #endBatch()}.
+		 * 
+		 * @param model
+		 */
+		void setModelInBatch(ModelContainer model) {
+			if (batchModel != null) {
+				// only the first model of the requests has a batch
+				model.endBatch();
+			}
+			else {
+				batchModel = model;
+			}
+			this.model = model;
+		}
+		
+		/**
+		 * End the batch started with {@link #setModel(ModelContainer)} or
+		 * {@link #setModelInBatch(ModelContainer)}, if any.
+		 */
+		void endBatch() {
+			if (batchModel != null) {
+				batchModel.endBatch();
+				batchModel = null;
+			}
+		}
+		
 		@Override
 		public boolean notVariable(String id) {
 			return individualVariable.containsKey(id) == false;
@@ -144,7 +192,7 @@ abstract class OperationsImpl extends ModelCreator {
 	String handleRequestForIndividual(M3Request request, Operation operation, String userId, Set<String> providerGroups, UndoMetadata token, BatchHandlerValues values) throws Exception {
 		values.nonMeta = true;
 		requireNotNull(request.arguments, "request.arguments");
-		values.model = checkModelId(values.model, request);
+		checkModelId(values, request);
 
 		// get info, no modification
 		if (Operation.get == operation) {
@@ -338,7 +386,7 @@ abstract class OperationsImpl extends ModelCreator {
 	String handleRequestForEdge(M3Request request, Operation operation, String userId, Set<String> providerGroups, UndoMetadata token, BatchHandlerValues values) throws Exception {
 		values.nonMeta = true;
 		requireNotNull(request.arguments, "request.arguments");
-		values.model = checkModelId(values.model, request);
+		checkModelId(values, request);
 		// required: subject, predicate, object
 		requireNotNull(request.arguments.subject, "request.arguments.subject");
 		requireNotNull(request.arguments.predicate, "request.arguments.predicate");
@@ -410,13 +458,13 @@ abstract class OperationsImpl extends ModelCreator {
 		if (Operation.get == operation){
 			values.nonMeta = true;
 			requireNotNull(request.arguments, "request.arguments");
-			values.model = checkModelId(values.model, request);
+			checkModelId(values, request);
 			values.renderBulk = true;
 		}
 		else if (Operation.updateImports == operation){
 			values.nonMeta = true;
 			requireNotNull(request.arguments, "request.arguments");
-			values.model = checkModelId(values.model, request);
+			checkModelId(values, request);
 			m3.updateImports(values.model);
 			values.renderBulk = true;
 		}
@@ -426,17 +474,17 @@ abstract class OperationsImpl extends ModelCreator {
 			values.renderBulk = true;
 			
 			if (request.arguments != null) {
-				values.model = createModel(userId, providerGroups, token, values, request.arguments.values);
+				values.setModel(createModel(userId, providerGroups, token, values, request.arguments.values));
 			}
 			else {
-				values.model = createModel(userId, providerGroups, token, values, null);
+				values.setModel(createModel(userId, providerGroups, token, values, null));
 			}
 		}
 		else if (Operation.addAnnotation == operation) {
 			values.nonMeta = true;
 			requireNotNull(request.arguments, "request.arguments");
 			requireNotNull(request.arguments.values, "request.arguments.values");
-			values.model = checkModelId(values.model, request);
+			checkModelId(values, request);
 			Set<OWLAnnotation> annotations = extract(request.arguments.values, userId, providerGroups, values, values.model);
 			if (annotations != null) {
 				m3.addModelAnnotations(values.model, annotations, token);
@@ -447,7 +495,7 @@ abstract class OperationsImpl extends ModelCreator {
 			values.nonMeta = true;
 			requireNotNull(request.arguments, "request.arguments");
 			requireNotNull(request.arguments.values, "request.arguments.values");
-			values.model = checkModelId(values.model, request);
+			checkModelId(values, request);
 			Set<OWLAnnotation> annotations = extract(request.arguments.values, null, Collections.emptySet(), values, values.model);
 			if (annotations != null) {
 				m3.removeAnnotations(values.model, annotations, token);
@@ -461,7 +509,7 @@ abstract class OperationsImpl extends ModelCreator {
 				return "Export model can only be combined with other meta operations.";
 			}
 			requireNotNull(request.arguments, "request.arguments");
-			values.model = checkModelId(values.model, request);
+			checkModelId(values, request);
 			export(response, values.model, userId, providerGroups);
 		}
 		else if (Operation.exportModelLegacy == operation) {
@@ -470,14 +518,14 @@ abstract class OperationsImpl extends ModelCreator {
 				return "Export legacy model can only be combined with other meta operations.";
 			}
 			requireNotNull(request.arguments, "request.arguments");
-			values.model = checkModelId(values.model, request);
+			checkModelId(values, request);
 			exportLegacy(response, values.model, request.arguments.format, userId);
 		}
 		else if (Operation.importModel == operation) {
 			values.nonMeta = true;
 			requireNotNull(request.arguments, "request.arguments");
 			requireNotNull(request.arguments.importModel, "request.arguments.importModel");
-			values.model = m3.importModel(request.arguments.importModel);
+			values.setModel(m3.importModel(request.arguments.importModel));
 			
 			Set<OWLAnnotation> annotations = extract(request.arguments.values, userId, providerGroups, values, values.model);
 			if (annotations != null) {
@@ -489,7 +537,7 @@ abstract class OperationsImpl extends ModelCreator {
 		else if (Operation.storeModel == operation) {
 			values.nonMeta = true;
 			requireNotNull(request.arguments, "request.arguments");
-			values.model = checkModelId(values.model, request);
+			checkModelId(values, request);
 			Set<OWLAnnotation> annotations = extract(request.arguments.values, userId, providerGroups, values, values.model);
 			if (validateBeforeSave()) {
 				List<String> issues = beforeSaveValidator.validateBeforeSave(values.model);
@@ -512,14 +560,14 @@ abstract class OperationsImpl extends ModelCreator {
 		else if (Operation.undo == operation) {
 			values.nonMeta = true;
 			requireNotNull(request.arguments, "request.arguments");
-			values.model = checkModelId(values.model, request);
+			checkModelId(values, request);
 			m3.undo(values.model, userId);
 			values.renderBulk = true;
 		}
 		else if (Operation.redo == operation) {
 			values.nonMeta = true;
 			requireNotNull(request.arguments, "request.arguments");
-			values.model = checkModelId(values.model, request);
+			checkModelId(values, request);
 			m3.redo(values.model, userId);
 			values.renderBulk = true;
 		}
@@ -529,7 +577,7 @@ abstract class OperationsImpl extends ModelCreator {
 				return operation+" cannot be combined with other operations.";
 			}
 			requireNotNull(request.arguments, "request.arguments");
-			values.model = checkModelId(values.model, request);
+			checkModelId(values, request);
 			getCurrentUndoRedoForModel(response, values.model.getModelId(), userId);
 		}
 		else {
@@ -545,17 +593,17 @@ abstract class OperationsImpl extends ModelCreator {
 		List<Map<Object, Object>> redos = new ArrayList<Map<Object,Object>>();
 		final long currentTime = System.currentTimeMillis();
 		for(ChangeEvent undo : undoRedoEvents.getLeft()) {
-			Map<Object, Object> data = new HashMap<Object, Object>(3);
+			Map<Object, Object> data = new HashMap<Object, Object>(4);
 			data.put("user-id", undo.getUserId());
 			data.put("time", Long.valueOf(currentTime-undo.getTime()));
-			// TODO add a summary of the change? axiom count?
+			data.put("axiom-count", Integer.valueOf(undo.getAxiomCount()));
 			undos.add(data);
 		}
 		for(ChangeEvent redo : undoRedoEvents.getRight()) {
-			Map<Object, Object> data = new HashMap<Object, Object>(3);
+			Map<Object, Object> data = new HashMap<Object, Object>(4);
 			data.put("user-id", redo.getUserId());
 			data.put("time", Long.valueOf(currentTime-redo.getTime()));
-			// TODO add a summary of the change? axiom count?
+			data.put("axiom-count", Integer.valueOf(redo.getAxiomCount()));
 			redos.add(data);
 		}
 		response.data.undo = undos;
@@ -664,14 +712,27 @@ abstract class OperationsImpl extends ModelCreator {
 		if ("gpad".equals(format)) {
 			initMetaResponse(response);
 			try {
-				response.data.exportModel = new GPADSPARQLExport(curieHandler, m3.getLegacyRelationShorthandIndex(), m3.getTboxShorthandIndex(), m3.getDoNotAnnotateSubset()).exportGPAD(m3.createInferredModel(model.getModelId()));
+				final GPADSPARQLExport exporter = new GPADSPARQLExport(curieHandler, m3.getLegacyRelationShorthandIndex(), m3.getTboxShorthandIndex(), m3.getDoNotAnnotateSubset());
+				response.data.exportModel = m3.readInferredModel(model.getModelId(), new Function<WorkingMemory, String>() {
+
+					@Override
+					public String apply(WorkingMemory wm) {
+						return exporter.exportGPAD(wm);
+					}
+				});
 			} catch (InconsistentOntologyException e) {
 				response.messageType = MinervaResponse.MESSAGE_TYPE_ERROR;
 				response.message = "The model is inconsistent; a GPAD cannot be created.";
 			}
 		} else if ("explanations".equals(format)) {
 			initMetaResponse(response);
-			response.data.exportModel = ExportExplanation.exportExplanation(m3.createInferredModel(model.getModelId()), externalLookupService, m3.getLegacyRelationShorthandIndex());
+			response.data.exportModel = m3.readInferredModel(model.getModelId(), new Function<WorkingMemory, String>() {
+
+				@Override
+				public String apply(WorkingMemory wm) {
+					return ExportExplanation.exportExplanation(wm, externalLookupService, m3.getLegacyRelationShorthandIndex());
+				}
+			});
 		} else {
 			final GafExportTool exportTool = GafExportTool.getInstance();
 			if (format == null) {
@@ -689,31 +750,34 @@ abstract class OperationsImpl extends ModelCreator {
 	
 
 	/**
-	 * @param model
+	 * Set the model of the request as model of the batch. The first model is
+	 * fetched with an open batch, see
+	 * {@link UndoAwareMolecularModelManager#checkModelIdInBatch(IRI)}, so it
+	 * can not be evicted before the changes of the requests are applied.
+	 * 
+	 * @param values
 	 * @param request
-	 * @return modelId
 	 * @throws MissingParameterException
 	 * @throws MultipleModelIdsParameterException
 	 * @throws UnknownIdentifierException 
 	 */
-	public ModelContainer checkModelId(ModelContainer model, M3Request request) 
+	void checkModelId(BatchHandlerValues values, M3Request request) 
 			throws MissingParameterException, MultipleModelIdsParameterException, UnknownIdentifierException {
 		
-		if (model == null) {
+		if (values.model == null) {
 			final String currentModelId = request.arguments.modelId;
 			requireNotNull(currentModelId, "request.arguments.modelId");
-			model = m3.checkModelId(curieHandler.getIRI(currentModelId));
+			values.setModelInBatch(m3.checkModelIdInBatch(curieHandler.getIRI(currentModelId)));
 		}
 		else {
 			final String currentModelId = request.arguments.modelId;
 			if (currentModelId != null) {
 				IRI modelId = curieHandler.getIRI(currentModelId);
-				if (model.getModelId().equals(modelId) == false) {
+				if (values.model.getModelId().equals(modelId) == false) {
 					throw new MultipleModelIdsParameterException("Using multiple modelIds in one batch call is not supported.");
 				}
 			}
 		}
-		return model;
 	}
 	
 	private void updateAnnotationsForDelete(DeleteInformation info, ModelContainer model, String userId, Set<String> providerGroups, UndoMetadata token, UndoAwareMolecularModelManager m3) throws UnknownIdentifierException {
@@ -0,0 +1,59 @@
+package org.geneontology.minerva.server.handler;
+
+import org.geneontology.minerva.BooleanQueryResult;
+import org.openrdf.query.resultio.BooleanQueryResultFormat;
+import org.openrdf.query.resultio.BooleanQueryResultWriter;
+import org.openrdf.query.resultio.QueryResultIO;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+/**
+ * Serializes the result of a SPARQL ASK query.
+ */
+@Provider
+@Produces({
+        "application/sparql-results+json",
+        MediaType.APPLICATION_JSON,
+        "application/sparql-results+xml",
+        MediaType.APPLICATION_XML,
+        MediaType.TEXT_XML,
+        MediaType.TEXT_PLAIN
+})
+public class SPARQLBooleanMessageBodyWriter implements MessageBodyWriter<BooleanQueryResult> {
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return true;
+    }
+
+    @Override
+    public long getSize(BooleanQueryResult result, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(BooleanQueryResult result, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType, MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException, WebApplicationException {
+        BooleanQueryResultFormat format = BooleanQueryResultFormat.forMIMEType(mediaType.toString(), BooleanQueryResultFormat.JSON);
+        try {
+            BooleanQueryResultWriter writer = QueryResultIO.createWriter(format, entityStream);
+            writer.handleBoolean(result.getValue());
+            entityStream.flush();
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new WebApplicationException(e);
+        } finally {
+            result.close();
+        }
+    }
+
+}
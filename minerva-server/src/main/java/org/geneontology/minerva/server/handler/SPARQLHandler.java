@@ -1,18 +1,27 @@
 package org.geneontology.minerva.server.handler;
 
 import org.geneontology.minerva.BlazegraphMolecularModelManager;
+import org.glassfish.jersey.server.CloseableService;
 import org.openrdf.query.MalformedQueryException;
 import org.openrdf.query.QueryEvaluationException;
 import org.openrdf.query.QueryResult;
 import org.openrdf.repository.RepositoryException;
 
 import javax.ws.rs.*;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
+import java.io.Closeable;
+import java.io.IOException;
 
 /**
  * SPARQL query endpoint
  * SPARQL query result will be serialized by either
- * SPARQLResultsMessageBodyWriter or SPARQLGraphMessageBodyWriter
+ * SPARQLResultsMessageBodyWriter, SPARQLGraphMessageBodyWriter or
+ * SPARQLBooleanMessageBodyWriter. Results are streamed, the writers close
+ * the result and with it the query connection. The result is also closed at
+ * the end of the request, in case no writer runs (no acceptable media type,
+ * failing filter, aborted request). The number of concurrent queries is
+ * limited by the model manager.
  */
 @Path("/sparql")
 public class SPARQLHandler {
@@ -26,20 +35,44 @@ public class SPARQLHandler {
     }
 
     @GET
-    public QueryResult sparqlQueryGet(@QueryParam("query") String queryText) throws QueryEvaluationException, MalformedQueryException, RepositoryException {
-        return m3.executeSPARQLQuery(queryText, timeout);
+    public QueryResult<?> sparqlQueryGet(@QueryParam("query") String queryText, @Context CloseableService closer) throws QueryEvaluationException, MalformedQueryException, RepositoryException {
+        return closeWithRequest(m3.executeSPARQLQuery(queryText, timeout), closer);
     }
 
     @POST
     @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
-    public QueryResult sparqlQueryPostForm(@FormParam("query") String queryText) throws QueryEvaluationException, MalformedQueryException, RepositoryException {
-        return m3.executeSPARQLQuery(queryText, timeout);
+    public QueryResult<?> sparqlQueryPostForm(@FormParam("query") String queryText, @Context CloseableService closer) throws QueryEvaluationException, MalformedQueryException, RepositoryException {
+        return closeWithRequest(m3.executeSPARQLQuery(queryText, timeout), closer);
     }
 
     @POST
     @Consumes("application/sparql-query")
-    public QueryResult sparqlQueryPostQuery(String query) throws QueryEvaluationException, MalformedQueryException, RepositoryException {
-        return m3.executeSPARQLQuery(query, timeout);
+    public QueryResult<?> sparqlQueryPostQuery(String query, @Context CloseableService closer) throws QueryEvaluationException, MalformedQueryException, RepositoryException {
+        return closeWithRequest(m3.executeSPARQLQuery(query, timeout), closer);
+    }
+
+    /**
+     * Register the result to be closed, when the request is finished. This
+     * runs for every outcome of the request, closing a result again after
+     * the writer is harmless.
+     *
+     * @param result
+     * @param closer
+     * @return result
+     */
+    static QueryResult<?> closeWithRequest(final QueryResult<?> result, CloseableService closer) {
+        closer.add(new Closeable() {
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    result.close();
+                } catch (QueryEvaluationException e) {
+                    throw new IOException(e);
+                }
+            }
+        });
+        return result;
     }
 
 }
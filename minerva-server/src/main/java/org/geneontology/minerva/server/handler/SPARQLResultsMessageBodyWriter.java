@@ -46,9 +46,15 @@ public class SPARQLResultsMessageBodyWriter implements MessageBodyWriter<TupleQu
         try {
             QueryResultIO.write(result, format, entityStream);
             entityStream.flush();
-            result.close();
         } catch (TupleQueryResultHandlerException | QueryEvaluationException e) {
             throw new WebApplicationException(e);
+        } finally {
+            // releases the query connection
+            try {
+                result.close();
+            } catch (QueryEvaluationException e) {
+                throw new WebApplicationException(e);
+            }
         }
     }
 
@@ -0,0 +1,148 @@
+package org.geneontology.minerva.server.handler;
+
+import org.geneontology.minerva.BlazegraphModelStore;
+import org.geneontology.minerva.BlazegraphMolecularModelManager;
+import org.geneontology.minerva.BlazegraphMolecularModelManager.SaveStatistics;
+import org.geneontology.minerva.GroupCommitWriter;
+import org.geneontology.minerva.ModelCache;
+import org.geneontology.minerva.ModelWarmUp;
+import org.geneontology.minerva.SPARQLResultCache;
+import org.geneontology.minerva.server.inferences.CachingInferenceProviderCreatorImpl;
+import org.geneontology.minerva.server.inferences.InferenceProviderCreator;
+import org.geneontology.minerva.server.inferences.InferenceProviderCreatorImpl;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+/**
+ * Readiness of the server, e.g. for a load balancer. Responds with status
+ * 503, while the warm-up of the models is still running.
+ */
+@Path("/status")
+public class StatusHandler {
+
+    private final BlazegraphMolecularModelManager<?> m3;
+    private final InferenceProviderCreator ipc;
+
+    public StatusHandler(BlazegraphMolecularModelManager<?> m3) {
+        this(m3, null);
+    }
+
+    /**
+     * @param m3
+     * @param ipc inference provider creator, may be null
+     */
+    public StatusHandler(BlazegraphMolecularModelManager<?> m3, InferenceProviderCreator ipc) {
+        this.m3 = m3;
+        this.ipc = ipc;
+    }
+
+    public static class Status {
+        boolean ready;
+        int loadedModels;
+        int warmUpModels;
+        int warmUpLoaded;
+        long cacheHits;
+        long cacheMisses;
+        long cacheEvictions;
+        long cacheEvictedAxioms;
+        int pinnedModels;
+        long loadedAxioms;
+        Integer inferenceCacheSize;
+        Long inferenceCacheBytes;
+        Long inferenceCacheHits;
+        Long inferenceCacheMisses;
+        Long inferenceCacheEvictions;
+        Long inferenceBuilds;
+        Long inferenceBuildMillis;
+        Long moduleCacheHits;
+        Long moduleCacheMisses;
+        Integer sparqlCacheSize;
+        Long sparqlCacheHits;
+        Long sparqlCacheMisses;
+        Long sparqlCacheEvictions;
+        Double sparqlCacheHitRate;
+        Long sparqlCacheSavedMillis;
+        Integer writeQueueDepth;
+        Long writeCommits;
+        Long writeFailures;
+        Integer writeLastBatchSize;
+        Double writeAverageBatchSize;
+        Long writeLastCommitMillis;
+        Double writeAverageCommitMillis;
+        long fullSaves;
+        long incrementalSaves;
+        long savedTriplesAdded;
+        long savedTriplesRemoved;
+        long saveMillis;
+    }
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getStatus() {
+        Status status = new Status();
+        status.ready = m3.isReady();
+        ModelCache cache = m3.getModelCache();
+        status.loadedModels = cache.getSize();
+        status.cacheHits = cache.getHitCount();
+        status.cacheMisses = cache.getMissCount();
+        status.cacheEvictions = cache.getEvictionCount();
+        status.cacheEvictedAxioms = cache.getEvictedAxiomCount();
+        status.pinnedModels = cache.getPinnedCount();
+        status.loadedAxioms = cache.getAxiomCount();
+        ModelWarmUp warmUp = m3.getWarmUp();
+        if (warmUp != null) {
+            status.warmUpModels = warmUp.getModelCount();
+            status.warmUpLoaded = warmUp.getLoadedCount();
+        }
+        if (ipc instanceof CachingInferenceProviderCreatorImpl) {
+            // only reported, if the inferences are cached
+            CachingInferenceProviderCreatorImpl inferenceCache = (CachingInferenceProviderCreatorImpl) ipc;
+            status.inferenceCacheSize = inferenceCache.getSize();
+            status.inferenceCacheBytes = inferenceCache.getEstimatedBytes();
+            status.inferenceCacheHits = inferenceCache.getHitCount();
+            status.inferenceCacheMisses = inferenceCache.getMissCount();
+            status.inferenceCacheEvictions = inferenceCache.getEvictionCount();
+            status.inferenceBuilds = inferenceCache.getBuildCount();
+            status.inferenceBuildMillis = inferenceCache.getBuildMillis();
+        }
+        if (ipc instanceof InferenceProviderCreatorImpl) {
+            InferenceProviderCreatorImpl creator = (InferenceProviderCreatorImpl) ipc;
+            if (creator.isUsingSLME()) {
+                status.moduleCacheHits = creator.getModuleHitCount();
+                status.moduleCacheMisses = creator.getModuleMissCount();
+            }
+        }
+        SPARQLResultCache sparqlCache = m3.getSPARQLResultCache();
+        if (sparqlCache.isEnabled()) {
+            status.sparqlCacheSize = sparqlCache.getSize();
+            status.sparqlCacheHits = sparqlCache.getHitCount();
+            status.sparqlCacheMisses = sparqlCache.getMissCount();
+            status.sparqlCacheEvictions = sparqlCache.getEvictionCount();
+            status.sparqlCacheHitRate = sparqlCache.getHitRate();
+            status.sparqlCacheSavedMillis = sparqlCache.getSavedMillis();
+        }
+        if (m3.getModelStore() instanceof BlazegraphModelStore) {
+            // only reported, if the journal is written by a group commit writer
+            GroupCommitWriter writer = m3.getGroupCommitWriter();
+            status.writeQueueDepth = writer.getQueueDepth();
+            status.writeCommits = writer.getCommitCount();
+            status.writeFailures = writer.getFailedWriteCount();
+            status.writeLastBatchSize = writer.getLastBatchSize();
+            status.writeAverageBatchSize = writer.getAverageBatchSize();
+            status.writeLastCommitMillis = writer.getLastCommitMillis();
+            status.writeAverageCommitMillis = writer.getAverageCommitMillis();
+        }
+        SaveStatistics saves = m3.getSaveStatistics();
+        status.fullSaves = saves.getFullSaves();
+        status.incrementalSaves = saves.getIncrementalSaves();
+        status.savedTriplesAdded = saves.getTriplesAdded();
+        status.savedTriplesRemoved = saves.getTriplesRemoved();
+        status.saveMillis = saves.getSaveTimeMillis();
+        Response.Status code = status.ready ? Response.Status.OK : Response.Status.SERVICE_UNAVAILABLE;
+        return Response.status(code).entity(status).build();
+    }
+}
@@ -1,11 +1,15 @@
 package org.geneontology.minerva.server.inferences;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.log4j.Logger;
 import org.geneontology.minerva.ModelContainer;
 import org.geneontology.minerva.ModelContainer.ModelChangeListener;
+import org.geneontology.minerva.ModelSnapshot;
 import org.geneontology.minerva.json.InferenceProvider;
 import org.geneontology.rules.engine.RuleEngine;
 import org.geneontology.rules.util.ArachneOWLReasonerFactory;
@@ -14,9 +18,32 @@ import org.semanticweb.owlapi.model.OWLOntologyChange;
 import org.semanticweb.owlapi.model.OWLOntologyCreationException;
 import org.semanticweb.owlapi.reasoner.OWLReasonerFactory;
 
+/**
+ * Inference provider creator, which keeps the inferences of each model until
+ * the model changes. The cache is bounded by the number of entries and the
+ * estimated size of the inferences, the least recently used entries are
+ * evicted first.
+ */
 public class CachingInferenceProviderCreatorImpl extends InferenceProviderCreatorImpl {
 	
-	private final Map<ModelContainer, InferenceProvider> inferenceCache = new ConcurrentHashMap<>();
+	private final static Logger LOG = Logger.getLogger(CachingInferenceProviderCreatorImpl.class);
+	
+	// used for providers without a size estimate
+	private static final long DEFAULT_ENTRY_BYTES = 64 * 1024;
+	
+	// inferences with the version of the model they were created for,
+	// access order, the first entry is the least recently used
+	private final LinkedHashMap<ModelContainer, CacheEntry> inferenceCache = new LinkedHashMap<>(16, 0.75f, true);
+	// guarded by inferenceCache
+	private long cacheBytes = 0;
+	private int maxEntries = 1000;
+	private long maxBytes = 256L * 1024 * 1024;
+	
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong builds = new AtomicLong();
+	private final AtomicLong buildNanos = new AtomicLong();
 	
 	protected CachingInferenceProviderCreatorImpl(OWLReasonerFactory rf, int maxConcurrent, boolean useSLME, String name) {
 		super(rf, maxConcurrent, useSLME, name);
@@ -47,33 +74,234 @@ public class CachingInferenceProviderCreatorImpl extends InferenceProviderCreato
 		return new CachingInferenceProviderCreatorImpl(new ArachneOWLReasonerFactory(arachne), 1, false, "Caching Arachne");
 	}
 
+	/**
+	 * Set the limits of the cache, a value of zero or less disables the limit.
+	 *
+	 * @param maxEntries maximum number of cached models
+	 * @param maxBytes maximum estimated size of all cached inferences
+	 */
+	public void setLimits(int maxEntries, long maxBytes) {
+		List<CacheEntry> evicted;
+		synchronized (inferenceCache) {
+			this.maxEntries = maxEntries;
+			this.maxBytes = maxBytes;
+			evicted = evict(null);
+		}
+		release(evicted);
+	}
+
 	@Override
 	public InferenceProvider create(final ModelContainer model) throws OWLOntologyCreationException, InterruptedException {
-		synchronized (model.getAboxOntology()) {
-			InferenceProvider inferenceProvider = inferenceCache.get(model);
-			if (inferenceProvider == null) {
-				addMiss();
-				inferenceProvider = super.create(model);
-				model.registerListener(new ModelChangeListenerImplementation(model));
-				inferenceCache.put(model, inferenceProvider);
-			}
-			else {
+		InferenceProvider inferenceProvider = getCached(model);
+		if (inferenceProvider != null) {
+			addHit();
+			return inferenceProvider;
+		}
+		// concurrent requests for the same model wait for a single reasoner run
+		synchronized (model) {
+			inferenceProvider = getCached(model);
+			if (inferenceProvider != null) {
 				addHit();
+				return inferenceProvider;
 			}
+			addMiss();
+			// the model is not locked, edits during the reasoner run create a new version
+			ModelSnapshot snapshot = model.getSnapshot();
+			long start = System.nanoTime();
+			inferenceProvider = super.create(model, snapshot);
+			addBuildTime(System.nanoTime() - start);
+			put(model, snapshot.getVersion(), inferenceProvider);
 			return inferenceProvider;
 		}
 	}
+
+	private InferenceProvider getCached(ModelContainer model) {
+		synchronized (inferenceCache) {
+			CacheEntry cached = inferenceCache.get(model);
+			if (cached != null && cached.version == model.getVersion()) {
+				return cached.provider;
+			}
+		}
+		return null;
+	}
+	
+	private void put(ModelContainer model, long version, InferenceProvider provider) {
+		// register before the entry is published, so no change is missed
+		// and no listener is left for an entry, which was already evicted
+		ModelChangeListenerImplementation listener = new ModelChangeListenerImplementation(model);
+		listener.register();
+		CacheEntry entry = new CacheEntry(version, provider, getEstimatedBytes(provider), listener);
+		List<CacheEntry> evicted;
+		synchronized (inferenceCache) {
+			CacheEntry previous = inferenceCache.remove(model);
+			if (previous != null) {
+				cacheBytes -= previous.bytes;
+			}
+			if (model.isDisposed() || model.getVersion() != version) {
+				// changed or disposed during the reasoner run, the result is outdated
+				evicted = new ArrayList<>();
+				evicted.add(entry);
+			}
+			else {
+				inferenceCache.put(model, entry);
+				cacheBytes += entry.bytes;
+				evicted = evict(entry);
+			}
+			if (previous != null) {
+				evicted.add(previous);
+			}
+		}
+		release(evicted);
+	}
+	
+	/**
+	 * Remove the least recently used entries, until the limits are met.
+	 * Requires the monitor of inferenceCache.
+	 * 
+	 * @param keep entry, which is never evicted, may be null
+	 * @return evicted entries, their listeners still need to be removed, see
+	 *         {@link #release(List)}
+	 */
+	private List<CacheEntry> evict(CacheEntry keep) {
+		List<CacheEntry> evicted = new ArrayList<>();
+		Iterator<CacheEntry> iterator = inferenceCache.values().iterator();
+		while (isFull() && iterator.hasNext()) {
+			CacheEntry entry = iterator.next();
+			if (entry == keep) {
+				continue;
+			}
+			iterator.remove();
+			cacheBytes -= entry.bytes;
+			evicted.add(entry);
+			addEviction();
+		}
+		return evicted;
+	}
+	
+	private boolean isFull() {
+		return (maxEntries > 0 && inferenceCache.size() > maxEntries) || (maxBytes > 0 && cacheBytes > maxBytes);
+	}
+	
+	private void release(List<CacheEntry> evicted) {
+		// never unregister a listener with the lock, the model may be in a change
+		for (CacheEntry entry : evicted) {
+			entry.listener.unRegister();
+		}
+		if (evicted.isEmpty() == false && LOG.isDebugEnabled()) {
+			LOG.debug("Evicted inferences for "+evicted.size()+" model(s)");
+		}
+	}
+	
+	/**
+	 * Remove the entry of the model, if it belongs to the listener. A newer
+	 * entry has its own listener.
+	 * 
+	 * @param model
+	 * @param listener
+	 */
+	private void remove(ModelContainer model, ModelChangeListenerImplementation listener) {
+		synchronized (inferenceCache) {
+			CacheEntry entry = inferenceCache.get(model);
+			if (entry != null && entry.listener == listener) {
+				inferenceCache.remove(model);
+				cacheBytes -= entry.bytes;
+			}
+		}
+	}
+	
+	private static long getEstimatedBytes(InferenceProvider provider) {
+		if (provider instanceof MapInferenceProvider) {
+			return ((MapInferenceProvider) provider).getEstimatedBytes();
+		}
+		return DEFAULT_ENTRY_BYTES;
+	}
 	
 	protected void addHit() {
-		// do nothing, hook for debugging
+		hits.incrementAndGet();
 	}
 	
 	protected void addMiss() {
-		// do nothing, hook for debugging
+		misses.incrementAndGet();
+	}
+	
+	protected void addEviction() {
+		evictions.incrementAndGet();
+	}
+	
+	protected void addBuildTime(long nanos) {
+		builds.incrementAndGet();
+		buildNanos.addAndGet(nanos);
+	}
+	
+	/**
+	 * @return number of requests answered from the cache
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+	
+	/**
+	 * @return number of requests, which required a reasoner run
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+	
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+	
+	/**
+	 * @return number of reasoner runs
+	 */
+	public long getBuildCount() {
+		return builds.get();
+	}
+	
+	/**
+	 * @return total time of all reasoner runs in milliseconds
+	 */
+	public long getBuildMillis() {
+		return buildNanos.get() / 1000000L;
+	}
+	
+	public int getSize() {
+		synchronized (inferenceCache) {
+			return inferenceCache.size();
+		}
+	}
+	
+	/**
+	 * @return estimated size of all cached inferences in bytes
+	 */
+	public long getEstimatedBytes() {
+		synchronized (inferenceCache) {
+			return cacheBytes;
+		}
 	}
 	
 	protected void clear() {
-		inferenceCache.clear();
+		List<CacheEntry> entries;
+		synchronized (inferenceCache) {
+			entries = new ArrayList<>(inferenceCache.values());
+			inferenceCache.clear();
+			cacheBytes = 0;
+		}
+		release(entries);
+	}
+	
+	private static final class CacheEntry {
+		final long version;
+		final InferenceProvider provider;
+		final long bytes;
+		final ModelChangeListenerImplementation listener;
+		
+		CacheEntry(long version, InferenceProvider provider, long bytes, ModelChangeListenerImplementation listener) {
+			this.version = version;
+			this.provider = provider;
+			this.bytes = bytes;
+			this.listener = listener;
+		}
 	}
 	
 	private final class ModelChangeListenerImplementation implements ModelChangeListener {
@@ -82,21 +310,26 @@ public class CachingInferenceProviderCreatorImpl extends InferenceProviderCreato
 		private ModelChangeListenerImplementation(ModelContainer model) {
 			this.model = model;
 		}
+		
+		void register() {
+			model.registerListener(this);
+		}
+		
+		void unRegister() {
+			model.unRegisterListener(this);
+		}
 	
 		@Override
 		public void handleChange(List<OWLOntologyChange> changes) {
-			synchronized (model.getAboxOntology()) {
-				inferenceCache.remove(model);
-				model.unRegisterListener(this);
-			}
+			// release the outdated inferences early
+			remove(model, this);
+			model.unRegisterListener(this);
 		}
 	
 		@Override
 		public void dispose() {
-			synchronized (model.getAboxOntology()) {
-				inferenceCache.remove(model);
-				model.unRegisterListener(this);
-			}
+			remove(model, this);
+			model.unRegisterListener(this);
 		}
 	}
 }
@@ -0,0 +1,363 @@
+package org.geneontology.minerva.server.inferences;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+
+import org.apache.log4j.Logger;
+import org.geneontology.minerva.ModelContainer;
+import org.geneontology.minerva.ModelContainer.ModelChangeListener;
+import org.geneontology.minerva.ModelSnapshot;
+import org.geneontology.minerva.json.InferenceProvider;
+import org.semanticweb.elk.owlapi.ElkReasonerFactory;
+import org.semanticweb.owlapi.model.AddAxiom;
+import org.semanticweb.owlapi.model.AddImport;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLIndividual;
+import org.semanticweb.owlapi.model.OWLNamedIndividual;
+import org.semanticweb.owlapi.model.OWLObjectPropertyAssertionAxiom;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.model.RemoveAxiom;
+import org.semanticweb.owlapi.model.RemoveImport;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+import org.semanticweb.owlapi.reasoner.OWLReasonerFactory;
+
+/**
+ * Inference provider with a live reasoner per model. Each reasoner works on
+ * a private copy of the abox, which imports the tbox. The changes of the
+ * model are collected by a listener and applied to the copy before the next
+ * request, the reasoner processes them incrementally (ELK does this for abox
+ * changes on flush). Only the types of the individuals connected to a changed
+ * axiom are re-computed, requests for an unchanged model return the previous
+ * result.<br>
+ * <br>
+ * The reasoners are kept in LRU order. The memory budget is an estimate in
+ * axioms, i.e. the imports closure and the abox of each reasoner, the least
+ * recently used reasoners are released when it is exceeded.
+ */
+public class IncrementalInferenceProviderCreatorImpl implements InferenceProviderCreator {
+
+	private static final Logger LOG = Logger.getLogger(IncrementalInferenceProviderCreatorImpl.class);
+
+	private final OWLReasonerFactory rf;
+	private final long maxAxioms;
+	private final String name;
+
+	// access order, the first entry is the least recently used reasoner
+	private final LinkedHashMap<ModelContainer, ModelReasoner> reasoners = new LinkedHashMap<>(16, 0.75f, true);
+	// estimated size of all reasoners, guarded by reasoners
+	private long axiomCount = 0;
+
+	protected IncrementalInferenceProviderCreatorImpl(OWLReasonerFactory rf, long maxAxioms, String name) {
+		this.rf = rf;
+		this.maxAxioms = maxAxioms;
+		this.name = name;
+	}
+
+	/**
+	 * @param maxAxioms memory budget for all reasoners, zero or less for no limit
+	 * @return creator with incremental ELK reasoners
+	 */
+	public static InferenceProviderCreator createElk(long maxAxioms) {
+		return new IncrementalInferenceProviderCreatorImpl(new ElkReasonerFactory(), maxAxioms, "Incremental ELK");
+	}
+
+	@Override
+	public InferenceProvider create(ModelContainer model) throws OWLOntologyCreationException {
+		ModelReasoner reasoner;
+		// concurrent requests for a new model wait for a single reasoner
+		synchronized (model) {
+			synchronized (reasoners) {
+				reasoner = reasoners.get(model);
+			}
+			if (reasoner == null) {
+				reasoner = new ModelReasoner(model);
+				List<ModelReasoner> evicted;
+				synchronized (reasoners) {
+					reasoners.put(model, reasoner);
+					axiomCount += reasoner.axioms;
+					evicted = evict(reasoner);
+				}
+				for (ModelReasoner r : evicted) {
+					r.dispose();
+				}
+			}
+		}
+		return reasoner.getInferences();
+	}
+
+	/**
+	 * Remove the least recently used reasoners, until the budget is met.
+	 * Requires the monitor of reasoners.
+	 *
+	 * @param keep
+	 * @return evicted reasoners, they still need to be disposed
+	 */
+	private List<ModelReasoner> evict(ModelReasoner keep) {
+		List<ModelReasoner> evicted = new ArrayList<>();
+		if (maxAxioms <= 0) {
+			return evicted;
+		}
+		Iterator<ModelReasoner> iterator = reasoners.values().iterator();
+		while (axiomCount > maxAxioms && iterator.hasNext()) {
+			ModelReasoner r = iterator.next();
+			if (r == keep) {
+				continue;
+			}
+			iterator.remove();
+			axiomCount -= r.axioms;
+			evicted.add(r);
+		}
+		return evicted;
+	}
+
+	private void updateAxioms(ModelReasoner reasoner, long delta) {
+		List<ModelReasoner> evicted;
+		synchronized (reasoners) {
+			if (reasoners.get(reasoner.model) != reasoner) {
+				return;
+			}
+			axiomCount += delta;
+			evicted = evict(reasoner);
+		}
+		for (ModelReasoner r : evicted) {
+			r.dispose();
+		}
+	}
+
+	private void remove(ModelReasoner reasoner) {
+		synchronized (reasoners) {
+			if (reasoners.get(reasoner.model) == reasoner) {
+				reasoners.remove(reasoner.model);
+				axiomCount -= reasoner.axioms;
+			}
+		}
+	}
+
+	/**
+	 * @return number of live reasoners
+	 */
+	public int getReasonerCount() {
+		synchronized (reasoners) {
+			return reasoners.size();
+		}
+	}
+
+	/**
+	 * @return estimated size of all live reasoners in axioms
+	 */
+	public long getAxiomCount() {
+		synchronized (reasoners) {
+			return axiomCount;
+		}
+	}
+
+	/**
+	 * Release all reasoners.
+	 */
+	public void clear() {
+		List<ModelReasoner> all;
+		synchronized (reasoners) {
+			all = new ArrayList<>(reasoners.values());
+		}
+		for (ModelReasoner r : all) {
+			r.dispose();
+		}
+	}
+
+	private final class ModelReasoner implements ModelChangeListener {
+
+		final ModelContainer model;
+		final OWLOntologyManager m;
+		final OWLOntology ontology;
+		final OWLReasoner reasoner;
+		// estimated size, updated with each change of the copy
+		volatile long axioms;
+
+		// changes of the model, not yet applied to the copy
+		private final Object pendingLock = new Object();
+		private List<OWLOntologyChange> pending = new ArrayList<>();
+
+		// guarded by this
+		private final Map<OWLNamedIndividual, Set<OWLClass>> types = new HashMap<>();
+		private boolean typesValid = false;
+		private InferenceProvider current = null;
+		private boolean disposed = false;
+
+		ModelReasoner(ModelContainer model) throws OWLOntologyCreationException {
+			this.model = model;
+			this.m = model.getOWLOntologyManager();
+			ModelSnapshot snapshot;
+			// no change between the snapshot and the registration of the listener
+			final Lock lock = model.getReadLock();
+			lock.lock();
+			try {
+				snapshot = model.getSnapshot();
+				model.registerListener(this);
+			} finally {
+				lock.unlock();
+			}
+			LOG.info("Creating incremental reasoner for model: "+model.getModelId());
+			// the imports of the copy are resolved with the tbox in the manager
+			ontology = snapshot.createOntology(m);
+			reasoner = rf.createReasoner(ontology);
+			long count = 0;
+			for (OWLOntology o : ontology.getImportsClosure()) {
+				count += o.getAxiomCount();
+			}
+			axioms = count;
+		}
+
+		@Override
+		public void handleChange(List<OWLOntologyChange> changes) {
+			// called with the write lock of the model, never wait for the reasoner
+			synchronized (pendingLock) {
+				pending.addAll(changes);
+			}
+		}
+
+		@Override
+		public void dispose() {
+			remove(this);
+			model.unRegisterListener(this);
+			synchronized (this) {
+				if (disposed) {
+					return;
+				}
+				disposed = true;
+				reasoner.dispose();
+				m.removeOntology(ontology);
+				types.clear();
+				current = null;
+			}
+			LOG.info("Released incremental reasoner for model: "+model.getModelId());
+		}
+
+		synchronized InferenceProvider getInferences() throws OWLOntologyCreationException {
+			if (disposed) {
+				// evicted concurrently, use a new reasoner
+				return create(model);
+			}
+			List<OWLOntologyChange> changes;
+			synchronized (pendingLock) {
+				changes = pending;
+				pending = new ArrayList<>();
+			}
+			if (current != null && changes.isEmpty()) {
+				return current;
+			}
+			Set<OWLNamedIndividual> affected = apply(changes);
+			reasoner.flush();
+			boolean isConsistent = reasoner.isConsistent();
+			if (isConsistent == false) {
+				// re-compute all types, once the model is consistent again
+				typesValid = false;
+				types.clear();
+				current = new MapInferenceProvider(false, Collections.<OWLNamedIndividual, Set<OWLClass>>emptyMap());
+				return current;
+			}
+			if (typesValid == false) {
+				affected = ontology.getIndividualsInSignature();
+				types.clear();
+				typesValid = true;
+			}
+			for (OWLNamedIndividual individual : affected) {
+				if (ontology.containsIndividualInSignature(individual.getIRI())) {
+					types.put(individual, MapInferenceProvider.getInferredTypes(reasoner, individual));
+				}
+				else {
+					types.remove(individual);
+				}
+			}
+			// the provider is used after the next changes, it needs its own map
+			current = new MapInferenceProvider(true, new HashMap<>(types));
+			return current;
+		}
+
+		/**
+		 * Apply the changes of the model to the copy.
+		 *
+		 * @param changes
+		 * @return individuals, whose types may have changed
+		 */
+		private Set<OWLNamedIndividual> apply(List<OWLOntologyChange> changes) {
+			List<OWLOntologyChange> copied = new ArrayList<>(changes.size());
+			Set<OWLNamedIndividual> touched = new HashSet<>();
+			for (OWLOntologyChange change : changes) {
+				if (change instanceof AddAxiom || change instanceof RemoveAxiom) {
+					OWLAxiom axiom = change.getAxiom();
+					if (axiom.isAnnotationAxiom()) {
+						// annotations do not change the inferences
+						continue;
+					}
+					// declarations are copied, an individual without any
+					// other axiom still has a (possibly empty) set of types
+					copied.add(change instanceof AddAxiom ? new AddAxiom(ontology, axiom) : new RemoveAxiom(ontology, axiom));
+					touched.addAll(axiom.getIndividualsInSignature());
+				}
+				else if (change instanceof AddImport) {
+					copied.add(new AddImport(ontology, ((AddImport) change).getImportDeclaration()));
+					typesValid = false;
+				}
+				else if (change instanceof RemoveImport) {
+					copied.add(new RemoveImport(ontology, ((RemoveImport) change).getImportDeclaration()));
+					typesValid = false;
+				}
+			}
+			if (copied.isEmpty()) {
+				return touched;
+			}
+			long before = ontology.getAxiomCount();
+			m.applyChanges(copied);
+			long delta = ontology.getAxiomCount() - before;
+			axioms += delta;
+			updateAxioms(this, delta);
+			return getConnected(touched);
+		}
+
+		/**
+		 * The types of an individual depend on the individuals linked to it by
+		 * property assertions, so all individuals connected to a changed
+		 * individual are affected.
+		 *
+		 * @param touched
+		 * @return connected individuals, including the touched individuals
+		 */
+		private Set<OWLNamedIndividual> getConnected(Set<OWLNamedIndividual> touched) {
+			Set<OWLNamedIndividual> connected = new HashSet<>(touched);
+			Deque<OWLNamedIndividual> queue = new ArrayDeque<>(touched);
+			while (queue.isEmpty() == false) {
+				OWLNamedIndividual individual = queue.pop();
+				for (OWLAxiom axiom : ontology.getReferencingAxioms(individual)) {
+					if (axiom instanceof OWLObjectPropertyAssertionAxiom) {
+						OWLObjectPropertyAssertionAxiom opa = (OWLObjectPropertyAssertionAxiom) axiom;
+						for (OWLIndividual i : new OWLIndividual[]{opa.getSubject(), opa.getObject()}) {
+							if (i.isNamed() && connected.add(i.asOWLNamedIndividual())) {
+								queue.push(i.asOWLNamedIndividual());
+							}
+						}
+					}
+				}
+			}
+			return connected;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "InferenceProviderCreator: " + name;
+	}
+}
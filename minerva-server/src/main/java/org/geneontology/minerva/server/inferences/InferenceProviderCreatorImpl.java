@@ -6,19 +6,17 @@ import java.util.concurrent.Semaphore;
 
 import org.apache.log4j.Logger;
 import org.geneontology.minerva.ModelContainer;
+import org.geneontology.minerva.ModelSnapshot;
 import org.geneontology.minerva.json.InferenceProvider;
 import org.semanticweb.elk.owlapi.ElkReasonerFactory;
 import org.semanticweb.owlapi.model.IRI;
-import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLAxiom;
 import org.semanticweb.owlapi.model.OWLOntology;
 import org.semanticweb.owlapi.model.OWLOntologyCreationException;
 import org.semanticweb.owlapi.model.OWLOntologyManager;
 import org.semanticweb.owlapi.reasoner.OWLReasoner;
 import org.semanticweb.owlapi.reasoner.OWLReasonerFactory;
 
-import uk.ac.manchester.cs.owlapi.modularity.ModuleType;
-import uk.ac.manchester.cs.owlapi.modularity.SyntacticLocalityModuleExtractor;
-
 public class InferenceProviderCreatorImpl implements InferenceProviderCreator {
 	
 	private final static Logger LOG = Logger.getLogger(InferenceProviderCreatorImpl.class);
@@ -27,6 +25,8 @@ public class InferenceProviderCreatorImpl implements InferenceProviderCreator {
 	private final Semaphore concurrentLock;
 	private final boolean useSLME;
 	private final String name;
+	// shared by all models, the tbox is the same
+	private final ModuleCache moduleCache = new ModuleCache(64, 1000);
 
 	InferenceProviderCreatorImpl(OWLReasonerFactory rf, int maxConcurrent, boolean useSLME, String name) {
 		super();
@@ -58,29 +58,42 @@ public class InferenceProviderCreatorImpl implements InferenceProviderCreator {
 
 	@Override
 	public InferenceProvider create(ModelContainer model) throws OWLOntologyCreationException, InterruptedException {
-		OWLOntology ont = model.getAboxOntology();
-		final OWLOntologyManager m = ont.getOWLOntologyManager();
+		return create(model, model.getSnapshot());
+	}
+
+	/**
+	 * Run the reasoner on a snapshot of the model, the model itself is not
+	 * locked and may change in the meantime.
+	 * 
+	 * @param model
+	 * @param snapshot
+	 * @return inferences for the version of the snapshot
+	 * @throws OWLOntologyCreationException
+	 * @throws InterruptedException
+	 */
+	protected InferenceProvider create(ModelContainer model, ModelSnapshot snapshot) throws OWLOntologyCreationException, InterruptedException {
+		final OWLOntologyManager m = model.getOWLOntologyManager();
+		OWLOntology copy = null;
 		OWLOntology module = null;
 		OWLReasoner reasoner = null;
 		try {
 			InferenceProvider provider;
-			synchronized (ont) {
-				concurrentLock.acquire();
-				try {
-					if (useSLME) {
-						LOG.info("Creating for module: "+model.getModelId());
-						ModuleType mtype = ModuleType.BOT;
-						SyntacticLocalityModuleExtractor sme = new SyntacticLocalityModuleExtractor(m, ont, mtype);
-						Set<OWLEntity> seeds = new HashSet<OWLEntity>(ont.getIndividualsInSignature());
-						module = ont = sme.extractAsOntology(seeds, IRI.generateDocumentIRI());
-						LOG.info("Done creating module: "+model.getModelId());
-					}
-					reasoner = rf.createReasoner(ont);
-					provider = MapInferenceProvider.create(reasoner, ont);
-				}
-				finally {
-					concurrentLock.release();
+			concurrentLock.acquire();
+			try {
+				// the imports of the copy are resolved with the tbox in the manager
+				OWLOntology ont = copy = snapshot.createOntology(m);
+				if (useSLME) {
+					LOG.info("Creating for module: "+model.getModelId());
+					// all abox axioms are in the module, only the tbox part depends on the seeds
+					Set<OWLAxiom> axioms = new HashSet<OWLAxiom>(moduleCache.getModule(model.getModelId(), ont));
+					axioms.addAll(ont.getAxioms());
+					module = ont = m.createOntology(axioms, IRI.generateDocumentIRI());
 				}
+				reasoner = rf.createReasoner(ont);
+				provider = MapInferenceProvider.create(reasoner, ont);
+			}
+			finally {
+				concurrentLock.release();
 			}
 			return provider;
 		}
@@ -91,10 +104,34 @@ public class InferenceProviderCreatorImpl implements InferenceProviderCreator {
 			if (module != null) {
 				m.removeOntology(module);
 			}
+			if (copy != null) {
+				m.removeOntology(copy);
+			}
 		}
 		
 	}
 
+	/**
+	 * @return true, if the reasoner works on a locality module
+	 */
+	public boolean isUsingSLME() {
+		return useSLME;
+	}
+
+	/**
+	 * @return number of reasoner runs with a cached tbox module
+	 */
+	public long getModuleHitCount() {
+		return moduleCache.getHitCount();
+	}
+
+	/**
+	 * @return number of reasoner runs, which required a module extraction
+	 */
+	public long getModuleMissCount() {
+		return moduleCache.getMissCount();
+	}
+
 	@Override
 	public String toString() {
 		return "InferenceProviderCreator: " + name;
@@ -14,6 +14,10 @@ import org.semanticweb.owlapi.reasoner.OWLReasoner;
 
 public class MapInferenceProvider implements InferenceProvider {
 
+	// rough size of a map entry with its set and of a set element
+	private static final long ENTRY_BYTES = 96;
+	private static final long TYPE_BYTES = 40;
+
 	private final boolean isConsistent;
 	private final Map<OWLNamedIndividual, Set<OWLClass>> inferredTypes;
 
@@ -23,24 +27,52 @@ public class MapInferenceProvider implements InferenceProvider {
 		if (isConsistent) {
 			Set<OWLNamedIndividual> individuals = ont.getIndividualsInSignature();
 			for (OWLNamedIndividual individual : individuals) {
-				Set<OWLClass> inferred = new HashSet<>();
-				Set<OWLClass> flattened = r.getTypes(individual, true).getFlattened();
-				for (OWLClass cls : flattened) {
-					if (cls.isBuiltIn() == false) {
-						inferred.add(cls);
-					}
-				}
-				inferredTypes.put(individual, inferred);
+				inferredTypes.put(individual, getInferredTypes(r, individual));
 			}
 		}
 		return new MapInferenceProvider(isConsistent, inferredTypes);
 	}
 
+	/**
+	 * @param r
+	 * @param individual
+	 * @return direct inferred types of the individual, without built-in classes
+	 */
+	static Set<OWLClass> getInferredTypes(OWLReasoner r, OWLNamedIndividual individual) {
+		Set<OWLClass> inferred = new HashSet<>();
+		Set<OWLClass> flattened = r.getTypes(individual, true).getFlattened();
+		for (OWLClass cls : flattened) {
+			if (cls.isBuiltIn() == false) {
+				inferred.add(cls);
+			}
+		}
+		return inferred;
+	}
+
 	MapInferenceProvider(boolean isConsistent, Map<OWLNamedIndividual, Set<OWLClass>> inferredTypes) {
 		this.isConsistent = isConsistent;
 		this.inferredTypes = inferredTypes;
 	}
 
+	/**
+	 * @return estimated memory of the inferences in bytes, without the shared
+	 *         individuals and classes
+	 */
+	long getEstimatedBytes() {
+		long bytes = ENTRY_BYTES;
+		for (Set<OWLClass> types : inferredTypes.values()) {
+			bytes += ENTRY_BYTES + types.size() * TYPE_BYTES;
+		}
+		return bytes;
+	}
+
+	/**
+	 * @return individuals with inferred types, empty if not consistent
+	 */
+	Set<OWLNamedIndividual> getIndividuals() {
+		return Collections.unmodifiableSet(inferredTypes.keySet());
+	}
+
 	@Override
 	public boolean isConsistent() {
 		return isConsistent;
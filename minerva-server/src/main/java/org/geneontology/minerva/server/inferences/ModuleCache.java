@@ -0,0 +1,259 @@
+package org.geneontology.minerva.server.inferences;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.apache.log4j.Logger;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+import uk.ac.manchester.cs.owlapi.modularity.ModuleType;
+import uk.ac.manchester.cs.owlapi.modularity.SyntacticLocalityModuleExtractor;
+
+/**
+ * Cache for the BOT locality modules of the tbox, used for the SLME
+ * reasoners. The module of a model only depends on the classes and properties
+ * used in the abox, as all abox assertions are part of the module anyway. A
+ * module for a larger signature is also a module for each subset, so any
+ * cached module with a superset of the signature is reused.<br>
+ * <br>
+ * The module of a model only grows: if a new term enters the model, the
+ * module is extracted for the previous signature of the model together with
+ * the new terms. The extractor for the tbox is created once and re-created,
+ * if the imports closure of a model differs. Both modules and model
+ * signatures are kept in LRU order.<br>
+ * <br>
+ * Extractions run without the monitor of the cache, so lookups for other
+ * models are not blocked. Concurrent requests for the same signature wait
+ * for a single extraction.
+ */
+class ModuleCache {
+
+	private final static Logger LOG = Logger.getLogger(ModuleCache.class);
+
+	private final int maxModules;
+	private final int maxModels;
+
+	// guarded by this
+	private Set<OWLOntology> tbox = null;
+	private SyntacticLocalityModuleExtractor extractor = null;
+	// incremented with each new extractor, results of an older extractor are not cached
+	private long generation = 0;
+	// access order, the first entry is the least recently used
+	private final LinkedHashMap<Set<OWLEntity>, Set<OWLAxiom>> modules = new LinkedHashMap<>(16, 0.75f, true);
+	private final LinkedHashMap<IRI, Set<OWLEntity>> modelSignatures = new LinkedHashMap<>(16, 0.75f, true);
+	// running extractions
+	private final Map<Set<OWLEntity>, FutureTask<Set<OWLAxiom>>> extractions = new HashMap<>();
+
+	private long hits = 0;
+	private long misses = 0;
+
+	/**
+	 * @param maxModules maximum number of cached modules, zero or less for no limit
+	 * @param maxModels maximum number of models, for which the signature is kept,
+	 *            zero or less for no limit
+	 */
+	ModuleCache(int maxModules, int maxModels) {
+		this.maxModules = maxModules;
+		this.maxModels = maxModels;
+	}
+
+	/**
+	 * Get the tbox module for the abox of a model.
+	 *
+	 * @param modelId
+	 * @param abox ontology with the axioms of the model, imports the tbox
+	 * @return axioms of the module, without the abox axioms
+	 * @throws InterruptedException
+	 */
+	Set<OWLAxiom> getModule(IRI modelId, OWLOntology abox) throws InterruptedException {
+		Set<OWLOntology> closure = new HashSet<>(abox.getImportsClosure());
+		closure.remove(abox);
+		Set<OWLEntity> signature = getTermSignature(abox);
+		FutureTask<Set<OWLAxiom>> extraction;
+		boolean owner = false;
+		long extractionGeneration;
+		synchronized (this) {
+			if (closure.equals(tbox) == false) {
+				resetTbox(closure, abox.getOWLOntologyManager());
+			}
+			Set<OWLEntity> previous = modelSignatures.get(modelId);
+			if (previous != null) {
+				if (previous.containsAll(signature)) {
+					// no new term in the model, keep the module of the model
+					signature = previous;
+				}
+				else {
+					// extend the module of the model
+					signature.addAll(previous);
+				}
+			}
+			Set<OWLAxiom> module = modules.get(signature);
+			if (module == null) {
+				module = findSuperset(signature);
+			}
+			if (module != null) {
+				hits += 1;
+				if (signature != previous) {
+					putModelSignature(modelId, signature);
+				}
+				return module;
+			}
+			extraction = extractions.get(signature);
+			if (extraction == null) {
+				misses += 1;
+				extraction = createExtraction(extractor, signature);
+				extractions.put(signature, extraction);
+				owner = true;
+			}
+			else {
+				// another request extracts the same module
+				hits += 1;
+			}
+			extractionGeneration = generation;
+		}
+		Set<OWLAxiom> module;
+		try {
+			if (owner) {
+				LOG.info("Extracting module for: "+modelId+" signature size: "+signature.size());
+				extraction.run();
+			}
+			module = extraction.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException(cause);
+		} finally {
+			if (owner) {
+				synchronized (this) {
+					extractions.remove(signature, extraction);
+				}
+			}
+		}
+		synchronized (this) {
+			if (extractionGeneration == generation) {
+				if (owner) {
+					modules.put(signature, module);
+					Iterator<Set<OWLEntity>> iterator = modules.keySet().iterator();
+					while (maxModules > 0 && modules.size() > maxModules && iterator.hasNext()) {
+						iterator.next();
+						iterator.remove();
+					}
+				}
+				putModelSignature(modelId, signature);
+			}
+		}
+		return module;
+	}
+
+	/**
+	 * Create the extraction of a module, it is run by the first request for
+	 * the signature.
+	 *
+	 * @param extractor
+	 * @param signature
+	 * @return task
+	 */
+	protected FutureTask<Set<OWLAxiom>> createExtraction(final SyntacticLocalityModuleExtractor extractor, final Set<OWLEntity> signature) {
+		return new FutureTask<>(new Callable<Set<OWLAxiom>>() {
+
+			@Override
+			public Set<OWLAxiom> call() throws Exception {
+				return extractor.extract(signature);
+			}
+		});
+	}
+
+	/**
+	 * Find the smallest cached module with a superset of the signature.
+	 * Requires the monitor of this.
+	 *
+	 * @param signature
+	 * @return module or null
+	 */
+	private Set<OWLAxiom> findSuperset(Set<OWLEntity> signature) {
+		Set<OWLEntity> bestKey = null;
+		Set<OWLAxiom> best = null;
+		for (Entry<Set<OWLEntity>, Set<OWLAxiom>> entry : modules.entrySet()) {
+			if ((best == null || entry.getValue().size() < best.size()) && entry.getKey().containsAll(signature)) {
+				bestKey = entry.getKey();
+				best = entry.getValue();
+			}
+		}
+		if (bestKey != null) {
+			// update the access order
+			modules.get(bestKey);
+		}
+		return best;
+	}
+
+	private void putModelSignature(IRI modelId, Set<OWLEntity> signature) {
+		modelSignatures.put(modelId, signature);
+		Iterator<Set<OWLEntity>> iterator = modelSignatures.values().iterator();
+		while (maxModels > 0 && modelSignatures.size() > maxModels && iterator.hasNext()) {
+			iterator.next();
+			iterator.remove();
+		}
+	}
+
+	private void resetTbox(Set<OWLOntology> closure, OWLOntologyManager manager) {
+		if (tbox != null) {
+			LOG.info("Imports closure changed, clearing cached modules");
+		}
+		Set<OWLAxiom> axioms = new HashSet<>();
+		for (OWLOntology o : closure) {
+			axioms.addAll(o.getAxioms());
+		}
+		OWLOntology any = closure.isEmpty() ? null : closure.iterator().next();
+		extractor = new SyntacticLocalityModuleExtractor(manager, any, axioms, ModuleType.BOT);
+		tbox = closure;
+		generation += 1;
+		modules.clear();
+		modelSignatures.clear();
+		// running extractions finish for their own requests, but are not shared
+		extractions.clear();
+	}
+
+	/**
+	 * @param abox
+	 * @return classes and properties used in the abox
+	 */
+	private static Set<OWLEntity> getTermSignature(OWLOntology abox) {
+		Set<OWLEntity> signature = new HashSet<>();
+		for (OWLEntity entity : abox.getSignature()) {
+			if (entity.isBuiltIn() || entity.isOWLNamedIndividual() || entity.isOWLAnnotationProperty()) {
+				continue;
+			}
+			signature.add(entity);
+		}
+		return signature;
+	}
+
+	synchronized long getHitCount() {
+		return hits;
+	}
+
+	synchronized long getMissCount() {
+		return misses;
+	}
+
+	synchronized int getSize() {
+		return modules.size();
+	}
+}
@@ -17,6 +17,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.geneontology.minerva.ModelContainer;
+import org.geneontology.minerva.ModelContainer.ModelChangeListener;
 import org.geneontology.minerva.MolecularModelManager.UnknownIdentifierException;
 import org.geneontology.minerva.UndoAwareMolecularModelManager;
 import org.geneontology.minerva.curie.CurieHandler;
@@ -48,9 +50,12 @@ import org.junit.BeforeClass;
 import org.junit.ClassRule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
+import org.semanticweb.owlapi.model.AddAxiom;
 import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLDeclarationAxiom;
 import org.semanticweb.owlapi.model.OWLObjectProperty;
 import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
 import org.semanticweb.owlapi.model.OWLOntologyCreationException;
 import org.semanticweb.owlapi.model.parameters.Imports;
 
@@ -456,6 +461,45 @@ public class BatchModelHandlerTest {
 		assertEquals(M3BatchResponse.MESSAGE_TYPE_ERROR, response.messageType);
 	}
 	
+	@Test
+	public void testBatchIsOneChangeEvent() throws Exception {
+		final String modelId = generateBlankModel();
+		ModelContainer model = models.getModel(curieHandler.getIRI(modelId));
+		final List<List<OWLOntologyChange>> events = Collections.synchronizedList(new ArrayList<List<OWLOntologyChange>>());
+		// without a window, only the batch keeps the changes together
+		model.registerAsyncListener(new ModelChangeListener() {
+		
+			@Override
+			public void handleChange(List<OWLOntologyChange> changes) {
+				events.add(changes);
+			}
+		
+			@Override
+			public void dispose() {
+				// do nothing
+			}
+		}, 0);
+		
+		final List<M3Request> batch = new ArrayList<M3Request>();
+		batch.add(BatchTestTools.addIndividual(modelId, "GO:0008150")); // biological process
+		batch.add(BatchTestTools.addIndividual(modelId, "GO:0008150")); // biological process
+		executeBatch(batch, false);
+		
+		long deadline = System.currentTimeMillis() + 10000;
+		while (events.isEmpty() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		Thread.sleep(100);
+		assertEquals(1, events.size());
+		int declarations = 0;
+		for (OWLOntologyChange change : events.get(0)) {
+			if (change instanceof AddAxiom && change.getAxiom() instanceof OWLDeclarationAxiom) {
+				declarations += 1;
+			}
+		}
+		assertEquals(2, declarations);
+	}
+	
 	//FIXME @Test
 	public void testSaveAsNonMeta() throws Exception {
 		//models.dispose();
@@ -0,0 +1,162 @@
+package org.geneontology.minerva.server.inferences;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+
+import org.geneontology.minerva.ModelContainer;
+import org.geneontology.minerva.ModelSnapshot;
+import org.geneontology.minerva.json.InferenceProvider;
+import org.junit.Before;
+import org.junit.Test;
+import org.semanticweb.elk.owlapi.ElkReasonerFactory;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.AddAxiom;
+import org.semanticweb.owlapi.model.AddImport;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLNamedIndividual;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+public class CachingInferenceProviderCreatorImplTest {
+
+	private static final String NS = "http://example.org/";
+
+	private OWLOntologyManager m;
+	private OWLDataFactory f;
+	private OWLOntology tbox;
+	private OWLClass a, b;
+	private CachingInferenceProviderCreatorImpl creator;
+
+	@Before
+	public void before() throws Exception {
+		m = OWLManager.createOWLOntologyManager();
+		f = m.getOWLDataFactory();
+		tbox = m.createOntology(IRI.create(NS+"tbox"));
+		a = f.getOWLClass(IRI.create(NS+"A"));
+		b = f.getOWLClass(IRI.create(NS+"B"));
+		m.addAxiom(tbox, f.getOWLSubClassOfAxiom(a, b));
+		creator = new CachingInferenceProviderCreatorImpl(new ElkReasonerFactory(), 1, false, "test");
+	}
+
+	private ModelContainer createModel(String id) throws Exception {
+		IRI modelId = IRI.create(NS+id);
+		OWLOntology abox = m.createOntology(modelId);
+		m.applyChange(new AddImport(abox, f.getOWLImportsDeclaration(tbox.getOntologyID().getOntologyIRI().get())));
+		return new ModelContainer(modelId, tbox, abox);
+	}
+
+	private OWLNamedIndividual individual(ModelContainer model, String name) {
+		return f.getOWLNamedIndividual(IRI.create(model.getModelId()+"/"+name));
+	}
+
+	private static void add(ModelContainer model, OWLAxiom axiom) {
+		List<OWLOntologyChange> changes = Collections.<OWLOntologyChange>singletonList(new AddAxiom(model.getAboxOntology(), axiom));
+		Lock lock = model.getWriteLock();
+		lock.lock();
+		try {
+			model.applyChanges(changes);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Test
+	public void testHitsAndVersionInvalidation() throws Exception {
+		ModelContainer model = createModel("0001");
+		OWLNamedIndividual i1 = individual(model, "i1");
+		add(model, f.getOWLClassAssertionAxiom(b, i1));
+		InferenceProvider first = creator.create(model);
+		assertEquals(Collections.singleton(b), first.getTypes(i1));
+		assertEquals(0, creator.getHitCount());
+		assertEquals(1, creator.getMissCount());
+		assertEquals(1, creator.getBuildCount());
+		assertEquals(1, creator.getSize());
+		assertTrue(creator.getEstimatedBytes() > 0);
+
+		assertSame(first, creator.create(model));
+		assertEquals(1, creator.getHitCount());
+		assertEquals(1, creator.getMissCount());
+
+		/* a change releases the entry, the next request runs the reasoner */
+		add(model, f.getOWLClassAssertionAxiom(a, i1));
+		assertEquals(0, creator.getSize());
+		assertEquals(0, creator.getEstimatedBytes());
+		InferenceProvider second = creator.create(model);
+		assertNotSame(first, second);
+		assertEquals(Collections.singleton(a), second.getTypes(i1));
+		assertEquals(2, creator.getMissCount());
+		assertSame(second, creator.create(model));
+		assertEquals(2, creator.getHitCount());
+
+		/* a disposed model releases its entry */
+		model.dispose();
+		assertEquals(0, creator.getSize());
+	}
+
+	@Test
+	public void testEviction() throws Exception {
+		creator.setLimits(1, 0);
+		ModelContainer model1 = createModel("0001");
+		ModelContainer model2 = createModel("0002");
+		InferenceProvider first = creator.create(model1);
+		creator.create(model2);
+		assertEquals(1, creator.getSize());
+		assertEquals(1, creator.getEvictionCount());
+
+		/* the evicted model requires a new run */
+		assertNotSame(first, creator.create(model1));
+		assertEquals(3, creator.getMissCount());
+		assertEquals(2, creator.getEvictionCount());
+		assertEquals(0, creator.getHitCount());
+
+		/* the listener of the evicted entry of model2 is gone, a change of
+		 * model2 does not touch the entry of model1 */
+		add(model2, f.getOWLClassAssertionAxiom(a, individual(model2, "i1")));
+		assertEquals(1, creator.getSize());
+		creator.create(model1);
+		assertEquals(1, creator.getHitCount());
+
+		/* a size limit below the smallest entry evicts the remaining entry */
+		creator.setLimits(0, 1);
+		assertEquals(0, creator.getSize());
+		assertEquals(0, creator.getEstimatedBytes());
+		assertEquals(3, creator.getEvictionCount());
+	}
+
+	@Test
+	public void testChangeDuringReasonerRun() throws Exception {
+		final ModelContainer model = createModel("0001");
+		final OWLNamedIndividual i1 = individual(model, "i1");
+		creator = new CachingInferenceProviderCreatorImpl(new ElkReasonerFactory(), 1, false, "test") {
+
+			private boolean changed = false;
+
+			@Override
+			protected InferenceProvider create(ModelContainer model, ModelSnapshot snapshot) throws OWLOntologyCreationException, InterruptedException {
+				InferenceProvider provider = super.create(model, snapshot);
+				if (changed == false) {
+					// an edit, while the reasoner works on the snapshot
+					changed = true;
+					add(model, f.getOWLClassAssertionAxiom(a, i1));
+				}
+				return provider;
+			}
+		};
+		InferenceProvider outdated = creator.create(model);
+		assertTrue(outdated.getTypes(i1).isEmpty());
+		/* the outdated result is not cached */
+		assertEquals(0, creator.getSize());
+		InferenceProvider current = creator.create(model);
+		assertEquals(Collections.singleton(a), current.getTypes(i1));
+		assertEquals(2, creator.getMissCount());
+		assertEquals(1, creator.getSize());
+	}
+}
@@ -0,0 +1,208 @@
+package org.geneontology.minerva.server.inferences;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+
+import org.geneontology.minerva.ModelContainer;
+import org.geneontology.minerva.json.InferenceProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.semanticweb.elk.owlapi.ElkReasonerFactory;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.AddAxiom;
+import org.semanticweb.owlapi.model.AddImport;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLNamedIndividual;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.model.RemoveAxiom;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+
+/**
+ * Compares the incremental reasoners with a reasoner created from scratch
+ * for the current state of the model.
+ */
+public class IncrementalInferenceProviderCreatorImplTest {
+
+	private static final String NS = "http://example.org/";
+
+	private OWLOntologyManager m;
+	private OWLDataFactory f;
+	private OWLOntology tbox;
+	private OWLClass a, b, c, d;
+	private OWLObjectProperty p;
+	private IncrementalInferenceProviderCreatorImpl creator;
+
+	@Before
+	public void before() throws Exception {
+		m = OWLManager.createOWLOntologyManager();
+		f = m.getOWLDataFactory();
+		tbox = m.createOntology(IRI.create(NS+"tbox"));
+		a = f.getOWLClass(IRI.create(NS+"A"));
+		b = f.getOWLClass(IRI.create(NS+"B"));
+		c = f.getOWLClass(IRI.create(NS+"C"));
+		d = f.getOWLClass(IRI.create(NS+"D"));
+		p = f.getOWLObjectProperty(IRI.create(NS+"p"));
+		m.addAxiom(tbox, f.getOWLSubClassOfAxiom(a, b));
+		m.addAxiom(tbox, f.getOWLEquivalentClassesAxiom(d, f.getOWLObjectSomeValuesFrom(p, c)));
+		m.addAxiom(tbox, f.getOWLDisjointClassesAxiom(a, c));
+		creator = new IncrementalInferenceProviderCreatorImpl(new ElkReasonerFactory(), 0, "test");
+	}
+
+	@After
+	public void after() {
+		creator.clear();
+	}
+
+	private ModelContainer createModel(String id) throws Exception {
+		IRI modelId = IRI.create(NS+id);
+		OWLOntology abox = m.createOntology(modelId);
+		m.applyChange(new AddImport(abox, f.getOWLImportsDeclaration(tbox.getOntologyID().getOntologyIRI().get())));
+		return new ModelContainer(modelId, tbox, abox);
+	}
+
+	private OWLNamedIndividual individual(ModelContainer model, String name) {
+		return f.getOWLNamedIndividual(IRI.create(model.getModelId()+"/"+name));
+	}
+
+	private void add(ModelContainer model, OWLAxiom...axioms) {
+		apply(model, true, axioms);
+	}
+
+	private void remove(ModelContainer model, OWLAxiom...axioms) {
+		apply(model, false, axioms);
+	}
+
+	private void apply(ModelContainer model, boolean add, OWLAxiom...axioms) {
+		List<OWLOntologyChange> changes = new ArrayList<>();
+		for (OWLAxiom axiom : axioms) {
+			changes.add(add ? new AddAxiom(model.getAboxOntology(), axiom) : new RemoveAxiom(model.getAboxOntology(), axiom));
+		}
+		Lock lock = model.getWriteLock();
+		lock.lock();
+		try {
+			model.applyChanges(changes);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Check the incremental inferences against a new reasoner for the model.
+	 *
+	 * @param model
+	 * @return the incremental inferences
+	 */
+	private MapInferenceProvider assertSameAsFull(ModelContainer model) throws Exception {
+		OWLOntology abox = model.getAboxOntology();
+		OWLReasoner reasoner = new ElkReasonerFactory().createReasoner(abox);
+		MapInferenceProvider full;
+		try {
+			full = (MapInferenceProvider) MapInferenceProvider.create(reasoner, abox);
+		} finally {
+			reasoner.dispose();
+		}
+		MapInferenceProvider incremental = (MapInferenceProvider) creator.create(model);
+		assertEquals(full.isConsistent(), incremental.isConsistent());
+		assertEquals(full.getIndividuals(), incremental.getIndividuals());
+		for (OWLNamedIndividual i : abox.getIndividualsInSignature()) {
+			assertEquals(i.toString(), full.getTypes(i), incremental.getTypes(i));
+		}
+		return incremental;
+	}
+
+	@Test
+	public void testAddAndRemove() throws Exception {
+		ModelContainer model = createModel("0001");
+		OWLNamedIndividual i1 = individual(model, "i1");
+		OWLNamedIndividual i2 = individual(model, "i2");
+		OWLNamedIndividual i3 = individual(model, "i3");
+		add(model, f.getOWLDeclarationAxiom(i1), f.getOWLClassAssertionAxiom(a, i1));
+		assertSameAsFull(model);
+
+		/* the type of i1 depends on the individual linked to it */
+		add(model, f.getOWLClassAssertionAxiom(c, i2), f.getOWLObjectPropertyAssertionAxiom(p, i1, i2));
+		InferenceProvider inferences = assertSameAsFull(model);
+		assertEquals(new HashSet<>(Arrays.asList(a, d)), inferences.getTypes(i1));
+
+		/* an individual with only a declaration is listed, like in a full run */
+		add(model, f.getOWLDeclarationAxiom(i3));
+		MapInferenceProvider declared = assertSameAsFull(model);
+		assertTrue(declared.getIndividuals().contains(i3));
+
+		remove(model, f.getOWLClassAssertionAxiom(c, i2));
+		inferences = assertSameAsFull(model);
+		assertEquals(Collections.singleton(a), inferences.getTypes(i1));
+
+		remove(model, f.getOWLDeclarationAxiom(i3));
+		declared = assertSameAsFull(model);
+		assertFalse(declared.getIndividuals().contains(i3));
+
+		/* annotations are not copied, the result is the same */
+		add(model, f.getOWLAnnotationAssertionAxiom(f.getRDFSComment(), i1.getIRI(), f.getOWLLiteral("comment")));
+		assertSameAsFull(model);
+	}
+
+	@Test
+	public void testInconsistentAndConsistentAgain() throws Exception {
+		ModelContainer model = createModel("0001");
+		OWLNamedIndividual i1 = individual(model, "i1");
+		OWLNamedIndividual i2 = individual(model, "i2");
+		add(model, f.getOWLClassAssertionAxiom(a, i1), f.getOWLClassAssertionAxiom(b, i2));
+		assertSameAsFull(model);
+
+		/* A and C are disjoint */
+		add(model, f.getOWLClassAssertionAxiom(c, i1));
+		assertFalse(assertSameAsFull(model).isConsistent());
+
+		/* changes of other individuals while inconsistent */
+		add(model, f.getOWLClassAssertionAxiom(a, i2));
+		assertFalse(assertSameAsFull(model).isConsistent());
+
+		remove(model, f.getOWLClassAssertionAxiom(c, i1));
+		InferenceProvider inferences = assertSameAsFull(model);
+		assertTrue(inferences.isConsistent());
+		assertEquals(Collections.singleton(a), inferences.getTypes(i2));
+	}
+
+	@Test
+	public void testEvictionAndRecreation() throws Exception {
+		creator = new IncrementalInferenceProviderCreatorImpl(new ElkReasonerFactory(), 1, "test");
+		ModelContainer model1 = createModel("0001");
+		ModelContainer model2 = createModel("0002");
+		OWLNamedIndividual i1 = individual(model1, "i1");
+		OWLNamedIndividual i2 = individual(model2, "i2");
+		add(model1, f.getOWLClassAssertionAxiom(a, i1));
+		add(model2, f.getOWLClassAssertionAxiom(c, i2));
+		assertSameAsFull(model1);
+		assertEquals(1, creator.getReasonerCount());
+
+		/* the budget only allows one reasoner, the first one is released */
+		assertSameAsFull(model2);
+		assertEquals(1, creator.getReasonerCount());
+
+		/* changes of the model while it has no reasoner */
+		OWLNamedIndividual i3 = individual(model1, "i3");
+		add(model1, f.getOWLClassAssertionAxiom(c, i3), f.getOWLObjectPropertyAssertionAxiom(p, i1, i3));
+		InferenceProvider inferences = assertSameAsFull(model1);
+		assertEquals(new HashSet<>(Arrays.asList(a, d)), inferences.getTypes(i1));
+		assertEquals(1, creator.getReasonerCount());
+
+		/* the re-created reasoner is incremental again */
+		remove(model1, f.getOWLObjectPropertyAssertionAxiom(p, i1, i3));
+		inferences = assertSameAsFull(model1);
+		assertEquals(Collections.singleton(a), inferences.getTypes(i1));
+	}
+}
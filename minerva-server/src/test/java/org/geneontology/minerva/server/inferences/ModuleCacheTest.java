@@ -0,0 +1,266 @@
+package org.geneontology.minerva.server.inferences;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import org.geneontology.minerva.json.InferenceProvider;
+import org.junit.Before;
+import org.junit.Test;
+import org.semanticweb.elk.owlapi.ElkReasonerFactory;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.AddImport;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLNamedIndividual;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+
+import uk.ac.manchester.cs.owlapi.modularity.ModuleType;
+import uk.ac.manchester.cs.owlapi.modularity.SyntacticLocalityModuleExtractor;
+
+public class ModuleCacheTest {
+
+	private static final String NS = "http://example.org/";
+
+	private OWLOntologyManager m;
+	private OWLDataFactory f;
+	private OWLOntology tbox;
+	private OWLClass a, b, c, d, e, g;
+	private OWLObjectProperty p;
+
+	@Before
+	public void before() throws Exception {
+		m = OWLManager.createOWLOntologyManager();
+		f = m.getOWLDataFactory();
+		tbox = m.createOntology(IRI.create(NS+"tbox"));
+		a = f.getOWLClass(IRI.create(NS+"A"));
+		b = f.getOWLClass(IRI.create(NS+"B"));
+		c = f.getOWLClass(IRI.create(NS+"C"));
+		d = f.getOWLClass(IRI.create(NS+"D"));
+		e = f.getOWLClass(IRI.create(NS+"E"));
+		g = f.getOWLClass(IRI.create(NS+"G"));
+		p = f.getOWLObjectProperty(IRI.create(NS+"p"));
+		m.addAxiom(tbox, f.getOWLSubClassOfAxiom(a, b));
+		m.addAxiom(tbox, f.getOWLEquivalentClassesAxiom(d, f.getOWLObjectSomeValuesFrom(p, c)));
+		m.addAxiom(tbox, f.getOWLDisjointClassesAxiom(a, c));
+		m.addAxiom(tbox, f.getOWLSubClassOfAxiom(e, g));
+	}
+
+	private OWLOntology createAbox(String id) throws Exception {
+		OWLOntology abox = m.createOntology(IRI.create(NS+id));
+		m.applyChange(new AddImport(abox, f.getOWLImportsDeclaration(tbox.getOntologyID().getOntologyIRI().get())));
+		return abox;
+	}
+
+	private OWLNamedIndividual individual(OWLOntology abox, String name) {
+		return f.getOWLNamedIndividual(IRI.create(abox.getOntologyID().getOntologyIRI().get()+"/"+name));
+	}
+
+	private OWLAxiom type(OWLOntology abox, String name, OWLClass cls) {
+		return f.getOWLClassAssertionAxiom(cls, individual(abox, name));
+	}
+
+	private static IRI id(OWLOntology abox) {
+		return abox.getOntologyID().getOntologyIRI().get();
+	}
+
+	@Test
+	public void testSupersetReuse() throws Exception {
+		ModuleCache cache = new ModuleCache(0, 0);
+		OWLOntology abox1 = createAbox("0001");
+		m.addAxiom(abox1, type(abox1, "i1", a));
+		m.addAxiom(abox1, type(abox1, "i2", c));
+		Set<OWLAxiom> module1 = cache.getModule(id(abox1), abox1);
+		assertTrue(module1.contains(f.getOWLSubClassOfAxiom(a, b)));
+		assertTrue(module1.contains(f.getOWLDisjointClassesAxiom(a, c)));
+		assertFalse(module1.contains(f.getOWLSubClassOfAxiom(e, g)));
+		assertEquals(1, cache.getMissCount());
+
+		/* a model with a subset of the terms uses the larger module */
+		OWLOntology abox2 = createAbox("0002");
+		m.addAxiom(abox2, type(abox2, "i1", a));
+		assertSame(module1, cache.getModule(id(abox2), abox2));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getSize());
+
+		/* a model with a new term requires its own module */
+		OWLOntology abox3 = createAbox("0003");
+		m.addAxiom(abox3, type(abox3, "i1", e));
+		Set<OWLAxiom> module3 = cache.getModule(id(abox3), abox3);
+		assertTrue(module3.contains(f.getOWLSubClassOfAxiom(e, g)));
+		assertFalse(module3.contains(f.getOWLSubClassOfAxiom(a, b)));
+		assertEquals(2, cache.getMissCount());
+		assertEquals(2, cache.getSize());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEviction() throws Exception {
+		ModuleCache cache = new ModuleCache(2, 0);
+		OWLOntology aboxA = createAbox("0001");
+		m.addAxiom(aboxA, type(aboxA, "i1", a));
+		OWLOntology aboxE = createAbox("0002");
+		m.addAxiom(aboxE, type(aboxE, "i1", e));
+		OWLOntology aboxC = createAbox("0003");
+		m.addAxiom(aboxC, type(aboxC, "i1", c));
+
+		cache.getModule(id(aboxA), aboxA);
+		cache.getModule(id(aboxE), aboxE);
+		/* use the module of A, the module of E is now the least recently used */
+		cache.getModule(id(aboxA), aboxA);
+		assertEquals(1, cache.getHitCount());
+		cache.getModule(id(aboxC), aboxC);
+		assertEquals(3, cache.getMissCount());
+		assertEquals(2, cache.getSize());
+
+		cache.getModule(id(aboxA), aboxA);
+		assertEquals(2, cache.getHitCount());
+		cache.getModule(id(aboxE), aboxE);
+		assertEquals(4, cache.getMissCount());
+		assertEquals(2, cache.getSize());
+	}
+
+	@Test
+	public void testSignatureGrowth() throws Exception {
+		ModuleCache cache = new ModuleCache(0, 0);
+		OWLOntology abox = createAbox("0001");
+		OWLAxiom typeA = type(abox, "i1", a);
+		OWLAxiom typeC = type(abox, "i2", c);
+		m.addAxiom(abox, typeA);
+		Set<OWLAxiom> small = cache.getModule(id(abox), abox);
+		assertFalse(small.contains(f.getOWLDisjointClassesAxiom(a, c)));
+
+		/* a new term extends the module of the model */
+		m.addAxiom(abox, typeC);
+		Set<OWLAxiom> grown = cache.getModule(id(abox), abox);
+		assertTrue(grown.containsAll(small));
+		assertTrue(grown.contains(f.getOWLDisjointClassesAxiom(a, c)));
+		assertEquals(2, cache.getMissCount());
+
+		/* the module does not shrink, if a term leaves the model */
+		m.removeAxiom(abox, typeC);
+		assertSame(grown, cache.getModule(id(abox), abox));
+		m.removeAxiom(abox, typeA);
+		m.addAxiom(abox, type(abox, "i2", c));
+		assertSame(grown, cache.getModule(id(abox), abox));
+		assertEquals(2, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+	}
+
+	/**
+	 * The module for the terms of the abox together with the abox gives the
+	 * same types as the module seeded with the individuals, which was used
+	 * before.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testSameTypesAsIndividualModule() throws Exception {
+		OWLOntology abox = createAbox("0001");
+		m.addAxiom(abox, type(abox, "i1", a));
+		m.addAxiom(abox, f.getOWLObjectPropertyAssertionAxiom(p, individual(abox, "i2"), individual(abox, "i3")));
+		m.addAxiom(abox, type(abox, "i3", c));
+		m.addAxiom(abox, type(abox, "i4", e));
+
+		ModuleCache cache = new ModuleCache(0, 0);
+		Set<OWLAxiom> axioms = new HashSet<>(cache.getModule(id(abox), abox));
+		axioms.addAll(abox.getAxioms());
+		OWLOntology module = m.createOntology(axioms, IRI.generateDocumentIRI());
+		InferenceProvider cached = infer(module);
+
+		SyntacticLocalityModuleExtractor sme = new SyntacticLocalityModuleExtractor(m, abox, ModuleType.BOT);
+		Set<OWLEntity> seeds = new HashSet<OWLEntity>(abox.getIndividualsInSignature());
+		OWLOntology individualModule = sme.extractAsOntology(seeds, IRI.generateDocumentIRI());
+		InferenceProvider expected = infer(individualModule);
+
+		assertEquals(expected.isConsistent(), cached.isConsistent());
+		for (OWLNamedIndividual i : abox.getIndividualsInSignature()) {
+			assertEquals(i.toString(), expected.getTypes(i), cached.getTypes(i));
+		}
+		assertTrue(cached.getTypes(individual(abox, "i2")).contains(d));
+	}
+
+	private static InferenceProvider infer(OWLOntology ont) {
+		OWLReasoner reasoner = new ElkReasonerFactory().createReasoner(ont);
+		try {
+			return MapInferenceProvider.create(reasoner, ont);
+		} finally {
+			reasoner.dispose();
+		}
+	}
+
+	@Test
+	public void testConcurrentRequestsShareExtraction() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final ModuleCache cache = new ModuleCache(0, 0) {
+
+			@Override
+			protected FutureTask<Set<OWLAxiom>> createExtraction(SyntacticLocalityModuleExtractor extractor, Set<OWLEntity> signature) {
+				final FutureTask<Set<OWLAxiom>> extraction = super.createExtraction(extractor, signature);
+				return new FutureTask<>(new Callable<Set<OWLAxiom>>() {
+
+					@Override
+					public Set<OWLAxiom> call() throws Exception {
+						started.countDown();
+						release.await(30, TimeUnit.SECONDS);
+						extraction.run();
+						return extraction.get();
+					}
+				});
+			}
+		};
+		final OWLOntology abox1 = createAbox("0001");
+		m.addAxiom(abox1, type(abox1, "i1", a));
+		final OWLOntology abox2 = createAbox("0002");
+		m.addAxiom(abox2, type(abox2, "i1", a));
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<Set<OWLAxiom>> first = executor.submit(new Callable<Set<OWLAxiom>>() {
+
+				@Override
+				public Set<OWLAxiom> call() throws Exception {
+					return cache.getModule(id(abox1), abox1);
+				}
+			});
+			assertTrue(started.await(30, TimeUnit.SECONDS));
+			Future<Set<OWLAxiom>> second = executor.submit(new Callable<Set<OWLAxiom>>() {
+
+				@Override
+				public Set<OWLAxiom> call() throws Exception {
+					return cache.getModule(id(abox2), abox2);
+				}
+			});
+			/* the monitor is free during the extraction, the second request
+			 * waits for the running extraction */
+			long deadline = System.currentTimeMillis() + 30000;
+			while (cache.getHitCount() < 1 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertEquals(1, cache.getHitCount());
+			assertEquals(0, cache.getSize());
+			assertFalse(second.isDone());
+			release.countDown();
+			Set<OWLAxiom> module = first.get(30, TimeUnit.SECONDS);
+			assertSame(module, second.get(30, TimeUnit.SECONDS));
+			assertEquals(1, cache.getMissCount());
+			assertEquals(1, cache.getSize());
+		} finally {
+			release.countDown();
+			executor.shutdownNow();
+		}
+	}
+}